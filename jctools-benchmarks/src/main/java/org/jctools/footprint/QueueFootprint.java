@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.footprint;
+
+import org.jctools.queues.QueueByTypeFactory;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.Queue;
+
+/**
+ * Reports the retained footprint of empty queue instances, as measured by JOL. Use alongside
+ * {@link org.jctools.jmh.throughput.QueueThroughputBackoffNone} to weigh the memory saved by the compact queues against
+ * the throughput lost to False Sharing.
+ * <p>
+ * Usage: {@code java -cp microbenchmarks.jar org.jctools.footprint.QueueFootprint [capacity] [qType...]}
+ */
+public class QueueFootprint {
+    static final String[] DEFAULT_TYPES = {
+        "SpscArrayQueue", "SpscCompactArrayQueue", "MpscArrayQueue", "MpscCompactArrayQueue",
+        "SpscAtomicArrayQueue", "MpscAtomicArrayQueue", "ArrayBlockingQueue", "ConcurrentLinkedQueue" };
+
+    public static void main(String[] args) {
+        final int capacity = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        final String[] types;
+        if (args.length > 1) {
+            types = new String[args.length - 1];
+            System.arraycopy(args, 1, types, 0, types.length);
+        }
+        else {
+            types = DEFAULT_TYPES;
+        }
+        System.out.format("%-24s %10s %10s %12s\n", "qType", "capacity", "instance", "total");
+        for (String qType : types) {
+            Queue<Integer> q = QueueByTypeFactory.createQueue(qType, capacity);
+            long instanceSize = ClassLayout.parseInstance(q).instanceSize();
+            long totalSize = GraphLayout.parseInstance(q).totalSize();
+            System.out.format("%-24s %10d %10d %12d\n", qType, capacity, instanceSize, totalSize);
+        }
+        if (Boolean.getBoolean("layout")) {
+            for (String qType : types) {
+                Queue<Integer> q = QueueByTypeFactory.createQueue(qType, capacity);
+                System.out.println(ClassLayout.parseInstance(q).toPrintable());
+            }
+        }
+    }
+}
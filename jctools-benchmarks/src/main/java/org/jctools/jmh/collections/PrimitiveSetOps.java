@@ -0,0 +1,103 @@
+package org.jctools.jmh.collections;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jctools.sets.OpenHashSet;
+import org.jctools.sets.OpenHashSetLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link SetOps} for sets of longs: {@link OpenHashSetLong} against {@link OpenHashSet} and {@link HashSet} of boxed
+ * {@link Long}s. The boxed sets are given values boxed on the spot, as a dedup set on a hot path would be, so their
+ * cost includes the boxing. {@link #dedup} clears the set and adds a batch of values with duplicates, then checks them,
+ * through the bulk methods of {@link OpenHashSetLong}.
+ */
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode({ Mode.AverageTime })
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class PrimitiveSetOps {
+    @Param("1024")
+    int size;
+    @Param("512")
+    int occupancy;
+    @Param("2048")
+    int keyBound;
+    @Param({ "OpenHashSetLong", "OpenHashSet", "HashSet" })
+    String type;
+
+    private OpenHashSetLong primitive;
+    private Set<Long> boxed;
+    private long key;
+    private long[] batch;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        if ("OpenHashSetLong".equals(type)) {
+            primitive = new OpenHashSetLong(size);
+        } else if ("OpenHashSet".equals(type)) {
+            boxed = new OpenHashSet<Long>(size);
+        } else if ("HashSet".equals(type)) {
+            boxed = new HashSet<Long>(size);
+        } else {
+            throw new IllegalArgumentException("Unsupported set: " + type);
+        }
+        Random r = new Random(666);
+        // Outside the Long cache, so that boxing allocates
+        batch = new long[occupancy];
+        for (int i = 0; i < occupancy; i++) {
+            batch[i] = 1000 + r.nextInt(keyBound);
+        }
+        key = batch[occupancy - 1];
+        dedup();
+    }
+
+    @Benchmark
+    public boolean add() {
+        return primitive != null ? primitive.add(key) : boxed.add(key);
+    }
+
+    @Benchmark
+    public boolean remove() {
+        return primitive != null ? primitive.remove(key) : boxed.remove(key);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return primitive != null ? primitive.contains(key) : boxed.contains(key);
+    }
+
+    @Benchmark
+    public boolean dedup() {
+        final long[] batch = this.batch;
+        if (primitive != null) {
+            primitive.clear();
+            primitive.addAll(batch);
+            return primitive.containsAll(batch);
+        }
+        boxed.clear();
+        for (long value : batch) {
+            boxed.add(value);
+        }
+        for (long value : batch) {
+            if (!boxed.contains(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
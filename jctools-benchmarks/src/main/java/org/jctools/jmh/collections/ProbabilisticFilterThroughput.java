@@ -0,0 +1,175 @@
+package org.jctools.jmh.collections;
+
+import org.jctools.maps.ConcurrentBloomFilter;
+import org.jctools.maps.ConcurrentCountMinSketch;
+import org.jctools.maps.nbhm_test.SimpleRandom;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A "seen before?" check ahead of a map lookup: {@link #seen} adds a random key and reports whether it was there. The
+ * lock-free {@link ConcurrentBloomFilter} and {@link ConcurrentCountMinSketch} are measured against the same
+ * structures over a plain {@code long[]} guarded by striped locks, one lock per word modulo {@code LOCKS}. JMH takes a
+ * single thread count per run, so sweep it from the command line, e.g.:
+ * <pre>
+ * for t in 1 2 4 8 16 32; do java -jar microbenchmarks.jar ProbabilisticFilterThroughput -t $t; done
+ * </pre>
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Fork(2)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ProbabilisticFilterThroughput {
+    private static final int LOCKS = 64;
+
+    @Param(value = {"ConcurrentBloomFilter", "StripedLockBloomFilter", "ConcurrentCountMinSketch", "StripedLockCountMinSketch"})
+    private String implementation;
+
+    @Param(value = "10000000")
+    private int expectedKeys;
+
+    @Param(value = "0.01")
+    private double fpp;
+
+    private ConcurrentBloomFilter bloom;
+    private ConcurrentCountMinSketch sketch;
+    private StripedLockBloomFilter lockedBloom;
+    private StripedLockCountMinSketch lockedSketch;
+
+    @Setup(Level.Trial)
+    public void createFilter() {
+        if ("ConcurrentBloomFilter".equalsIgnoreCase(implementation)) {
+            bloom = ConcurrentBloomFilter.create(expectedKeys, fpp);
+        } else if ("StripedLockBloomFilter".equalsIgnoreCase(implementation)) {
+            final ConcurrentBloomFilter sized = ConcurrentBloomFilter.create(expectedKeys, fpp);
+            lockedBloom = new StripedLockBloomFilter(sized.bitSize(), sized.hashCount());
+        } else if ("ConcurrentCountMinSketch".equalsIgnoreCase(implementation)) {
+            sketch = ConcurrentCountMinSketch.create(fpp / 100, 0.99);
+        } else if ("StripedLockCountMinSketch".equalsIgnoreCase(implementation)) {
+            final ConcurrentCountMinSketch sized = ConcurrentCountMinSketch.create(fpp / 100, 0.99);
+            lockedSketch = new StripedLockCountMinSketch(sized.width(), sized.depth());
+        } else {
+            throw new IllegalArgumentException("Unsupported filter: " + implementation);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private SimpleRandom random = new SimpleRandom();
+
+        long next() {
+            return random.next() & Integer.MAX_VALUE;
+        }
+    }
+
+    @Benchmark
+    public boolean seen(ThreadState state) {
+        // Twice as many distinct keys as expected, half of them seen before on average
+        final long key = state.next() % (2L * expectedKeys);
+        if (bloom != null) {
+            return !bloom.add(key);
+        } else if (lockedBloom != null) {
+            return !lockedBloom.add(key);
+        } else if (sketch != null) {
+            sketch.add(key);
+            return sketch.estimate(key) > 1;
+        } else {
+            lockedSketch.add(key);
+            return lockedSketch.estimate(key) > 1;
+        }
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    static final class StripedLockBloomFilter {
+        private final long[] words;
+        private final Object[] locks = newLocks();
+        private final long bitMask;
+        private final int hashCount;
+
+        StripedLockBloomFilter(long bits, int hashCount) {
+            this.words = new long[(int) (bits >>> 6)];
+            this.bitMask = bits - 1;
+            this.hashCount = hashCount;
+        }
+
+        boolean add(long key) {
+            final long h1 = mix(key);
+            final long h2 = mix(h1) | 1;
+            boolean changed = false;
+            for (int i = 0; i < hashCount; i++) {
+                final long bit = (h1 + i * h2) & bitMask;
+                final int index = (int) (bit >>> 6);
+                synchronized (locks[index & (LOCKS - 1)]) {
+                    final long word = words[index];
+                    if ((word & (1L << bit)) == 0) {
+                        words[index] = word | (1L << bit);
+                        changed = true;
+                    }
+                }
+            }
+            return changed;
+        }
+    }
+
+    static final class StripedLockCountMinSketch {
+        private final long[] counters;
+        private final Object[] locks = newLocks();
+        private final int depth;
+        private final int widthShift;
+        private final int widthMask;
+
+        StripedLockCountMinSketch(int width, int depth) {
+            this.counters = new long[width * depth];
+            this.depth = depth;
+            this.widthShift = Integer.numberOfTrailingZeros(width);
+            this.widthMask = width - 1;
+        }
+
+        void add(long key) {
+            final long h1 = mix(key);
+            final long h2 = mix(h1) | 1;
+            for (int row = 0; row < depth; row++) {
+                final int index = index(row, h1 + row * h2);
+                synchronized (locks[index & (LOCKS - 1)]) {
+                    counters[index]++;
+                }
+            }
+        }
+
+        long estimate(long key) {
+            final long h1 = mix(key);
+            final long h2 = mix(h1) | 1;
+            long estimate = Long.MAX_VALUE;
+            for (int row = 0; row < depth; row++) {
+                final int index = index(row, h1 + row * h2);
+                synchronized (locks[index & (LOCKS - 1)]) {
+                    estimate = Math.min(estimate, counters[index]);
+                }
+            }
+            return estimate;
+        }
+
+        private int index(int row, long hash) {
+            return (row << widthShift) + ((int) (hash >>> 32) & widthMask);
+        }
+    }
+
+    private static Object[] newLocks() {
+        final Object[] locks = new Object[LOCKS];
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+}
@@ -0,0 +1,96 @@
+package org.jctools.jmh.collections;
+
+import org.jctools.maps.SingleWriterHashMap;
+import org.jctools.maps.SingleWriterLongHashMap;
+import org.jctools.maps.nbhm_test.SimpleRandom;
+import org.jctools.util.Pow2;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read throughput of a read-mostly map while a single writer keeps putting and removing keys: the
+ * {@link SingleWriterHashMap} and {@link SingleWriterLongHashMap} against a {@link ConcurrentHashMap}. The "rw" group
+ * has one writer and three readers; change the readers with {@code -tg 1,N}.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SingleWriterMapReadThroughput {
+
+    @Param(value = {"SingleWriterHashMap", "SingleWriterLongHashMap", "ConcurrentHashMap"})
+    private String implementation;
+
+    @Param(value = "100000")
+    private int tableSize;
+
+    private Long[] keys;
+    private int mask;
+    private Map<Long, Long> map;
+    private SingleWriterLongHashMap<Long> longMap;
+
+    @Setup(Level.Trial)
+    public void createMap() {
+        if ("SingleWriterHashMap".equalsIgnoreCase(implementation)) {
+            map = new SingleWriterHashMap<Long, Long>(16);
+        } else if ("SingleWriterLongHashMap".equalsIgnoreCase(implementation)) {
+            longMap = new SingleWriterLongHashMap<Long>(16);
+        } else if ("ConcurrentHashMap".equalsIgnoreCase(implementation)) {
+            map = new ConcurrentHashMap<Long, Long>(16);
+        } else {
+            throw new IllegalArgumentException("Unsupported map: " + implementation);
+        }
+        // Twice as many keys as mapped, so that half the reads miss
+        keys = new Long[Pow2.roundToPowerOfTwo(tableSize) << 1];
+        mask = keys.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (long) i * 0x9E3779B9L;
+            if ((i & 1) == 0) {
+                put(keys[i]);
+            }
+        }
+    }
+
+    private void put(Long key) {
+        if (longMap != null) {
+            longMap.put(key, key);
+        } else {
+            map.put(key, key);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private SimpleRandom random = new SimpleRandom();
+
+        int next() {
+            return random.next();
+        }
+    }
+
+    @Benchmark
+    @Group("rw")
+    @GroupThreads(1)
+    public Long write(ThreadState state) {
+        final Long key = keys[state.next() & mask];
+        if (longMap != null) {
+            return longMap.remove(key) != null ? null : longMap.put(key, key);
+        }
+        return map.remove(key) != null ? null : map.put(key, key);
+    }
+
+    @Benchmark
+    @Group("rw")
+    @GroupThreads(3)
+    public Long read(ThreadState state) {
+        final Long key = keys[state.next() & mask];
+        if (longMap != null) {
+            return longMap.get(key);
+        }
+        return map.get(key);
+    }
+}
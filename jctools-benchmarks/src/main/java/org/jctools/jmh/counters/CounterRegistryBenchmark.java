@@ -0,0 +1,56 @@
+package org.jctools.jmh.counters;
+
+import org.jctools.counters.Counter;
+import org.jctools.counters.CounterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads {@code count} counters into an array: the {@link CounterRegistry} snapshot against a loop summing as many
+ * {@link LongAdder}s. Neither allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CounterRegistryBenchmark {
+
+    @Param("10000")
+    int count;
+
+    private CounterRegistry registry;
+    private LongAdder[] adders;
+    private long[] values;
+
+    @Setup
+    public void buildCounters() {
+        registry = new CounterRegistry();
+        adders = new LongAdder[count];
+        values = new long[count];
+        for (int i = 0; i < count; i++) {
+            Counter counter = registry.newCounter("counter-" + i);
+            counter.inc(i);
+            adders[i] = new LongAdder();
+            adders[i].add(i);
+        }
+    }
+
+    @Benchmark
+    public long[] registrySnapshot() {
+        registry.snapshot(values);
+        return values;
+    }
+
+    @Benchmark
+    public long[] longAdderSums() {
+        final LongAdder[] adders = this.adders;
+        for (int i = 0; i < adders.length; i++) {
+            values[i] = adders[i].sum();
+        }
+        return values;
+    }
+}
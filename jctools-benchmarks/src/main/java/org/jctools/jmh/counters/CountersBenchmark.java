@@ -4,6 +4,14 @@ import org.openjdk.jmh.annotations.*;
 
 import java.util.concurrent.TimeUnit;
 
+/**
+ * The "rw" group has one thread incrementing the counter while another reads it. {@link #incOnly} has all threads
+ * incrementing (the group state is then shared by all of them), to show how each counter scales with the number of
+ * writers. JMH takes a single thread count per run, so sweep it from the command line, e.g.:
+ * <pre>
+ * for t in 1 2 4 8 16 32 64; do java -jar microbenchmarks.jar CountersBenchmark.incOnly -t $t; done
+ * </pre>
+ */
 @State(Scope.Group)
 @BenchmarkMode(Mode.AverageTime)
 @OutputTimeUnit(TimeUnit.NANOSECONDS)
@@ -38,4 +46,9 @@ public class CountersBenchmark {
     public long get() {
         return counter.get();
     }
+
+    @Benchmark
+    public void incOnly() {
+        counter.inc();
+    }
 }
@@ -1,11 +1,17 @@
 package org.jctools.jmh.counters;
 
+import static org.jctools.counters.CountersFactory.createFixedSizeStripedCounter;
 import static org.jctools.counters.CountersFactory.createFixedSizeStripedCounterV6;
 import static org.jctools.counters.CountersFactory.createFixedSizeStripedCounterV8;
+import static org.jctools.counters.CountersFactory.createMaxAccumulator;
 
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
 
+import org.jctools.counters.FixedSizeStripedLongAccumulator;
 import org.jctools.counters.FixedSizeStripedLongCounter;
 import org.jctools.maps.ConcurrentAutoTable;
 
@@ -17,9 +23,14 @@ public class CountersFactory {
     public enum CounterType {
         AtomicLong,
         LongAdder,
+        FixedSizeStriped,
         FixedSizeStripedV6,
         FixedSizeStripedV8,
-        CAT
+        CAT,
+        // Max accumulators: inc() folds in a random value, so writes become rare as the max settles
+        AtomicLongMax,
+        LongAccumulatorMax,
+        FixedSizeStripedMax
     }
 
     static Counter build(CounterType type, int stripes) {
@@ -28,12 +39,20 @@ public class CountersFactory {
             return new AtomicLongCounter();
         case LongAdder:
             return new LongAdderCounter();
+        case FixedSizeStriped:
+            return new FixedSizeStripedCounter(createFixedSizeStripedCounter(stripes));
         case FixedSizeStripedV6:
             return new FixedSizeStripedCounter(createFixedSizeStripedCounterV6(stripes));
         case FixedSizeStripedV8:
             return new FixedSizeStripedCounter(createFixedSizeStripedCounterV8(stripes));
         case CAT:
             return new ConcurrentAutoTableCounter();
+        case AtomicLongMax:
+            return new AtomicLongMaxCounter();
+        case LongAccumulatorMax:
+            return new LongAccumulatorMaxCounter();
+        case FixedSizeStripedMax:
+            return new FixedSizeStripedMaxCounter(createMaxAccumulator(stripes));
         default:
             throw new IllegalArgumentException();
         }
@@ -104,4 +123,62 @@ public class CountersFactory {
             return counter.get();
         }
     }
+
+    private static long sample() {
+        return ThreadLocalRandom.current().nextInt(1 << 20);
+    }
+
+    static class AtomicLongMaxCounter extends Counter {
+        private final AtomicLong counter = new AtomicLong(Long.MIN_VALUE);
+
+        @Override
+        public void inc() {
+            final long x = sample();
+            long v;
+            while (x > (v = counter.get()) && !counter.compareAndSet(v, x)) {
+            }
+        }
+
+        @Override
+        public long get() {
+            return counter.get();
+        }
+    }
+
+    static class LongAccumulatorMaxCounter extends Counter {
+        private final LongAccumulator counter = new LongAccumulator(new LongBinaryOperator() {
+            @Override
+            public long applyAsLong(long left, long right) {
+                return Math.max(left, right);
+            }
+        }, Long.MIN_VALUE);
+
+        @Override
+        public void inc() {
+            counter.accumulate(sample());
+        }
+
+        @Override
+        public long get() {
+            return counter.get();
+        }
+    }
+
+    static class FixedSizeStripedMaxCounter extends Counter {
+        private final FixedSizeStripedLongAccumulator counter;
+
+        public FixedSizeStripedMaxCounter(FixedSizeStripedLongAccumulator impl) {
+            counter = impl;
+        }
+
+        @Override
+        public void inc() {
+            counter.accumulate(sample());
+        }
+
+        @Override
+        public long get() {
+            return counter.get();
+        }
+    }
 }
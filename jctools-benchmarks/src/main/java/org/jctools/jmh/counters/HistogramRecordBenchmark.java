@@ -0,0 +1,90 @@
+package org.jctools.jmh.counters;
+
+import org.jctools.counters.FixedSizeStripedLongHistogram;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The cost of recording a value in a {@link FixedSizeStripedLongHistogram}, against the same log-linear buckets held
+ * in a single {@link AtomicLongArray} and in a {@code long[]} behind a lock. JMH takes a single thread count per run,
+ * so sweep it from the command line, e.g.:
+ * <pre>
+ * for t in 1 2 4 8 16 32; do java -jar microbenchmarks.jar HistogramRecordBenchmark -t $t; done
+ * </pre>
+ * Values are drawn from a fixed table so that every thread hits the same spread of buckets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HistogramRecordBenchmark {
+    private static final int VALUES = 1 << 10;
+    private static final int PRECISION_BITS = 5;
+    private static final long HIGHEST_TRACKABLE_VALUE = TimeUnit.SECONDS.toNanos(10);
+
+    @Param({"FixedSizeStripedLongHistogram", "AtomicLongArray", "Synchronized"})
+    String implementation;
+
+    @Param("0")
+    int stripes;
+
+    private final long[] values = new long[VALUES];
+    private FixedSizeStripedLongHistogram striped;
+    private AtomicLongArray atomic;
+    private long[] locked;
+    private int lastBucket;
+
+    @Setup
+    public void buildHistogram() {
+        if (stripes <= 0)
+            stripes = Runtime.getRuntime().availableProcessors();
+        // Latencies from 100ns to about 10ms, log-uniformly
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = (long) (100 * Math.pow(1e5, (double) i / VALUES));
+        }
+        striped = new FixedSizeStripedLongHistogram(HIGHEST_TRACKABLE_VALUE, PRECISION_BITS, stripes);
+        lastBucket = striped.bucketCount() - 1;
+        if ("AtomicLongArray".equalsIgnoreCase(implementation)) {
+            atomic = new AtomicLongArray(striped.bucketCount());
+        } else if ("Synchronized".equalsIgnoreCase(implementation)) {
+            locked = new long[striped.bucketCount()];
+        } else if (!"FixedSizeStripedLongHistogram".equalsIgnoreCase(implementation)) {
+            throw new IllegalArgumentException("Unsupported histogram: " + implementation);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int index = (int) Thread.currentThread().getId() * 31;
+    }
+
+    @Benchmark
+    public void recordValue(ThreadState state) {
+        final long value = values[state.index++ & (VALUES - 1)];
+        if (atomic != null) {
+            atomic.getAndIncrement(bucketIndex(value));
+        } else if (locked != null) {
+            final int bucket = bucketIndex(value);
+            synchronized (locked) {
+                locked[bucket]++;
+            }
+        } else {
+            striped.recordValue(value);
+        }
+    }
+
+    private int bucketIndex(long value) {
+        if (value > HIGHEST_TRACKABLE_VALUE) {
+            return lastBucket;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - PRECISION_BITS;
+        if (shift < 0) {
+            return (int) value;
+        }
+        return ((shift + 1) << PRECISION_BITS) + (int) (value >>> shift) - (1 << PRECISION_BITS);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.jmh.latency;
+
+import org.jctools.queues.blocking.BlockingQueueFactory;
+import org.jctools.queues.spec.ConcurrentQueueSpec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of the first blocking queue created in a fresh JVM, which includes loading the blocking queue
+ * class. Every fork measures a single cold creation, so the result is the cold start cost as seen by an application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class BlockingQueueCreation
+{
+    @Param( {"SPSC", "MPSC", "SPMC", "MPMC"})
+    String spec;
+    @Param(value = {"1024"})
+    int qCapacity;
+
+    @Benchmark
+    public Queue<Integer> firstQueueCreation()
+    {
+        ConcurrentQueueSpec qs;
+        if ("SPSC".equals(spec))
+        {
+            qs = ConcurrentQueueSpec.createBoundedSpsc(qCapacity);
+        }
+        else if ("MPSC".equals(spec))
+        {
+            qs = ConcurrentQueueSpec.createBoundedMpsc(qCapacity);
+        }
+        else if ("SPMC".equals(spec))
+        {
+            qs = ConcurrentQueueSpec.createBoundedSpmc(qCapacity);
+        }
+        else
+        {
+            qs = ConcurrentQueueSpec.createBoundedMpmc(qCapacity);
+        }
+        return BlockingQueueFactory.newBlockingQueue(qs);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.jmh.latency;
+
+import org.jctools.queues.MpmcTransferQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TransferQueue;
+
+/**
+ * Round trip cost of a blocking handoff: the benchmark thread hands an element to an echo thread, which is waiting in
+ * {@code take()}, and waits in {@code take()} for the echo thread to hand it back. The {@link TransferQueue}s are
+ * handed to with {@code transfer()}, the {@link SynchronousQueue} with {@code put()}. Use the sample mode percentiles
+ * to compare the tail latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class TransferQueueHandoff
+{
+    private static final Integer PING = 1;
+
+    @Param( {"MpmcTransferQueue", "LinkedTransferQueue", "SynchronousQueue"})
+    String qType;
+
+    BlockingQueue<Integer> ping;
+    BlockingQueue<Integer> pong;
+    private Thread echo;
+
+    @Setup(Level.Trial)
+    public void startEcho()
+    {
+        ping = createQueue(qType);
+        pong = createQueue(qType);
+        echo = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    while (true)
+                    {
+                        handOff(pong, ping.take());
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    // done
+                }
+            }
+        });
+        echo.setDaemon(true);
+        echo.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopEcho() throws InterruptedException
+    {
+        echo.interrupt();
+        echo.join();
+    }
+
+    @Benchmark
+    public Integer roundTrip() throws InterruptedException
+    {
+        handOff(ping, PING);
+        return pong.take();
+    }
+
+    private static void handOff(BlockingQueue<Integer> q, Integer e) throws InterruptedException
+    {
+        if (q instanceof TransferQueue)
+        {
+            ((TransferQueue<Integer>) q).transfer(e);
+        }
+        else
+        {
+            q.put(e);
+        }
+    }
+
+    private static BlockingQueue<Integer> createQueue(String qType)
+    {
+        if ("MpmcTransferQueue".equals(qType))
+        {
+            return new MpmcTransferQueue<Integer>(1024);
+        }
+        else if ("LinkedTransferQueue".equals(qType))
+        {
+            return new LinkedTransferQueue<Integer>();
+        }
+        else if ("SynchronousQueue".equals(qType))
+        {
+            return new SynchronousQueue<Integer>();
+        }
+        throw new IllegalArgumentException("Unknown queue type: " + qType);
+    }
+}
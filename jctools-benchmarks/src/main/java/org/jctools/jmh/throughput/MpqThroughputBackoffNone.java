@@ -46,7 +46,8 @@ public class MpqThroughputBackoffNone {
     Integer escape;
     MessagePassingQueue<Integer> q;
 
-    @Param(value = { "SpscArrayQueue", "MpscArrayQueue", "SpmcArrayQueue", "MpmcArrayQueue" })
+    @Param(value = { "SpscArrayQueue", "MpscArrayQueue", "SpmcArrayQueue", "MpmcArrayQueue", "SpscCompactArrayQueue",
+        "MpscCompactArrayQueue" })
     String qType;
 
     @Param(value = { "132000" })
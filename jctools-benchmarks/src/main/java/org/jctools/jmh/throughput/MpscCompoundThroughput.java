@@ -0,0 +1,96 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.jmh.throughput;
+
+import org.jctools.queues.MessagePassingQueue;
+import org.jctools.queues.MessagePassingQueueByTypeFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the fixed and the contention adaptive compound MPSC queues. The number of producers is set on the command
+ * line, e.g. for 1 to 64 producers:
+ * <pre>
+ * for p in 1 2 4 8 16 32 64; do java -jar microbenchmarks.jar MpscCompoundThroughput -tg $p,1; done
+ * </pre>
+ * The {@code consumerIdle} counter reports how often the consumer scanned all stripes it polls without finding an
+ * element, which is the cost of surplus stripes at low load.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class MpscCompoundThroughput {
+    private static final long DELAY_PRODUCER = Long.getLong("delay.p", 0L);
+    static final Integer TEST_ELEMENT = 1;
+    MessagePassingQueue<Integer> q;
+
+    @Param(value = { "MpscCompoundQueue", "MpscAdaptiveCompoundQueue", "MpscArrayQueue" })
+    String qType;
+
+    @Param(value = { "131072" })
+    int qCapacity;
+
+    @Setup()
+    public void createQueue() {
+        q = MessagePassingQueueByTypeFactory.createQueue(qType, qCapacity);
+    }
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class PollCounters {
+        public long pollsMade;
+        public long consumerIdle;
+    }
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class OfferCounters {
+        public long offersFailed;
+        public long offersMade;
+    }
+
+    @Benchmark
+    @Group("tpt")
+    public void offer(OfferCounters counters) {
+        if (!q.offer(TEST_ELEMENT)) {
+            counters.offersFailed++;
+        } else {
+            counters.offersMade++;
+        }
+        if (DELAY_PRODUCER != 0) {
+            Blackhole.consumeCPU(DELAY_PRODUCER);
+        }
+    }
+
+    @Benchmark
+    @Group("tpt")
+    public void poll(PollCounters counters) {
+        if (q.relaxedPoll() == null) {
+            counters.consumerIdle++;
+        } else {
+            counters.pollsMade++;
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void emptyQ() {
+        synchronized (q) {
+            q.clear();
+        }
+    }
+}
@@ -33,7 +33,8 @@ public class QueueThroughputBackoffNone {
     Integer escape;
     Queue<Integer> q;
 
-    @Param(value = { "SpscArrayQueue", "MpscArrayQueue", "SpmcArrayQueue", "MpmcArrayQueue" })
+    @Param(value = { "SpscArrayQueue", "MpscArrayQueue", "SpmcArrayQueue", "MpmcArrayQueue", "SpscCompactArrayQueue",
+        "MpscCompactArrayQueue" })
     String qType;
 
     @Param(value = { "132000" })
@@ -0,0 +1,178 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.jmh.throughput;
+
+import org.jctools.stacks.ConcurrentStack;
+import org.jctools.stacks.MpmcArrayStack;
+import org.jctools.stacks.MpmcLinkedStack;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a mix of pushes and pops on a shared stack. The number of threads is set on the command line, e.g. for
+ * 1 to 32 threads:
+ * <pre>
+ * for t in 1 2 4 8 16 32; do java -jar microbenchmarks.jar StackThroughput -t $t; done
+ * </pre>
+ * Each operation is a push with {@code pushPercent} probability and a pop otherwise. The stack starts half full, a
+ * mix of 50 stays close to that, a mix away from 50 runs into the empty (or full) stack. The {@code pushPop} benchmark
+ * is the free-list pattern of taking an element and putting it back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class StackThroughput
+{
+    static final Integer TEST_ELEMENT = 1;
+
+    @Param( {"MpmcLinkedStack", "MpmcArrayStack", "ConcurrentLinkedDeque"})
+    String sType;
+
+    @Param( {"50", "80", "20"})
+    int pushPercent;
+
+    @Param( {"65536"})
+    int capacity;
+
+    ConcurrentStack<Integer> stack;
+
+    @Setup(Level.Iteration)
+    public void createStack()
+    {
+        if ("MpmcLinkedStack".equals(sType))
+        {
+            stack = new MpmcLinkedStack<Integer>();
+        }
+        else if ("MpmcArrayStack".equals(sType))
+        {
+            stack = new MpmcArrayStack<Integer>(capacity);
+        }
+        else if ("ConcurrentLinkedDeque".equals(sType))
+        {
+            stack = new DequeStack<Integer>();
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown stack type: " + sType);
+        }
+        for (int i = 0; i < capacity / 2; i++)
+        {
+            stack.push(TEST_ELEMENT);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState
+    {
+        int seed = (int) System.nanoTime() | 1;
+
+        int nextPercent()
+        {
+            // xorshift
+            int x = seed;
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+            seed = x;
+            return (x & Integer.MAX_VALUE) % 100;
+        }
+    }
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class OpCounters
+    {
+        public long pushesFailed;
+        public long popsFailed;
+    }
+
+    @Benchmark
+    public Integer mixed(ThreadState state, OpCounters counters)
+    {
+        if (state.nextPercent() < pushPercent)
+        {
+            if (!stack.push(TEST_ELEMENT))
+            {
+                counters.pushesFailed++;
+            }
+            return null;
+        }
+        Integer e = stack.pop();
+        if (e == null)
+        {
+            counters.popsFailed++;
+        }
+        return e;
+    }
+
+    @Benchmark
+    public Integer pushPop()
+    {
+        Integer e = stack.pop();
+        if (e != null)
+        {
+            stack.push(e);
+        }
+        return e;
+    }
+
+    /**
+     * {@link ConcurrentLinkedDeque} used as a stack at its head, which is how it is commonly used as a free list.
+     */
+    static final class DequeStack<E> implements ConcurrentStack<E>
+    {
+        private final ConcurrentLinkedDeque<E> deque = new ConcurrentLinkedDeque<E>();
+
+        @Override
+        public boolean push(E e)
+        {
+            deque.addFirst(e);
+            return true;
+        }
+
+        @Override
+        public E pop()
+        {
+            return deque.pollFirst();
+        }
+
+        @Override
+        public E peek()
+        {
+            return deque.peekFirst();
+        }
+
+        @Override
+        public int size()
+        {
+            return deque.size();
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return deque.isEmpty();
+        }
+
+        @Override
+        public int capacity()
+        {
+            return UNBOUNDED_CAPACITY;
+        }
+    }
+}
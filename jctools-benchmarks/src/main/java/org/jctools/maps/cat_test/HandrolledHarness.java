@@ -16,6 +16,7 @@ package org.jctools.maps.cat_test;
 public class HandrolledHarness extends Thread {
 
   static int _thread_min, _thread_max, _thread_incr;
+  static boolean _doubling;     // Thread counts double from min to max, rather than step by incr
   static int _ctr_impl;
 
   static Counter make_ctr( final int impl ) {
@@ -32,6 +33,7 @@ public class HandrolledHarness extends Thread {
     case 10: return new   StripeLockCounter(256);
     case 11: return new StripeUnsafeCounter(256);
     case 12: return new CATCounter();
+    case 13: return new LongAdderCounter();
     default:
       throw new Error("Bad imple");
     }
@@ -54,6 +56,11 @@ public class HandrolledHarness extends Thread {
       if (args.length == 0) {
           args = new String[]{"2","8","2","0"};
       }
+      // "scale [impl]": 1 to 64 threads, doubling each time
+      if (args[0].equals("scale")) {
+          args = new String[]{"1","64","1",args.length > 1 ? args[1] : "-1"};
+          _doubling = true;
+      }
 
     // Parse args
     try {
@@ -62,16 +69,19 @@ public class HandrolledHarness extends Thread {
       _thread_incr  = check( args[2], "thread_incr", 1, 100000 );
       _ctr_impl     = check( args[3], "implementation", -1, 13 );
 
-      int trips = (_thread_max - _thread_min)/_thread_incr;
-      _thread_max = trips*_thread_incr + _thread_min;
+      if( !_doubling ) {
+        int trips = (_thread_max - _thread_min)/_thread_incr;
+        _thread_max = trips*_thread_incr + _thread_min;
+      }
 
     } catch( Error e ) {
       System.out.println("Usage: harness thread-min thread-max thread-incr impl[All=0]");
+      System.out.println("   or: harness scale [impl]");
       throw e;
     }
     String name = _ctr_impl == 0 ? "ALL" : (_ctr_impl==-1 ? "Best" : make_ctr(_ctr_impl).name());
     System.out.println("=====  "+name+"   =====");
-    System.out.println("Threads from "+_thread_min+" to "+_thread_max+" by "+_thread_incr);
+    System.out.println("Threads from "+_thread_min+" to "+_thread_max+(_doubling ? " doubling" : " by "+_thread_incr));
 
     // Do some warmup
     System.out.println("==== Warmup -variance: ");
@@ -83,7 +93,7 @@ public class HandrolledHarness extends Thread {
     for( int i=0; i<num_trials; i++ )
       System.out.printf("    %3d    ",i);
     System.out.println("    Average");
-    for( int i=_thread_min; i<=_thread_max; i += _thread_incr )
+    for( int i=_thread_min; i<=_thread_max; i = _doubling ? i*2 : i+_thread_incr )
       run_till_stable( i, num_trials );
   }
 
@@ -91,12 +101,13 @@ public class HandrolledHarness extends Thread {
     if( _ctr_impl > 0 ) {
       run_till_stable(num_threads,num_trials,_ctr_impl);
     } else if( _ctr_impl == 0 ) {
-      for( int impl=1;impl<13; impl++ )
+      for( int impl=1;impl<14; impl++ )
         run_till_stable(num_threads,num_trials,impl);
       System.out.println();
     } else {
       run_till_stable(num_threads,num_trials,11); // big stripage Unsafe
       run_till_stable(num_threads,num_trials,12); // CAT
+      run_till_stable(num_threads,num_trials,13); // LongAdder
     }
   }
 
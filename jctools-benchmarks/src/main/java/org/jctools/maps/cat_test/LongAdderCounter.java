@@ -0,0 +1,8 @@
+package org.jctools.maps.cat_test;
+import java.util.concurrent.atomic.LongAdder;
+public final class LongAdderCounter extends Counter {
+  public String name() { return "LongAdder"; }
+  private final LongAdder _cnt = new LongAdder();
+  public long get(){ return _cnt.sum(); }
+  public void add( long x ) { _cnt.add(x); }
+}
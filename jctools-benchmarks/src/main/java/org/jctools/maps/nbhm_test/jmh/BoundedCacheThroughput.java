@@ -0,0 +1,134 @@
+package org.jctools.maps.nbhm_test.jmh;
+
+import org.jctools.maps.BoundedNonBlockingCache;
+import org.jctools.maps.NonBlockingHashMap;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a Zipfian trace of keys against a cache, loading the key on a miss, and reports the throughput along with
+ * the hits and misses. The baselines are an unbounded {@link NonBlockingHashMap}, which hits on everything but the
+ * first sighting of a key and grows to the whole key space, and an access ordered {@link LinkedHashMap} evicting its
+ * LRU entry behind a lock.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode({Mode.Throughput})
+@Warmup(iterations = 3, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class BoundedCacheThroughput {
+    private static final int TRACE_LENGTH = 1 << 20;
+
+    @Param(value = {"BoundedNonBlockingCache", "NonBlockingHashMap", "LinkedHashMap"})
+    private String implementation;
+
+    @Param(value = "10000")
+    private int maximumSize;
+
+    @Param(value = "1000000")
+    private int keySpace;
+
+    @Param(value = "0.99")
+    private double skew;
+
+    private int[] trace;
+    private BoundedNonBlockingCache<Integer, Integer> cache;
+    private NonBlockingHashMap<Integer, Integer> unbounded;
+    private Map<Integer, Integer> lru;
+
+    @Setup(Level.Trial)
+    public void createCache() {
+        trace = zipfTrace(keySpace, skew, TRACE_LENGTH, new Random(666));
+        if ("BoundedNonBlockingCache".equalsIgnoreCase(implementation)) {
+            cache = new BoundedNonBlockingCache<Integer, Integer>(maximumSize);
+        } else if ("NonBlockingHashMap".equalsIgnoreCase(implementation)) {
+            unbounded = new NonBlockingHashMap<Integer, Integer>();
+        } else if ("LinkedHashMap".equalsIgnoreCase(implementation)) {
+            final int max = maximumSize;
+            lru = new LinkedHashMap<Integer, Integer>(max, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+                    return size() > max;
+                }
+            };
+        } else {
+            throw new IllegalArgumentException("Unsupported cache: " + implementation);
+        }
+    }
+
+    // Keys ranked by popularity, key k being drawn with a probability proportional to 1/(k+1)^skew
+    private static int[] zipfTrace(int keySpace, double skew, int length, Random random) {
+        final double[] cdf = new double[keySpace];
+        double sum = 0;
+        for (int k = 0; k < keySpace; k++) {
+            sum += 1 / Math.pow(k + 1, skew);
+            cdf[k] = sum;
+        }
+        final int[] trace = new int[length];
+        for (int i = 0; i < length; i++) {
+            int k = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            trace[i] = k < 0 ? Math.min(-k - 1, keySpace - 1) : k;
+        }
+        return trace;
+    }
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class Counters {
+        public long hits;
+        public long misses;
+    }
+
+    @State(Scope.Thread)
+    public static class TraceState {
+        int index = new Random().nextInt(TRACE_LENGTH);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer getOrLoad(TraceState state, Counters counters) {
+        final Integer key = trace[state.index++ & (TRACE_LENGTH - 1)];
+        Integer value;
+        if (cache != null) {
+            value = cache.get(key);
+            if (value == null) {
+                cache.put(key, key);
+            }
+        } else if (unbounded != null) {
+            value = unbounded.get(key);
+            if (value == null) {
+                unbounded.put(key, key);
+            }
+        } else {
+            synchronized (lru) {
+                value = lru.get(key);
+                if (value == null) {
+                    lru.put(key, key);
+                }
+            }
+        }
+        if (value == null) {
+            counters.misses++;
+        } else {
+            counters.hits++;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,101 @@
+package org.jctools.maps.nbhm_test.jmh;
+
+import org.jctools.maps.NonBlockingHashMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.LongBinaryOperator;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Compares the parallel bulk operations of {@link NonBlockingHashMap} to those of {@link ConcurrentHashMap}, over a
+ * whole map, both in the common pool. A {@code parallelismThreshold} of {@link Long#MAX_VALUE} runs them on the calling
+ * thread only.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode({Mode.AverageTime})
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class BulkOperationsThroughput {
+
+    private static final ToLongBiFunction<Long, Long> VALUE = new ToLongBiFunction<Long, Long>() {
+        @Override
+        public long applyAsLong(Long key, Long value) {
+            return value;
+        }
+    };
+    private static final LongBinaryOperator SUM = new LongBinaryOperator() {
+        @Override
+        public long applyAsLong(long left, long right) {
+            return left + right;
+        }
+    };
+
+    @Param(value = {"NonBlockingHashMap", "ConcurrentHashMap"})
+    private String implementation;
+
+    @Param(value = "1000000")
+    private int tableSize;
+
+    @Param(value = {"1", "9223372036854775807"})
+    private long parallelismThreshold;
+
+    private NonBlockingHashMap<Long, Long> nbhm;
+    private ConcurrentHashMap<Long, Long> chm;
+    private final LongAdder sum = new LongAdder();
+    private final BiConsumer<Long, Long> adder = new BiConsumer<Long, Long>() {
+        @Override
+        public void accept(Long key, Long value) {
+            sum.add(value);
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void createMap() {
+        if ("NonBlockingHashMap".equalsIgnoreCase(implementation)) {
+            nbhm = new NonBlockingHashMap<Long, Long>();
+            for (long k = 0; k < tableSize; k++) {
+                nbhm.put(k, k);
+            }
+        } else if ("ConcurrentHashMap".equalsIgnoreCase(implementation)) {
+            chm = new ConcurrentHashMap<Long, Long>();
+            for (long k = 0; k < tableSize; k++) {
+                chm.put(k, k);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported map: " + implementation);
+        }
+    }
+
+    @Benchmark
+    public long reduceToLong() {
+        return nbhm != null ?
+            nbhm.reduceToLong(parallelismThreshold, VALUE, 0L, SUM) :
+            chm.reduceToLong(parallelismThreshold, VALUE, 0L, SUM);
+    }
+
+    @Benchmark
+    public long forEach() {
+        sum.reset();
+        if (nbhm != null) {
+            nbhm.forEach(parallelismThreshold, adder);
+        } else {
+            chm.forEach(parallelismThreshold, adder);
+        }
+        return sum.sum();
+    }
+}
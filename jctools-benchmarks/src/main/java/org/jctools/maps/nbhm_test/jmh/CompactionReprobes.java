@@ -0,0 +1,107 @@
+package org.jctools.maps.nbhm_test.jmh;
+
+import org.jctools.maps.NonBlockingHashMap;
+import org.jctools.maps.nbhm_test.SimpleRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups in a {@link NonBlockingHashMap} which grew to {@code tableSize} keys then lost all but {@code liveSize} of
+ * them, with and without {@link NonBlockingHashMap#compact()}. The setup prints the table length and the reprobes the
+ * lookups make, worked out from the raw table: for a hit the distance from the key's home slot to its slot, and for a
+ * miss the distance to the first empty slot (capped at the reprobe limit).
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode({Mode.Throughput})
+@Warmup(iterations = 3, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class CompactionReprobes {
+    private static final int REPROBE_LIMIT = 10;
+
+    @Param(value = {"false", "true"})
+    private boolean compact;
+
+    @Param(value = "10000000")
+    private int tableSize;
+
+    @Param(value = "200000")
+    private int liveSize;
+
+    private NonBlockingHashMap<Integer, Integer> map;
+    private int step;
+
+    @Setup(Level.Trial)
+    public void createMap() {
+        map = new NonBlockingHashMap<Integer, Integer>();
+        for (int k = 0; k < tableSize; k++) {
+            map.put(k, k);
+        }
+        step = tableSize / liveSize;
+        for (int k = 0; k < tableSize; k++) {
+            if (k % step != 0) {
+                map.remove(k);
+            }
+        }
+        if (compact) {
+            map.compact();
+        }
+        printReprobes(map.raw_array());
+    }
+
+    private static void printReprobes(Object[] kvs) {
+        final int len = (kvs.length - 2) >> 1;
+        final int[] hashes = (int[]) kvs[1];
+        final int limit = REPROBE_LIMIT + (len >> 4);
+        long live = 0, dead = 0, hitReprobes = 0, missReprobes = 0;
+        for (int idx = 0; idx < len; idx++) {
+            final Object key = kvs[(idx << 1) + 2];
+            final Object value = kvs[(idx << 1) + 3];
+            if (key != null) {
+                if (value != null && value.getClass() == Integer.class) {
+                    live++;
+                    hitReprobes += (idx - hashes[idx]) & (len - 1);
+                } else {
+                    dead++;
+                }
+            }
+            int reprobes = 0;
+            while (reprobes < limit && kvs[(((idx + reprobes) & (len - 1)) << 1) + 2] != null) {
+                reprobes++;
+            }
+            missReprobes += reprobes;
+        }
+        System.out.printf("%ntable length: %d, live keys: %d, dead keys: %d, reprobes per hit: %.2f, per miss: %.2f%n",
+            len, live, dead, (double) hitReprobes / Math.max(live, 1), (double) missReprobes / len);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private SimpleRandom random = new SimpleRandom();
+        int next() { return random.next() & Integer.MAX_VALUE; }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer getHit(ThreadState state) {
+        return map.get((state.next() % liveSize) * step);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer getMiss(ThreadState state) {
+        return map.get((state.next() % liveSize) * step + 1);
+    }
+}
@@ -0,0 +1,100 @@
+package org.jctools.maps.nbhm_test.jmh;
+
+import org.jctools.maps.NonBlockingHashMap;
+import org.jctools.maps.nbhm_test.SimpleRandom;
+import org.jctools.util.Pow2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A loading cache workload: every operation is a {@code computeIfAbsent} on a random key, and a fraction of the
+ * operations evict a random key so that the loader keeps being called. With {@code evictRatio=0} the workload
+ * degenerates to hits only once the key space has been loaded.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode({Mode.Throughput})
+@Warmup(iterations = 2, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 6, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ComputeIfAbsentThroughput {
+
+    private static final Function<String, String> LOADER = new Function<String, String>() {
+        @Override
+        public String apply(String key) {
+            return key.substring(1);
+        }
+    };
+
+    @Param(value = {"NonBlockingHashMap", "ConcurrentHashMap"})
+    private String implementation;
+
+    @Param(value = "10")
+    private static int evictRatio;
+
+    @Param(value = "100000")
+    private static int tableSize;
+
+    private static String testData[];
+    private static int _er;
+
+    private ConcurrentMap<String, String> map;
+
+    @Setup(Level.Trial)
+    public void createMap() {
+        if (evictRatio < 0 || evictRatio > 100) {
+            throw new IllegalArgumentException("evictRatio must be a value between 0 and 100");
+        }
+        if (tableSize < 100 || tableSize > Pow2.MAX_POW2) {
+            throw new IllegalArgumentException("tableSize must be a value between 100 and " + Pow2.MAX_POW2);
+        }
+        if ("ConcurrentHashMap".equalsIgnoreCase(implementation)) {
+            map = new ConcurrentHashMap<String, String>(16, 0.75f, 16);
+        } else if ("NonBlockingHashMap".equalsIgnoreCase(implementation)) {
+            map = new NonBlockingHashMap<String, String>();
+        } else {
+            throw new IllegalArgumentException("Unsupported map: " + implementation);
+        }
+        _er = (evictRatio << 20) / 100;
+
+        testData = new String[Pow2.roundToPowerOfTwo(tableSize)];
+        for (int i = 0; i < testData.length; i++) {
+            testData[i] = String.valueOf(i) + "abc" + String.valueOf(i * 17 + 123);
+        }
+        for (int i = 0; i < tableSize; i++) {
+            map.computeIfAbsent(testData[i], LOADER);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private SimpleRandom random = new SimpleRandom();
+        int next() { return random.next(); }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String computeIfAbsent(ThreadState state) {
+        String key = testData[state.next() & (testData.length - 1)];
+        int x = state.next() & ((1 << 20) - 1);
+        if (x < _er) {
+            map.remove(testData[state.next() & (testData.length - 1)]);
+        }
+        return map.computeIfAbsent(key, LOADER);
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.jctools.maps.nbhm_test.jmh;
+
+import org.jctools.maps.ExpiringNonBlockingHashMap;
+import org.jctools.maps.NonBlockingHashMap;
+import org.jctools.maps.nbhm_test.SimpleRandom;
+import org.jctools.util.Pow2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ExpiringNonBlockingHashMap} to the usual alternative: a {@link NonBlockingHashMap} of values wrapped
+ * with their expiry time, reaped by scanning the whole map. Measures the get and put throughput, and the time taken to
+ * reclaim a map full of expired entries. Run with a large enough heap for the default 10M entries, e.g.
+ * <pre>
+ * java -Xmx8g -jar microbenchmarks.jar ExpiringMapThroughput
+ * </pre>
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode({Mode.Throughput})
+@Warmup(iterations = 2, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 6, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ExpiringMapThroughput {
+    private static final long TTL_MINUTES = 10;
+    private static final long TTL_NANOS = TimeUnit.MINUTES.toNanos(TTL_MINUTES);
+
+    static final class Timestamped<V> {
+        final V value;
+        final long expiresAt;
+
+        Timestamped(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @Param(value = {"ExpiringNonBlockingHashMap", "NonBlockingHashMap"})
+    private String implementation;
+
+    @Param(value = "10000000")
+    private int tableSize;
+
+    private int mask;
+    private ExpiringNonBlockingHashMap<Integer, Integer> expiring;
+    private NonBlockingHashMap<Integer, Timestamped<Integer>> wrapped;
+
+    @Setup(Level.Trial)
+    public void createMap() {
+        mask = Pow2.roundToPowerOfTwo(tableSize) - 1;
+        if ("ExpiringNonBlockingHashMap".equalsIgnoreCase(implementation)) {
+            expiring = new ExpiringNonBlockingHashMap<Integer, Integer>(TTL_MINUTES, TimeUnit.MINUTES);
+        } else if ("NonBlockingHashMap".equalsIgnoreCase(implementation)) {
+            wrapped = new NonBlockingHashMap<Integer, Timestamped<Integer>>();
+        } else {
+            throw new IllegalArgumentException("Unsupported map: " + implementation);
+        }
+        fill(TTL_NANOS);
+    }
+
+    private void fill(long ttlNanos) {
+        for (int k = 0; k < tableSize; k++) {
+            if (expiring != null) {
+                expiring.put(k, k, ttlNanos, TimeUnit.NANOSECONDS);
+            } else {
+                wrapped.put(k, new Timestamped<Integer>(k, System.nanoTime() + ttlNanos));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private SimpleRandom random = new SimpleRandom();
+        int next() { return random.next(); }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer get(ThreadState state) {
+        final Integer key = state.next() & mask;
+        if (expiring != null) {
+            return expiring.get(key);
+        }
+        final Timestamped<Integer> timestamped = wrapped.get(key);
+        return timestamped == null || timestamped.expiresAt - System.nanoTime() <= 0 ? null : timestamped.value;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object put(ThreadState state) {
+        final Integer key = state.next() & mask;
+        if (expiring != null) {
+            return expiring.put(key, key);
+        }
+        return wrapped.put(key, new Timestamped<Integer>(key, System.nanoTime() + TTL_NANOS));
+    }
+
+    /**
+     * Refills the map with entries which expire straight away, leaving them for {@link #reclaim} to remove.
+     */
+    @State(Scope.Benchmark)
+    public static class Expired {
+        @Setup(Level.Invocation)
+        public void expire(ExpiringMapThroughput map) throws InterruptedException {
+            map.fill(1);
+            Thread.sleep(10);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 5)
+    @Threads(1)
+    public int reclaim(Expired expired) {
+        if (expiring != null) {
+            expiring.expireEntries();
+            return expiring.size();
+        }
+        final long now = System.nanoTime();
+        for (Iterator<Timestamped<Integer>> values = wrapped.values().iterator(); values.hasNext(); ) {
+            if (values.next().expiresAt - now <= 0) {
+                values.remove();
+            }
+        }
+        return wrapped.size();
+    }
+}
@@ -0,0 +1,110 @@
+package org.jctools.maps.nbhm_test.jmh;
+
+import org.jctools.maps.HashingStrategies;
+import org.jctools.maps.NonBlockingHashMap;
+import org.jctools.maps.nbhm_test.SimpleRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up {@code byte[]} keys by content in a {@link NonBlockingHashMap}, either wrapping each key in an object with
+ * content based equals and hashCode (one allocation per lookup) or passing the raw array to a map built with
+ * {@link HashingStrategies#BYTE_ARRAY}. Run with {@code -prof gc} to see the allocation rate of each.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode({Mode.Throughput})
+@Warmup(iterations = 3, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class HashingStrategyThroughput {
+    static final class BytesKey {
+        final byte[] bytes;
+
+        BytesKey(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof BytesKey && Arrays.equals(bytes, ((BytesKey) o).bytes);
+        }
+    }
+
+    @Param(value = {"wrapper", "strategy"})
+    private String keys;
+
+    @Param(value = "100000")
+    private int tableSize;
+
+    @Param(value = "16")
+    private int keyLength;
+
+    // Copies of the keys in the map, so lookups compare content rather than hitting on identity
+    private byte[][] lookups;
+    private NonBlockingHashMap<BytesKey, Integer> wrapped;
+    private NonBlockingHashMap<byte[], Integer> strategy;
+
+    @Setup(Level.Trial)
+    public void createMap() {
+        if ("wrapper".equalsIgnoreCase(keys)) {
+            wrapped = new NonBlockingHashMap<BytesKey, Integer>();
+        } else if ("strategy".equalsIgnoreCase(keys)) {
+            strategy = new NonBlockingHashMap<byte[], Integer>(HashingStrategies.BYTE_ARRAY);
+        } else {
+            throw new IllegalArgumentException("Unsupported keys: " + keys);
+        }
+        lookups = new byte[tableSize][];
+        for (int k = 0; k < tableSize; k++) {
+            final byte[] key = key(k);
+            if (wrapped != null) {
+                wrapped.put(new BytesKey(key), k);
+            } else {
+                strategy.put(key, k);
+            }
+            lookups[k] = key(k);
+        }
+    }
+
+    // The bytes of k, repeated
+    private byte[] key(int k) {
+        final byte[] key = new byte[keyLength];
+        for (int i = 0; i < keyLength; i++) {
+            key[i] = (byte) (k >>> ((i & 3) << 3));
+        }
+        return key;
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private SimpleRandom random = new SimpleRandom();
+        int next() { return random.next() & Integer.MAX_VALUE; }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer get(ThreadState state) {
+        final byte[] key = lookups[state.next() % tableSize];
+        if (wrapped != null) {
+            return wrapped.get(new BytesKey(key));
+        }
+        return strategy.get(key);
+    }
+}
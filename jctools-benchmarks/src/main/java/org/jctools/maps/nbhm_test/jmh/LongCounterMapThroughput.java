@@ -0,0 +1,110 @@
+package org.jctools.maps.nbhm_test.jmh;
+
+import org.jctools.maps.NonBlockingHashMapLong;
+import org.jctools.maps.NonBlockingLongLongHashMap;
+import org.jctools.maps.nbhm_test.SimpleRandom;
+import org.jctools.util.Pow2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A map of counters keyed by long: every operation adds 1 to the counter of a random key. Compares the primitive
+ * {@link NonBlockingLongLongHashMap} to the usual boxed alternatives, a {@link ConcurrentHashMap} of
+ * {@link AtomicLong} and a {@link NonBlockingHashMapLong} of {@link Long} values updated by CAS. Run with
+ * {@code -prof gc} to compare allocation rates.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode({Mode.Throughput})
+@Warmup(iterations = 2, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 6, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class LongCounterMapThroughput {
+
+    @Param(value = {"NonBlockingLongLongHashMap", "ConcurrentHashMap", "NonBlockingHashMapLong"})
+    private String implementation;
+
+    @Param(value = "100000")
+    private static int tableSize;
+
+    private static int mask;
+
+    private NonBlockingLongLongHashMap primitiveMap;
+    private ConcurrentHashMap<Long, AtomicLong> atomicMap;
+    private NonBlockingHashMapLong<Long> boxedMap;
+
+    @Setup(Level.Trial)
+    public void createMap() {
+        if (tableSize < 100 || tableSize > Pow2.MAX_POW2) {
+            throw new IllegalArgumentException("tableSize must be a value between 100 and " + Pow2.MAX_POW2);
+        }
+        mask = Pow2.roundToPowerOfTwo(tableSize) - 1;
+        if ("NonBlockingLongLongHashMap".equalsIgnoreCase(implementation)) {
+            primitiveMap = new NonBlockingLongLongHashMap();
+            for (long k = 0; k <= mask; k++) {
+                primitiveMap.put(k, 0);
+            }
+        } else if ("ConcurrentHashMap".equalsIgnoreCase(implementation)) {
+            atomicMap = new ConcurrentHashMap<Long, AtomicLong>(16, 0.75f, 16);
+            for (long k = 0; k <= mask; k++) {
+                atomicMap.put(k, new AtomicLong());
+            }
+        } else if ("NonBlockingHashMapLong".equalsIgnoreCase(implementation)) {
+            boxedMap = new NonBlockingHashMapLong<Long>();
+            for (long k = 0; k <= mask; k++) {
+                boxedMap.put(k, 0L);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported map: " + implementation);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private SimpleRandom random = new SimpleRandom();
+        int next() { return random.next(); }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long increment(ThreadState state) {
+        final long key = state.next() & mask;
+        if (primitiveMap != null) {
+            return primitiveMap.addAndGet(key, 1);
+        } else if (atomicMap != null) {
+            AtomicLong counter = atomicMap.get(key);
+            if (counter == null) {
+                AtomicLong newCounter = new AtomicLong();
+                counter = atomicMap.putIfAbsent(key, newCounter);
+                if (counter == null) {
+                    counter = newCounter;
+                }
+            }
+            return counter.incrementAndGet();
+        } else {
+            while (true) {
+                Long old = boxedMap.get(key);
+                if (old == null) {
+                    if (boxedMap.putIfAbsent(key, 1L) == null) {
+                        return 1L;
+                    }
+                } else if (boxedMap.replace(key, old, old + 1)) {
+                    return old + 1;
+                }
+            }
+        }
+    }
+}
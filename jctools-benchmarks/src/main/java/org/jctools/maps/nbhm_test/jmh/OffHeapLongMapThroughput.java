@@ -0,0 +1,131 @@
+package org.jctools.maps.nbhm_test.jmh;
+
+import org.jctools.maps.NonBlockingHashMapLong;
+import org.jctools.maps.NonBlockingLongLongHashMap;
+import org.jctools.maps.OffHeapNonBlockingLongLongHashMap;
+import org.jctools.maps.nbhm_test.SimpleRandom;
+import org.jctools.util.Pow2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the off-heap long to long map to the on-heap maps holding the same mappings: random get and put
+ * throughput, and the time taken by a full GC with the map live. The GC time is dominated by marking, so it grows with
+ * the number of live objects: one per entry for {@link NonBlockingHashMapLong}, none for the primitive maps. Use a
+ * large {@code tableSize} (with a matching {@code -Xmx}) to see the difference, e.g.
+ * <pre>
+ * java -Xmx8g -jar microbenchmarks.jar OffHeapLongMapThroughput -p tableSize=50000000
+ * </pre>
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode({Mode.Throughput})
+@Warmup(iterations = 2, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 6, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class OffHeapLongMapThroughput {
+
+    @Param(value = {"OffHeapNonBlockingLongLongHashMap", "NonBlockingLongLongHashMap", "NonBlockingHashMapLong"})
+    private String implementation;
+
+    @Param(value = "1000000")
+    private static int tableSize;
+
+    private static int mask;
+
+    private OffHeapNonBlockingLongLongHashMap offHeapMap;
+    private NonBlockingLongLongHashMap primitiveMap;
+    private NonBlockingHashMapLong<Long> boxedMap;
+
+    @Setup(Level.Trial)
+    public void createMap() {
+        if (tableSize < 100 || tableSize > Pow2.MAX_POW2) {
+            throw new IllegalArgumentException("tableSize must be a value between 100 and " + Pow2.MAX_POW2);
+        }
+        mask = Pow2.roundToPowerOfTwo(tableSize) - 1;
+        if ("OffHeapNonBlockingLongLongHashMap".equalsIgnoreCase(implementation)) {
+            offHeapMap = new OffHeapNonBlockingLongLongHashMap(tableSize << 1);
+            for (long k = 0; k < tableSize; k++) {
+                offHeapMap.put(k, k);
+            }
+        } else if ("NonBlockingLongLongHashMap".equalsIgnoreCase(implementation)) {
+            primitiveMap = new NonBlockingLongLongHashMap(tableSize << 1);
+            for (long k = 0; k < tableSize; k++) {
+                primitiveMap.put(k, k);
+            }
+        } else if ("NonBlockingHashMapLong".equalsIgnoreCase(implementation)) {
+            boxedMap = new NonBlockingHashMapLong<Long>(tableSize << 1);
+            for (long k = 0; k < tableSize; k++) {
+                boxedMap.put(k, k);
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported map: " + implementation);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void closeMap() throws IOException {
+        if (offHeapMap != null) {
+            offHeapMap.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private SimpleRandom random = new SimpleRandom();
+        int next() { return random.next(); }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long get(ThreadState state) {
+        final long key = state.next() & mask;
+        if (offHeapMap != null) {
+            return offHeapMap.get(key);
+        } else if (primitiveMap != null) {
+            return primitiveMap.get(key);
+        } else {
+            Long val = boxedMap.get(key);
+            return val == null ? 0 : val;
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long put(ThreadState state) {
+        final long key = state.next() & mask;
+        final long val = state.next();
+        if (offHeapMap != null) {
+            return offHeapMap.put(key, val);
+        } else if (primitiveMap != null) {
+            return primitiveMap.put(key, val);
+        } else {
+            Long old = boxedMap.put(key, val);
+            return old == null ? 0 : old;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 5)
+    @Threads(1)
+    public int fullGc() {
+        System.gc();
+        return offHeapMap != null ? offHeapMap.size() : primitiveMap != null ? primitiveMap.size() : boxedMap.size();
+    }
+}
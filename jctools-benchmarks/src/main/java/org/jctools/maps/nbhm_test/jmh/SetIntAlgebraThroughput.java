@@ -0,0 +1,121 @@
+package org.jctools.maps.nbhm_test.jmh;
+
+import org.jctools.maps.NonBlockingSetInt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Intersects two {@link NonBlockingSetInt}s spanning {@code bits} elements, each holding a {@code density} fraction
+ * of them: element at a time (walking one set with {@link NonBlockingSetInt#nextSetBit} and probing the other)
+ * against the word at a time bulk operations.
+ * Also scans a set with its iterator and with {@link NonBlockingSetInt#nextSetBit}.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode({Mode.AverageTime})
+@Warmup(iterations = 3, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SetIntAlgebraThroughput {
+    @Param(value = "10000000")
+    private int bits;
+
+    @Param(value = {"0.01", "0.5"})
+    private double density;
+
+    private NonBlockingSetInt a;
+    private NonBlockingSetInt b;
+
+    @Setup(Level.Trial)
+    public void createSets() {
+        final Random random = new Random(666);
+        a = new NonBlockingSetInt();
+        b = new NonBlockingSetInt();
+        for (int i = 0; i < bits; i++) {
+            if (random.nextDouble() < density) {
+                a.add(i);
+            }
+            if (random.nextDouble() < density) {
+                b.add(i);
+            }
+        }
+    }
+
+    @Benchmark
+    public int andCardinalityPerElement() {
+        int n = 0;
+        for (int i = a.nextSetBit(0); i >= 0; i = a.nextSetBit(i + 1)) {
+            if (b.contains(i)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int andCardinality() {
+        return a.andCardinality(b);
+    }
+
+    @Benchmark
+    public NonBlockingSetInt intersectPerElement() {
+        final NonBlockingSetInt res = new NonBlockingSetInt();
+        for (int i = a.nextSetBit(0); i >= 0; i = a.nextSetBit(i + 1)) {
+            if (b.contains(i)) {
+                res.add(i);
+            }
+        }
+        return res;
+    }
+
+    @Benchmark
+    public NonBlockingSetInt intersect() {
+        return a.intersect(b);
+    }
+
+    @Benchmark
+    public NonBlockingSetInt union() {
+        return a.union(b);
+    }
+
+    @Benchmark
+    public long scanContains() {
+        long sum = 0;
+        for (int i = 0; i < bits; i++) {
+            if (a.contains(i)) {
+                sum += i;
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long scanIterator() {
+        long sum = 0;
+        for (Iterator<Integer> it = a.iterator(); it.hasNext(); ) {
+            sum += it.next();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long scanNextSetBit() {
+        long sum = 0;
+        for (int i = a.nextSetBit(0); i >= 0; i = a.nextSetBit(i + 1)) {
+            sum += i;
+        }
+        return sum;
+    }
+}
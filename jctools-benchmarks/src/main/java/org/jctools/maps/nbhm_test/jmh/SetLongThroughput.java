@@ -0,0 +1,96 @@
+package org.jctools.maps.nbhm_test.jmh;
+
+import org.jctools.maps.NonBlockingHashSet;
+import org.jctools.maps.NonBlockingHashSetLong;
+import org.jctools.maps.nbhm_test.SimpleRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link NonBlockingHashSetLong} to sets of boxed longs, {@link NonBlockingHashSet} and
+ * {@link ConcurrentHashMap#newKeySet()}, on a set holding every other key of a key space: contains hits and misses
+ * half the time, and add/remove toggles a key. The setup prints the footprint per element.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode({Mode.Throughput})
+@Warmup(iterations = 3, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SetLongThroughput {
+    // Spreads the keys out, as ids rarely are dense
+    private static final long STRIDE = 0x9E3779B97F4A7C15L;
+
+    @Param(value = {"NonBlockingHashSetLong", "NonBlockingHashSet", "ConcurrentHashMap"})
+    private String implementation;
+
+    @Param(value = "1000000")
+    private int keySpace;
+
+    private NonBlockingHashSetLong primitive;
+    private Set<Long> boxed;
+
+    @Setup(Level.Trial)
+    public void createSet() {
+        if ("NonBlockingHashSetLong".equalsIgnoreCase(implementation)) {
+            primitive = new NonBlockingHashSetLong();
+        } else if ("NonBlockingHashSet".equalsIgnoreCase(implementation)) {
+            boxed = new NonBlockingHashSet<Long>();
+        } else if ("ConcurrentHashMap".equalsIgnoreCase(implementation)) {
+            boxed = ConcurrentHashMap.newKeySet();
+        } else {
+            throw new IllegalArgumentException("Unsupported set: " + implementation);
+        }
+        for (int k = 0; k < keySpace; k += 2) {
+            if (primitive != null) {
+                primitive.add(k * STRIDE);
+            } else {
+                boxed.add(k * STRIDE);
+            }
+        }
+        final Object set = primitive != null ? primitive : boxed;
+        final int size = primitive != null ? primitive.size() : boxed.size();
+        System.out.printf("%n%s: %.1f bytes per element%n", implementation,
+            (double) GraphLayout.parseInstance(set).totalSize() / size);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private SimpleRandom random = new SimpleRandom();
+        int next() { return random.next() & Integer.MAX_VALUE; }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean contains(ThreadState state) {
+        final long key = (state.next() % keySpace) * STRIDE;
+        if (primitive != null) {
+            return primitive.contains(key);
+        }
+        return boxed.contains(key);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean addRemove(ThreadState state) {
+        final long key = (state.next() % keySpace) * STRIDE;
+        if (primitive != null) {
+            return primitive.add(key) || primitive.remove(key);
+        }
+        return boxed.add(key) || boxed.remove(key);
+    }
+}
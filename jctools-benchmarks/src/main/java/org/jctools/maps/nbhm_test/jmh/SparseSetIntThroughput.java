@@ -0,0 +1,110 @@
+package org.jctools.maps.nbhm_test.jmh;
+
+import org.jctools.maps.NonBlockingSetInt;
+import org.jctools.maps.NonBlockingSparseSetInt;
+import org.jctools.maps.nbhm_test.SimpleRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link NonBlockingSparseSetInt} with {@link NonBlockingSetInt} holding {@code size} ids spread over
+ * {@code range}: by default a dense set of half the ids below 2M, and a sparse one of 100K ids below 2^31. The setup
+ * prints the footprint of the set; run with a large enough heap for the 256MB bit-vector of the sparse
+ * {@link NonBlockingSetInt}, e.g.
+ * <pre>
+ * java -Xmx2g -jar microbenchmarks.jar SparseSetIntThroughput
+ * </pre>
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode({Mode.Throughput})
+@Warmup(iterations = 3, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SparseSetIntThroughput {
+    @Param(value = {"NonBlockingSparseSetInt", "NonBlockingSetInt"})
+    private String implementation;
+
+    @Param(value = {"dense", "sparse"})
+    private String density;
+
+    private int[] ids;
+    private NonBlockingSparseSetInt sparse;
+    private NonBlockingSetInt bitVector;
+
+    @Setup(Level.Trial)
+    public void createSet() {
+        final int size;
+        final int range;
+        if ("dense".equalsIgnoreCase(density)) {
+            size = 1 << 20;
+            range = 2 << 20;
+        } else if ("sparse".equalsIgnoreCase(density)) {
+            size = 100000;
+            range = Integer.MAX_VALUE;
+        } else {
+            throw new IllegalArgumentException("Unsupported density: " + density);
+        }
+        if ("NonBlockingSparseSetInt".equalsIgnoreCase(implementation)) {
+            sparse = new NonBlockingSparseSetInt();
+        } else if ("NonBlockingSetInt".equalsIgnoreCase(implementation)) {
+            bitVector = new NonBlockingSetInt();
+        } else {
+            throw new IllegalArgumentException("Unsupported set: " + implementation);
+        }
+        // Half the ids are in the set, so lookups hit half the time
+        final Random random = new Random(666);
+        ids = new int[2 * size];
+        for (int k = 0; k < ids.length; k++) {
+            ids[k] = random.nextInt(range);
+            if ((k & 1) == 0) {
+                if (sparse != null) {
+                    sparse.add(ids[k]);
+                } else {
+                    bitVector.add(ids[k]);
+                }
+            }
+        }
+        final Object set = sparse != null ? sparse : bitVector;
+        System.out.printf("%n%s, %s: %d bytes%n", implementation, density, GraphLayout.parseInstance(set).totalSize());
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private SimpleRandom random = new SimpleRandom();
+        int next() { return random.next() & Integer.MAX_VALUE; }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean contains(ThreadState state) {
+        final int id = ids[state.next() % ids.length];
+        if (sparse != null) {
+            return sparse.contains(id);
+        }
+        return bitVector.contains(id);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean addRemove(ThreadState state) {
+        final int id = ids[state.next() % ids.length];
+        if (sparse != null) {
+            return sparse.add(id) || sparse.remove(id);
+        }
+        return bitVector.add(id) || bitVector.remove(id);
+    }
+}
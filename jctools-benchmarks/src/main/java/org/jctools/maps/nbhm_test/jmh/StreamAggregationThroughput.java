@@ -0,0 +1,86 @@
+package org.jctools.maps.nbhm_test.jmh;
+
+import org.jctools.maps.NonBlockingHashMap;
+import org.jctools.maps.NonBlockingHashMapLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Sums the keys and the values of a map with sequential and parallel streams over its views. For
+ * {@link NonBlockingHashMapLong} the keys are also summed with the non boxing
+ * {@link NonBlockingHashMapLong#keyStream()}.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode({Mode.AverageTime})
+@Warmup(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class StreamAggregationThroughput {
+
+    private static final ToLongFunction<Long> UNBOX = new ToLongFunction<Long>() {
+        @Override
+        public long applyAsLong(Long value) {
+            return value;
+        }
+    };
+
+    @Param(value = {"NonBlockingHashMap", "NonBlockingHashMapLong", "ConcurrentHashMap"})
+    private String implementation;
+
+    @Param(value = "1000000")
+    private int tableSize;
+
+    @Param(value = {"false", "true"})
+    private boolean parallel;
+
+    private Map<Long, Long> map;
+
+    @Setup(Level.Trial)
+    public void createMap() {
+        if ("NonBlockingHashMap".equalsIgnoreCase(implementation)) {
+            map = new NonBlockingHashMap<Long, Long>();
+        } else if ("NonBlockingHashMapLong".equalsIgnoreCase(implementation)) {
+            map = new NonBlockingHashMapLong<Long>();
+        } else if ("ConcurrentHashMap".equalsIgnoreCase(implementation)) {
+            map = new ConcurrentHashMap<Long, Long>();
+        } else {
+            throw new IllegalArgumentException("Unsupported map: " + implementation);
+        }
+        for (long k = 0; k < tableSize; k++) {
+            map.put(k, k);
+        }
+    }
+
+    @Benchmark
+    public long sumKeys() {
+        if (map instanceof NonBlockingHashMapLong) {
+            NonBlockingHashMapLong<Long> nbhml = (NonBlockingHashMapLong<Long>) map;
+            return parallel ? nbhml.keyStream().parallel().sum() : nbhml.keyStream().sum();
+        }
+        return (parallel ? map.keySet().parallelStream() : map.keySet().stream()).mapToLong(UNBOX).sum();
+    }
+
+    @Benchmark
+    public long sumBoxedKeys() {
+        return (parallel ? map.keySet().parallelStream() : map.keySet().stream()).mapToLong(UNBOX).sum();
+    }
+
+    @Benchmark
+    public long sumValues() {
+        return (parallel ? map.values().parallelStream() : map.values().stream()).mapToLong(UNBOX).sum();
+    }
+}
@@ -0,0 +1,88 @@
+package org.jctools.maps.nbhm_test.jmh;
+
+import org.jctools.maps.NonBlockingWeakIdentityHashMap;
+import org.jctools.maps.nbhm_test.SimpleRandom;
+import org.jctools.util.Pow2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A metadata cache keyed weakly by live objects: {@link NonBlockingWeakIdentityHashMap} against
+ * {@code Collections.synchronizedMap(new WeakHashMap())}. The keys are plain objects, so the identity and equality
+ * semantics agree. {@link #get} looks up live keys; {@link #putShortLived} adds entries whose keys die straight away,
+ * so the maps keep expunging them.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode({Mode.Throughput})
+@Warmup(iterations = 3, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1000, timeUnit = TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class WeakIdentityMapThroughput {
+
+    @Param(value = {"NonBlockingWeakIdentityHashMap", "SynchronizedWeakHashMap"})
+    private String implementation;
+
+    @Param(value = "100000")
+    private int tableSize;
+
+    private Object[] keys;
+    private int mask;
+    private Map<Object, Integer> map;
+
+    @Setup(Level.Trial)
+    public void createMap() {
+        if ("NonBlockingWeakIdentityHashMap".equalsIgnoreCase(implementation)) {
+            map = new NonBlockingWeakIdentityHashMap<Object, Integer>();
+        } else if ("SynchronizedWeakHashMap".equalsIgnoreCase(implementation)) {
+            map = Collections.synchronizedMap(new WeakHashMap<Object, Integer>());
+        } else {
+            throw new IllegalArgumentException("Unsupported map: " + implementation);
+        }
+        keys = new Object[Pow2.roundToPowerOfTwo(tableSize)];
+        mask = keys.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Object();
+            map.put(keys[i], i);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private SimpleRandom random = new SimpleRandom();
+        int next() { return random.next(); }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer get(ThreadState state) {
+        return map.get(keys[state.next() & mask]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer put(ThreadState state) {
+        final int i = state.next() & mask;
+        return map.put(keys[i], i);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer putShortLived(ThreadState state) {
+        return map.put(new Object(), state.next());
+    }
+}
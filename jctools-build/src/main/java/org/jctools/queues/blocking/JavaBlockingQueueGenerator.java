@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues.blocking;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generates the {@link java.util.concurrent.BlockingQueue} wrappers used by the experimental BlockingQueueFactory
+ * from the TemplateBlocking.java template, so no compiler is needed at runtime. Each queue class gets a subclass which
+ * implements the blocking methods on top of the take/put strategies it is constructed with.
+ * <p>
+ * Queue classes are given by their fully qualified name, suffixed with {@code :unbounded} for queues which only offer a
+ * no argument constructor.
+ */
+public final class JavaBlockingQueueGenerator {
+    private static final String TEMPLATE = "TemplateBlocking.java";
+    private static final String UNBOUNDED_SUFFIX = ":unbounded";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: outputDirectory queueClassNames");
+        }
+
+        File outputDirectory = new File(args[0]);
+        String template = loadTemplate();
+
+        for (int i = 1; i < args.length; i++) {
+            String queueClass = args[i];
+            boolean unbounded = queueClass.endsWith(UNBOUNDED_SUFFIX);
+            if (unbounded) {
+                queueClass = queueClass.substring(0, queueClass.length() - UNBOUNDED_SUFFIX.length());
+            }
+            System.out.println("Processing " + queueClass);
+            String simpleName = queueClass.substring(queueClass.lastIndexOf('.') + 1);
+            String blockingQueueClassName = blockingQueueClassName(simpleName);
+
+            String source = template
+                .replace("{{queueClassImport}}", queueClass)
+                .replace("{{queueClassName}}", simpleName)
+                .replace("{{blockingQueueClassName}}", blockingQueueClassName)
+                .replace("{{constructorParams}}", unbounded ? "" : "int capacity, ")
+                .replace("{{superArgs}}", unbounded ? "" : "capacity");
+
+            String outputFileName = blockingQueueClassName + ".java";
+            try (FileWriter writer = new FileWriter(new File(outputDirectory, outputFileName))) {
+                writer.write(source);
+            }
+
+            System.out.println("Saved to " + outputFileName);
+        }
+    }
+
+    static String blockingQueueClassName(String queueClassSimpleName) {
+        return queueClassSimpleName + "Blocking";
+    }
+
+    private static String loadTemplate() throws IOException {
+        try (InputStream in = JavaBlockingQueueGenerator.class.getResourceAsStream(TEMPLATE)) {
+            if (in == null) {
+                throw new IllegalStateException("Template not found: " + TEMPLATE);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
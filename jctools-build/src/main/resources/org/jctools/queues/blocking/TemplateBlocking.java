@@ -1,19 +1,27 @@
 package org.jctools.queues.blocking;
-import org.jctools.queues.*;
-import org.jctools.queues.blocking.*;
+
+import {{queueClassImport}};
 
 import java.util.Collection;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * NOTE: This class was automatically generated by org.jctools.queues.blocking.JavaBlockingQueueGenerator
+ * which can found in the jctools-build module. The original template is TemplateBlocking.java.
+ */
 public class {{blockingQueueClassName}}<E> extends {{queueClassName}}<E> implements BlockingQueue<E>
 {
-    private final {{TakeStrategy}}<E> takeStrategy = new {{TakeStrategy}}<E>();
-    private final {{PutStrategy}} putStrategy = new {{PutStrategy}}();
+    private static final long serialVersionUID = 1L;
+
+    private final TakeStrategy<E> takeStrategy;
+    private final PutStrategy<E> putStrategy;
 
-    public {{blockingQueueClassName}}(int capacity)
+    public {{blockingQueueClassName}}({{constructorParams}}TakeStrategy<E> takeStrategy, PutStrategy<E> putStrategy)
     {
-        super(capacity);
+        super({{superArgs}});
+        this.takeStrategy = takeStrategy;
+        this.putStrategy = putStrategy;
     }
 
     @Override
@@ -43,17 +51,17 @@ public class {{blockingQueueClassName}}<E> extends {{queueClassName}}<E> impleme
 
     @Override
     public E poll()
-        {
-            E e = super.poll();
-
-            if (e!=null)
-            {
-                putStrategy.signal();
-            }
+    {
+        E e = super.poll();
 
-            return e;
+        if (e != null)
+        {
+            putStrategy.signal();
         }
 
+        return e;
+    }
+
     @Override
     public E poll(long timeout, TimeUnit unit) throws InterruptedException
     {
@@ -78,7 +86,7 @@ public class {{blockingQueueClassName}}<E> extends {{queueClassName}}<E> impleme
         int count = 0;
 
         E e;
-        while((e = poll()) != null)
+        while ((e = poll()) != null)
         {
             c.add(e);
             count++;
@@ -93,7 +101,7 @@ public class {{blockingQueueClassName}}<E> extends {{queueClassName}}<E> impleme
         int count = 0;
 
         E e;
-        while(((e = poll()) != null) && count<maxElements)
+        while (count < maxElements && (e = poll()) != null)
         {
             c.add(e);
             count++;
@@ -0,0 +1,43 @@
+package org.jctools.maps;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.IntResult2;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * The writer puts enough keys to resize the table: a reader must see a new key with its value, and must keep seeing
+ * the keys which were there before.
+ */
+@JCStressTest
+@Outcome(id = "1, -1", expect = ACCEPTABLE, desc = "New key not seen yet")
+@Outcome(id = "1, 2", expect = ACCEPTABLE, desc = "New key seen")
+@Outcome(expect = FORBIDDEN, desc = "Old key lost in resize")
+@State
+public class SingleWriterHashMapPublicationTest {
+
+    private final SingleWriterHashMap<Integer, Integer> map = new SingleWriterHashMap<>(2);
+
+    public SingleWriterHashMapPublicationTest() {
+        map.put(1, 1);
+    }
+
+    @Actor
+    public void actor1() {
+        for (int i = 2; i < 10; i++) {
+            map.put(i, i);
+        }
+    }
+
+    @Actor
+    public void actor2(IntResult2 result) {
+        Integer value = map.get(2);
+        Integer old = map.get(1);
+        result.r1 = old == null ? -1 : old;
+        result.r2 = value == null ? -1 : value;
+    }
+}
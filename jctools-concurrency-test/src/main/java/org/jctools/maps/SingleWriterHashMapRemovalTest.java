@@ -0,0 +1,40 @@
+package org.jctools.maps;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.IntResult1;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * Removing a key moves the key colliding with it back a slot, which a concurrent reader must not miss.
+ */
+@JCStressTest
+@Outcome(id = "17", expect = ACCEPTABLE, desc = "Ok")
+@Outcome(id = "-1", expect = FORBIDDEN, desc = "Missing read")
+@Outcome(expect = FORBIDDEN, desc = "Wrong value")
+@State
+public class SingleWriterHashMapRemovalTest {
+
+    private final SingleWriterHashMap<Integer, Integer> map = new SingleWriterHashMap<>(16);
+
+    public SingleWriterHashMapRemovalTest() {
+        // Collide keys so removal of 1 will shift 17
+        map.put(1, 1);
+        map.put(17, 17);
+    }
+
+    @Actor
+    public void actor1() {
+        map.remove(1);
+    }
+
+    @Actor
+    public void actor2(IntResult1 result) {
+        Integer value = map.get(17);
+        result.r1 = value == null ? -1 : value;
+    }
+}
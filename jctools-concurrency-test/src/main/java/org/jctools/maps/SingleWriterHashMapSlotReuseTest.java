@@ -0,0 +1,42 @@
+package org.jctools.maps;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.IntResult1;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * The writer removes a key and puts another in the slot it freed: a reader which found the old key must not return
+ * the new key's value.
+ */
+@JCStressTest
+@Outcome(id = "1", expect = ACCEPTABLE, desc = "Read before the remove")
+@Outcome(id = "-1", expect = ACCEPTABLE, desc = "Read after the remove")
+@Outcome(id = "17", expect = FORBIDDEN, desc = "Another key's value")
+@Outcome(expect = FORBIDDEN, desc = "Can't happen")
+@State
+public class SingleWriterHashMapSlotReuseTest {
+
+    private final SingleWriterHashMap<Integer, Integer> map = new SingleWriterHashMap<>(16);
+
+    public SingleWriterHashMapSlotReuseTest() {
+        map.put(1, 1);
+    }
+
+    @Actor
+    public void actor1() {
+        map.remove(1);
+        // 17 has the same home slot as 1
+        map.put(17, 17);
+    }
+
+    @Actor
+    public void actor2(IntResult1 result) {
+        Integer value = map.get(1);
+        result.r1 = value == null ? -1 : value;
+    }
+}
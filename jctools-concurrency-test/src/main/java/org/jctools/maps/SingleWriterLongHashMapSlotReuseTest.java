@@ -0,0 +1,43 @@
+package org.jctools.maps;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.IntResult2;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * Removing key 1 shifts the colliding key 17 back, then key 33 takes the freed slot: a reader must neither miss 17
+ * nor return 33's value for 1.
+ */
+@JCStressTest
+@Outcome(id = "1, 17", expect = ACCEPTABLE, desc = "Read before the remove")
+@Outcome(id = "-1, 17", expect = ACCEPTABLE, desc = "Read after the remove")
+@Outcome(expect = FORBIDDEN, desc = "Missing read, or another key's value")
+@State
+public class SingleWriterLongHashMapSlotReuseTest {
+
+    private final SingleWriterLongHashMap<Integer> map = new SingleWriterLongHashMap<>(16);
+
+    public SingleWriterLongHashMapSlotReuseTest() {
+        map.put(1, 1);
+        map.put(17, 17);
+    }
+
+    @Actor
+    public void actor1() {
+        map.remove(1);
+        map.put(33, 33);
+    }
+
+    @Actor
+    public void actor2(IntResult2 result) {
+        Integer value = map.get(1);
+        Integer collided = map.get(17);
+        result.r1 = value == null ? -1 : value;
+        result.r2 = collided == null ? -1 : collided;
+    }
+}
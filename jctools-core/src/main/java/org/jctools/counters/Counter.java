@@ -5,13 +5,9 @@ package org.jctools.counters;
  *
  * @author Tolstopyatov Vsevolod
  */
-public interface Counter {
+public interface Counter extends LongMetric {
 
     void inc();
 
     void inc(long delta);
-
-    long get();
-
-    long getAndReset();
 }
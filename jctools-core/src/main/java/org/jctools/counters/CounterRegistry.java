@@ -0,0 +1,163 @@
+package org.jctools.counters;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jctools.util.PortableJvmInfo;
+
+/**
+ * A set of named {@link LongMetric}s, such as the counters and accumulators it creates, which can all be read (and
+ * reset) in one pass into a caller supplied array, without allocating. Each metric has an index, in registration
+ * order, giving its slot in the snapshot arrays and its {@link #name(int)}.
+ * <p>
+ * Snapshots and updates of the metrics are lock-free; registering a metric takes a lock. A snapshot reads the
+ * metrics one after the other, so is not an atomic view of all of them.
+ */
+public final class CounterRegistry {
+    private final int stripesCount;
+    private final Map<String, Integer> indices = new HashMap<String, Integer>();
+    // Grown by copying under the lock, then published before size, so that a reader which reads size first finds at
+    // least size entries in them
+    private volatile String[] names = new String[16];
+    private volatile LongMetric[] metrics = new LongMetric[16];
+    private volatile int size;
+
+    /**
+     * A registry creating metrics with as many stripes as there are CPUs.
+     */
+    public CounterRegistry() {
+        this(PortableJvmInfo.CPUs);
+    }
+
+    /**
+     * @param stripesCount the number of stripes of the counters and accumulators created
+     */
+    public CounterRegistry(int stripesCount) {
+        if (stripesCount <= 0) {
+            throw new IllegalArgumentException("Expecting a stripesCount that is larger than 0");
+        }
+        this.stripesCount = stripesCount;
+    }
+
+    /**
+     * @return a new striped counter, registered under the name
+     * @throws IllegalArgumentException if the name is taken
+     */
+    public Counter newCounter(String name) {
+        return register(name, CountersFactory.createFixedSizeStripedCounter(stripesCount));
+    }
+
+    /**
+     * @return a new striped max accumulator, registered under the name
+     * @throws IllegalArgumentException if the name is taken
+     */
+    public FixedSizeStripedLongAccumulator newMaxAccumulator(String name) {
+        return register(name, CountersFactory.createMaxAccumulator(stripesCount));
+    }
+
+    /**
+     * @return a new striped min accumulator, registered under the name
+     * @throws IllegalArgumentException if the name is taken
+     */
+    public FixedSizeStripedLongAccumulator newMinAccumulator(String name) {
+        return register(name, CountersFactory.createMinAccumulator(stripesCount));
+    }
+
+    /**
+     * Registers a metric under the name, at the next index.
+     *
+     * @return the metric
+     * @throws IllegalArgumentException if the name is taken
+     */
+    public <M extends LongMetric> M register(String name, M metric) {
+        if (name == null || metric == null) {
+            throw new NullPointerException();
+        }
+        synchronized (indices) {
+            if (indices.containsKey(name)) {
+                throw new IllegalArgumentException("A metric is already registered as " + name);
+            }
+            final int index = size;
+            if (index == metrics.length) {
+                names = Arrays.copyOf(names, index * 2);
+                metrics = Arrays.copyOf(metrics, index * 2);
+            }
+            names[index] = name;
+            metrics[index] = metric;
+            indices.put(name, index);
+            size = index + 1;
+        }
+        return metric;
+    }
+
+    /**
+     * @return the number of metrics registered, and the length of a snapshot
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the index of the metric registered under the name, or -1 if there is none
+     */
+    public int indexOf(String name) {
+        synchronized (indices) {
+            final Integer index = indices.get(name);
+            return index == null ? -1 : index;
+        }
+    }
+
+    /**
+     * @return the name of the metric at the index
+     */
+    public String name(int index) {
+        checkIndex(index);
+        return names[index];
+    }
+
+    /**
+     * @return the metric at the index
+     */
+    public LongMetric metric(int index) {
+        checkIndex(index);
+        return metrics[index];
+    }
+
+    /**
+     * Reads the metrics into {@code values}, the metric at index i into {@code values[i]}. If the array is too short
+     * only the metrics which fit are read.
+     *
+     * @return the number of metrics registered, which may be more than were read
+     */
+    public int snapshot(long[] values) {
+        final int size = this.size;
+        final LongMetric[] metrics = this.metrics;
+        final int n = Math.min(size, values.length);
+        for (int i = 0; i < n; i++) {
+            values[i] = metrics[i].get();
+        }
+        return size;
+    }
+
+    /**
+     * As {@link #snapshot(long[])}, resetting each metric read with {@link LongMetric#getAndReset()}.
+     *
+     * @return the number of metrics registered, which may be more than were read
+     */
+    public int snapshotAndReset(long[] values) {
+        final int size = this.size;
+        final LongMetric[] metrics = this.metrics;
+        final int n = Math.min(size, values.length);
+        for (int i = 0; i < n; i++) {
+            values[i] = metrics[i].getAndReset();
+        }
+        return size;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+}
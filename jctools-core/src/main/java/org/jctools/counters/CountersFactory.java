@@ -27,4 +27,18 @@ public final class CountersFactory {
     public static FixedSizeStripedLongCounter createFixedSizeStripedCounterV8(int stripesCount) {
         return new FixedSizeStripedLongCounterV8(stripesCount);
     }
+
+    /**
+     * @return a striped accumulator of the largest value given to it
+     */
+    public static FixedSizeStripedLongAccumulator createMaxAccumulator(int stripesCount) {
+        return new FixedSizeStripedLongAccumulator.Max(stripesCount);
+    }
+
+    /**
+     * @return a striped accumulator of the smallest value given to it
+     */
+    public static FixedSizeStripedLongAccumulator createMinAccumulator(int stripesCount) {
+        return new FixedSizeStripedLongAccumulator.Min(stripesCount);
+    }
 }
@@ -0,0 +1,115 @@
+package org.jctools.counters;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+/**
+ * A striped accumulator of the maximum or minimum of the values given to it, with the same padded stripes as
+ * {@link FixedSizeStripedLongCounter}. An {@link #accumulate} which does not change the extremum of its stripe is a
+ * plain read, so once the extremum settles updates do not write at all. When they do, a thread whose CAS fails moves
+ * to another stripe, as the counter does.
+ *
+ * @see CountersFactory#createMaxAccumulator(int)
+ * @see CountersFactory#createMinAccumulator(int)
+ */
+public abstract class FixedSizeStripedLongAccumulator extends FixedSizeStripedLongCounterFields implements LongMetric {
+    long l02, l03, l04, l05, l06, l07, l08;
+    long l9, l10, l11, l12, l13, l14, l15, l16;
+
+    private final long identity;
+
+    FixedSizeStripedLongAccumulator(int stripesCount, long identity) {
+        super(stripesCount);
+        this.identity = identity;
+        for (int i = 0; i <= mask; i++) {
+            UNSAFE.putLong(cells, counterOffset(i), identity);
+        }
+    }
+
+    /**
+     * @return true if {@code x} should replace {@code current} as the extremum
+     */
+    protected abstract boolean replaces(long current, long x);
+
+    /**
+     * Folds {@code x} into the extremum.
+     */
+    public void accumulate(long x) {
+        final long[] cells = this.cells;
+        int probe = ThreadProbe.probe();
+        long offset = counterOffset(probe & mask);
+        long v = UNSAFE.getLongVolatile(cells, offset);
+        if (!replaces(v, x) || UNSAFE.compareAndSwapLong(cells, offset, v, x)) {
+            return;
+        }
+        // Contended: move this thread to another stripe for good, and retry there
+        probe = ThreadProbe.rehash(probe);
+        offset = counterOffset(probe & mask);
+        do {
+            v = UNSAFE.getLongVolatile(cells, offset);
+            if (!replaces(v, x)) {
+                return;
+            }
+        } while (!UNSAFE.compareAndSwapLong(cells, offset, v, x));
+    }
+
+    /**
+     * @return the extremum of the values accumulated, or the identity ({@link Long#MIN_VALUE} for a maximum,
+     * {@link Long#MAX_VALUE} for a minimum) if there were none
+     */
+    @Override
+    public long get() {
+        long result = identity;
+        final long[] cells = this.cells;
+        for (int i = 0; i <= mask; i++) {
+            final long v = UNSAFE.getLongVolatile(cells, counterOffset(i));
+            if (replaces(result, v)) {
+                result = v;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resets the accumulator to its identity.
+     *
+     * @return the extremum before the reset
+     */
+    @Override
+    public long getAndReset() {
+        long result = identity;
+        final long[] cells = this.cells;
+        for (int i = 0; i <= mask; i++) {
+            final long offset = counterOffset(i);
+            long v;
+            do {
+                v = UNSAFE.getLongVolatile(cells, offset);
+            } while (v != identity && !UNSAFE.compareAndSwapLong(cells, offset, v, identity));
+            if (replaces(result, v)) {
+                result = v;
+            }
+        }
+        return result;
+    }
+
+    static final class Max extends FixedSizeStripedLongAccumulator {
+        Max(int stripesCount) {
+            super(stripesCount, Long.MIN_VALUE);
+        }
+
+        @Override
+        protected boolean replaces(long current, long x) {
+            return x > current;
+        }
+    }
+
+    static final class Min extends FixedSizeStripedLongAccumulator {
+        Min(int stripesCount) {
+            super(stripesCount, Long.MAX_VALUE);
+        }
+
+        @Override
+        protected boolean replaces(long current, long x) {
+            return x < current;
+        }
+    }
+}
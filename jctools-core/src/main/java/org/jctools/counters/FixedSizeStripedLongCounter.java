@@ -0,0 +1,67 @@
+package org.jctools.counters;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+/**
+ * Basic class representing static striped long counter with
+ * common mechanics for implementors.
+ * <p>
+ * Each stripe sits in its own cache line. A thread picks a stripe by its {@code ThreadLocalRandom} probe and, when
+ * its first CAS on it fails, moves to another stripe for good by rehashing the probe, so that threads colliding on a
+ * stripe spread out as with {@code LongAdder}. The number of stripes is fixed at construction.
+ *
+ * @author Tolstopyatov Vsevolod
+ */
+public abstract class FixedSizeStripedLongCounter extends FixedSizeStripedLongCounterFields implements Counter {
+    long l02, l03, l04, l05, l06, l07, l08;
+    long l9, l10, l11, l12, l13, l14, l15, l16;
+
+    public FixedSizeStripedLongCounter(int stripesCount) {
+        super(stripesCount);
+    }
+
+    @Override
+    public void inc() {
+        inc(1L);
+    }
+
+    @Override
+    public void inc(long delta) {
+        final long[] cells = this.cells;
+        int probe = ThreadProbe.probe();
+        long offset = counterOffset(probe & mask);
+        final long v = UNSAFE.getLongVolatile(cells, offset);
+        if (!UNSAFE.compareAndSwapLong(cells, offset, v, v + delta)) {
+            // Contended: move this thread to another stripe for good, and add there
+            probe = ThreadProbe.rehash(probe);
+            inc(cells, counterOffset(probe & mask), delta);
+        }
+    }
+
+    @Override
+    public long get() {
+        long result = 0L;
+        long[] cells = this.cells;
+        int length = mask + 1;
+        for (int i = 0; i < length; i++) {
+            result += UNSAFE.getLongVolatile(cells, counterOffset(i));
+        }
+        return result;
+    }
+
+    @Override
+    public long getAndReset() {
+        long result = 0L;
+        long[] cells = this.cells;
+        int length = mask + 1;
+        for (int i = 0; i < length; i++) {
+            result += getAndReset(cells, counterOffset(i));
+        }
+        return result;
+    }
+
+    protected abstract void inc(long[] cells, long offset, long value);
+
+    protected abstract long getAndReset(long[] cells, long offset);
+}
+
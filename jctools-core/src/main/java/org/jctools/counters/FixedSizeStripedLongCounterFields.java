@@ -0,0 +1,37 @@
+package org.jctools.counters;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+import org.jctools.util.PortableJvmInfo;
+import org.jctools.util.Pow2;
+
+/**
+ * The padded stripes shared by {@link FixedSizeStripedLongCounter} and {@link FixedSizeStripedLongAccumulator}.
+ */
+abstract class FixedSizeStripedLongCounterPrePad {
+    long l01, l02, l03, l04, l05, l06, l07, l08;
+    long l9, l10, l11, l12, l13, l14, l15;
+}
+abstract class FixedSizeStripedLongCounterFields extends FixedSizeStripedLongCounterPrePad {
+    protected static final int CACHE_LINE_IN_LONGS = PortableJvmInfo.CACHE_LINE_SIZE / 8;
+    // place first element at the end of the cache line of the array object
+    protected static final long COUNTER_ARRAY_BASE = Math.max(UNSAFE.arrayBaseOffset(long[].class), PortableJvmInfo.CACHE_LINE_SIZE - 8);
+    // element shift is enlarged to include the padding, still aligned to long
+    protected static final long ELEMENT_SHIFT = Integer.numberOfTrailingZeros(PortableJvmInfo.CACHE_LINE_SIZE);
+    
+    // we pad each element in the array to effectively write a counter in each cache line
+    protected final long[] cells;
+    protected final int mask;
+    protected FixedSizeStripedLongCounterFields(int stripesCount) {
+        if (stripesCount <= 0) {
+            throw new IllegalArgumentException("Expecting a stripesCount that is larger than 0");
+        }
+        int size = Pow2.roundToPowerOfTwo(stripesCount);
+        cells = new long[CACHE_LINE_IN_LONGS * size];
+        mask = (size - 1);
+    }
+
+    protected static long counterOffset(long i) {
+        return COUNTER_ARRAY_BASE + (i << ELEMENT_SHIFT);
+    }
+}
@@ -0,0 +1,320 @@
+package org.jctools.counters;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+import org.jctools.util.PortableJvmInfo;
+import org.jctools.util.Pow2;
+import org.jctools.util.UnsafeAccess;
+
+/**
+ * A concurrent histogram of non-negative {@code long} values, such as latencies, with log-linear buckets as in
+ * HdrHistogram: values below {@code 2^precisionBits} each have their own bucket, and above that every power of two
+ * range is split into {@code 2^precisionBits} buckets, so a bucket's width is within {@code 2^-precisionBits} of its
+ * values.
+ * <p>
+ * The buckets are striped as in {@link FixedSizeStripedLongCounter}: each stripe holds a full set of buckets, stripes
+ * are a cache line apart, and a thread records into the stripe picked by its probe, moving to another stripe for good
+ * when a CAS fails. {@link #recordValue} is then an uncontended atomic add to a {@code long}, and never allocates.
+ * <p>
+ * Reporting is by interval: {@link #getIntervalSnapshot(Snapshot)} swaps in a second set of stripes for the writers and
+ * drains the ones they were using into the snapshot. A writer which picked the old stripes just before the swap and
+ * records after the drain leaves its count there, for the snapshot after next; no count is ever lost. Snapshots may
+ * be taken by one thread at a time.
+ * <p>
+ * Values above the highest trackable value are recorded in the last bucket. The footprint is two sets of stripes of
+ * {@link #bucketCount()} longs each.
+ */
+public final class FixedSizeStripedLongHistogram {
+    private static final boolean GET_AND_ADD = UnsafeAccess.SUPPORTS_GET_AND_SET;
+    private static final int CACHE_LINE_IN_LONGS = PortableJvmInfo.CACHE_LINE_SIZE / 8;
+    private static final long ARRAY_BASE = UNSAFE.arrayBaseOffset(long[].class);
+
+    private final int precisionBits;
+    private final int bucketCount;
+    private final int stripeStride;
+    private final int mask;
+    private final long highestTrackableValue;
+
+    // Guarded by the snapshot lock, but for writers reading active
+    private volatile long[] active;
+    private long[] spare;
+
+    /**
+     * @param highestTrackableValue the highest value recorded in its own bucket
+     * @param precisionBits the log2 of the buckets per power of two, from 0 to 14; 5 keeps bucket widths within about
+     *        3% of their values
+     * @param stripesCount the number of stripes, rounded up to a power of two
+     */
+    public FixedSizeStripedLongHistogram(long highestTrackableValue, int precisionBits, int stripesCount) {
+        if (highestTrackableValue < 1) {
+            throw new IllegalArgumentException("highestTrackableValue: " + highestTrackableValue + " (expected: >= 1)");
+        }
+        if (precisionBits < 0 || precisionBits > 14) {
+            throw new IllegalArgumentException("precisionBits: " + precisionBits + " (expected: 0-14)");
+        }
+        if (stripesCount <= 0) {
+            throw new IllegalArgumentException("Expecting a stripesCount that is larger than 0");
+        }
+        this.precisionBits = precisionBits;
+        this.highestTrackableValue = highestTrackableValue;
+        this.bucketCount = bucketIndex(highestTrackableValue, precisionBits) + 1;
+        // Each stripe starts on a fresh cache line, a line after the end of the previous one
+        this.stripeStride = (bucketCount + 2 * CACHE_LINE_IN_LONGS - 1) & -CACHE_LINE_IN_LONGS;
+        final int stripes = Pow2.roundToPowerOfTwo(stripesCount);
+        this.mask = stripes - 1;
+        this.active = new long[CACHE_LINE_IN_LONGS + stripes * stripeStride];
+        this.spare = new long[CACHE_LINE_IN_LONGS + stripes * stripeStride];
+    }
+
+    /**
+     * @return the number of buckets
+     */
+    public int bucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * @return the highest value recorded in its own bucket
+     */
+    public long highestTrackableValue() {
+        return highestTrackableValue;
+    }
+
+    /**
+     * Records a value, without allocating.
+     *
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public void recordValue(long value) {
+        recordValues(value, 1);
+    }
+
+    /**
+     * Records {@code count} occurrences of a value, without allocating.
+     *
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public void recordValues(long value, long count) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value: " + value + " (expected: >= 0)");
+        }
+        final int bucket = value > highestTrackableValue ? bucketCount - 1 : bucketIndex(value, precisionBits);
+        final long[] cells = active;
+        int probe = ThreadProbe.probe();
+        long offset = offset(probe & mask, bucket);
+        final long v = UNSAFE.getLongVolatile(cells, offset);
+        if (UNSAFE.compareAndSwapLong(cells, offset, v, v + count)) {
+            return;
+        }
+        // Contended: move this thread to another stripe for good, and add there
+        probe = ThreadProbe.rehash(probe);
+        offset = offset(probe & mask, bucket);
+        if (GET_AND_ADD) {
+            UNSAFE.getAndAddLong(cells, offset, count);
+        } else {
+            long u;
+            do {
+                u = UNSAFE.getLongVolatile(cells, offset);
+            } while (!UNSAFE.compareAndSwapLong(cells, offset, u, u + count));
+        }
+    }
+
+    /**
+     * @return a new snapshot of the values recorded since the previous one
+     */
+    public Snapshot getIntervalSnapshot() {
+        return getIntervalSnapshot(null);
+    }
+
+    /**
+     * Moves the values recorded since the previous interval snapshot into {@code into}, replacing its counts, so that
+     * periodic reporting need not allocate.
+     *
+     * @param into a snapshot from this histogram to reuse, or null for a new one
+     * @return the snapshot
+     */
+    public Snapshot getIntervalSnapshot(Snapshot into) {
+        if (into == null || into.counts.length != bucketCount || into.precisionBits != precisionBits) {
+            into = new Snapshot(bucketCount, precisionBits);
+        }
+        final long[] counts = into.counts;
+        synchronized (this) {
+            final long[] drained = active;
+            active = spare;
+            spare = drained;
+            for (int b = 0; b < bucketCount; b++) {
+                long sum = 0;
+                for (int s = 0; s <= mask; s++) {
+                    final long offset = offset(s, b);
+                    if (UNSAFE.getLongVolatile(drained, offset) != 0) {
+                        sum += getAndReset(drained, offset);
+                    }
+                }
+                counts[b] = sum;
+            }
+        }
+        return into;
+    }
+
+    private long offset(int stripe, int bucket) {
+        return ARRAY_BASE + ((long) (CACHE_LINE_IN_LONGS + stripe * stripeStride + bucket) << 3);
+    }
+
+    private static long getAndReset(long[] cells, long offset) {
+        if (GET_AND_ADD) {
+            return UNSAFE.getAndSetLong(cells, offset, 0L);
+        }
+        long v;
+        do {
+            v = UNSAFE.getLongVolatile(cells, offset);
+        } while (!UNSAFE.compareAndSwapLong(cells, offset, v, 0L));
+        return v;
+    }
+
+    // Values below 2^p index their own bucket; above, the top p+1 bits of the value pick one of 2^p buckets in the
+    // power of two range of its highest bit
+    static int bucketIndex(long value, int p) {
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - p;
+        if (shift < 0) {
+            return (int) value;
+        }
+        return ((shift + 1) << p) + (int) (value >>> shift) - (1 << p);
+    }
+
+    static long lowestEquivalentValue(int bucket, int p) {
+        if (bucket < 1 << p) {
+            return bucket;
+        }
+        final int shift = (bucket >>> p) - 1;
+        return ((long) ((1 << p) + (bucket & ((1 << p) - 1)))) << shift;
+    }
+
+    static long highestEquivalentValue(int bucket, int p) {
+        final int shift = bucket < 1 << p ? 0 : (bucket >>> p) - 1;
+        return lowestEquivalentValue(bucket, p) + (1L << shift) - 1;
+    }
+
+    /**
+     * The counts recorded in a {@link FixedSizeStripedLongHistogram} over an interval, per bucket. Values are reported
+     * as the highest value equivalent to their bucket, as HdrHistogram does.
+     */
+    public static final class Snapshot {
+        final long[] counts;
+        final int precisionBits;
+
+        Snapshot(int bucketCount, int precisionBits) {
+            this.counts = new long[bucketCount];
+            this.precisionBits = precisionBits;
+        }
+
+        /**
+         * @return the number of buckets
+         */
+        public int bucketCount() {
+            return counts.length;
+        }
+
+        /**
+         * @return the count of values recorded in the bucket
+         */
+        public long count(int bucket) {
+            return counts[bucket];
+        }
+
+        /**
+         * @return the lowest value recorded in the bucket
+         */
+        public long bucketLowestValue(int bucket) {
+            return lowestEquivalentValue(bucket, precisionBits);
+        }
+
+        /**
+         * @return the highest value recorded in the bucket
+         */
+        public long bucketHighestValue(int bucket) {
+            return highestEquivalentValue(bucket, precisionBits);
+        }
+
+        /**
+         * @return the count of values recorded
+         */
+        public long totalCount() {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * @return the lowest value recorded, to within its bucket, or 0 if there were none
+         */
+        public long min() {
+            for (int b = 0; b < counts.length; b++) {
+                if (counts[b] != 0) {
+                    return bucketLowestValue(b);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return the highest value recorded, to within its bucket, or 0 if there were none
+         */
+        public long max() {
+            for (int b = counts.length - 1; b >= 0; b--) {
+                if (counts[b] != 0) {
+                    return bucketHighestValue(b);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return the mean of the values recorded, taking each at the middle of its bucket, or 0 if there were none
+         */
+        public double mean() {
+            double sum = 0;
+            long total = 0;
+            for (int b = 0; b < counts.length; b++) {
+                if (counts[b] != 0) {
+                    sum += counts[b] * ((bucketLowestValue(b) + (double) bucketHighestValue(b)) / 2);
+                    total += counts[b];
+                }
+            }
+            return total == 0 ? 0 : sum / total;
+        }
+
+        /**
+         * @param percentile from 0 to 100
+         * @return the value below which the given percentage of the values recorded fall, or 0 if there were none
+         */
+        public long valueAtPercentile(double percentile) {
+            final long total = totalCount();
+            if (total == 0) {
+                return 0;
+            }
+            final long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= target) {
+                    return bucketHighestValue(b);
+                }
+            }
+            return max();
+        }
+
+        /**
+         * Adds the counts of another snapshot of the same histogram to this one, to accumulate intervals.
+         */
+        public void add(Snapshot other) {
+            if (other.counts.length != counts.length || other.precisionBits != precisionBits) {
+                throw new IllegalArgumentException("Snapshots of histograms of different shapes");
+            }
+            for (int b = 0; b < counts.length; b++) {
+                counts[b] += other.counts[b];
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.jctools.counters;
+
+/**
+ * A {@code long} value which many threads update and which is read now and then, such as a {@link Counter} or an
+ * accumulator. {@link CounterRegistry} snapshots these.
+ */
+public interface LongMetric {
+
+    /**
+     * @return the current value; under concurrent updates it may miss updates made during the call
+     */
+    long get();
+
+    /**
+     * Resets the metric to its initial value, losing no concurrent update: each one is either included in the
+     * returned value or left for the next read.
+     *
+     * @return the value before the reset
+     */
+    long getAndReset();
+}
@@ -0,0 +1,68 @@
+package org.jctools.counters;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Per-thread hash used to pick a stripe, shared by the striped counters and accumulators.
+ */
+final class ThreadProbe {
+    private static final long PROBE = getProbeOffset();
+
+    private ThreadProbe() {
+    }
+
+    private static long getProbeOffset() {
+        try {
+            return UNSAFE.objectFieldOffset(Thread.class.getDeclaredField("threadLocalRandomProbe"));
+
+        } catch (NoSuchFieldException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Returns the probe value for the current thread.
+     * If the JDK keeps a ThreadLocalRandom probe per thread (JDK 8+), that
+     * value will be used, xorshift with thread id otherwise.
+     */
+    static int probe() {
+        // Fast path for reliable well-distributed probe, available from JDK 8+.
+        // As long as PROBE is final this branch will be inlined.
+        if (PROBE != -1) {
+            int probe;
+            if ((probe = UNSAFE.getInt(Thread.currentThread(), PROBE)) == 0) {
+                ThreadLocalRandom.current(); // force initialization
+                probe = UNSAFE.getInt(Thread.currentThread(), PROBE);
+            }
+            return probe;
+        }
+
+        /*
+         * Else use much worse (for values distribution) method:
+         * Mix thread id with golden ratio and then xorshift it
+         * to spread consecutive ids (see Knuth multiplicative method as reference).
+         */
+        int probe = (int) ((Thread.currentThread().getId() * 0x9e3779b9) & Integer.MAX_VALUE);
+        // xorshift
+        probe ^= probe << 13;
+        probe ^= probe >>> 17;
+        probe ^= probe << 5;
+        return probe;
+    }
+
+    /**
+     * Moves the current thread to another stripe after contention on its own, as {@code LongAdder} does: xorshifts
+     * the probe and, where the JDK keeps one per thread, stores it for the thread's later updates.
+     */
+    static int rehash(int probe) {
+        probe ^= probe << 13;
+        probe ^= probe >>> 17;
+        probe ^= probe << 5;
+        if (PROBE != -1) {
+            UNSAFE.putInt(Thread.currentThread(), PROBE, probe);
+        }
+        return probe;
+    }
+}
@@ -15,8 +15,12 @@ package org.jctools.maps;
 import static org.jctools.util.UnsafeAccess.UNSAFE;
 
 import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
+import org.jctools.util.PortableJvmInfo;
+import org.jctools.util.Pow2;
+
 
 /**
  * An auto-resizing table of {@code longs}, supporting low-contention CAS
@@ -26,6 +30,15 @@ import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
  * otherwise happen at such a high volume that the cache contention for
  * CAS'ing a single word is unacceptable.
  *
+ * <p>A thread picks a counter by its {@code ThreadLocalRandom} probe (as
+ * {@code LongAdder} does), and when its CAS fails moves to another counter by
+ * rehashing the probe, so threads which collide spread out rather than
+ * contending until the table grows.  The first table is a small packed array
+ * of counters, so an uncontended table costs no more than it used to.  Only
+ * when threads keep colliding after moving is it replaced, by a table with
+ * each counter in its own cache line, which then doubles on further
+ * contention up to a few counters per CPU.
+ *
  * @since 1.5
  * @author Cliff Click
  */
@@ -87,12 +100,12 @@ public class ConcurrentAutoTable implements Serializable {
    * Return the internal counter striping factor.  Useful for diagnosing
    * performance problems.
    */
-  public int internal_size() { return _cat._t.length; }
+  public int internal_size() { return _cat.cells(); }
 
-  // Only add 'x' to some slot in table, hinted at by 'hash'.  The sum can
-  // overflow.  Value is CAS'd so no counts are lost.  The CAS is retried until
-  // it succeeds.  Returned value is the old value.
-  private long add_if( long x ) { return _cat.add_if(x,hash(),this); }
+  // Only add 'x' to some slot in table, hinted at by the thread's probe.  The
+  // sum can overflow.  Value is CAS'd so no counts are lost.  The CAS is
+  // retried until it succeeds.  Returned value is the old value.
+  private long add_if( long x ) { return _cat.add_if(x,this); }
 
   // The underlying array of concurrently updated long counters
   private volatile CAT _cat = new CAT(null,16/*Start Small, Think Big!*/,0L);
@@ -100,11 +113,40 @@ public class ConcurrentAutoTable implements Serializable {
     AtomicReferenceFieldUpdater.newUpdater(ConcurrentAutoTable.class,CAT.class, "_cat");
   private boolean CAS_cat( CAT oldcat, CAT newcat ) { return _catUpdater.compareAndSet(this,oldcat,newcat); }
 
-  // Hash spreader
-  private static int hash() {
-    //int h = (int)Thread.currentThread().getId();
+  // --- probe ---------------------------------------------------------------
+  // The per-thread hash the JDK keeps for striped counters, initialized by
+  // ThreadLocalRandom.  Where it cannot be found the identity hash of the
+  // thread stands in, and rehashing only lasts for the current update.
+  private static final long PROBE = probeOffset();
+  private static long probeOffset() {
+    try {
+      return UNSAFE.objectFieldOffset(Thread.class.getDeclaredField("threadLocalRandomProbe"));
+    } catch( Throwable e ) {
+      return -1L;
+    }
+  }
+  private static int probe() {
+    if( PROBE != -1L ) {
+      int h = UNSAFE.getInt(Thread.currentThread(), PROBE);
+      if( h == 0 ) {            // Not initialized yet?
+        ThreadLocalRandom.current();
+        h = UNSAFE.getInt(Thread.currentThread(), PROBE);
+      }
+      return h;
+    }
     int h = System.identityHashCode(Thread.currentThread());
-    return h<<3;                // Pad out cache lines.  The goal is to avoid cache-line contention
+    h ^= (h>>>20) ^ (h>>>12);   // Spread lousy identity hashes
+    h ^= (h>>> 7) ^ (h>>> 4);
+    return h;
+  }
+  // Move the thread to another counter after a failed CAS: xorshift the
+  // probe, as ThreadLocalRandom.advanceProbe does, and keep it for next time.
+  private static int rehash( int h ) {
+    h ^= h<<13;
+    h ^= h>>>17;
+    h ^= h<<5;
+    if( PROBE != -1L ) UNSAFE.putInt(Thread.currentThread(), PROBE, h);
+    return h;
   }
 
   // --- CAT -----------------------------------------------------------------
@@ -125,37 +167,56 @@ public class ConcurrentAutoTable implements Serializable {
     //static private final AtomicLongFieldUpdater<CAT> _resizerUpdater =
     //  AtomicLongFieldUpdater.newUpdater(CAT.class, "_resizers");
 
+    // In a padded table counters are PAD longs apart, so no two share a cache
+    // line.  Counter i is at index (i+1)*PAD, leaving a line of padding before
+    // the first (with the array header) and after the last.  The first table
+    // of a counter is packed, counter i at index i, to keep it small.
+    private static final int PAD = Math.max(PortableJvmInfo.CACHE_LINE_SIZE>>3, 1);
+    // More counters than this stop helping: colliding threads rehash instead.
+    // At least twice the packed first table, so that growing from it helps.
+    private static final int MAX_CELLS = Math.max(Pow2.roundToPowerOfTwo(PortableJvmInfo.CPUs)<<2, 32);
+
     private final CAT _next;
     private volatile long _fuzzy_sum_cache;
     private volatile long _fuzzy_time;
     private static final int MAX_SPIN=1;
-    private final long[] _t;     // Power-of-2 array of longs
+    private final long[] _t;     // Counters, packed or padded
+    private final int _mask;     // Count of counters, minus 1
+    private final int _stride;   // Longs from one counter to the next: 1 or PAD
 
     CAT( CAT next, int sz, long init ) {
       _next = next;
-      _t = new long[sz];
-      _t[0] = init;
+      _stride = next == null ? 1 : PAD; // Pad only once the table has grown
+      _t = new long[_stride == 1 ? sz : (sz+1)*PAD];
+      _mask = sz-1;
+      _t[idx(0)] = init;
     }
 
-    // Only add 'x' to some slot in table, hinted at by 'hash'.  The sum can
-    // overflow.  Value is CAS'd so no counts are lost.  The CAS is attempted
-    // ONCE.
-    public long add_if( long x, int hash, ConcurrentAutoTable master ) {
+    int cells() { return _mask+1; }
+    private int idx( int cell ) { return _stride == 1 ? cell : (cell+1)*PAD; }
+
+    // Only add 'x' to some slot in table, hinted at by the thread's probe.
+    // The sum can overflow.  Value is CAS'd so no counts are lost.  On a
+    // failed CAS the thread moves to another slot and retries there.
+    public long add_if( long x, ConcurrentAutoTable master ) {
       final long[] t = _t;
-      final int idx = hash & (t.length-1);
+      int h = probe();
+      int idx = idx(h & _mask);
       // Peel loop; try once fast
       long old = t[idx];
       final boolean ok = CAS( t, idx, old, old+x );
       if( ok ) return old;      // Got it
-      // Try harder
+      // Try harder, each time in another slot
       int cnt=0;
       while( true ) {
+        h = rehash(h);
+        idx = idx(h & _mask);
         old = t[idx];
         if( CAS( t, idx, old, old+x ) ) break; // Got it!
         cnt++;
       }
       if( cnt < MAX_SPIN ) return old; // Allowable spin loop count
-      if( t.length >= 1024*1024 ) return old; // too big already
+      if( _stride != 1 && _mask+1 >= MAX_CELLS ) return old; // too big already
 
       // Too much contention; double array size in an effort to reduce contention
       //long r = _resizers;
@@ -173,7 +234,8 @@ public class ConcurrentAutoTable implements Serializable {
       //  if( master._cat != this ) return old;
       //}
 
-      CAT newcat = new CAT(this,t.length*2,0);
+      // A packed first table is replaced by a padded one
+      CAT newcat = new CAT(this,(_mask+1)*2,0);
       // Take 1 stab at updating the CAT with the new larger size.  If this
       // fails, we assume some other thread already expanded the CAT - so we
       // do not need to retry until it succeeds.
@@ -187,7 +249,7 @@ public class ConcurrentAutoTable implements Serializable {
     public long sum( ) {
       long sum = _next == null ? 0 : _next.sum(); // Recursively get cached sum
       final long[] t = _t;
-      for( long cnt : t ) sum += cnt;
+      for( int i=0; i<=_mask; i++ ) sum += t[idx(i)];
       return sum;
     }
 
@@ -195,7 +257,7 @@ public class ConcurrentAutoTable implements Serializable {
     // the cache.
     public long estimate_sum( ) {
       // For short tables, just do the work
-      if( _t.length <= 64 ) return sum();
+      if( _mask < 64 ) return sum();
       // For bigger tables, periodically freshen a cached value
       long millis = System.currentTimeMillis();
       if( _fuzzy_time != millis ) { // Time marches on?
@@ -209,9 +271,9 @@ public class ConcurrentAutoTable implements Serializable {
 
     public void print() {
       long[] t = _t;
-      System.out.print("["+t[0]);
-      for( int i=1; i<t.length; i++ )
-        System.out.print(","+t[i]);
+      System.out.print("["+t[idx(0)]);
+      for( int i=1; i<=_mask; i++ )
+        System.out.print(","+t[idx(i)]);
       System.out.print("]");
       if( _next != null ) _next.print();
     }
@@ -0,0 +1,130 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Allocation-free {@link HashingStrategy}s for common content-keyed maps. They are serializable, so maps using them
+ * are too.
+ */
+public final class HashingStrategies {
+    /**
+     * Compares {@code byte[]} keys by content, as {@link Arrays#equals(byte[], byte[])} does.
+     */
+    public static final HashingStrategy<byte[]> BYTE_ARRAY = new ByteArrayStrategy();
+
+    /**
+     * Compares {@link CharSequence} keys by content, whatever their class: a {@code StringBuilder} finds the
+     * {@code String} with the same characters. The hash code is that of {@link String#hashCode()}.
+     */
+    public static final HashingStrategy<CharSequence> CHAR_SEQUENCE = new CharSequenceStrategy();
+
+    /**
+     * Compares {@link CharSequence} keys by content ignoring case, char by char as
+     * {@link String#equalsIgnoreCase(String)} does.
+     */
+    public static final HashingStrategy<CharSequence> CASE_INSENSITIVE = new CaseInsensitiveStrategy();
+
+    private HashingStrategies() {
+    }
+
+    private static final class ByteArrayStrategy implements HashingStrategy<byte[]>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public int hashCode(byte[] key) {
+            return Arrays.hashCode(key);
+        }
+
+        @Override
+        public boolean equals(byte[] a, byte[] b) {
+            return Arrays.equals(a, b);
+        }
+
+        private Object readResolve() {
+            return BYTE_ARRAY;
+        }
+    }
+
+    private static final class CharSequenceStrategy implements HashingStrategy<CharSequence>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public int hashCode(CharSequence key) {
+            int h = 0;
+            for (int i = 0, length = key.length(); i < length; i++) {
+                h = 31 * h + key.charAt(i);
+            }
+            return h;
+        }
+
+        @Override
+        public boolean equals(CharSequence a, CharSequence b) {
+            final int length = a.length();
+            if (length != b.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (a.charAt(i) != b.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Object readResolve() {
+            return CHAR_SEQUENCE;
+        }
+    }
+
+    private static final class CaseInsensitiveStrategy implements HashingStrategy<CharSequence>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        // Folds both ways, as equalsIgnoreCase does, so that chars it considers equal have the same hash
+        private static char fold(char c) {
+            return Character.toLowerCase(Character.toUpperCase(c));
+        }
+
+        @Override
+        public int hashCode(CharSequence key) {
+            int h = 0;
+            for (int i = 0, length = key.length(); i < length; i++) {
+                h = 31 * h + fold(key.charAt(i));
+            }
+            return h;
+        }
+
+        @Override
+        public boolean equals(CharSequence a, CharSequence b) {
+            final int length = a.length();
+            if (length != b.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                final char x = a.charAt(i);
+                final char y = b.charAt(i);
+                if (x != y && fold(x) != fold(y)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Object readResolve() {
+            return CASE_INSENSITIVE;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+
+/**
+ * Hashes and compares keys in place of their own {@link Object#hashCode()} and {@link Object#equals(Object)}, so that
+ * keys such as {@code byte[]} or {@code CharSequence} can be looked up by content without wrapping them. Instances
+ * must be stateless (or immutable) and thread-safe, and consistent: keys which are equal must have the same hash code.
+ *
+ * @param <K> the type of keys
+ * @see NonBlockingHashMap#NonBlockingHashMap(HashingStrategy)
+ * @see HashingStrategies
+ */
+public interface HashingStrategy<K> {
+    /**
+     * @param key a non-null key
+     * @return the hash code of the key, which the map spreads further before use
+     */
+    int hashCode(K key);
+
+    /**
+     * @param a the key being looked up, not null
+     * @param b a key in the map, not null
+     * @return true if the keys are equivalent
+     */
+    boolean equals(K a, K b);
+}
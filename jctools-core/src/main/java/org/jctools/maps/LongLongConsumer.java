@@ -0,0 +1,27 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+
+/**
+ * Consumes a primitive {@code long} key and {@code long} value pair, without boxing either.
+ *
+ * @see NonBlockingLongLongHashMap#forEach(LongLongConsumer)
+ */
+public interface LongLongConsumer {
+    /**
+     * @param key   the key of the entry
+     * @param value the value of the entry
+     */
+    void accept(long key, long value);
+}
@@ -17,8 +17,17 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongBinaryOperator;
+import java.util.function.ToLongBiFunction;
 
 import org.jctools.util.RangeUtil;
 
@@ -118,7 +127,15 @@ public class NonBlockingHashMap<TypeK, TypeV>
   // purpose - as the first place to conveniently toss the required NPE for a
   // null Key.
   private static final int hash(final Object key) {
-    int h = key.hashCode();     // The real hashCode call
+    return spread(key.hashCode()); // The real hashCode call
+  }
+  // Same spreading over the HashingStrategy's hashCode, if the map has one.
+  private static final int hash(final NonBlockingHashMap<?,?> topmap, final Object key) {
+    if( topmap._strategy == null ) return hash(key);
+    if( key == null ) throw new NullPointerException();
+    return spread(strategy(topmap).hashCode(key));
+  }
+  private static final int spread(int h) {
     h ^= (h>>>20) ^ (h>>>12);
     h ^= (h>>> 7) ^ (h>>> 4);
 	h += h<<7; // smear low bits up high, for hashcodes that only differ by 1
@@ -147,6 +164,16 @@ public class NonBlockingHashMap<TypeK, TypeV>
   // Time since last resize
   private transient long _last_resize_milli;
 
+  // Optional hashing and equivalence for keys, in place of their own
+  // hashCode and equals.  Null for the usual behaviour.
+  private final HashingStrategy<? super TypeK> _strategy;
+  // The table holds untyped keys, so the strategy is applied to Objects: the
+  // map only ever hands it the keys it was given, which are TypeKs.
+  @SuppressWarnings("unchecked")
+  private static HashingStrategy<Object> strategy( final NonBlockingHashMap<?,?> topmap ) {
+    return (HashingStrategy<Object>)topmap._strategy;
+  }
+
   // --- Minimum table size ----------------
   // Pick size 8 K/V pairs, which turns into (8*2+2)*4+12 = 84 bytes on a
   // standard 32-bit HotSpot, and (8*2+2)*8+12 = 156 bytes on 64-bit Azul.
@@ -240,6 +267,101 @@ public class NonBlockingHashMap<TypeK, TypeV>
    *  or since the table was created.   */
   public long reprobes() { long r = _reprobes.get(); _reprobes = new ConcurrentAutoTable(); return r; }
 
+  // --- Statistics ----------------------------------------------------------
+  // Opt-in statistics on resizes and probe lengths, for tuning initial sizes
+  // and spotting poor hash functions.  When disabled the only cost is a read
+  // of the _stats field at the end of a lookup and around copies; when
+  // enabled the counts go to striped ConcurrentAutoTables.  The field is
+  // volatile so running threads see stats switched on or off, and see the
+  // counters fully built.
+  private transient volatile StatsCounters _stats;
+
+  // Buckets of the probe length histogram: 0 reprobes, then [2^(i-1),2^i)
+  private static final int PROBE_BUCKETS = 12;
+
+  private static final class StatsCounters {
+    final ConcurrentAutoTable _resizes = new ConcurrentAutoTable();
+    final ConcurrentAutoTable _resizeNanos = new ConcurrentAutoTable();
+    final ConcurrentAutoTable _copyHelpNanos = new ConcurrentAutoTable();
+    final ConcurrentAutoTable[] _probes = new ConcurrentAutoTable[PROBE_BUCKETS];
+    StatsCounters() {
+      for( int i=0; i<PROBE_BUCKETS; i++ ) _probes[i] = new ConcurrentAutoTable();
+    }
+    void probed( final int reprobe_cnt ) {
+      _probes[Math.min(32-Integer.numberOfLeadingZeros(reprobe_cnt),PROBE_BUCKETS-1)].add(1);
+    }
+  }
+
+  private static void record_probes( final NonBlockingHashMap topmap, final int reprobe_cnt ) {
+    final StatsCounters stats = topmap._stats;
+    if( stats != null ) stats.probed(reprobe_cnt);
+  }
+
+  /** Starts collecting {@link Stats}, from zero, or stops collecting them.
+   *  Collecting costs a few striped counter updates per lookup and per
+   *  resize; not collecting costs next to nothing.
+   *  @param enable true to start (or restart) collecting, false to stop */
+  public void collectStats( final boolean enable ) {
+    _stats = enable ? new StatsCounters() : null;
+  }
+
+  /** Returns a snapshot of the statistics collected since the last call to
+   *  {@link #collectStats}, with the current table sizes.
+   *  @return the statistics, or null if they are not being collected */
+  public Stats stats() {
+    final StatsCounters stats = _stats;
+    if( stats == null ) return null;
+    final long[] probes = new long[PROBE_BUCKETS];
+    for( int i=0; i<PROBE_BUCKETS; i++ ) probes[i] = stats._probes[i].get();
+    // Walk the chain of tables: more than one while a resize is in progress
+    int levels = 0;
+    for( Object[] kvs=_kvs; kvs != null; kvs = chm(kvs)._newkvs ) levels++;
+    final int[] lengths = new int[levels];
+    levels = 0;
+    for( Object[] kvs=_kvs; kvs != null; kvs = chm(kvs)._newkvs ) lengths[levels++] = len(kvs);
+    final CHM topchm = chm(_kvs);
+    return new Stats(stats._resizes.get(), stats._resizeNanos.get(), stats._copyHelpNanos.get(),
+                     probes, lengths, topchm.size(), topchm.slots());
+  }
+
+  /** A snapshot of the statistics of a {@link NonBlockingHashMap}, see
+   *  {@link #collectStats}.  Counts are collected with striped counters and
+   *  may lag concurrent operations a little. */
+  public static final class Stats {
+    private final long _resizes, _resizeNanos, _copyHelpNanos;
+    private final long[] _probes;
+    private final int[] _tableLengths;
+    private final int _size, _slots;
+    Stats( long resizes, long resizeNanos, long copyHelpNanos, long[] probes, int[] tableLengths, int size, int slots ) {
+      _resizes = resizes; _resizeNanos = resizeNanos; _copyHelpNanos = copyHelpNanos;
+      _probes = probes; _tableLengths = tableLengths; _size = size; _slots = slots;
+    }
+    /** @return the number of completed resizes, i.e. of table copies promoted */
+    public long resizes() { return _resizes; }
+    /** @return the total time from starting to promoting the copies, in nanoseconds */
+    public long resizeNanos() { return _resizeNanos; }
+    /** @return the total time threads spent helping copies along, in nanoseconds */
+    public long copyHelpNanos() { return _copyHelpNanos; }
+    /** @return counts of lookups by reprobes made: index 0 counts lookups
+     *  with no reprobe, index {@code i} those with {@code 2^(i-1)} to
+     *  {@code 2^i-1} reprobes, and the last index also counts all the longer
+     *  ones.  Gets count on a hit or a clear miss, puts and removes when they
+     *  find or claim the key's slot. */
+    public long[] probeHistogram() { return _probes.clone(); }
+    /** @return the K/V capacity of the top-level table, followed by those of
+     *  the tables it is being copied into, if a resize is in progress */
+    public int[] tableLengths() { return _tableLengths.clone(); }
+    /** @return the fraction of the used key slots of the top-level table
+     *  whose key was deleted: these slots lengthen probes until the next
+     *  resize, see {@link NonBlockingHashMap#compact} */
+    public double tombstoneRatio() { return _slots == 0 ? 0 : Math.max(0, _slots - _size) / (double)_slots; }
+    @Override public String toString() {
+      return "resizes=" + _resizes + ", resizeNanos=" + _resizeNanos + ", copyHelpNanos=" + _copyHelpNanos +
+        ", probeHistogram=" + Arrays.toString(_probes) + ", tableLengths=" + Arrays.toString(_tableLengths) +
+        ", tombstoneRatio=" + tombstoneRatio();
+    }
+  }
+
 
   // --- reprobe_limit -----------------------------------------------------
   // Heuristic to decide if we have reprobed toooo many times.  Running over
@@ -262,7 +384,30 @@ public class NonBlockingHashMap<TypeK, TypeV>
    *  appropriate size.  Large numbers here when used with a small count of
    *  elements will sacrifice space for a small amount of time gained.  The
    *  initial size will be rounded up internally to the next larger power of 2. */
-  public NonBlockingHashMap( final int initial_sz ) { initialize(initial_sz); }
+  public NonBlockingHashMap( final int initial_sz ) { this(initial_sz, null); }
+
+  /** Create a new NonBlockingHashMap with default minimum size, which hashes
+   *  and compares keys with the given strategy instead of their own hashCode
+   *  and equals.  Lookups can then use keys such as {@code byte[]} or any
+   *  {@link CharSequence} by content (see {@link HashingStrategies}) without
+   *  allocating a wrapper per lookup.
+   *  <p>All keys passed to the map, including to {@link #get} and
+   *  {@link #containsKey}, must be of a type the strategy accepts or a
+   *  {@link ClassCastException} is thrown.  As with {@link
+   *  java.util.IdentityHashMap}, comparing this map to another Map (or its
+   *  entries to other entries) still uses the keys' own equals and hashCode,
+   *  so the general Map contract may not hold.  The map is serializable only
+   *  if the strategy is.
+   *  @param strategy the hashing strategy for keys, or null for the keys' own */
+  public NonBlockingHashMap( final HashingStrategy<? super TypeK> strategy ) { this(MIN_SIZE, strategy); }
+
+  /** Create a new NonBlockingHashMap with initial room for the given number of
+   *  elements, which hashes and compares keys with the given strategy.
+   *  @see #NonBlockingHashMap(HashingStrategy) */
+  public NonBlockingHashMap( final int initial_sz, final HashingStrategy<? super TypeK> strategy ) {
+    _strategy = strategy;
+    initialize(initial_sz);
+  }
   private final void initialize( int initial_sz ) {
     RangeUtil.checkPositiveOrZero(initial_sz, "initial_sz");
     int i;                      // Convert to next largest power-of-2
@@ -354,6 +499,63 @@ public class NonBlockingHashMap<TypeK, TypeV>
     return Objects.equals(putIfMatch( key, newValue, oldValue ), oldValue);
   }
 
+  // --- compute -------------------------------------------------------------
+  // The compute family is done natively instead of with the ConcurrentMap
+  // defaults (a get then a putIfAbsent/replace/remove retry loop).  The key is
+  // looked up (and claimed if needed) once, after which the function is
+  // applied to the value found in the Value slot, and the result CAS'd into
+  // that slot; if the CAS fails the function is re-applied to the new value.
+  // Like the defaults, and unlike ConcurrentHashMap, no lock is held so the
+  // function may be applied more than once under contention, and the value
+  // computed by computeIfAbsent may be dropped for a value another thread
+  // inserted first.
+
+  /** If the specified key is not already associated with a value, attempts to
+   *  compute its value using the given mapping function and enters it into
+   *  this map unless <tt>null</tt>.
+   *  @return the current (existing or computed) value associated with the
+   *          specified key, or <tt>null</tt> if the computed value is null
+   *  @throws NullPointerException if the specified key or function is null */
+  @Override
+  public TypeV computeIfAbsent( TypeK key, Function<? super TypeK, ? extends TypeV> mappingFunction ) {
+    if( mappingFunction == null ) throw new NullPointerException();
+    return (TypeV)compute_impl(this, _kvs, key, COMPUTE_IF_ABSENT, mappingFunction, null, null);
+  }
+
+  /** If the value for the specified key is present, attempts to compute a new
+   *  mapping given the key and its current mapped value.  If the function
+   *  returns <tt>null</tt>, the mapping is removed.
+   *  @return the new value associated with the specified key, or <tt>null</tt> if none
+   *  @throws NullPointerException if the specified key or function is null */
+  @Override
+  public TypeV computeIfPresent( TypeK key, BiFunction<? super TypeK, ? super TypeV, ? extends TypeV> remappingFunction ) {
+    if( remappingFunction == null ) throw new NullPointerException();
+    return (TypeV)compute_impl(this, _kvs, key, COMPUTE_IF_PRESENT, remappingFunction, null, null);
+  }
+
+  /** Attempts to compute a mapping for the specified key and its current
+   *  mapped value (or <tt>null</tt> if there is no current mapping).  If the
+   *  function returns <tt>null</tt>, the mapping is removed (or remains absent).
+   *  @return the new value associated with the specified key, or <tt>null</tt> if none
+   *  @throws NullPointerException if the specified key or function is null */
+  @Override
+  public TypeV compute( TypeK key, BiFunction<? super TypeK, ? super TypeV, ? extends TypeV> remappingFunction ) {
+    if( remappingFunction == null ) throw new NullPointerException();
+    return (TypeV)compute_impl(this, _kvs, key, COMPUTE, remappingFunction, null, null);
+  }
+
+  /** If the specified key is not already associated with a value, associates
+   *  it with the given value.  Otherwise, replaces the value with the results
+   *  of the given remapping function, or removes it if the result is
+   *  <tt>null</tt>.
+   *  @return the new value associated with the specified key, or <tt>null</tt> if none
+   *  @throws NullPointerException if the specified key, value or function is null */
+  @Override
+  public TypeV merge( TypeK key, TypeV value, BiFunction<? super TypeV, ? super TypeV, ? extends TypeV> remappingFunction ) {
+    if( value == null || remappingFunction == null ) throw new NullPointerException();
+    return (TypeV)compute_impl(this, _kvs, key, MERGE, remappingFunction, value, null);
+  }
+
 
   // Atomically replace newVal for oldVal, returning the value that existed
   // there before.  If the oldVal matches the returned value, then newVal was
@@ -401,6 +603,29 @@ public class NonBlockingHashMap<TypeK, TypeV>
       ;
   }
 
+  /** Copies the mappings into a new table sized for the current number of
+   *  mappings, dropping the deleted keys.  Tables grow as keys are added,
+   *  and deleted keys keep their slots until the table is next copied; after
+   *  mass deletions this releases the memory of the larger table and the
+   *  reprobes through dead keys.  Tables also shrink by themselves when a
+   *  resize finds fewer than 1/8th of the slots live, but a map which sees no
+   *  new keys never resizes.  Concurrent operations proceed as during any
+   *  resize, helping the copy along. */
+  public void compact() {
+    while( true ) {
+      final Object[] topkvs = _kvs;
+      final CHM topchm = chm(topkvs);
+      if( topchm._newkvs == null ) {
+        // Start the copy, unless another thread just did, and finish it
+        topchm.resize(this,topkvs,true);
+        topchm.help_copy_impl(this,topkvs,true);
+        return;
+      }
+      // Finish the copy in progress first, then compact its new table
+      topchm.help_copy_impl(this,topkvs,true);
+    }
+  }
+
   /** Returns <tt>true</tt> if this Map maps one or more keys to the specified
    *  value.  <em>Note</em>: This method requires a full internal traversal of the
    *  hash table and is much slower than {@link #containsKey}.
@@ -441,6 +666,7 @@ public class NonBlockingHashMap<TypeK, TypeV>
       //
       // Wipe out the cloned array (it was shallow anyways).
       t.clear();
+      t._stats = null;          // Statistics are not shared with the clone
       // Now copy sanely
       for( TypeK K : keySet() ) {
         final TypeV V = get(K);  // Do an official 'get'
@@ -490,7 +716,7 @@ public class NonBlockingHashMap<TypeK, TypeV>
   // Check for key equality.  Try direct pointer compare first, then see if
   // the hashes are unequal (fast negative test) and finally do the full-on
   // 'equals' v-call.
-  private static boolean keyeq( Object K, Object key, int[] hashes, int hash, int fullhash ) {
+  private static boolean keyeq( NonBlockingHashMap<?,?> topmap, Object K, Object key, int[] hashes, int hash, int fullhash ) {
     return
       K==key ||                 // Either keys match exactly OR
       // hash exists and matches?  hash can be zero during the install of a
@@ -505,7 +731,9 @@ public class NonBlockingHashMap<TypeK, TypeV>
        // operands (since equals is commutative), but I'm making mega-morphic
        // v-calls in a re-probing loop and nailing down the 'this' argument
        // gives both the JIT and the hardware a chance to prefetch the call target.
-       key.equals(K));          // Finally do the hard match
+       (topmap._strategy == null
+        ? key.equals(K)         // Finally do the hard match
+        : strategy(topmap).equals(key,K)));
   }
 
   // --- get -----------------------------------------------------------------
@@ -526,7 +754,7 @@ public class NonBlockingHashMap<TypeK, TypeV>
   }
 
   private static final Object get_impl( final NonBlockingHashMap topmap, final Object[] kvs, final Object key ) {
-    final int fullhash= hash (key); // throws NullPointerException if key is null
+    final int fullhash= hash (topmap,key); // throws NullPointerException if key is null
     final int len     = len  (kvs); // Count of key/value pairs, reads kvs.length
     final CHM chm     = chm  (kvs); // The CHM, for a volatile read below; reads slot 0 of kvs
     final int[] hashes=hashes(kvs); // The memoized hashes; reads slot 1 of kvs
@@ -540,7 +768,10 @@ public class NonBlockingHashMap<TypeK, TypeV>
       // table; hopefully the read of 'key' then hits in cache.
       final Object K = key(kvs,idx); // Get key   before volatile read, could be null
       final Object V = val(kvs,idx); // Get value before volatile read, could be null or Tombstone or Prime
-      if( K == null ) return null;   // A clear miss
+      if( K == null ) {              // A clear miss
+        record_probes(topmap,reprobe_cnt);
+        return null;
+      }
 
       // We need a volatile-read here to preserve happens-before semantics on
       // newly inserted Keys.  If the Key body was written just before inserting
@@ -554,10 +785,12 @@ public class NonBlockingHashMap<TypeK, TypeV>
       final Object[] newkvs = chm._newkvs; // VOLATILE READ before key compare
 
       // Key-compare
-      if( keyeq(K,key,hashes,idx,fullhash) ) {
+      if( keyeq(topmap,K,key,hashes,idx,fullhash) ) {
         // Key hit!  Check for no table-copy-in-progress
-        if( !(V instanceof Prime) ) // No copy?
+        if( !(V instanceof Prime) ) { // No copy?
+          record_probes(topmap,reprobe_cnt);
           return (V == TOMBSTONE) ? null : V; // Return the value
+        }
         // Key hit - but slot is (possibly partially) copied to the new table.
         // Finish the copy & retry in the new table.
         return get_impl(topmap,chm.copy_slot_and_check(topmap,kvs,idx,key),key); // Retry in the new table
@@ -583,7 +816,7 @@ public class NonBlockingHashMap<TypeK, TypeV>
   }
 
   private static final Object getk_impl( final NonBlockingHashMap topmap, final Object[] kvs, final Object key ) {
-    final int fullhash= hash (key); // throws NullPointerException if key is null
+    final int fullhash= hash (topmap,key); // throws NullPointerException if key is null
     final int len     = len  (kvs); // Count of key/value pairs, reads kvs.length
     final CHM chm     = chm  (kvs); // The CHM, for a volatile read below; reads slot 0 of kvs
     final int[] hashes=hashes(kvs); // The memoized hashes; reads slot 1 of kvs
@@ -609,7 +842,7 @@ public class NonBlockingHashMap<TypeK, TypeV>
       final Object[] newkvs = chm._newkvs; // VOLATILE READ before key compare
 
       // Key-compare
-      if( keyeq(K,key,hashes,idx,fullhash) )
+      if( keyeq(topmap,K,key,hashes,idx,fullhash) )
         return K;              // Return existing Key!
 
       // get and put must have the same key lookup logic!  But only 'put'
@@ -652,7 +885,7 @@ public class NonBlockingHashMap<TypeK, TypeV>
     assert putval != null;
     assert !(putval instanceof Prime);
     assert !(expVal instanceof Prime);
-    final int fullhash = hash  (key); // throws NullPointerException if key null
+    final int fullhash = hash  (topmap,key); // throws NullPointerException if key null
     final int len      = len   (kvs); // Count of key/value pairs, reads kvs.length
     final CHM chm      = chm   (kvs); // Reads kvs[0]
     final int[] hashes = hashes(kvs); // Reads kvs[1], read before kvs[0]
@@ -705,7 +938,7 @@ public class NonBlockingHashMap<TypeK, TypeV>
       // Annoyingly this means we have to volatile-read before EACH key compare.
       newkvs = chm._newkvs;     // VOLATILE READ before key compare
 
-      if( keyeq(K,key,hashes,idx,fullhash) )
+      if( keyeq(topmap,K,key,hashes,idx,fullhash) )
         break;                  // Got it!
 
       // get and put must have the same key lookup logic!  Lest 'get' give
@@ -723,6 +956,7 @@ public class NonBlockingHashMap<TypeK, TypeV>
 
       idx = (idx+1)&(len-1); // Reprobe!
     } // End of spinning till we get a Key slot
+    record_probes(topmap,reprobe_cnt);
 
     while ( true ) {              // Spin till we insert a value
       // ---
@@ -808,6 +1042,126 @@ public class NonBlockingHashMap<TypeK, TypeV>
     return (V==null && expVal!=null) ? TOMBSTONE : V;
   }
 
+  // --- compute_impl --------------------------------------------------------
+  // Modes of compute_impl, one per compute-style call
+  private static final int COMPUTE_IF_ABSENT = 0;
+  private static final int COMPUTE_IF_PRESENT= 1;
+  private static final int COMPUTE           = 2;
+  private static final int MERGE             = 3;
+
+  // Apply the user function of a compute-style call.  'oldVal' is null if the
+  // key is absent.  Returns the new value, or null to remove (or not insert).
+  private static Object remap( final int mode, final Object fn, final Object key, final Object oldVal, final Object value ) {
+    switch( mode ) {
+    case COMPUTE_IF_ABSENT: return ((Function  <Object,Object>       )fn).apply(key);
+    case MERGE:             return oldVal == null ? value : ((BiFunction<Object,Object,Object>)fn).apply(oldVal,value);
+    default:                return ((BiFunction<Object,Object,Object>)fn).apply(key,oldVal);
+    }
+  }
+
+  /**
+   * Compute, ComputeIfAbsent, ComputeIfPresent and Merge.  Same Key lookup as
+   * {@link #putIfMatch0}, except that a missing Key is only claimed once the
+   * function has produced a value to insert.  The Value slot is then updated
+   * by a CAS of the function result, re-applying the function to the current
+   * value after every failed CAS.
+   *
+   * @param absentVal the value already computed for an absent key, or null if
+   *                  none was computed yet.  Carried over to a new table, so
+   *                  the function is not re-applied just because of a resize.
+   * @return the value to return to the caller, never a TOMBSTONE nor a Prime
+   */
+  private static final Object compute_impl(
+      final NonBlockingHashMap topmap,
+      final Object[] kvs,
+      final Object key,
+      final int mode,
+      final Object fn,
+      final Object value,
+      Object absentVal)
+  {
+    final int fullhash = hash  (topmap,key); // throws NullPointerException if key null
+    final int len      = len   (kvs); // Count of key/value pairs, reads kvs.length
+    final CHM chm      = chm   (kvs); // Reads kvs[0]
+    final int[] hashes = hashes(kvs); // Reads kvs[1], read before kvs[0]
+    int idx = fullhash & (len-1);
+
+    // ---
+    // Key-Claim stanza: spin till we find or claim the Key (or force a resizing).
+    int reprobe_cnt=0;
+    Object K=null, V=null;
+    Object[] newkvs=null;
+    while( true ) {             // Spin till we get a Key slot
+      V = val(kvs,idx);         // Get old value (before volatile read below!)
+      K = key(kvs,idx);         // Get current key
+      if( K == null ) {         // Slot is free?
+        // The Key is not here.  Only claim the slot if there is something to insert.
+        if( mode == COMPUTE_IF_PRESENT ) return null;
+        if( absentVal == null && (absentVal = remap(mode,fn,key,null,value)) == null )
+          return null;
+        if( CAS_key(kvs,idx, null, key ) ) { // Claim slot for Key
+          chm._slots.add(1);      // Raise key-slots-used count
+          hashes[idx] = fullhash; // Memoize fullhash
+          break;                  // Got it!
+        }
+        // CAS to claim the key-slot failed, see putIfMatch0
+        int dummy = DUMMY_VOLATILE;
+        continue;
+      }
+      newkvs = chm._newkvs;     // VOLATILE READ before key compare
+
+      if( keyeq(topmap,K,key,hashes,idx,fullhash) )
+        break;                  // Got it!
+
+      if( ++reprobe_cnt >= reprobe_limit(len) || // too many probes or
+          K == TOMBSTONE ) { // found a TOMBSTONE key, means no more keys
+        newkvs = chm.resize(topmap,kvs);
+        topmap.help_copy(newkvs); // help along an existing copy
+        return compute_impl(topmap,newkvs,key,mode,fn,value,absentVal);
+      }
+
+      idx = (idx+1)&(len-1); // Reprobe!
+    } // End of spinning till we get a Key slot
+    record_probes(topmap,reprobe_cnt);
+
+    while( true ) {             // Spin till we insert a value, or have nothing to do
+      // See if we want to move to a new table, as in putIfMatch0
+      if( newkvs == null &&
+          ((V == null && chm.tableFull(reprobe_cnt,len)) || V instanceof Prime) )
+        newkvs = chm.resize(topmap,kvs); // Force the new table copy to start
+      if( newkvs != null )
+        return compute_impl(topmap,chm.copy_slot_and_check(topmap,kvs,idx,NO_MATCH_OLD),key,mode,fn,value,absentVal);
+
+      final boolean absent = V == null || V == TOMBSTONE;
+      final Object newVal;
+      if( absent ) {
+        if( mode == COMPUTE_IF_PRESENT ) return null;
+        if( absentVal == null && (absentVal = remap(mode,fn,key,null,value)) == null )
+          return null;
+        newVal = absentVal;
+      } else {
+        if( mode == COMPUTE_IF_ABSENT ) return V;
+        newVal = remap(mode,fn,key,V,value);
+        if( newVal == V ) return V; // Fast cutout for no-change
+      }
+
+      final Object putval = newVal == null ? TOMBSTONE : newVal;
+      if( CAS_val(kvs,idx,V,putval) ) {
+        // Adjust sizes - a striped counter
+        if(  absent && putval != TOMBSTONE ) chm._size.add( 1);
+        if( !absent && putval == TOMBSTONE ) chm._size.add(-1);
+        return newVal;
+      }
+
+      // CAS failed, another thread changed the value: re-apply the function
+      // on the new value (a Prime is picked up at the top of the loop).
+      V = val(kvs,idx);         // Get new value
+      // NOTE: need the fence, since otherwise 'val(kvs,idx)' load could be hoisted
+      // out of loop.
+      int dummy = DUMMY_VOLATILE;
+    }
+  }
+
   // --- help_copy ---------------------------------------------------------
   // Help along an existing resize operation.  This is just a fast cut-out
   // wrapper, to encourage inlining for the fast no-copy-in-progress case.  We
@@ -879,6 +1233,10 @@ public class NonBlockingHashMap<TypeK, TypeV>
     private static final AtomicLongFieldUpdater<CHM> _resizerUpdater =
       AtomicLongFieldUpdater.newUpdater(CHM.class, "_resizers");
 
+    // When the copy into this table started, if collecting statistics.
+    // Written before the table is published by CAS_newkvs.
+    long _copyStartNanos;
+
     // ---
     // Simple constructor
     CHM( ConcurrentAutoTable size ) {
@@ -911,6 +1269,9 @@ public class NonBlockingHashMap<TypeK, TypeV>
     // MUST 'help_copy' lest we have a path which forever runs through
     // 'resize' only to discover a copy-in-progress which never progresses.
     private final Object[] resize( NonBlockingHashMap topmap, Object[] kvs) {
+      return resize(topmap,kvs,false);
+    }
+    private final Object[] resize( NonBlockingHashMap topmap, Object[] kvs, boolean compact ) {
       assert chm(kvs) == this;
 
       // Check for resize already in progress, probably triggered by another thread
@@ -948,9 +1309,16 @@ public class NonBlockingHashMap<TypeK, TypeV>
           tm <= topmap._last_resize_milli+10000)  // Recent resize (less than 10 sec ago)
         newsz = oldlen<<1;      // Double the existing size
 
-      // Do not shrink, ever.  If we hit this size once, assume we
-      // will again.
-      if( newsz < oldlen ) newsz = oldlen;
+      // Shrink only when fewer than 1/8th of the slots hold live keys, say
+      // after mass deletions, to a table between 12.5% and 25% full as after
+      // growing.  Otherwise do not shrink: if we hit this size once, assume
+      // we will again.  The recent-resize check above keeps tables with a
+      // high key churn rate from shrinking.
+      if( newsz < oldlen ) newsz = sz < (oldlen>>3) ? sz<<2 : oldlen;
+
+      // An explicit compaction sizes the table for the live keys alone, as
+      // the constructor does.
+      if( compact ) newsz = (int)Math.min(4L*sz,1<<30);
 
       // Convert to power-of-2
       int log2;
@@ -995,6 +1363,7 @@ public class NonBlockingHashMap<TypeK, TypeV>
       newkvs = new Object[(int)len]; // This can get expensive for big arrays
       newkvs[0] = new CHM(_size); // CHM in slot 0
       newkvs[1] = new int[1<<log2]; // hashes in slot 1
+      if( topmap._stats != null ) ((CHM)newkvs[0])._copyStartNanos = System.nanoTime();
 
       // Another check after the slow allocation
       if( _newkvs != null )     // See if resize is already in progress
@@ -1036,6 +1405,16 @@ public class NonBlockingHashMap<TypeK, TypeV>
     // copy (it was when we started) but this CHM might have been promoted out
     // of the top position.
     private final void help_copy_impl( NonBlockingHashMap topmap, Object[] oldkvs, boolean copy_all ) {
+      final StatsCounters stats = topmap._stats;
+      if( stats == null ) {
+        copy_impl(topmap,oldkvs,copy_all);
+      } else {
+        final long start = System.nanoTime();
+        copy_impl(topmap,oldkvs,copy_all);
+        stats._copyHelpNanos.add(System.nanoTime()-start);
+      }
+    }
+    private final void copy_impl( NonBlockingHashMap topmap, Object[] oldkvs, boolean copy_all ) {
       assert chm(oldkvs) == this;
       Object[] newkvs = _newkvs;
       assert newkvs != null;    // Already checked by caller
@@ -1132,6 +1511,12 @@ public class NonBlockingHashMap<TypeK, TypeV>
           // Attempt to promote
           topmap.CAS_kvs(oldkvs,_newkvs) ) {
         topmap._last_resize_milli = System.currentTimeMillis(); // Record resize time for next check
+        final StatsCounters stats = topmap._stats;
+        if( stats != null ) {
+          stats._resizes.add(1);
+          final long start = chm(_newkvs)._copyStartNanos;
+          if( start != 0 ) stats._resizeNanos.add(System.nanoTime()-start);
+        }
       }
     }
 
@@ -1288,6 +1673,7 @@ public class NonBlockingHashMap<TypeK, TypeV>
       @Override public int     size    (          ) { return NonBlockingHashMap.this.size         ( ); }
       @Override public boolean contains( Object v ) { return NonBlockingHashMap.this.containsValue(v); }
       @Override public Iterator<TypeV> iterator()   { return new SnapshotV(); }
+      @Override public Spliterator<TypeV> spliterator() { return new ValueSpliterator(bulk_kvs()); }
     };
   }
 
@@ -1328,6 +1714,7 @@ public class NonBlockingHashMap<TypeK, TypeV>
       @Override public boolean contains( Object k ) { return NonBlockingHashMap.this.containsKey(k); }
       @Override public boolean remove  ( Object k ) { return NonBlockingHashMap.this.remove  (k) != null; }
       @Override public Iterator<TypeK> iterator()   { return new SnapshotK(); }
+      @Override public Spliterator<TypeK> spliterator() { return new KeySpliterator(bulk_kvs()); }
       // This is an efficient implementation of toArray instead of the standard
       // one.  In particular it uses a smart iteration over the NBHM.
       @Override public <T> T[] toArray(T[] a) {
@@ -1418,9 +1805,311 @@ public class NonBlockingHashMap<TypeK, TypeV>
         return v != null && v.equals(e.getValue());
       }
       @Override public Iterator<Map.Entry<TypeK,TypeV>> iterator() { return new SnapshotE(); }
+      @Override public Spliterator<Map.Entry<TypeK,TypeV>> spliterator() { return new EntrySpliterator(bulk_kvs()); }
     };
   }
 
+  // --- Parallel bulk operations -------------------------------------------
+  // Bulk operations in the style of ConcurrentHashMap.  Like the snapshot
+  // iterators they first help finish any in-progress copy, then walk the
+  // top-level table; here the table is split into ranges of slots visited by
+  // ForkJoin tasks in the common pool.  A Prime'd value means a copy started
+  // since, and the Key is looked up with a 'get' which follows the copy.  No
+  // per-entry objects are created.  Keys inserted or removed during the
+  // operation may or may not be visited.
+
+  // Smallest range of slots visited by a single task
+  private static final int MIN_BULK_SLOTS = 1<<10;
+
+  // Returns a top-level table with no copy in progress, see SnapshotV
+  private Object[] bulk_kvs() {
+    while( true ) {
+      Object[] topkvs = _kvs;
+      CHM topchm = chm(topkvs);
+      if( topchm._newkvs == null ) return topkvs;
+      topchm.help_copy_impl(this,topkvs,true);
+    }
+  }
+
+  // Slots per task: the whole table below the parallelism threshold
+  private int bulk_leaf( final Object[] kvs, final long parallelismThreshold ) {
+    final int len = len(kvs);
+    if( parallelismThreshold == Long.MAX_VALUE || size() < parallelismThreshold )
+      return len;
+    return Math.max(MIN_BULK_SLOTS, len / (ForkJoinPool.getCommonPoolParallelism()<<2));
+  }
+
+  // Run a single leaf on the calling thread, anything larger as a ForkJoin
+  // task: in the pool of the calling worker thread, else the common pool
+  private <R> R bulk_invoke( final BulkTask<R> task ) {
+    return task._hi - task._lo <= task._leaf ? task.scan() : task.invoke();
+  }
+
+  // The live value of a Key found in a bulk table, or null
+  private TypeV bulk_val( final Object[] kvs, final int idx, final Object K ) {
+    final Object V = val(kvs,idx);
+    if( V instanceof Prime ) return get(K); // Copied since: look in the new table
+    if( V == null || V == TOMBSTONE ) return null;
+    // Volatile-read before returning V, as in get_impl
+    @SuppressWarnings("unused") final Object[] newkvs = chm(kvs)._newkvs;
+    return (TypeV)V;
+  }
+
+  // A range of slots, split in halves until no larger than the leaf size
+  private abstract class BulkTask<R> extends RecursiveTask<R> {
+    private static final long serialVersionUID = 1L;
+    final Object[] _bkvs;
+    final int _lo, _hi, _leaf;
+    BulkTask( final Object[] kvs, final int lo, final int hi, final int leaf ) {
+      _bkvs = kvs; _lo = lo; _hi = hi; _leaf = leaf;
+    }
+    abstract BulkTask<R> range( int lo, int hi );
+    abstract R scan();
+    R combine( R left, R right ) { return null; }
+    @Override
+    protected final R compute() {
+      if( _hi - _lo <= _leaf ) return scan();
+      final int mid = (_lo + _hi) >>> 1;
+      final BulkTask<R> right = range(mid,_hi);
+      right.fork();
+      final R left = range(_lo,mid).compute();
+      return combine(left,right.join());
+    }
+  }
+
+  private final class ForEachTask extends BulkTask<Void> {
+    private static final long serialVersionUID = 1L;
+    final BiConsumer<? super TypeK,? super TypeV> _action;
+    ForEachTask( Object[] kvs, int lo, int hi, int leaf, BiConsumer<? super TypeK,? super TypeV> action ) {
+      super(kvs,lo,hi,leaf);
+      _action = action;
+    }
+    BulkTask<Void> range( int lo, int hi ) { return new ForEachTask(_bkvs,lo,hi,_leaf,_action); }
+    Void scan() {
+      for( int idx=_lo; idx<_hi; idx++ ) {
+        final Object K = key(_bkvs,idx);
+        if( K == null || K == TOMBSTONE ) continue;
+        final TypeV V = bulk_val(_bkvs,idx,K);
+        if( V != null ) _action.accept((TypeK)K,V);
+      }
+      return null;
+    }
+  }
+
+  private final class SearchTask<U> extends BulkTask<U> {
+    private static final long serialVersionUID = 1L;
+    final BiFunction<? super TypeK,? super TypeV,? extends U> _search;
+    final AtomicReference<U> _found;
+    SearchTask( Object[] kvs, int lo, int hi, int leaf, BiFunction<? super TypeK,? super TypeV,? extends U> search, AtomicReference<U> found ) {
+      super(kvs,lo,hi,leaf);
+      _search = search;
+      _found = found;
+    }
+    BulkTask<U> range( int lo, int hi ) { return new SearchTask<U>(_bkvs,lo,hi,_leaf,_search,_found); }
+    U scan() {
+      for( int idx=_lo; idx<_hi && _found.get() == null; idx++ ) {
+        final Object K = key(_bkvs,idx);
+        if( K == null || K == TOMBSTONE ) continue;
+        final TypeV V = bulk_val(_bkvs,idx,K);
+        if( V == null ) continue;
+        final U u = _search.apply((TypeK)K,V);
+        if( u != null ) {
+          _found.compareAndSet(null,u);
+          break;
+        }
+      }
+      return null;
+    }
+  }
+
+  private final class ReduceTask<U> extends BulkTask<U> {
+    private static final long serialVersionUID = 1L;
+    final BiFunction<? super TypeK,? super TypeV,? extends U> _transformer;
+    final BiFunction<? super U,? super U,? extends U> _reducer;
+    ReduceTask( Object[] kvs, int lo, int hi, int leaf, BiFunction<? super TypeK,? super TypeV,? extends U> transformer, BiFunction<? super U,? super U,? extends U> reducer ) {
+      super(kvs,lo,hi,leaf);
+      _transformer = transformer;
+      _reducer = reducer;
+    }
+    BulkTask<U> range( int lo, int hi ) { return new ReduceTask<U>(_bkvs,lo,hi,_leaf,_transformer,_reducer); }
+    U scan() {
+      U r = null;
+      for( int idx=_lo; idx<_hi; idx++ ) {
+        final Object K = key(_bkvs,idx);
+        if( K == null || K == TOMBSTONE ) continue;
+        final TypeV V = bulk_val(_bkvs,idx,K);
+        if( V == null ) continue;
+        final U u = _transformer.apply((TypeK)K,V);
+        if( u != null ) r = combine(r,u);
+      }
+      return r;
+    }
+    @Override
+    U combine( U left, U right ) {
+      return left == null ? right : right == null ? left : _reducer.apply(left,right);
+    }
+  }
+
+  private final class ReduceToLongTask extends BulkTask<Long> {
+    private static final long serialVersionUID = 1L;
+    final ToLongBiFunction<? super TypeK,? super TypeV> _transformer;
+    final long _basis;
+    final LongBinaryOperator _reducer;
+    ReduceToLongTask( Object[] kvs, int lo, int hi, int leaf, ToLongBiFunction<? super TypeK,? super TypeV> transformer, long basis, LongBinaryOperator reducer ) {
+      super(kvs,lo,hi,leaf);
+      _transformer = transformer;
+      _basis = basis;
+      _reducer = reducer;
+    }
+    BulkTask<Long> range( int lo, int hi ) { return new ReduceToLongTask(_bkvs,lo,hi,_leaf,_transformer,_basis,_reducer); }
+    Long scan() {
+      long r = _basis;
+      for( int idx=_lo; idx<_hi; idx++ ) {
+        final Object K = key(_bkvs,idx);
+        if( K == null || K == TOMBSTONE ) continue;
+        final TypeV V = bulk_val(_bkvs,idx,K);
+        if( V != null ) r = _reducer.applyAsLong(r,_transformer.applyAsLong((TypeK)K,V));
+      }
+      return r;
+    }
+    @Override
+    Long combine( Long left, Long right ) { return _reducer.applyAsLong(left,right); }
+  }
+
+  /** Performs the given action for each (key, value), in parallel once the
+   *  map holds at least {@code parallelismThreshold} mappings, as {@link
+   *  java.util.concurrent.ConcurrentHashMap#forEach(long,BiConsumer)}.
+   *  Below the threshold the action runs on the calling thread only.
+   *  @param parallelismThreshold the (estimated) number of elements needed
+   *  for this operation to be executed in parallel, {@link Long#MAX_VALUE}
+   *  to never run in parallel
+   *  @param action the action */
+  public void forEach( long parallelismThreshold, BiConsumer<? super TypeK,? super TypeV> action ) {
+    if( action == null ) throw new NullPointerException();
+    final Object[] kvs = bulk_kvs();
+    bulk_invoke(new ForEachTask(kvs,0,len(kvs),bulk_leaf(kvs,parallelismThreshold),action));
+  }
+
+  /** Returns a non-null result from applying the given search function on
+   *  each (key, value), or null if none, as {@link
+   *  java.util.concurrent.ConcurrentHashMap#search(long,BiFunction)}.  Upon
+   *  success, further element processing is suppressed.
+   *  @param parallelismThreshold see {@link #forEach(long,BiConsumer)}
+   *  @param searchFunction a function returning a non-null result on success */
+  public <U> U search( long parallelismThreshold, BiFunction<? super TypeK,? super TypeV,? extends U> searchFunction ) {
+    if( searchFunction == null ) throw new NullPointerException();
+    final Object[] kvs = bulk_kvs();
+    final AtomicReference<U> found = new AtomicReference<U>();
+    bulk_invoke(new SearchTask<U>(kvs,0,len(kvs),bulk_leaf(kvs,parallelismThreshold),searchFunction,found));
+    return found.get();
+  }
+
+  /** Returns the result of accumulating the given transformation of all
+   *  (key, value) pairs using the given reducer to combine values, or null
+   *  if none, as {@link java.util.concurrent.ConcurrentHashMap#reduce}.
+   *  @param parallelismThreshold see {@link #forEach(long,BiConsumer)}
+   *  @param transformer a function returning the transformation for an
+   *  element, or null if there is no transformation (in which case it is not
+   *  combined)
+   *  @param reducer a commutative associative combining function */
+  public <U> U reduce( long parallelismThreshold,
+                       BiFunction<? super TypeK,? super TypeV,? extends U> transformer,
+                       BiFunction<? super U,? super U,? extends U> reducer ) {
+    if( transformer == null || reducer == null ) throw new NullPointerException();
+    final Object[] kvs = bulk_kvs();
+    return bulk_invoke(new ReduceTask<U>(kvs,0,len(kvs),bulk_leaf(kvs,parallelismThreshold),transformer,reducer));
+  }
+
+  /** Returns the result of accumulating the given transformation of all
+   *  (key, value) pairs using the given reducer to combine values, and the
+   *  given basis as an identity value, as {@link
+   *  java.util.concurrent.ConcurrentHashMap#reduceToLong}.
+   *  @param parallelismThreshold see {@link #forEach(long,BiConsumer)}
+   *  @param transformer a function returning the transformation for an element
+   *  @param basis the identity (initial default value) for the reduction
+   *  @param reducer a commutative associative combining function */
+  public long reduceToLong( long parallelismThreshold,
+                            ToLongBiFunction<? super TypeK,? super TypeV> transformer,
+                            long basis, LongBinaryOperator reducer ) {
+    if( transformer == null || reducer == null ) throw new NullPointerException();
+    final Object[] kvs = bulk_kvs();
+    return bulk_invoke(new ReduceToLongTask(kvs,0,len(kvs),bulk_leaf(kvs,parallelismThreshold),transformer,basis,reducer));
+  }
+
+  // --- Spliterators ---------------------------------------------------------
+  // Spliterators for the key, value and entry views.  They split the snapshot
+  // table (see bulk_kvs) into ranges of slots, so parallel streams over the
+  // views do not fall back on the iterator, and keys and values are handed
+  // out without building entries.  The size is estimated from size() when
+  // the table is snapshot, then halved on each split: as for
+  // ConcurrentHashMap's views they report CONCURRENT but not SIZED.
+  private abstract class SnapshotSpliterator<T> implements Spliterator<T> {
+    final Object[] _sskvs;
+    final int _fence;           // One past the last slot
+    int _idx;                   // Next slot to visit
+    long _est;                  // Estimated number of remaining elements
+    SnapshotSpliterator( final Object[] kvs, final int idx, final int fence, final long est ) {
+      _sskvs = kvs; _idx = idx; _fence = fence; _est = est;
+    }
+    abstract SnapshotSpliterator<T> range( int idx, int fence, long est );
+    abstract T element( Object K, TypeV V );
+    public Spliterator<T> trySplit() {
+      final int lo = _idx, mid = (lo + _fence) >>> 1;
+      if( mid <= lo ) return null;
+      _idx = mid;
+      return range(lo,mid,_est >>>= 1);
+    }
+    public boolean tryAdvance( final Consumer<? super T> action ) {
+      if( action == null ) throw new NullPointerException();
+      while( _idx < _fence ) {
+        final int idx = _idx++;
+        final Object K = key(_sskvs,idx);
+        if( K == null || K == TOMBSTONE ) continue;
+        final TypeV V = bulk_val(_sskvs,idx,K);
+        if( V == null ) continue;
+        action.accept(element(K,V));
+        return true;
+      }
+      return false;
+    }
+    public void forEachRemaining( final Consumer<? super T> action ) {
+      if( action == null ) throw new NullPointerException();
+      final int lo = _idx, hi = _fence;
+      _idx = hi;
+      for( int idx=lo; idx<hi; idx++ ) {
+        final Object K = key(_sskvs,idx);
+        if( K == null || K == TOMBSTONE ) continue;
+        final TypeV V = bulk_val(_sskvs,idx,K);
+        if( V != null ) action.accept(element(K,V));
+      }
+    }
+    public long estimateSize() { return _est; }
+  }
+
+  private final class KeySpliterator extends SnapshotSpliterator<TypeK> {
+    KeySpliterator( Object[] kvs ) { this(kvs,0,len(kvs),size()); }
+    KeySpliterator( Object[] kvs, int idx, int fence, long est ) { super(kvs,idx,fence,est); }
+    SnapshotSpliterator<TypeK> range( int idx, int fence, long est ) { return new KeySpliterator(_sskvs,idx,fence,est); }
+    TypeK element( Object K, TypeV V ) { return (TypeK)K; }
+    public int characteristics() { return CONCURRENT | DISTINCT | NONNULL; }
+  }
+
+  private final class ValueSpliterator extends SnapshotSpliterator<TypeV> {
+    ValueSpliterator( Object[] kvs ) { this(kvs,0,len(kvs),size()); }
+    ValueSpliterator( Object[] kvs, int idx, int fence, long est ) { super(kvs,idx,fence,est); }
+    SnapshotSpliterator<TypeV> range( int idx, int fence, long est ) { return new ValueSpliterator(_sskvs,idx,fence,est); }
+    TypeV element( Object K, TypeV V ) { return V; }
+    public int characteristics() { return CONCURRENT | NONNULL; }
+  }
+
+  private final class EntrySpliterator extends SnapshotSpliterator<Map.Entry<TypeK,TypeV>> {
+    EntrySpliterator( Object[] kvs ) { this(kvs,0,len(kvs),size()); }
+    EntrySpliterator( Object[] kvs, int idx, int fence, long est ) { super(kvs,idx,fence,est); }
+    SnapshotSpliterator<Map.Entry<TypeK,TypeV>> range( int idx, int fence, long est ) { return new EntrySpliterator(_sskvs,idx,fence,est); }
+    Map.Entry<TypeK,TypeV> element( Object K, TypeV V ) { return new NBHMEntry((TypeK)K,V); }
+    public int characteristics() { return CONCURRENT | DISTINCT | NONNULL; }
+  }
+
   // --- writeObject -------------------------------------------------------
   // Write a NBHM to a stream
   private void writeObject(java.io.ObjectOutputStream s) throws IOException  {
@@ -21,6 +21,13 @@ import java.util.*;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
 import static org.jctools.util.UnsafeAccess.UNSAFE;
 import static org.jctools.util.UnsafeAccess.fieldOffset;
@@ -380,6 +387,123 @@ public class NonBlockingHashMapLong<TypeV>
     return replace(key.longValue(), oldValue, newValue);
   }
 
+  // --- compute -------------------------------------------------------------
+  // The compute family is done natively instead of with the ConcurrentMap
+  // defaults (a get then a putIfAbsent/replace/remove retry loop).  The key is
+  // looked up (and claimed if needed) once, after which the function is
+  // applied to the value found in the Value slot, and the result CAS'd into
+  // that slot; if the CAS fails the function is re-applied to the new value.
+  // Like the defaults, and unlike ConcurrentHashMap, no lock is held so the
+  // function may be applied more than once under contention, and the value
+  // computed by computeIfAbsent may be dropped for a value another thread
+  // inserted first.
+
+  // Modes of the compute family, one per compute-style call
+  private static final int COMPUTE_IF_ABSENT      = 0; // takes a LongFunction
+  private static final int COMPUTE_IF_ABSENT_BOXED= 1; // takes a Function of Long
+  private static final int COMPUTE_IF_PRESENT     = 2;
+  private static final int COMPUTE                = 3;
+  private static final int MERGE                  = 4;
+
+  /** If the specified key is not already associated with a value, attempts to
+   *  compute its value using the given mapping function and enters it into
+   *  this map unless <tt>null</tt>.
+   *  @return the current (existing or computed) value associated with the
+   *          specified key, or <tt>null</tt> if the computed value is null
+   *  @throws NullPointerException if the specified function is null */
+  public TypeV computeIfAbsent( long key, LongFunction<? extends TypeV> mappingFunction ) {
+    if( mappingFunction == null ) throw new NullPointerException();
+    return compute_impl(key, COMPUTE_IF_ABSENT, mappingFunction, null);
+  }
+
+  /** If the value for the specified key is present, attempts to compute a new
+   *  mapping given the key and its current mapped value.  If the function
+   *  returns <tt>null</tt>, the mapping is removed.
+   *  @return the new value associated with the specified key, or <tt>null</tt> if none
+   *  @throws NullPointerException if the specified function is null */
+  public TypeV computeIfPresent( long key, BiFunction<? super Long, ? super TypeV, ? extends TypeV> remappingFunction ) {
+    if( remappingFunction == null ) throw new NullPointerException();
+    return compute_impl(key, COMPUTE_IF_PRESENT, remappingFunction, null);
+  }
+
+  /** Attempts to compute a mapping for the specified key and its current
+   *  mapped value (or <tt>null</tt> if there is no current mapping).  If the
+   *  function returns <tt>null</tt>, the mapping is removed (or remains absent).
+   *  @return the new value associated with the specified key, or <tt>null</tt> if none
+   *  @throws NullPointerException if the specified function is null */
+  public TypeV compute( long key, BiFunction<? super Long, ? super TypeV, ? extends TypeV> remappingFunction ) {
+    if( remappingFunction == null ) throw new NullPointerException();
+    return compute_impl(key, COMPUTE, remappingFunction, null);
+  }
+
+  /** If the specified key is not already associated with a value, associates
+   *  it with the given value.  Otherwise, replaces the value with the results
+   *  of the given remapping function, or removes it if the result is
+   *  <tt>null</tt>.
+   *  @return the new value associated with the specified key, or <tt>null</tt> if none
+   *  @throws NullPointerException if the specified value or function is null */
+  public TypeV merge( long key, TypeV value, BiFunction<? super TypeV, ? super TypeV, ? extends TypeV> remappingFunction ) {
+    if( value == null || remappingFunction == null ) throw new NullPointerException();
+    return compute_impl(key, MERGE, remappingFunction, value);
+  }
+
+  /** Auto-boxing version of {@link #computeIfAbsent(long, LongFunction)}. */
+  @Override
+  public TypeV computeIfAbsent( Long key, Function<? super Long, ? extends TypeV> mappingFunction ) {
+    if( mappingFunction == null ) throw new NullPointerException();
+    return compute_impl(key.longValue(), COMPUTE_IF_ABSENT_BOXED, mappingFunction, null);
+  }
+  /** Auto-boxing version of {@link #computeIfPresent(long, BiFunction)}. */
+  @Override
+  public TypeV computeIfPresent( Long key, BiFunction<? super Long, ? super TypeV, ? extends TypeV> remappingFunction ) {
+    return computeIfPresent(key.longValue(), remappingFunction);
+  }
+  /** Auto-boxing version of {@link #compute(long, BiFunction)}. */
+  @Override
+  public TypeV compute( Long key, BiFunction<? super Long, ? super TypeV, ? extends TypeV> remappingFunction ) {
+    return compute(key.longValue(), remappingFunction);
+  }
+  /** Auto-boxing version of {@link #merge(long, Object, BiFunction)}. */
+  @Override
+  public TypeV merge( Long key, TypeV value, BiFunction<? super TypeV, ? super TypeV, ? extends TypeV> remappingFunction ) {
+    return merge(key.longValue(), value, remappingFunction);
+  }
+
+  private TypeV compute_impl( final long key, final int mode, final Object fn, final Object value ) {
+    if( key == NO_KEY ) {
+      while( true ) {           // Spin till we CAS the value, or have nothing to do
+        final Object V = _val_1;
+        final boolean absent = V == TOMBSTONE;
+        final Object newVal;
+        if( absent ) {
+          if( mode == COMPUTE_IF_PRESENT ) return null;
+          if( (newVal = remap(mode,fn,key,null,value)) == null ) return null;
+        } else {
+          if( mode <= COMPUTE_IF_ABSENT_BOXED ) return (TypeV)V;
+          newVal = remap(mode,fn,key,V,value);
+          if( newVal == V ) return (TypeV)V; // Fast cutout for no-change
+        }
+        if( CAS(_val_1_offset,V,newVal == null ? TOMBSTONE : newVal) )
+          return (TypeV)newVal;
+      }
+    }
+    final Object res = _chm.compute_impl(key, mode, fn, value, null);
+    assert !(res instanceof Prime);
+    assert res != TOMBSTONE;
+    return (TypeV)res;
+  }
+
+  // Apply the user function of a compute-style call.  'oldVal' is null if the
+  // key is absent.  Returns the new value, or null to remove (or not insert).
+  private static Object remap( final int mode, final Object fn, final long key, final Object oldVal, final Object value ) {
+    switch( mode ) {
+    case COMPUTE_IF_ABSENT:       return ((LongFunction<Object>      )fn).apply(key);
+    case COMPUTE_IF_ABSENT_BOXED: return ((Function  <Object,Object> )fn).apply(key);
+    case MERGE:                   return oldVal == null ? value : ((BiFunction<Object,Object,Object>)fn).apply(oldVal,value);
+    default:                      return ((BiFunction<Object,Object,Object>)fn).apply(key,oldVal);
+    }
+  }
+
   // --- help_copy -----------------------------------------------------------
   // Help along an existing resize operation.  This is just a fast cut-out
   // wrapper, to encourage inlining for the fast no-copy-in-progress case.  We
@@ -661,6 +785,90 @@ public class NonBlockingHashMapLong<TypeV>
       return (V==null && expVal!=null) ? TOMBSTONE : V;
     }
 
+    // --- compute_impl -------------------------------------------------------
+    // Compute, ComputeIfAbsent, ComputeIfPresent and Merge.  Same Key lookup
+    // as putIfMatch, except that a missing Key is only claimed once the
+    // function has produced a value to insert.  The Value slot is then
+    // updated by a CAS of the function result, re-applying the function to
+    // the current value after every failed CAS.  'absentVal' is the value
+    // already computed for an absent key (or null), carried over to a new
+    // table so the function is not re-applied just because of a resize.
+    // Returns the value to return to the caller, never a TOMBSTONE nor a Prime.
+    private Object compute_impl( final long key, final int mode, final Object fn, final Object value, Object absentVal ) {
+      final int len      = _keys.length;
+      int idx = (int)(key & (len-1)); // The first key
+
+      // ---
+      // Key-Claim stanza: spin till we find or claim the Key (or force a resizing).
+      int reprobe_cnt=0;
+      long   K;
+      Object V;
+      while( true ) {           // Spin till we get a Key slot
+        V = _vals[idx];         // Get old value
+        K = _keys[idx];         // Get current key
+        if( K == NO_KEY ) {     // Slot is free?
+          // The Key is not here.  Only claim the slot if there is something to insert.
+          if( mode == COMPUTE_IF_PRESENT ) return null;
+          if( absentVal == null && (absentVal = remap(mode,fn,key,null,value)) == null )
+            return null;
+          if( CAS_key(idx, NO_KEY, key) ) { // Claim slot for Key
+            _slots.add(1);      // Raise key-slots-used count
+            break;              // Got it!
+          }
+          // CAS to claim the key-slot failed, see putIfMatch
+          K = _keys[idx];       // CAS failed, get updated value
+          assert K != NO_KEY ;  // If keys[idx] is NO_KEY, CAS shoulda worked
+        }
+        // Key slot was not null, there exists a Key here
+        if( K == key )
+          break;                // Got it!
+
+        if( ++reprobe_cnt >= reprobe_limit(len) ) {
+          final CHM newchm = resize();
+          _nbhml.help_copy();   // help along an existing copy
+          return newchm.compute_impl(key,mode,fn,value,absentVal);
+        }
+
+        idx = (idx+1)&(len-1); // Reprobe!
+      } // End of spinning till we get a Key slot
+
+      while( true ) {           // Spin till we insert a value, or have nothing to do
+        // See if we want to move to a new table, as in putIfMatch
+        if( (V == null && tableFull(reprobe_cnt,len)) || V instanceof Prime ) {
+          resize();             // Force the new table copy to start
+          return copy_slot_and_check(idx,NO_MATCH_OLD).compute_impl(key,mode,fn,value,absentVal);
+        }
+
+        final boolean absent = V == null || V == TOMBSTONE;
+        final Object newVal;
+        if( absent ) {
+          if( mode == COMPUTE_IF_PRESENT ) return null;
+          if( absentVal == null && (absentVal = remap(mode,fn,key,null,value)) == null )
+            return null;
+          newVal = absentVal;
+        } else {
+          if( mode <= COMPUTE_IF_ABSENT_BOXED ) return V;
+          newVal = remap(mode,fn,key,V,value);
+          if( newVal == V ) return V; // Fast cutout for no-change
+        }
+
+        final Object putval = newVal == null ? TOMBSTONE : newVal;
+        if( CAS_val(idx, V, putval) ) {
+          // Adjust sizes - a striped counter
+          if(  absent && putval != TOMBSTONE ) _size.add( 1);
+          if( !absent && putval == TOMBSTONE ) _size.add(-1);
+          return newVal;
+        }
+
+        // CAS failed, another thread changed the value: re-apply the function
+        // on the new value (a Prime is picked up at the top of the loop).
+        // NOTE: need the volatile read, since otherwise the '_vals[idx]' load
+        // could be hoisted out of loop.
+        final CHM dummy = _newchm; // VOLATILE READ
+        V = _vals[idx];         // Get new value
+      }
+    }
+
     // --- tableFull ---------------------------------------------------------
     // Heuristic to decide if this table is too full, and we should start a
     // new table.  Note that if a 'get' call has reprobed too many times and
@@ -1055,6 +1263,7 @@ public class NonBlockingHashMapLong<TypeV>
       public int     size    (          ) { return NonBlockingHashMapLong.this.size    ( ); }
       public boolean contains( Object v ) { return NonBlockingHashMapLong.this.containsValue(v); }
       public Iterator<TypeV> iterator()   { return new SnapshotV(); }
+      public Spliterator<TypeV> spliterator() { return new ValueSpliterator(snapshot_chm()); }
     };
   }
 
@@ -1106,6 +1315,7 @@ public class NonBlockingHashMapLong<TypeV>
       public boolean contains( Object k ) { return NonBlockingHashMapLong.this.containsKey(k); }
       public boolean remove  ( Object k ) { return NonBlockingHashMapLong.this.remove  (k) != null; }
       public IteratorLong iterator()    { return new IteratorLong(); }
+      public Spliterator.OfLong spliterator() { return new KeySpliterator(snapshot_chm()); }
     };
   }
 
@@ -1176,9 +1386,123 @@ public class NonBlockingHashMapLong<TypeV>
         return v != null && v.equals(e.getValue());
       }
       public Iterator<Map.Entry<Long,TypeV>> iterator() { return new SnapshotE(); }
+      public Spliterator<Map.Entry<Long,TypeV>> spliterator() { return new EntrySpliterator(snapshot_chm()); }
     };
   }
 
+  // --- Spliterators ---------------------------------------------------------
+  // Spliterators for the key, value and entry views, and for keyStream.  They
+  // split the snapshot table into ranges of slots, so parallel streams over
+  // the views do not fall back on the iterator.  Slot -1 stands for NO_KEY.
+  // The size is estimated from size() when the table is snapshot, then halved
+  // on each split: as for ConcurrentHashMap's views they report CONCURRENT
+  // but not SIZED.
+
+  // Returns a top-level table with no copy in progress, see SnapshotV
+  private CHM snapshot_chm() {
+    while( true ) {
+      final CHM topchm = _chm;
+      if( topchm._newchm == null ) return topchm;
+      topchm.help_copy_impl(true);
+    }
+  }
+
+  // The live value of the Key in a snapshot slot, or null
+  private TypeV snapshot_val( final CHM chm, final int idx, final long K ) {
+    if( idx < 0 ) return get(NO_KEY);
+    final Object V = chm._vals[idx];
+    if( V instanceof Prime ) return get(K); // Copied since: look in the new table
+    if( V == null || V == TOMBSTONE ) return null;
+    // Volatile-read before returning V, as in get_impl
+    @SuppressWarnings("unused") final CHM newchm = chm._newchm;
+    return (TypeV)V;
+  }
+
+  private abstract class SnapshotSpliterator<T, C> implements Spliterator<T> {
+    final CHM _sschm;
+    final int _fence;           // One past the last slot
+    int _idx;                   // Next slot to visit, -1 for NO_KEY
+    long _est;                  // Estimated number of remaining elements
+    SnapshotSpliterator( final CHM chm, final int idx, final int fence, final long est ) {
+      _sschm = chm; _idx = idx; _fence = fence; _est = est;
+    }
+    abstract SnapshotSpliterator<T,C> range( int idx, int fence, long est );
+    abstract void accept( C action, long K, TypeV V );
+    public SnapshotSpliterator<T,C> trySplit() {
+      final int lo = _idx, mid = (lo + _fence) >>> 1;
+      if( mid <= lo ) return null;
+      _idx = mid;
+      return range(lo,mid,_est >>>= 1);
+    }
+    boolean advance( final C action ) {
+      if( action == null ) throw new NullPointerException();
+      while( _idx < _fence ) {
+        final int idx = _idx++;
+        final long K = idx < 0 ? NO_KEY : _sschm._keys[idx];
+        if( K == NO_KEY && idx >= 0 ) continue;
+        final TypeV V = snapshot_val(_sschm,idx,K);
+        if( V == null ) continue;
+        accept(action,K,V);
+        return true;
+      }
+      return false;
+    }
+    void forEach( final C action ) {
+      if( action == null ) throw new NullPointerException();
+      final int lo = _idx, hi = _fence;
+      _idx = hi;
+      for( int idx=lo; idx<hi; idx++ ) {
+        final long K = idx < 0 ? NO_KEY : _sschm._keys[idx];
+        if( K == NO_KEY && idx >= 0 ) continue;
+        final TypeV V = snapshot_val(_sschm,idx,K);
+        if( V != null ) accept(action,K,V);
+      }
+    }
+    public long estimateSize() { return _est; }
+  }
+
+  private abstract class ObjectSpliterator<T> extends SnapshotSpliterator<T,Consumer<? super T>> {
+    ObjectSpliterator( CHM chm, int idx, int fence, long est ) { super(chm,idx,fence,est); }
+    public boolean tryAdvance( Consumer<? super T> action ) { return advance(action); }
+    public void forEachRemaining( Consumer<? super T> action ) { forEach(action); }
+  }
+
+  private final class KeySpliterator extends SnapshotSpliterator<Long,LongConsumer> implements Spliterator.OfLong {
+    KeySpliterator( CHM chm ) { this(chm,-1,chm._keys.length,size()); }
+    KeySpliterator( CHM chm, int idx, int fence, long est ) { super(chm,idx,fence,est); }
+    KeySpliterator range( int idx, int fence, long est ) { return new KeySpliterator(_sschm,idx,fence,est); }
+    void accept( LongConsumer action, long K, TypeV V ) { action.accept(K); }
+    public KeySpliterator trySplit() { return (KeySpliterator)super.trySplit(); }
+    public boolean tryAdvance( LongConsumer action ) { return advance(action); }
+    public void forEachRemaining( LongConsumer action ) { forEach(action); }
+    public int characteristics() { return CONCURRENT | DISTINCT | NONNULL; }
+  }
+
+  private final class ValueSpliterator extends ObjectSpliterator<TypeV> {
+    ValueSpliterator( CHM chm ) { this(chm,-1,chm._keys.length,size()); }
+    ValueSpliterator( CHM chm, int idx, int fence, long est ) { super(chm,idx,fence,est); }
+    ValueSpliterator range( int idx, int fence, long est ) { return new ValueSpliterator(_sschm,idx,fence,est); }
+    void accept( Consumer<? super TypeV> action, long K, TypeV V ) { action.accept(V); }
+    public int characteristics() { return CONCURRENT | NONNULL; }
+  }
+
+  private final class EntrySpliterator extends ObjectSpliterator<Map.Entry<Long,TypeV>> {
+    EntrySpliterator( CHM chm ) { this(chm,-1,chm._keys.length,size()); }
+    EntrySpliterator( CHM chm, int idx, int fence, long est ) { super(chm,idx,fence,est); }
+    EntrySpliterator range( int idx, int fence, long est ) { return new EntrySpliterator(_sschm,idx,fence,est); }
+    void accept( Consumer<? super Map.Entry<Long,TypeV>> action, long K, TypeV V ) { action.accept(new NBHMLEntry(K,V)); }
+    public int characteristics() { return CONCURRENT | DISTINCT | NONNULL; }
+  }
+
+  /** Returns a sequential {@link LongStream} of the keys in this map, which
+   *  unlike {@code keySet().stream()} does not <strong>auto-box</strong> the
+   *  keys.  Like the key set's iterator the stream is "weakly consistent",
+   *  and it splits efficiently when made parallel.
+   *  @return a stream of the keys in this map */
+  public LongStream keyStream() {
+    return StreamSupport.longStream(new KeySpliterator(snapshot_chm()),false);
+  }
+
   // --- writeObject -------------------------------------------------------
   // Write a NBHML to a stream
   private void writeObject(java.io.ObjectOutputStream s) throws IOException  {
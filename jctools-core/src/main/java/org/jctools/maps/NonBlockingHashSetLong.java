@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Spliterator;
+
+/**
+ * A {@link Set} of primitive {@code long}s, a simple wrapper around the keys
+ * of a {@link NonBlockingHashMapLong}.  The {@code long} versions of {@link
+ * #add}, {@link #contains} and {@link #remove}, and the {@link
+ * IteratorLong#nextLong} of the iterator, never auto-box.  Every
+ * element maps to the same shared value, so there is no per-element value
+ * object: the space is that of the map's key and value arrays, proportional
+ * to the number of elements rather than (as with {@link NonBlockingSetInt})
+ * to the largest element.  All operations are Non-Blocking and multi-thread
+ * safe.
+ */
+public class NonBlockingHashSetLong extends AbstractSet<Long> implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final Object V = "";
+
+  private final NonBlockingHashMapLong<Object> _map;
+
+  /** Make a new empty {@link NonBlockingHashSetLong}.  */
+  public NonBlockingHashSetLong() { super(); _map = new NonBlockingHashMapLong<Object>(); }
+
+  /** Make a new empty {@link NonBlockingHashSetLong} with room for the given
+   *  number of elements before resizing.  */
+  public NonBlockingHashSetLong( final int initial_sz ) { super(); _map = new NonBlockingHashMapLong<Object>(initial_sz); }
+
+  /** Add {@code l} to the set.
+   *  @return <tt>true</tt> if {@code l} was added to the set, <tt>false</tt>
+   *  if {@code l} was already in the set.  */
+  public boolean add( final long l ) { return _map.putIfAbsent(l,V) == null; }
+  /** <strong>Auto-boxing</strong> version of {@link #add(long)}. */
+  public boolean add( final Long l ) { return add(l.longValue()); }
+
+  /**  @return <tt>true</tt> if {@code l} is in the set.  */
+  public boolean contains( final long l ) { return _map.containsKey(l); }
+  /** <strong>Auto-boxing</strong> version of {@link #contains(long)}. */
+  public boolean contains( final Object o ) { return _map.containsKey(o); }
+
+  /** Remove {@code l} from the set.
+   * @return <tt>true</tt> if {@code l} was removed to the set, <tt>false</tt>
+   * if {@code l} was not in the set.
+   */
+  public boolean remove( final long l ) { return _map.remove(l) == V; }
+  /** <strong>Auto-boxing</strong> version of {@link #remove(long)}. */
+  public boolean remove( final Object o ) { return _map.remove(o) == V; }
+
+  /** Current count of elements in the set.  Due to concurrent racing updates,
+   *  the size is only ever approximate.  Updates due to the calling thread are
+   *  immediately visible to calling thread.
+   *  @return count of elements.   */
+  public int size( ) { return _map.size(); }
+  /** Empty the set. */
+  public void clear( ) { _map.clear(); }
+
+  /** The elements as a long array.  The array may be zero-padded if elements
+   *  are concurrently removed. */
+  public long[] toLongArray( ) { return _map.keySetLong(); }
+
+  /** An iterator over the elements, with a <strong>non-auto-boxing</strong>
+   *  {@link IteratorLong#nextLong}.  Like the map's iterators it is weakly
+   *  consistent and supports {@code remove}. */
+  public IteratorLong iterator( ) { return new IteratorLong(); }
+
+  public Spliterator.OfLong spliterator( ) { return (Spliterator.OfLong)_map.keySet().spliterator(); }
+
+  /** A weakly consistent iterator over the elements. */
+  public class IteratorLong implements Iterator<Long> {
+    private final NonBlockingHashMapLong<Object>.IteratorLong _it = _map.new IteratorLong();
+    public boolean hasNext ( ) { return _it.hasNext(); }
+    /** Returns the next element, without auto-boxing. */
+    public long    nextLong( ) { return _it.nextLong(); }
+    /** <strong>Auto-boxing</strong> version of {@link #nextLong}. */
+    public Long    next    ( ) { return _it.nextLong(); }
+    public void    remove  ( ) { _it.remove(); }
+  }
+}
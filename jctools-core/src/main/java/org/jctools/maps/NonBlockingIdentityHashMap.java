@@ -21,6 +21,8 @@ import java.util.*;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import static org.jctools.util.UnsafeAccess.UNSAFE;
 import static org.jctools.util.UnsafeAccess.fieldOffset;
@@ -347,6 +349,63 @@ public class NonBlockingIdentityHashMap<TypeK, TypeV>
     return putIfMatch( key, newValue, oldValue ) == oldValue;
   }
 
+  // --- compute -------------------------------------------------------------
+  // The compute family is done natively instead of with the ConcurrentMap
+  // defaults (a get then a putIfAbsent/replace/remove retry loop).  The key is
+  // looked up (and claimed if needed) once, after which the function is
+  // applied to the value found in the Value slot, and the result CAS'd into
+  // that slot; if the CAS fails the function is re-applied to the new value.
+  // Like the defaults, and unlike ConcurrentHashMap, no lock is held so the
+  // function may be applied more than once under contention, and the value
+  // computed by computeIfAbsent may be dropped for a value another thread
+  // inserted first.
+
+  /** If the specified key is not already associated with a value, attempts to
+   *  compute its value using the given mapping function and enters it into
+   *  this map unless <tt>null</tt>.
+   *  @return the current (existing or computed) value associated with the
+   *          specified key, or <tt>null</tt> if the computed value is null
+   *  @throws NullPointerException if the specified key or function is null */
+  @Override
+  public TypeV computeIfAbsent( TypeK key, Function<? super TypeK, ? extends TypeV> mappingFunction ) {
+    if( mappingFunction == null ) throw new NullPointerException();
+    return (TypeV)compute_impl(this, _kvs, key, COMPUTE_IF_ABSENT, mappingFunction, null, null);
+  }
+
+  /** If the value for the specified key is present, attempts to compute a new
+   *  mapping given the key and its current mapped value.  If the function
+   *  returns <tt>null</tt>, the mapping is removed.
+   *  @return the new value associated with the specified key, or <tt>null</tt> if none
+   *  @throws NullPointerException if the specified key or function is null */
+  @Override
+  public TypeV computeIfPresent( TypeK key, BiFunction<? super TypeK, ? super TypeV, ? extends TypeV> remappingFunction ) {
+    if( remappingFunction == null ) throw new NullPointerException();
+    return (TypeV)compute_impl(this, _kvs, key, COMPUTE_IF_PRESENT, remappingFunction, null, null);
+  }
+
+  /** Attempts to compute a mapping for the specified key and its current
+   *  mapped value (or <tt>null</tt> if there is no current mapping).  If the
+   *  function returns <tt>null</tt>, the mapping is removed (or remains absent).
+   *  @return the new value associated with the specified key, or <tt>null</tt> if none
+   *  @throws NullPointerException if the specified key or function is null */
+  @Override
+  public TypeV compute( TypeK key, BiFunction<? super TypeK, ? super TypeV, ? extends TypeV> remappingFunction ) {
+    if( remappingFunction == null ) throw new NullPointerException();
+    return (TypeV)compute_impl(this, _kvs, key, COMPUTE, remappingFunction, null, null);
+  }
+
+  /** If the specified key is not already associated with a value, associates
+   *  it with the given value.  Otherwise, replaces the value with the results
+   *  of the given remapping function, or removes it if the result is
+   *  <tt>null</tt>.
+   *  @return the new value associated with the specified key, or <tt>null</tt> if none
+   *  @throws NullPointerException if the specified key, value or function is null */
+  @Override
+  public TypeV merge( TypeK key, TypeV value, BiFunction<? super TypeV, ? super TypeV, ? extends TypeV> remappingFunction ) {
+    if( value == null || remappingFunction == null ) throw new NullPointerException();
+    return (TypeV)compute_impl(this, _kvs, key, MERGE, remappingFunction, value, null);
+  }
+
   private final TypeV putIfMatch( Object key, Object newVal, Object oldVal ) {
     if (oldVal == null || newVal == null) throw new NullPointerException();
     final Object res = putIfMatch( this, _kvs, key, newVal, oldVal );
@@ -665,6 +724,123 @@ public class NonBlockingIdentityHashMap<TypeK, TypeV>
     return (V==null && expVal!=null) ? TOMBSTONE : V;
   }
 
+  // --- compute_impl --------------------------------------------------------
+  // Modes of compute_impl, one per compute-style call
+  private static final int COMPUTE_IF_ABSENT = 0;
+  private static final int COMPUTE_IF_PRESENT= 1;
+  private static final int COMPUTE           = 2;
+  private static final int MERGE             = 3;
+
+  // Apply the user function of a compute-style call.  'oldVal' is null if the
+  // key is absent.  Returns the new value, or null to remove (or not insert).
+  private static Object remap( final int mode, final Object fn, final Object key, final Object oldVal, final Object value ) {
+    switch( mode ) {
+    case COMPUTE_IF_ABSENT: return ((Function  <Object,Object>       )fn).apply(key);
+    case MERGE:             return oldVal == null ? value : ((BiFunction<Object,Object,Object>)fn).apply(oldVal,value);
+    default:                return ((BiFunction<Object,Object,Object>)fn).apply(key,oldVal);
+    }
+  }
+
+  /**
+   * Compute, ComputeIfAbsent, ComputeIfPresent and Merge.  Same Key lookup as
+   * {@link #putIfMatch}, except that a missing Key is only claimed once the
+   * function has produced a value to insert.  The Value slot is then updated
+   * by a CAS of the function result, re-applying the function to the current
+   * value after every failed CAS.
+   *
+   * @param absentVal the value already computed for an absent key, or null if
+   *                  none was computed yet.  Carried over to a new table, so
+   *                  the function is not re-applied just because of a resize.
+   * @return the value to return to the caller, never a TOMBSTONE nor a Prime
+   */
+  private static final Object compute_impl(
+      final NonBlockingIdentityHashMap topmap,
+      final Object[] kvs,
+      final Object key,
+      final int mode,
+      final Object fn,
+      final Object value,
+      Object absentVal)
+  {
+    final int fullhash = hash  (key); // throws NullPointerException if key null
+    final int len      = len   (kvs); // Count of key/value pairs, reads kvs.length
+    final CHM chm      = chm   (kvs); // Reads kvs[0]
+    int idx = fullhash & (len-1);
+
+    // ---
+    // Key-Claim stanza: spin till we find or claim the Key (or force a resizing).
+    int reprobe_cnt=0;
+    Object K=null, V=null;
+    Object[] newkvs=null;
+    while( true ) {             // Spin till we get a Key slot
+      V = val(kvs,idx);         // Get old value (before volatile read below!)
+      K = key(kvs,idx);         // Get current key
+      if( K == null ) {         // Slot is free?
+        // The Key is not here.  Only claim the slot if there is something to insert.
+        if( mode == COMPUTE_IF_PRESENT ) return null;
+        if( absentVal == null && (absentVal = remap(mode,fn,key,null,value)) == null )
+          return null;
+        if( CAS_key(kvs,idx, null, key ) ) { // Claim slot for Key
+          chm._slots.add(1);      // Raise key-slots-used count
+          break;                  // Got it!
+        }
+        // CAS to claim the key-slot failed, see putIfMatch
+        K = key(kvs,idx);       // CAS failed, get updated value
+        assert K != null;       // If keys[idx] is null, CAS shoulda worked
+      }
+      newkvs = chm._newkvs;     // VOLATILE READ before key compare
+
+      if( K == key )
+        break;                  // Got it!
+
+      if( ++reprobe_cnt >= reprobe_limit(len) || // too many probes or
+          key == TOMBSTONE ) { // found a TOMBSTONE key, means no more keys
+        newkvs = chm.resize(topmap,kvs);
+        topmap.help_copy(newkvs); // help along an existing copy
+        return compute_impl(topmap,newkvs,key,mode,fn,value,absentVal);
+      }
+
+      idx = (idx+1)&(len-1); // Reprobe!
+    } // End of spinning till we get a Key slot
+
+    while( true ) {             // Spin till we insert a value, or have nothing to do
+      // See if we want to move to a new table, as in putIfMatch
+      if( newkvs == null &&
+          ((V == null && chm.tableFull(reprobe_cnt,len)) || V instanceof Prime) )
+        newkvs = chm.resize(topmap,kvs); // Force the new table copy to start
+      if( newkvs != null )
+        return compute_impl(topmap,chm.copy_slot_and_check(topmap,kvs,idx,NO_MATCH_OLD),key,mode,fn,value,absentVal);
+
+      final boolean absent = V == null || V == TOMBSTONE;
+      final Object newVal;
+      if( absent ) {
+        if( mode == COMPUTE_IF_PRESENT ) return null;
+        if( absentVal == null && (absentVal = remap(mode,fn,key,null,value)) == null )
+          return null;
+        newVal = absentVal;
+      } else {
+        if( mode == COMPUTE_IF_ABSENT ) return V;
+        newVal = remap(mode,fn,key,V,value);
+        if( newVal == V ) return V; // Fast cutout for no-change
+      }
+
+      final Object putval = newVal == null ? TOMBSTONE : newVal;
+      if( CAS_val(kvs,idx,V,putval) ) {
+        // Adjust sizes - a striped counter
+        if(  absent && putval != TOMBSTONE ) chm._size.add( 1);
+        if( !absent && putval == TOMBSTONE ) chm._size.add(-1);
+        return newVal;
+      }
+
+      // CAS failed, another thread changed the value: re-apply the function
+      // on the new value (a Prime is picked up at the top of the loop).
+      // The volatile read also keeps the 'val(kvs,idx)' load from being hoisted
+      // out of the loop.
+      newkvs = chm._newkvs;     // VOLATILE READ
+      V = val(kvs,idx);         // Get new value
+    }
+  }
+
   // --- help_copy ---------------------------------------------------------
   // Help along an existing resize operation.  This is just a fast cut-out
   // wrapper, to encourage inlining for the fast no-copy-in-progress case.  We
@@ -0,0 +1,860 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+
+import org.jctools.util.RangeUtil;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeAccess.fieldOffset;
+
+
+/**
+ * A concurrent hash map with <strong>primitive long keys and primitive long
+ * values</strong>, built on the {@link NonBlockingHashMapLong} design.  Neither
+ * keys nor values are ever boxed, so counter style maps (see {@link
+ * #addAndGet}) do not allocate on update.
+ *
+ * <p>The value slots hold the values themselves, so a handful of values are
+ * reserved to mark empty, deleted and mid-copy slots: values below {@link
+ * #LOWEST_VALUE} (i.e. {@code Long.MIN_VALUE} to {@code Long.MIN_VALUE+5})
+ * cannot be stored, and are rejected with an {@link IllegalArgumentException}.
+ * Lookups for a missing key return {@link #NO_VALUE}.
+ *
+ * <p>All operations are multi-thread safe, and lock-free while no resize is
+ * in progress.  The map is <em>not</em> lock-free as a whole:
+ * {@link NonBlockingHashMapLong} stops updates to a slot being copied into a
+ * resized table by boxing the value in place, so that any thread can finish
+ * the copy, which a primitive slot cannot do.  Here the copying thread
+ * instead marks the slot as frozen, writes the value into the new table and
+ * only then marks the slot as copied; other threads visiting a frozen slot
+ * spin until the copying thread finishes that one slot, and so stall if it is
+ * descheduled mid-copy.  Resizes are otherwise shared by all threads visiting
+ * the table, as in {@link NonBlockingHashMapLong}.
+ *
+ * <p>Like {@link NonBlockingHashMapLong} the table never shrinks, and {@link
+ * #forEach} reflects the state of the table at some point at or since the
+ * start of the iteration.
+ */
+public class NonBlockingLongLongHashMap {
+
+  private static final int REPROBE_LIMIT=10; // Too many reprobes then force a table-resize
+
+  // --- Bits to allow Unsafe access to arrays
+  private static final int _Lbase  = UNSAFE.arrayBaseOffset(long[].class);
+  private static final int _Lscale = UNSAFE.arrayIndexScale(long[].class);
+  private static long rawIndex(final long[] ary, final int idx) {
+    assert idx >= 0 && idx < ary.length;
+    // Note the long-math requirement, to handle arrays of more than 2^31 bytes
+    return _Lbase + ((long)idx * _Lscale);
+  }
+
+  // --- Bits to allow Unsafe CAS'ing of the CHM field
+  private static final long _chm_offset = fieldOffset(NonBlockingLongLongHashMap.class, "_chm");
+  private static final long _val_1_offset = fieldOffset(NonBlockingLongLongHashMap.class, "_val_1");
+
+  private final boolean CAS( final long offset, final Object old, final Object nnn ) {
+    return UNSAFE.compareAndSwapObject(this, offset, old, nnn );
+  }
+  private final boolean CAS_val_1( final long old, final long nnn ) {
+    return UNSAFE.compareAndSwapLong(this, _val_1_offset, old, nnn );
+  }
+
+  // --- The Hash Table --------------------
+  private CHM _chm;
+  // This next field holds the value for Key 0 - the special key value which
+  // is the initial array value, and also means: no-key-inserted-yet.  It is
+  // volatile, unlike in NonBlockingHashMapLong, for atomic 64-bit reads.
+  private volatile long _val_1; // Value for Key: NO_KEY
+
+  // Time since last resize
+  private long _last_resize_milli;
+
+  // --- Minimum table size ----------------
+  private static final int MIN_SIZE_LOG=4;             //
+  private static final int MIN_SIZE=(1<<MIN_SIZE_LOG); // Must be power of 2
+
+  // --- Sentinels -------------------------
+  // Values are primitive, so the sentinels are reserved values at the very
+  // bottom of the long range, where an arithmetic overflow is needed to reach
+  // them.
+
+  /** The value returned for keys which are not in the map. */
+  public static final long NO_VALUE = Long.MIN_VALUE;
+  /** The lowest value which can be stored in the map, lower values are reserved. */
+  public static final long LOWEST_VALUE = Long.MIN_VALUE + 6;
+
+  // The Value slot was never written: the null of NonBlockingHashMapLong.
+  // The value arrays are filled with it before a table is published.
+  private static final long EMPTY = NO_VALUE;
+  // This K/V pair has been deleted (but the Key slot is forever claimed).
+  // The same Key can be reinserted with a new value later.
+  private static final long TOMBSTONE = Long.MIN_VALUE + 1;
+  // The Value slot is being copied into the new table by some thread which
+  // owns the copy.  No updates can happen to the slot in the old table.
+  private static final long FROZEN = Long.MIN_VALUE + 2;
+  // The Value slot was copied into the new table (or was empty or deleted
+  // when the resize started): the TOMBPRIME of NonBlockingHashMapLong.
+  private static final long COPIED = Long.MIN_VALUE + 3;
+  // No-Match-Old - putIfMatch does updates only if it matches the old value,
+  // and NO_MATCH_OLD basically counts as a wildcard match.
+  private static final long NO_MATCH_OLD = Long.MIN_VALUE + 4;
+  // Match-Any-not-null - putIfMatch does updates only if it find a real old
+  // value.
+  private static final long MATCH_ANY = Long.MIN_VALUE + 5;
+
+  // The old-table slot is frozen or copied, the 'Prime' test.
+  private static boolean isPrime( final long V ) { return V == FROZEN || V == COPIED; }
+
+  // I exclude 1 long from the 2^64 possibilities, and test for it before
+  // entering the main array.  The NO_KEY value must be zero, the initial
+  // value set by Java before it hands me the array.
+  private static final long NO_KEY = 0L;
+
+  private static long checkValue( final long val ) {
+    if( val < LOWEST_VALUE )
+      throw new IllegalArgumentException("value is reserved: "+val+" (must be >= LOWEST_VALUE)");
+    return val;
+  }
+
+  // --- reprobe_limit -----------------------------------------------------
+  // Heuristic to decide if we have reprobed toooo many times.  Running over
+  // the reprobe limit on a 'get' call acts as a 'miss'; on a 'put' call it
+  // can trigger a table resize.  Several places must have exact agreement on
+  // what the reprobe_limit is, so we share it here.
+  private static int reprobe_limit( int len ) {
+    return REPROBE_LIMIT + (len>>4);
+  }
+
+  // --- NonBlockingLongLongHashMap ------------------------------------------
+  // Constructors
+
+  /** Create a new NonBlockingLongLongHashMap with default minimum size. */
+  public NonBlockingLongLongHashMap( ) { this(MIN_SIZE); }
+
+  /** Create a new NonBlockingLongLongHashMap with initial room for the given
+   *  number of elements, thus avoiding internal resizing operations to reach
+   *  an appropriate size.  The initial size will be rounded up internally to
+   *  the next larger power of 2. */
+  public NonBlockingLongLongHashMap( final int initial_sz ) {
+    RangeUtil.checkPositiveOrZero(initial_sz, "initial_sz");
+    int i;                      // Convert to next largest power-of-2
+    for( i=MIN_SIZE_LOG; (1<<i) < initial_sz; i++ ) {/*empty*/}
+    _chm = new CHM(this,new ConcurrentAutoTable(),i);
+    _val_1 = TOMBSTONE;         // Always as-if deleted
+    _last_resize_milli = System.currentTimeMillis();
+  }
+
+  // --- wrappers ------------------------------------------------------------
+
+  /** Returns the number of key-value mappings in this map.
+   *  @return the number of key-value mappings in this map */
+  public int     size       ( )                     { return (_val_1==TOMBSTONE?0:1) + _chm.size(); }
+  /** Returns <tt>true</tt> if this map contains no key-value mappings.
+   *  @return <tt>true</tt> if this map contains no key-value mappings */
+  public boolean isEmpty    ( )                     { return size() == 0; }
+  /** Tests if the key in the table.
+   * @return <tt>true</tt> if the key is in the table */
+  public boolean containsKey( long key )            { return get(key) != NO_VALUE; }
+
+  /** Maps the specified key to the specified value in the table.
+   *  @param key key with which the specified value is to be associated
+   *  @param val value to be associated with the specified key
+   *  @return the previous value associated with <tt>key</tt>, or
+   *          {@link #NO_VALUE} if there was no mapping for <tt>key</tt>
+   *  @throws IllegalArgumentException if the value is reserved */
+  public long    put        ( long key, long val )  { return putIfMatch( key,checkValue(val),NO_MATCH_OLD);}
+
+  /** Atomically, do a {@link #put} if-and-only-if the key is not mapped.
+   *  Useful to ensure that only a single mapping for the key exists, even if
+   *  many threads are trying to create the mapping in parallel.
+   *  @return the previous value associated with the specified key,
+   *         or {@link #NO_VALUE} if there was no mapping for the key
+   *  @throws IllegalArgumentException if the value is reserved */
+  public long    putIfAbsent( long key, long val )  { return putIfMatch( key,checkValue(val),TOMBSTONE   );}
+
+  /** Removes the key (and its corresponding value) from this map.
+    * This method does nothing if the key is not in the map.
+    * @return the previous value associated with <tt>key</tt>, or
+    *         {@link #NO_VALUE} if there was no mapping for <tt>key</tt>*/
+  public long    remove     ( long key )            { return putIfMatch( key,TOMBSTONE,NO_MATCH_OLD);}
+
+  /** Atomically do a {@link #remove(long)} if-and-only-if the key is mapped
+   *  to the given value.
+   *  @throws IllegalArgumentException if the value is reserved */
+  public boolean remove     ( long key, long val )  { return putIfMatch( key,TOMBSTONE,checkValue(val) ) == val;}
+
+  /** Atomically do a <code>put(key,val)</code> if-and-only-if the key is
+   *  mapped to some value already.
+   *  @return the previous value associated with the specified key,
+   *         or {@link #NO_VALUE} if there was no mapping for the key
+   *  @throws IllegalArgumentException if the value is reserved */
+  public long    replace    ( long key, long val )  { return putIfMatch( key,checkValue(val),MATCH_ANY   );}
+
+  /** Atomically do a <code>put(key,newValue)</code> if-and-only-if the key is
+   *  mapped to <code>oldValue</code>.
+   *  @throws IllegalArgumentException if either value is reserved */
+  public boolean replace    ( long key, long oldValue, long newValue ) {
+    return putIfMatch( key, checkValue(newValue), checkValue(oldValue) ) == oldValue;
+  }
+
+  /** Atomically add the given delta to the value mapped to the key, where
+   *  a missing key counts as mapped to 0.
+   *  @return the updated value
+   *  @throws IllegalArgumentException if the updated value is reserved */
+  public long    addAndGet  ( long key, long delta ) { return getAndAdd(key,delta) + delta; }
+
+  /** Atomically add the given delta to the value mapped to the key, where
+   *  a missing key counts as mapped to 0.
+   *  @return the previous value, or 0 if there was no mapping for the key
+   *  @throws IllegalArgumentException if the updated value is reserved */
+  public long    getAndAdd  ( long key, long delta ) {
+    if( key == NO_KEY ) {
+      while( true ) {
+        final long curVal = _val_1;
+        final long oldVal = curVal == TOMBSTONE ? 0 : curVal;
+        if( CAS_val_1(curVal,checkValue(oldVal+delta)) )
+          return oldVal;
+      }
+    }
+    return _chm.getAndAdd(key,delta);
+  }
+
+  private long putIfMatch( long key, long newVal, long oldVal ) {
+    if( key == NO_KEY ) {
+      long curVal = _val_1;
+      if( oldVal == NO_MATCH_OLD || // Do we care about expected-Value at all?
+          curVal == oldVal ||       // No instant match already?
+          (oldVal == MATCH_ANY && curVal != TOMBSTONE) ) {
+        if( !CAS_val_1(curVal,newVal) ) // One shot CAS update attempt
+          curVal = _val_1;              // Failed; get failing witness
+      }
+      return curVal == TOMBSTONE ? NO_VALUE : curVal; // Return the last value present
+    }
+    final long res = _chm.putIfMatch( key, newVal, oldVal );
+    assert !isPrime(res);
+    assert res != EMPTY;
+    return res == TOMBSTONE ? NO_VALUE : res;
+  }
+
+  /** Removes all of the mappings from this map. */
+  public void clear() {         // Smack a new empty table down
+    CHM newchm = new CHM(this,new ConcurrentAutoTable(),MIN_SIZE_LOG);
+    while( !CAS(_chm_offset,_chm,newchm) ) { /*Spin until the clear works*/}
+    CAS_val_1(_val_1,TOMBSTONE);
+  }
+
+  // --- get -----------------------------------------------------------------
+  /** Returns the value to which the specified key is mapped, or {@link
+   *  #NO_VALUE} if this map contains no mapping for the key. */
+  // Never returns a sentinel other than NO_VALUE.
+  public final long get( long key ) {
+    if( key == NO_KEY ) {
+      final long V = _val_1;
+      return V == TOMBSTONE ? NO_VALUE : V;
+    }
+    final long V = _chm.get_impl(key);
+    assert !isPrime(V); // Never return a Prime
+    assert V != TOMBSTONE;
+    return V;
+  }
+
+  /** Returns the value to which the specified key is mapped, or the given
+   *  default value if this map contains no mapping for the key. */
+  public long getOrDefault( long key, long defaultValue ) {
+    final long V = get(key);
+    return V == NO_VALUE ? defaultValue : V;
+  }
+
+  // --- help_copy ---------------------------------------------------------
+  // Help along an existing resize operation.  This is just a fast cut-out
+  // wrapper, to encourage inlining for the fast no-copy-in-progress case.  We
+  // always help the top-most table copy, even if there are nested table
+  // copies in progress.
+  private void help_copy( ) {
+    // Read the top-level CHM only once.  We'll try to help this copy along,
+    // even if it gets promoted out from under us (i.e., the copy completes
+    // and another KVS becomes the top-level copy).
+    CHM topchm = _chm;
+    if( topchm._newchm == null ) return; // No copy in-progress
+    topchm.help_copy_impl(false);
+  }
+
+
+  // --- CHM -----------------------------------------------------------------
+  // The control structure for the NonBlockingLongLongHashMap
+  private static final class CHM {
+    // Back-pointer to top-level structure
+    final NonBlockingLongLongHashMap _nbhml;
+
+    // Size in active K,V pairs
+    private final ConcurrentAutoTable _size;
+    public int size () { return (int)_size.get(); }
+
+    // Count of used slots, to tell when table is full of dead unusable slots
+    private final ConcurrentAutoTable _slots;
+    public int slots() { return (int)_slots.get(); }
+
+    // ---
+    // New mappings, used during resizing.
+    // The 'next' CHM - created during a resize operation.  This represents
+    // the new table being copied from the old one.  It's the volatile
+    // variable that is read as we cross from one table to the next, to get
+    // the required memory orderings.  It monotonically transits from null to
+    // set (once).
+    volatile CHM _newchm;
+    private static final AtomicReferenceFieldUpdater<CHM,CHM> _newchmUpdater =
+      AtomicReferenceFieldUpdater.newUpdater(CHM.class,CHM.class, "_newchm");
+    // Set the _newchm field if we can.  AtomicUpdaters do not fail spuriously.
+    boolean CAS_newchm( CHM newchm ) {
+      return _newchmUpdater.compareAndSet(this,null,newchm);
+    }
+    // Count of threads attempting an initial resize, see NonBlockingHashMapLong
+    volatile long _resizers;
+    private static final AtomicLongFieldUpdater<CHM> _resizerUpdater =
+      AtomicLongFieldUpdater.newUpdater(CHM.class, "_resizers");
+
+    // --- key,val -------------------------------------------------------------
+    // Access K,V for a given idx
+    private boolean CAS_key( int idx, long old, long key ) {
+      return UNSAFE.compareAndSwapLong( _keys, rawIndex(_keys, idx), old, key );
+    }
+    private boolean CAS_val( int idx, long old, long val ) {
+      return UNSAFE.compareAndSwapLong( _vals, rawIndex(_vals, idx), old, val );
+    }
+    private long lv_val( int idx ) {
+      return UNSAFE.getLongVolatile( _vals, rawIndex(_vals, idx) );
+    }
+
+    final long [] _keys;
+    final long [] _vals;
+
+    // Simple constructor
+    CHM( final NonBlockingLongLongHashMap nbhml, ConcurrentAutoTable size, final int logsize ) {
+      _nbhml = nbhml;
+      _size = size;
+      _slots= new ConcurrentAutoTable();
+      _keys = new long[1<<logsize];
+      _vals = new long[1<<logsize];
+      // The initial array value (0) is a legal value, so mark the Value slots
+      // as never written before the table is published.
+      Arrays.fill(_vals, EMPTY);
+    }
+
+    // --- get_impl ----------------------------------------------------------
+    // Never returns a Prime nor a Tombstone.
+    private long get_impl ( final long key ) {
+      final int len     = _keys.length;
+      int idx = (int)(key & (len-1)); // First key hash
+
+      // Main spin/reprobe loop, looking for a Key hit
+      int reprobe_cnt=0;
+      while( true ) {
+        final long K = _keys[idx]; // Get key   before volatile read, could be NO_KEY
+        // Unlike a reference, a plain long load may tear on 32-bit JVMs, so
+        // the value is always read volatile.
+        final long V = lv_val(idx); // Get value, could be empty or Tombstone or Prime
+        if( K == NO_KEY ) return NO_VALUE; // A clear miss
+
+        // Key-compare
+        if( key == K ) {
+          // Key hit!  Check for no table-copy-in-progress
+          if( !isPrime(V) ) { // No copy?
+            if( V == TOMBSTONE ) return NO_VALUE;
+            // Volatile-read between reading a newly inserted Value and
+            // returning the Value, as in NonBlockingHashMapLong.
+            @SuppressWarnings("unused") final CHM newchm = _newchm; // VOLATILE READ before returning V
+            return V;           // EMPTY is NO_VALUE
+          }
+          // Key hit - but slot is (possibly partially) copied to the new table.
+          // Finish the copy & retry in the new table.
+          return copy_slot_and_check(idx,true).get_impl(key); // Retry in the new table
+        }
+        // get and put must have the same key lookup logic!  But only 'put'
+        // needs to force a table-resize for a too-long key-reprobe sequence.
+        // Check for too-many-reprobes on get.
+        if( ++reprobe_cnt >= reprobe_limit(len) ) // too many probes
+          return _newchm == null // Table copy in progress?
+            ? NO_VALUE           // Nope!  A clear miss
+            : copy_slot_and_check(idx,true).get_impl(key); // Retry in the new table
+
+        idx = (idx+1)&(len-1);    // Reprobe by 1!  (could now prefetch)
+      }
+    }
+
+    // --- putIfMatch ---------------------------------------------------------
+    // Put, Remove, PutIfAbsent, etc.  Return the old value.  If the returned
+    // value is equal to expVal (or expVal is NO_MATCH_OLD) then the put can
+    // be assumed to work (although might have been immediately overwritten).
+    // Only the path through copy_slot passes in an expected value of EMPTY,
+    // and putIfMatch only returns an EMPTY if passed in an expected EMPTY.
+    private long putIfMatch( final long key, final long putval, final long expVal ) {
+      assert putval != EMPTY;
+      assert !isPrime(putval);
+      assert !isPrime(expVal);
+      final int len      = _keys.length;
+      int idx = (int)(key & (len-1)); // The first key
+
+      // ---
+      // Key-Claim stanza: spin till we can claim a Key (or force a resizing).
+      int reprobe_cnt=0;
+      long K;
+      long V;
+      while( true ) {           // Spin till we get a Key slot
+        V = lv_val(idx);        // Get old value
+        K = _keys[idx];         // Get current key
+        if( K == NO_KEY ) {     // Slot is free?
+          // Found an empty Key slot - which means this Key has never been in
+          // this table.  No need to put a Tombstone - the Key is not here!
+          if( putval == TOMBSTONE ) return TOMBSTONE; // Not-now & never-been in this table
+          if( expVal == MATCH_ANY ) return TOMBSTONE; // Will not match, even after K inserts
+          // Claim the zero key-slot
+          if( CAS_key(idx, NO_KEY, key) ) { // Claim slot for Key
+            _slots.add(1);      // Raise key-slots-used count
+            break;              // Got it!
+          }
+          // CAS to claim the key-slot failed, see NonBlockingHashMapLong.
+          K = _keys[idx];       // CAS failed, get updated value
+          assert K != NO_KEY ;  // If keys[idx] is NO_KEY, CAS shoulda worked
+        }
+        // Key slot was not null, there exists a Key here
+        if( K == key )
+          break;                // Got it!
+
+        // get and put must have the same key lookup logic!  Lest 'get' give
+        // up looking too soon.
+        if( ++reprobe_cnt >= reprobe_limit(len) ) {
+          // We simply must have a new table to do a 'put'.  At this point a
+          // 'get' will also go to the new table (if any).  We do not need
+          // to claim a key slot (indeed, we cannot find a free one to claim!).
+          final CHM newchm = resize();
+          if( expVal != EMPTY ) _nbhml.help_copy(); // help along an existing copy
+          return newchm.putIfMatch(key,putval,expVal);
+        }
+
+        idx = (idx+1)&(len-1); // Reprobe!
+      } // End of spinning till we get a Key slot
+
+      // ---
+      // Found the proper Key slot, now update the matching Value slot.  We
+      // never put an EMPTY, so Value slots monotonically move from EMPTY to
+      // not-EMPTY (deleted Values use Tombstone).
+      if( putval == V ) return V; // Fast cutout for no-change
+
+      // See if we want to move to a new table (to avoid high average re-probe
+      // counts).  We only check on the initial set of a Value from EMPTY to
+      // not-EMPTY (i.e., once per key-insert).
+      if( (V == EMPTY && tableFull(reprobe_cnt,len)) ||
+          // Or we found a Prime: resize is already in progress.  The resize
+          // call below will do a CAS on _newchm forcing the read.
+          isPrime(V) ) {
+        resize();               // Force the new table copy to start
+        return copy_slot_and_check(idx,expVal != EMPTY).putIfMatch(key,putval,expVal);
+      }
+
+      // ---
+      // We are finally prepared to update the existing table.  Must match
+      // old, and we do not?  Then bail out now.  Note that either V or expVal
+      // might be TOMBSTONE.  Also V can be EMPTY, if we've never inserted a
+      // value before.  expVal can be EMPTY if we are called from copy_slot.
+      if( expVal != NO_MATCH_OLD && // Do we care about expected-Value at all?
+          V != expVal &&            // No match?
+          (expVal != MATCH_ANY || V == TOMBSTONE || V == EMPTY) &&
+          !(V == EMPTY && expVal == TOMBSTONE) ) // Match on EMPTY/TOMBSTONE combo
+        return (V == EMPTY) ? TOMBSTONE : V;     // Do not update!
+
+      // Actually change the Value in the Key,Value pair
+      if( CAS_val(idx, V, putval ) ) {
+        // CAS succeeded - we did the update!
+        // Both normal put's and table-copy calls putIfMatch, but table-copy
+        // does not (effectively) increase the number of live k/v pairs.
+        if( expVal != EMPTY ) {
+          // Adjust sizes - a striped counter
+          if(  (V == EMPTY || V == TOMBSTONE) && putval != TOMBSTONE ) _size.add( 1);
+          if( !(V == EMPTY || V == TOMBSTONE) && putval == TOMBSTONE ) _size.add(-1);
+        }
+      } else {                  // Else CAS failed
+        V = lv_val(idx);        // Get new value
+        // If a Prime'd value got installed, we need to re-run the put on the
+        // new table.  Otherwise we lost the CAS to another racing put.
+        if( isPrime(V) )
+          return copy_slot_and_check(idx,expVal != EMPTY).putIfMatch(key,putval,expVal);
+      }
+      // Win or lose the CAS, we are done.  If we won then we know the update
+      // happened as expected.  If we lost, it means "we won but another thread
+      // immediately stomped our update with no chance of a reader reading".
+      return (V == EMPTY && expVal != EMPTY) ? TOMBSTONE : V;
+    }
+
+    // --- getAndAdd ----------------------------------------------------------
+    // Same Key lookup as putIfMatch, always claiming the Key.  The Value slot
+    // is then updated by a CAS of the sum, re-reading the value after every
+    // failed CAS.  Returns the previous value, 0 for a missing Key.
+    private long getAndAdd( final long key, final long delta ) {
+      final int len      = _keys.length;
+      int idx = (int)(key & (len-1)); // The first key
+
+      // ---
+      // Key-Claim stanza: spin till we find or claim the Key (or force a resizing).
+      int reprobe_cnt=0;
+      long K;
+      long V;
+      while( true ) {           // Spin till we get a Key slot
+        V = lv_val(idx);        // Get old value
+        K = _keys[idx];         // Get current key
+        if( K == NO_KEY ) {     // Slot is free?
+          if( CAS_key(idx, NO_KEY, key) ) { // Claim slot for Key
+            _slots.add(1);      // Raise key-slots-used count
+            break;              // Got it!
+          }
+          K = _keys[idx];       // CAS failed, get updated value
+          assert K != NO_KEY ;  // If keys[idx] is NO_KEY, CAS shoulda worked
+        }
+        // Key slot was not null, there exists a Key here
+        if( K == key )
+          break;                // Got it!
+
+        if( ++reprobe_cnt >= reprobe_limit(len) ) {
+          final CHM newchm = resize();
+          _nbhml.help_copy();   // help along an existing copy
+          return newchm.getAndAdd(key,delta);
+        }
+
+        idx = (idx+1)&(len-1); // Reprobe!
+      } // End of spinning till we get a Key slot
+
+      while( true ) {           // Spin till the add is done
+        // See if we want to move to a new table, as in putIfMatch
+        if( (V == EMPTY && tableFull(reprobe_cnt,len)) || isPrime(V) ) {
+          resize();             // Force the new table copy to start
+          return copy_slot_and_check(idx,true).getAndAdd(key,delta);
+        }
+
+        final boolean absent = V == EMPTY || V == TOMBSTONE;
+        final long oldVal = absent ? 0 : V;
+        if( CAS_val(idx, V, checkValue(oldVal+delta)) ) {
+          if( absent ) _size.add(1); // Adjust sizes - a striped counter
+          return oldVal;
+        }
+
+        // CAS failed, another thread changed the value: retry on the new
+        // value (a Prime is picked up at the top of the loop).  The volatile
+        // read also keeps the load from being hoisted out of the loop.
+        V = lv_val(idx);        // Get new value
+      }
+    }
+
+    // --- forEach_impl -------------------------------------------------------
+    // Visit the live K,V pairs of a table with no copy in progress (when we
+    // started).  Slots frozen or copied since are looked up in the new table.
+    // Filler keys, written by copy_slot into free slots, are no real key.
+    private void forEach_impl( final LongLongConsumer action ) {
+      for( int i=0; i<_keys.length; i++ ) {
+        final long K = _keys[i];
+        if( K == NO_KEY || K == filler(i) ) continue;
+        long V = lv_val(i);
+        if( isPrime(V) ) V = _nbhml.get(K);
+        if( V != EMPTY && V != TOMBSTONE )
+          action.accept(K,V);
+      }
+    }
+
+    // --- tableFull ---------------------------------------------------------
+    // Heuristic to decide if this table is too full, and we should start a
+    // new table.  The invariant, see NonBlockingHashMapLong, is:
+    //   slots.estimate_sum >= max_reprobe_cnt >= reprobe_limit(len)
+    private final boolean tableFull( int reprobe_cnt, int len ) {
+      return
+        // Do the cheap check first: we allow some number of reprobes always
+        reprobe_cnt >= REPROBE_LIMIT &&
+        (reprobe_cnt >= reprobe_limit(len) ||
+         // More expensive check: see if the table is > 1/2 full.
+         _slots.estimate_get() >= (len>>1));
+    }
+
+    // --- resize ------------------------------------------------------------
+    // Resizing after too many probes.  "How Big???" heuristics are here,
+    // those of NonBlockingHashMapLong when optimizing for space.
+    // Callers will (not this routine) will 'help_copy' any in-progress copy.
+    private final CHM resize() {
+      // Check for resize already in progress, probably triggered by another thread
+      CHM newchm = _newchm;     // VOLATILE READ
+      if( newchm != null )      // See if resize is already in progress
+        return newchm;          // Use the new table already
+
+      // No copy in-progress, so start one.  First up: compute new table size.
+      int oldlen = _keys.length; // Old count of K,V pairs allowed
+      int sz = size();          // Get current table count of active K,V pairs
+      int newsz = sz;           // First size estimate
+
+      if( sz >= (oldlen>>1) )   // If we are >50% full of keys then...
+        newsz = oldlen<<1;      // Double size
+
+      // Last (re)size operation was very recent?  Then double again
+      // despite having few live keys, see NonBlockingHashMapLong.
+      long tm = System.currentTimeMillis();
+      if( newsz <= oldlen && // New table would shrink or hold steady?
+          tm <= _nbhml._last_resize_milli+10000)  // Recent resize (less than 10 sec ago)
+        newsz = oldlen<<1;      // Double the existing size
+
+      // Do not shrink, ever.
+      if( newsz < oldlen ) newsz = oldlen;
+
+      // Convert to power-of-2
+      int log2;
+      for( log2=MIN_SIZE_LOG; (1<<log2) < newsz; log2++ ) ; // Compute log2 of size
+      long len = ((1L << log2) << 1) + 2;
+      // prevent integer overflow - limit of 2^31 elements in a Java array
+      // so here, 2^30 + 2 is the largest number of elements in the hash table
+      if ((int)len!=len) {
+        log2 = 30;
+        len = (1L << log2) + 2;
+        if (sz > ((len >> 2) + (len >> 1))) throw new RuntimeException("Table is full.");
+      }
+
+      // Now limit the number of threads actually allocating memory to a
+      // handful - lest we have 750 threads all trying to allocate a giant
+      // resized array.
+      long r = _resizers;
+      while( !_resizerUpdater.compareAndSet(this,r,r+1) )
+        r = _resizers;
+      // Size calculation: 2 longs (K+V) per table entry, plus a handful.
+      long megs = ((((1L<<log2)<<1)+8)<<3/*word to bytes*/)>>20/*megs*/;
+      if( r >= 2 && megs > 0 ) { // Already 2 guys trying; wait and see
+        newchm = _newchm;        // Between dorking around, another thread did it
+        if( newchm != null )     // See if resize is already in progress
+          return newchm;         // Use the new table already
+        // Sleep a tad and see if the 2 guys already trying to make the table
+        // actually get around to making it happen.
+        try { Thread.sleep(megs); } catch( Exception e ) { /*empty*/}
+      }
+      // Last check, since the 'new' below is expensive and there is a chance
+      // that another thread slipped in a new thread while we ran the heuristic.
+      newchm = _newchm;
+      if( newchm != null )      // See if resize is already in progress
+        return newchm;          // Use the new table already
+
+      // New CHM - actually allocate the big arrays
+      newchm = new CHM(_nbhml,_size,log2);
+
+      // Another check after the slow allocation
+      if( _newchm != null )     // See if resize is already in progress
+        return _newchm;         // Use the new table already
+
+      // The new table must be CAS'd in so only 1 winner amongst duplicate
+      // racing resizing threads.  Extra CHM's will be GC'd.
+      if( !CAS_newchm( newchm ) ) // NOW a resize-is-in-progress!
+        newchm = _newchm;       // CAS failed? Reread new table
+      return newchm;
+    }
+
+
+    // The next part of the table to copy.  It monotonically transits from zero
+    // to _keys.length.  Visitors to the table can claim 'work chunks' by
+    // CAS'ing this field up, then copying the indicated indices from the old
+    // table to the new table.  Workers are not required to finish any chunk;
+    // the counter simply wraps and work is copied duplicately until somebody
+    // somewhere completes the count.
+    volatile long _copyIdx = 0;
+    static private final AtomicLongFieldUpdater<CHM> _copyIdxUpdater =
+      AtomicLongFieldUpdater.newUpdater(CHM.class, "_copyIdx");
+
+    // Work-done reporting.  Used to efficiently signal when we can move to
+    // the new table.  From 0 to len(oldkvs) refers to copying from the old
+    // table to the new.
+    volatile long _copyDone= 0;
+    static private final AtomicLongFieldUpdater<CHM> _copyDoneUpdater =
+      AtomicLongFieldUpdater.newUpdater(CHM.class, "_copyDone");
+
+    // --- help_copy_impl ----------------------------------------------------
+    // Help along an existing resize operation.  We hope its the top-level
+    // copy (it was when we started) but this CHM might have been promoted out
+    // of the top position.
+    private final void help_copy_impl( final boolean copy_all ) {
+      final CHM newchm = _newchm;
+      assert newchm != null;    // Already checked by caller
+      int oldlen = _keys.length; // Total amount to copy
+      final int MIN_COPY_WORK = Math.min(oldlen,1024); // Limit per-thread work
+
+      // ---
+      int panic_start = -1;
+      int copyidx=-9999;            // Fool javac to think it's initialized
+      while( _copyDone < oldlen ) { // Still needing to copy?
+        // Carve out a chunk of work.  The counter wraps around so every
+        // thread eventually tries to copy every slot repeatedly.  We "panic"
+        // if we have tried TWICE to copy every slot, and then copy it all
+        // ourselves, see NonBlockingHashMapLong.
+        if( panic_start == -1 ) { // No panic?
+          copyidx = (int)_copyIdx;
+          while( !_copyIdxUpdater.compareAndSet(this,copyidx,copyidx+MIN_COPY_WORK) )
+            copyidx = (int)_copyIdx;     // Re-read
+          if( !(copyidx < (oldlen<<1)) ) // Panic!
+            panic_start = copyidx;       // Record where we started to panic-copy
+        }
+
+        // We now know what to copy.  Try to copy.
+        int workdone = 0;
+        for( int i=0; i<MIN_COPY_WORK; i++ )
+          if( copy_slot((copyidx+i)&(oldlen-1)) ) // Made an oldtable slot go dead?
+            workdone++;         // Yes!
+        if( workdone > 0 )      // Report work-done occasionally
+          copy_check_and_promote( workdone );// See if we can promote
+
+        copyidx += MIN_COPY_WORK;
+        if( !copy_all && panic_start == -1 ) // No panic?
+          return;               // Then done copying after doing MIN_COPY_WORK
+      }
+      // Extra promotion check, in case another thread finished all copying
+      // then got stalled before promoting.
+      copy_check_and_promote( 0 ); // See if we can promote
+    }
+
+
+    // --- copy_slot_and_check -----------------------------------------------
+    // Copy slot 'idx' from the old table to the new table.  If this thread
+    // confirmed the copy, update the counters and check for promotion.
+    // Returns the result of reading the volatile _newchm, mostly as a
+    // convenience to callers.
+    private CHM copy_slot_and_check( int idx, boolean should_help ) {
+      // We're only here because the caller saw a Prime, which implies a
+      // table-copy is in progress.
+      assert _newchm != null;
+      if( copy_slot(idx) )      // Copy the desired slot
+        copy_check_and_promote(1); // Record the slot copied
+      // Generically help along any copy (except if called recursively from a helper)
+      if( should_help ) _nbhml.help_copy();
+      return _newchm;
+    }
+
+    // --- copy_check_and_promote --------------------------------------------
+    private final void copy_check_and_promote( int workdone ) {
+      int oldlen = _keys.length;
+      // We made a slot unusable and so did some of the needed copy work
+      long copyDone = _copyDone;
+      assert (copyDone+workdone) <= oldlen;
+      if( workdone > 0 ) {
+        while( !_copyDoneUpdater.compareAndSet(this,copyDone,copyDone+workdone) ) {
+          copyDone = _copyDone; // Reload, retry
+          assert (copyDone+workdone) <= oldlen;
+        }
+      }
+
+      // Check for copy being ALL done, and promote.  We only promote
+      // top-level copies.
+      if( copyDone+workdone == oldlen && // Ready to promote this table?
+          _nbhml._chm == this &&         // Looking at the top-level table?
+          // Attempt to promote
+          _nbhml.CAS(_chm_offset,this,_newchm) ) {
+        _nbhml._last_resize_milli = System.currentTimeMillis();  // Record resize time for next check
+      }
+    }
+
+    // --- copy_slot ---------------------------------------------------------
+    // Copy one K/V pair from oldkvs[i] to newkvs.  Returns true if we can
+    // confirm that we set an old-table slot to COPIED, and only returns after
+    // the slot is COPIED (by us or another thread).
+    //
+    // NonBlockingHashMapLong boxes the old value in a Prime, which both stops
+    // updates and carries the value for any thread to copy.  A primitive slot
+    // cannot do both, so the single thread which CAS'es the value to FROZEN
+    // owns the copy: it alone knows the value to write into the new table.
+    // Other threads spin until the slot becomes COPIED, which is the only
+    // point where this map may block: it is not lock-free while resizing.  As no thread writes a Key's slot in the
+    // new table before the Key is COPIED in the old one, the owner's write of
+    // an EMPTY new-table slot cannot fail.
+    private boolean copy_slot( int idx ) {
+      // Blindly set the key slot from NO_KEY to a filler key, to eagerly stop
+      // fresh put's from inserting new values in the old table when the old
+      // table is mid-resize.
+      long key;
+      while( (key=_keys[idx]) == NO_KEY )
+        CAS_key(idx, NO_KEY, filler(idx));
+
+      // ---
+      // Prevent new values from appearing in the old table.
+      long oldval = lv_val(idx); // Read OLD table
+      while( true ) {
+        if( oldval == COPIED ) return false; // Copy already complete here!
+        if( oldval == FROZEN ) { // Another thread is copying the value
+          Thread.yield();
+          oldval = lv_val(idx);
+          continue;
+        }
+        if( oldval == EMPTY || oldval == TOMBSTONE ) {
+          // Nothing to copy: the (absent) oldval is vacuously available in
+          // the new table.
+          if( CAS_val(idx,oldval,COPIED) ) return true;
+        } else if( CAS_val(idx,oldval,FROZEN) ) {
+          break;                // oldval is now frozen by us
+        }
+        oldval = lv_val(idx);   // Else try, try again
+      }
+
+      // ---
+      // Copy the value into the new table, then forever hide the old-table
+      // value and release any threads waiting on the slot.
+      _newchm.putIfMatch(key, oldval, EMPTY);
+      UNSAFE.putLongVolatile(_vals, rawIndex(_vals, idx), COPIED);
+      return true;
+    } // end copy_slot
+
+    // A non-zero key which hashes to the slot after idx.  Keys are only ever
+    // found within reprobe_limit(len) < len-1 slots after the one they hash
+    // to, so this key can never really be in slot idx: the filler in a slot
+    // is told apart from a real key, and a lookup of the same key value never
+    // probes the slot and mistakes the filler for itself.
+    private long filler( final int idx ) {
+      final int len = _keys.length;
+      return len + ((idx+1)&(len-1));
+    }
+  } // End of CHM
+
+
+  // --- forEach -------------------------------------------------------------
+  /** Performs the given action for each entry in this map, without boxing.
+   *  Entries added or removed concurrently may or may not be visited. */
+  public void forEach( LongLongConsumer action ) {
+    if( action == null ) throw new NullPointerException();
+    final long V1 = _val_1;
+    if( V1 != TOMBSTONE ) action.accept(NO_KEY,V1);
+    CHM topchm;
+    while( true ) {           // Verify no table-copy-in-progress
+      topchm = _chm;
+      if( topchm._newchm == null ) // No table-copy-in-progress
+        break;
+      // Table copy in-progress - so we cannot get a clean iteration.  We
+      // must help finish the table copy before we can start iterating.
+      topchm.help_copy_impl(true);
+    }
+    topchm.forEach_impl(action);
+  }
+
+  /** Returns a string representation of this map, in the style of {@link
+   *  java.util.AbstractMap#toString}. */
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder().append('{');
+    forEach(new LongLongConsumer() {
+      @Override
+      public void accept(long key, long value) {
+        if( sb.length() > 1 ) sb.append(", ");
+        sb.append(key).append('=').append(value);
+      }
+    });
+    return sb.append('}').toString();
+  }
+}
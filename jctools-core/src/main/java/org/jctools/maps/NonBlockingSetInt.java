@@ -44,6 +44,15 @@ import org.jctools.util.RangeUtil;
  *
  * The implementation is a simple bit-vector using CAS for update.
  *
+ * <p>The bulk operations ({@link #andCardinality}, {@link #union}, {@link
+ * #intersect}), {@link #nextSetBit} and the iterator read the bit-vector a
+ * word (64 elements) at a time.  Under concurrent updates they are weakly
+ * consistent, like the iterators of the concurrent collections: each word
+ * reflects the set at some point during the call, so an element added or
+ * removed concurrently may or may not be seen, and a result may not match
+ * the set at any single point in time.  Elements neither added nor removed
+ * during the call are always seen correctly, including across a resize.
+ *
  * @since 1.5
  * @author Cliff Click
  */
@@ -138,43 +147,136 @@ public class NonBlockingSetInt extends AbstractSet<Integer> implements Serializa
       ;
   }
 
+  /**
+   * Returns the smallest element at least {@code from}, or -1 if there is none.
+   * Scans a word of 64 elements at a time.
+   * @param from the element to start from, may be negative
+   * @return the next element, or -1
+   */
+  public int nextSetBit( int from ) {
+    if( from < 0 ) from = 0;
+    final int words = words();
+    for( int w = from>>6; w < words; w++ ) {
+      long bits = word(w);
+      if( w == from>>6 ) bits &= -1L<<from; // Drop elements below from (shift is mod 64)
+      if( bits != 0 ) return (w<<6)+Long.numberOfTrailingZeros(bits);
+    }
+    return -1;
+  }
+
+  /**
+   * Count of the elements in both this set and {@code other}, computed a word
+   * at a time without allocating.
+   * @return the size of the intersection
+   */
+  public int andCardinality( final NonBlockingSetInt other ) {
+    final int words = Math.min(words(), other.words());
+    int n = 0;
+    for( int w = 0; w < words; w++ ) {
+      final long bits = word(w);
+      if( bits != 0 ) n += Long.bitCount(bits & other.word(w));
+    }
+    return n;
+  }
+
+  /**
+   * A new set of the elements in either this set or {@code other}, computed a
+   * word at a time.
+   * @return the union
+   */
+  public NonBlockingSetInt union( final NonBlockingSetInt other ) {
+    final int words = Math.max(words(), other.words());
+    final NonBlockingSetInt res = new NonBlockingSetInt(words);
+    for( int w = 0; w < words; w++ )
+      res.init_word(w, word(w) | other.word(w));
+    return res;
+  }
+
+  /**
+   * A new set of the elements in both this set and {@code other}, computed a
+   * word at a time.
+   * @return the intersection
+   */
+  public NonBlockingSetInt intersect( final NonBlockingSetInt other ) {
+    final int words = Math.min(words(), other.words());
+    final NonBlockingSetInt res = new NonBlockingSetInt(words);
+    for( int w = 0; w < words; w++ ) {
+      final long bits = word(w);
+      if( bits != 0 ) res.init_word(w, bits & other.word(w));
+    }
+    return res;
+  }
+
+  // A new set with room for the given number of words, for the bulk operations
+  private NonBlockingSetInt( int words ) {
+    _nbsi = new NBSI((int)Math.min(Math.max((long)words<<6,63),Integer.MAX_VALUE), new ConcurrentAutoTable(), this);
+  }
+
+  // Count of words spanned by the set, following any resize in progress
+  private int words( ) {
+    NBSI nbsi = _nbsi;
+    while( nbsi._new != null ) nbsi = nbsi._new;
+    return nbsi._bits.length;
+  }
+
+  // The 64 elements from w<<6 as one word, bit b for element (w<<6)+b.  The
+  // sign bit of the raw word marks it immutable, and element (w<<6)+63 lives
+  // in the nested _nbsi64 array; that one element is looked up on its own.
+  private long word( final int w ) {
+    final NBSI nbsi = _nbsi;
+    if( w < nbsi._bits.length ) {
+      final long bits = nbsi._bits[w];
+      if( bits >= 0 )           // Mutable, so not copied yet: read it directly
+        return nbsi.contains((w<<6)+63) ? bits|Long.MIN_VALUE : bits;
+    } else if( nbsi._new == null ) {
+      return 0;                 // Beyond the end, and no larger table
+    }
+    // Mid-copy: test each element, which helps the copy along
+    long bits = 0;
+    for( int b = 0; b < 64; b++ )
+      if( contains((w<<6)+b) ) bits |= 1L<<b;
+    return bits;
+  }
+
+  // Write a word of a set under construction, not yet visible to other threads
+  private void init_word( final int w, final long bits ) {
+    if( bits == 0 ) return;
+    final long low = bits & Long.MAX_VALUE;
+    _nbsi._bits[w] = low;
+    _nbsi._size.add(Long.bitCount(low));
+    if( bits < 0 ) add((w<<6)+63); // The 64th element goes in the nested array
+  }
+
   /** Verbose printout of internal structure for debugging. */
   public void print() { _nbsi.print(0); }
 
   /**
    * Standard Java {@link Iterator}.  Not very efficient because it
-   * auto-boxes the returned values.
+   * auto-boxes the returned values; use {@link #nextSetBit} to walk the
+   * elements without boxing.  The elements are found a word at a time.
    */
   public Iterator<Integer> iterator( ) { return new iter(); }
 
   private class iter implements Iterator<Integer> {
-    NBSI _nbsi2;
-    int _idx  = -1;
+    int _w = -1;                // Index of the current word
+    long _cur;                  // Elements of the current word not yet returned
     int _prev = -1;
-    iter() { _nbsi2 = _nbsi; advance(); }
-    public boolean hasNext() { return _idx != -2; }
-    private void advance() {
-      while( true ) {
-        _idx++;                 // Next index
-        while( (_idx>>6) >= _nbsi2._bits.length ) { // Index out of range?
-          if( _nbsi2._new == null ) { // New table?
-            _idx = -2;          // No, so must be all done
-            return;             //
-          }
-          _nbsi2 = _nbsi2._new; // Carry on, in the new table
-        }
-        if( _nbsi2.contains(_idx) ) return;
+    public boolean hasNext() {
+      while( _cur == 0 ) {
+        if( ++_w >= words() ) { _w--; return false; }
+        _cur = word(_w);
       }
+      return true;
     }
     public Integer next() {
-      if( _idx == -1 ) throw new NoSuchElementException();
-      _prev = _idx;
-      advance();
+      if( !hasNext() ) throw new NoSuchElementException();
+      _prev = (_w<<6)+Long.numberOfTrailingZeros(_cur);
+      _cur &= _cur-1;           // Clear the lowest set bit
       return _prev;
     }
     public void remove() {
       if( _prev == -1 ) throw new IllegalStateException();
-      _nbsi2.remove(_prev);
+      NonBlockingSetInt.this.remove(_prev);
       _prev = -1;
     }
   }
@@ -0,0 +1,300 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A multi-threaded sparse bit-vector set of {@code ints}.  Like {@link
+ * NonBlockingSetInt} all operations are non-blocking and multi-threaded safe,
+ * and {@link #add(int)} and {@link #remove(int)} are a CAS on a single word of
+ * bits; unlike it the space used is in proportion to the number of distinct
+ * regions of the int space in use rather than to the largest element, and any
+ * {@code int}, negative ones included, may be added.
+ *
+ * <p>The bits are held in fixed size blocks of {@value #BLOCK_BITS} bits,
+ * found through a directory indexed by the high bits of the element.  Blocks
+ * are allocated and CAS-installed the first time an element falls in them,
+ * and are never freed until {@link #clear}.  So that an empty or tiny set
+ * stays small, the directory itself is a fixed array of {@value #DIR_PAGES}
+ * pages of {@value #PAGE_BLOCKS} blocks each, also installed lazily.  A single
+ * element costs about 9Kb; a million elements clustered in a range of ten
+ * million cost about 1.3Mb, where a {@link NonBlockingSetInt} ranging that far
+ * costs the same but one id near {@code 2^31} costs it 256Mb.
+ *
+ * <p>Iteration is in unsigned order (0 to {@link Integer#MAX_VALUE}, then the
+ * negative elements) and skips pages and blocks never written, and whole zero
+ * words within blocks.  It is weakly consistent: elements added or removed
+ * during the iteration may or may not be returned.
+ *
+ * <p>As with {@link NonBlockingSetInt}, prefer the {@code int} versions of
+ * {@link #add(int)}, {@link #contains(int)} and {@link #remove(int)} to the
+ * auto-boxing {@link java.util.Set} ones.
+ */
+public class NonBlockingSparseSetInt extends AbstractSet<Integer> implements Serializable {
+  private static final long serialVersionUID = 1234123412341234123L;
+
+  // An element splits into page:10 | block:10 | bit:12 bits
+  private static final int BLOCK_SHIFT = 12;
+  private static final int PAGE_SHIFT  = 10;
+  static final int BLOCK_BITS  = 1<<BLOCK_SHIFT;
+  static final int PAGE_BLOCKS = 1<<PAGE_SHIFT;
+  static final int DIR_PAGES   = 1<<(32-BLOCK_SHIFT-PAGE_SHIFT);
+  private static final int BLOCK_WORDS = BLOCK_BITS>>6;
+
+  // --- Bits to allow Unsafe access to arrays
+  private static final int _Obase  = UNSAFE.arrayBaseOffset(Object[].class);
+  private static final int _Oscale = UNSAFE.arrayIndexScale(Object[].class);
+  private static final int _Lbase  = UNSAFE.arrayBaseOffset(long[].class);
+  private static final int _Lscale = UNSAFE.arrayIndexScale(long[].class);
+  private static long rawIndex(final Object[] ary, final int idx) {
+    assert idx >= 0 && idx < ary.length;
+    return _Obase + (idx * (long)_Oscale);
+  }
+  private static long rawIndex(final long[] ary, final int idx) {
+    assert idx >= 0 && idx < ary.length;
+    return _Lbase + (idx * (long)_Lscale);
+  }
+
+  // The directory and its element count, swapped wholesale by clear()
+  private transient volatile Dir _dir = new Dir();
+
+  /** Create a new empty sparse bit-vector */
+  public NonBlockingSparseSetInt( ) { }
+
+  /**
+   * Add {@code i} to the set.  Uppercase {@link Integer} version of add,
+   * requires auto-unboxing.  When possible use the {@code int} version of
+   * {@link #add(int)} for efficiency.
+   * @return <tt>true</tt> if i was added to the set.
+   */
+  public boolean add ( final Integer i ) { return add(i.intValue()); }
+  /**
+   * Test if {@code o} is in the set.  This is the uppercase {@link Integer}
+   * version of contains, requires a type-check and auto-unboxing.
+   * @return <tt>true</tt> if i was in the set.
+   */
+  public boolean contains( final Object  o ) {
+    return o instanceof Integer && contains(((Integer) o).intValue());
+  }
+  /**
+   * Remove {@code o} from the set.  This is the uppercase {@link Integer}
+   * version of remove, requires a type-check and auto-unboxing.
+   * @return <tt>true</tt> if i was removed from the set.
+   */
+  public boolean remove( final Object  o ) {
+    return o instanceof Integer && remove(((Integer) o).intValue());
+  }
+
+  /**
+   * Add {@code i} to the set.  This is the lower-case '{@code int}' version
+   * of {@link #add} - no autoboxing.
+   * @return <tt>true</tt> if i was added to the set.
+   */
+  public boolean add( final int i ) {
+    final Dir dir = _dir;
+    final long[] bits = dir.block(i,true);
+    final int w = (i>>6)&(BLOCK_WORDS-1);
+    final long mask = 1L<<i;    // Shifts are mod 64
+    long old;
+    do {
+      old = bits[w];            // Read old bits
+      if( (old & mask) != 0 ) return false; // Bit is already set?
+    } while( !CAS(bits, w, old, old | mask) );
+    dir._size.add(1);
+    return true;
+  }
+  /**
+   * Test if {@code i} is in the set.  This is the lower-case '{@code int}'
+   * version of {@link #contains} - no autoboxing.
+   * @return <tt>true</tt> if i was in the set.
+   */
+  public boolean contains( final int i ) {
+    final long[] bits = _dir.block(i,false);
+    return bits != null && (bits[(i>>6)&(BLOCK_WORDS-1)] & (1L<<i)) != 0;
+  }
+  /**
+   * Remove {@code i} from the set.  This is the fast lower-case '{@code int}'
+   * version of {@link #remove} - no autoboxing.
+   * @return <tt>true</tt> if i was removed from the set.
+   */
+  public boolean remove( final int i ) {
+    final Dir dir = _dir;
+    final long[] bits = dir.block(i,false);
+    if( bits == null ) return false; // Block never written, so i is not in it
+    final int w = (i>>6)&(BLOCK_WORDS-1);
+    final long mask = 1L<<i;
+    long old;
+    do {
+      old = bits[w];            // Read old bits
+      if( (old & mask) == 0 ) return false; // Bit is already clear?
+    } while( !CAS(bits, w, old, old & ~mask) );
+    dir._size.add(-1);
+    return true;
+  }
+
+  /**
+   * Current count of elements in the set.  Due to concurrent racing updates,
+   * the size is only ever approximate.  Updates due to the calling thread are
+   * immediately visible to calling thread.
+   * @return count of elements.
+   */
+  public int size( ) { return (int)_dir._size.get(); }
+  /** Empty the set, releasing all blocks. */
+  public void clear( ) { _dir = new Dir(); }
+
+  /** @return the number of blocks of {@value #BLOCK_BITS} bits allocated. */
+  public int blocks( ) {
+    final Object[] pages = _dir._pages;
+    int n = 0;
+    for( int p=0; p<DIR_PAGES; p++ ) {
+      final Object[] page = (Object[])UNSAFE.getObjectVolatile(pages, rawIndex(pages,p));
+      if( page == null ) continue;
+      for( int b=0; b<PAGE_BLOCKS; b++ )
+        if( UNSAFE.getObjectVolatile(page, rawIndex(page,b)) != null ) n++;
+    }
+    return n;
+  }
+
+  private static boolean CAS( final long[] bits, final int idx, final long old, final long nnn ) {
+    return UNSAFE.compareAndSwapLong(bits, rawIndex(bits, idx), old, nnn);
+  }
+
+  /**
+   * An iterator over the elements in unsigned order, with a
+   * <strong>non-auto-boxing</strong> {@link IteratorInt#nextInt}.
+   */
+  public IteratorInt iterator( ) { return new IteratorInt(); }
+
+  /** A weakly consistent iterator over the elements, in unsigned order. */
+  public class IteratorInt implements Iterator<Integer> {
+    private final Object[] _pages = _dir._pages;
+    private int _page  = 0;     // Page of the next block to scan
+    private int _block = -1;    // Block within the page of _bits
+    private long[] _bits;       // Block being scanned, or null
+    private int _word  = 0;     // Next word of _bits to scan
+    private long _cur;          // Bits of the current word not returned yet
+    private int _base;          // Element of bit 0 of the current word
+    private boolean _done;
+    private int _prev;
+    private boolean _has_prev;
+
+    public boolean hasNext() {
+      while( _cur == 0 ) {
+        if( _done ) return false;
+        advance();
+      }
+      return true;
+    }
+    // Load the next non-zero word into _cur, or set _done
+    private void advance() {
+      while( true ) {
+        if( _bits != null ) {
+          while( _word < BLOCK_WORDS ) {
+            final int w = _word++;
+            final long bits = _bits[w];
+            if( bits != 0 ) {   // Skip whole zero words
+              _cur = bits;
+              _base = (((_page<<PAGE_SHIFT)|_block)<<BLOCK_SHIFT)+(w<<6);
+              return;
+            }
+          }
+          _bits = null;
+        }
+        // Next block, skipping uninstalled pages and blocks
+        while( _bits == null ) {
+          if( ++_block == PAGE_BLOCKS ) { _block = 0; _page++; }
+          if( _page == DIR_PAGES ) { _done = true; return; }
+          final Object[] page = (Object[])UNSAFE.getObjectVolatile(_pages, rawIndex(_pages,_page));
+          if( page == null ) { _block = PAGE_BLOCKS-1; continue; }
+          _bits = (long[])UNSAFE.getObjectVolatile(page, rawIndex(page,_block));
+        }
+        _word = 0;
+      }
+    }
+    public int nextInt() {
+      if( !hasNext() ) throw new NoSuchElementException();
+      final int bit = Long.numberOfTrailingZeros(_cur);
+      _cur &= _cur-1;           // Clear the lowest set bit
+      _prev = _base+bit;
+      _has_prev = true;
+      return _prev;
+    }
+    /** <strong>Auto-boxing</strong> version of {@link #nextInt}. */
+    public Integer next() { return nextInt(); }
+    public void remove() {
+      if( !_has_prev ) throw new IllegalStateException();
+      NonBlockingSparseSetInt.this.remove(_prev);
+      _has_prev = false;
+    }
+  }
+
+  // --- writeObject -------------------------------------------------------
+  // Write the element count then the elements
+  private void writeObject(java.io.ObjectOutputStream s) throws IOException  {
+    s.defaultWriteObject();     // Nothing to write
+    final int[] elems = new int[size()];
+    int n = 0;
+    for( IteratorInt it = iterator(); it.hasNext() && n < elems.length; )
+      elems[n++] = it.nextInt();
+    s.writeInt(n);
+    for( int i=0; i<n; i++ )
+      s.writeInt(elems[i]);
+  }
+
+  // --- readObject --------------------------------------------------------
+  private void readObject(java.io.ObjectInputStream s) throws IOException, ClassNotFoundException  {
+    s.defaultReadObject();      // Read nothing
+    _dir = new Dir();
+    final int n = s.readInt();
+    for( int i=0; i<n; i++ )
+      add(s.readInt());
+  }
+
+  // --- Dir -----------------------------------------------------------------
+  private static final class Dir {
+    // Used to count elements: a high-performance counter.
+    final ConcurrentAutoTable _size = new ConcurrentAutoTable();
+    // Pages of blocks of bits, both installed lazily with a CAS from null
+    final Object[] _pages = new Object[DIR_PAGES];
+
+    // The block holding bit i, installing it (and its page) if asked to.
+    // Returns null if not installing and the block is not there.
+    long[] block( final int i, final boolean install ) {
+      final int p = i>>>(BLOCK_SHIFT+PAGE_SHIFT);
+      Object[] page = (Object[])UNSAFE.getObjectVolatile(_pages, rawIndex(_pages,p));
+      if( page == null ) {
+        if( !install ) return null;
+        final Object[] nnn = new Object[PAGE_BLOCKS];
+        // One-shot CAS; if it fails somebody else installed the page
+        page = UNSAFE.compareAndSwapObject(_pages, rawIndex(_pages,p), null, nnn)
+          ? nnn : (Object[])UNSAFE.getObjectVolatile(_pages, rawIndex(_pages,p));
+      }
+      final int b = (i>>>BLOCK_SHIFT)&(PAGE_BLOCKS-1);
+      long[] bits = (long[])UNSAFE.getObjectVolatile(page, rawIndex(page,b));
+      if( bits == null ) {
+        if( !install ) return null;
+        final long[] nnn = new long[BLOCK_WORDS];
+        bits = UNSAFE.compareAndSwapObject(page, rawIndex(page,b), null, nnn)
+          ? nnn : (long[])UNSAFE.getObjectVolatile(page, rawIndex(page,b));
+      }
+      return bits;
+    }
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A weak-keyed variant of {@link NonBlockingIdentityHashMap}, for attaching
+ * data to live objects without keeping them alive: keys are compared by
+ * identity and held through {@link WeakReference}s, and once a key is
+ * collected its entry goes away.
+ *
+ * <p>The map is a {@link NonBlockingHashMap} of weak references, hashed and
+ * compared through a {@link HashingStrategy} which looks through a reference
+ * to its referent.  A lookup passes the caller's key straight in, so {@link
+ * #get} and {@link #containsKey} stay lock-free and allocation-free; a put
+ * allocates the reference.
+ *
+ * <p>Collected keys are dropped cooperatively, with no cleaner thread: the
+ * references are registered with a {@link ReferenceQueue}, and every update
+ * (and {@link #size}) first drains the queue and removes their entries.
+ * Polling an empty queue is a single read.  A map which stops being updated
+ * keeps its stale values until {@link #expungeStaleEntries} is called; they
+ * are never returned, but are counted by {@link #size} until drained.
+ * Iterators skip entries whose key was collected.
+ *
+ * <p> Like {@link NonBlockingHashMap}, this class does <em>not</em> allow
+ * <tt>null</tt> to be used as a key or value, and it is not serializable.
+ *
+ * @param <TypeK> the type of keys maintained by this map
+ * @param <TypeV> the type of mapped values
+ */
+public class NonBlockingWeakIdentityHashMap<TypeK, TypeV>
+  extends AbstractMap<TypeK, TypeV>
+  implements ConcurrentMap<TypeK, TypeV> {
+
+  // A key, with its referent's identity hash memoized: the map re-hashes keys
+  // when it resizes, after the referent may have gone.
+  private static final class WeakKey extends WeakReference<Object> {
+    final int _hash;
+    WeakKey( final Object key, final ReferenceQueue<Object> queue ) {
+      super(key,queue);
+      _hash = System.identityHashCode(key);
+    }
+  }
+
+  // Hashes and compares references by their referents, so lookups need not
+  // wrap the key.  A cleared reference only equals itself, which is how
+  // expunging finds its entry.
+  private static final HashingStrategy<Object> WEAK_IDENTITY = new HashingStrategy<Object>() {
+    public int hashCode( final Object key ) {
+      return key instanceof WeakKey ? ((WeakKey)key)._hash : System.identityHashCode(key);
+    }
+    public boolean equals( final Object a, final Object b ) {
+      if( a == b ) return true;
+      final Object ra = a instanceof WeakKey ? ((WeakKey)a).get() : a;
+      return ra != null && ra == (b instanceof WeakKey ? ((WeakKey)b).get() : b);
+    }
+  };
+
+  private final NonBlockingHashMap<Object,TypeV> _map;
+  private final ReferenceQueue<Object> _queue = new ReferenceQueue<Object>();
+
+  /** Create a new NonBlockingWeakIdentityHashMap with default minimum size
+   *  (currently set to 8 K/V pairs). */
+  public NonBlockingWeakIdentityHashMap( ) { _map = new NonBlockingHashMap<Object,TypeV>(WEAK_IDENTITY); }
+
+  /** Create a new NonBlockingWeakIdentityHashMap with initial room for the
+   *  given number of elements, thus avoiding internal resizing operations to
+   *  reach an appropriate size.
+   *  @param initial_sz The initial number of elements to allow before the
+   *  table resizes */
+  public NonBlockingWeakIdentityHashMap( final int initial_sz ) {
+    _map = new NonBlockingHashMap<Object,TypeV>(initial_sz,WEAK_IDENTITY);
+  }
+
+  /** Remove the entries whose keys were collected.  Updates do this on their
+   *  own; call it to release the stale values of a map which is no longer
+   *  updated. */
+  public void expungeStaleEntries( ) {
+    Reference<?> ref;
+    while( (ref = _queue.poll()) != null )
+      _map.remove(ref);         // Matches only that very reference
+  }
+
+  /** Returns the number of key-value mappings in this map, after dropping the
+   *  entries whose keys were collected.
+   *  @return the number of key-value mappings in this map */
+  @Override
+  public int size( ) { expungeStaleEntries(); return _map.size(); }
+
+  /** Tests if the key is in the table, by identity.  Lock-free.
+   *  @return <tt>true</tt> if the key is in the table
+   *  @throws NullPointerException if the specified key is null  */
+  @Override
+  public boolean containsKey( final Object key ) { return _map.containsKey(key); }
+
+  /** Tests if the value is mapped by a key in the table, using {@link
+   *  Object#equals}.  This requires a full scan of the table.
+   *  @throws NullPointerException if the specified value is null */
+  @Override
+  public boolean containsValue( final Object val ) { return _map.containsValue(val); }
+
+  /** Returns the value to which the key is mapped, by identity, or {@code
+   *  null} if there is none.  Lock-free and allocation-free.
+   *  @throws NullPointerException if the specified key is null */
+  @Override
+  public TypeV get( final Object key ) { return _map.get(key); }
+
+  /** Maps the key to the value, holding the key weakly.
+   *  @return the previous value associated with <tt>key</tt>, or
+   *          <tt>null</tt> if there was no mapping for <tt>key</tt>
+   *  @throws NullPointerException if the specified key or value is null */
+  @Override
+  public TypeV put( final TypeK key, final TypeV val ) {
+    expungeStaleEntries();
+    return _map.put(weak(key),val);
+  }
+
+  /** Atomically, do a {@link #put} if-and-only-if the key is not mapped.
+   *  @return the previous value associated with the specified key,
+   *         or <tt>null</tt> if there was no mapping for the key
+   *  @throws NullPointerException if the specified key or value is null  */
+  @Override
+  public TypeV putIfAbsent( final TypeK key, final TypeV val ) {
+    expungeStaleEntries();
+    return _map.putIfAbsent(weak(key),val);
+  }
+
+  /** Removes the key (and its corresponding value) from this map.
+   *  @return the previous value associated with <tt>key</tt>, or
+   *         <tt>null</tt> if there was no mapping for <tt>key</tt>
+   *  @throws NullPointerException if the specified key is null */
+  @Override
+  public TypeV remove( final Object key ) {
+    expungeStaleEntries();
+    return _map.remove(key);
+  }
+
+  /** Atomically do a {@link #remove(Object)} if-and-only-if the key is mapped
+   *  to a value which is <code>equals</code> to the given value.
+   *  @throws NullPointerException if the specified key or value is null */
+  @Override
+  public boolean remove( final Object key, final Object val ) {
+    expungeStaleEntries();
+    return _map.remove(key,val);
+  }
+
+  /** Atomically do a <code>put(key,val)</code> if-and-only-if the key is
+   *  mapped to some value already.
+   *  @throws NullPointerException if the specified key or value is null */
+  @Override
+  public TypeV replace( final TypeK key, final TypeV val ) {
+    expungeStaleEntries();
+    return _map.replace(key,val); // Never claims a key slot when not mapped
+  }
+
+  /** Atomically do a <code>put(key,newValue)</code> if-and-only-if the key is
+   *  mapped a value which is <code>equals</code> to <code>oldValue</code>.
+   *  @throws NullPointerException if the specified key or value is null */
+  @Override
+  public boolean replace( final TypeK key, final TypeV oldValue, final TypeV newValue ) {
+    expungeStaleEntries();
+    // The map may claim a key slot even when the key is not mapped, and would
+    // then hold the key: only ever let it hold a registered weak reference.
+    return _map.replace(weak(key),oldValue,newValue);
+  }
+
+  /** Removes all of the mappings from this map. */
+  @Override
+  public void clear( ) {
+    _map.clear();
+    // Not a bare drain: a racing put may have landed after the clear, and if
+    // its key was collected since, its reference is the only way to its entry
+    expungeStaleEntries();
+  }
+
+  private WeakKey weak( final TypeK key ) {
+    if( key == null ) throw new NullPointerException();
+    return new WeakKey(key,_queue);
+  }
+
+  // --- entrySet ------------------------------------------------------------
+  /** Returns a {@link Set} view of the mappings contained in this map.  The
+   *  set is backed by the map, so changes to the map are reflected in the
+   *  set, and vice-versa.  Its iterator is weakly consistent, as those of
+   *  {@link NonBlockingHashMap} are, and skips the entries whose keys were
+   *  collected. */
+  @Override
+  public Set<Map.Entry<TypeK,TypeV>> entrySet() {
+    return new AbstractSet<Map.Entry<TypeK,TypeV>>() {
+      @Override public void    clear   (          ) {        NonBlockingWeakIdentityHashMap.this.clear( ); }
+      @Override public int     size    (          ) { return NonBlockingWeakIdentityHashMap.this.size ( ); }
+      @Override public Iterator<Map.Entry<TypeK,TypeV>> iterator() { return new WeakEntryIterator(); }
+    };
+  }
+
+  private class WeakEntryIterator implements Iterator<Map.Entry<TypeK,TypeV>> {
+    private final Iterator<Map.Entry<Object,TypeV>> _it = _map.entrySet().iterator();
+    private WeakEntry _next;
+    private WeakEntry _last;
+    WeakEntryIterator() { advance(); }
+    // Step to the next entry whose key is still alive, holding it strongly
+    private void advance() {
+      _next = null;
+      while( _next == null && _it.hasNext() ) {
+        final Map.Entry<Object,TypeV> e = _it.next();
+        @SuppressWarnings("unchecked")
+        final TypeK key = (TypeK)((WeakKey)e.getKey()).get();
+        if( key != null ) _next = new WeakEntry(key,e.getValue());
+      }
+    }
+    public boolean hasNext() { return _next != null; }
+    public Map.Entry<TypeK,TypeV> next() {
+      final WeakEntry e = _next;
+      if( e == null ) throw new NoSuchElementException();
+      _last = e;
+      advance();
+      return e;
+    }
+    // The underlying iterator has moved on past the entry returned, so remove
+    // by key rather than through it.
+    public void remove() {
+      if( _last == null ) throw new IllegalStateException();
+      NonBlockingWeakIdentityHashMap.this.remove(_last._key);
+      _last = null;
+    }
+  }
+
+  private class WeakEntry extends AbstractEntry<TypeK,TypeV> {
+    WeakEntry( final TypeK k, final TypeV v ) { super(k,v); }
+    // Keys compare by identity, as in the map
+    @Override public boolean equals( final Object o ) {
+      if( !(o instanceof Map.Entry) ) return false;
+      final Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+      return _key == e.getKey() && _val.equals(e.getValue());
+    }
+    @Override public int hashCode() { return System.identityHashCode(_key) ^ _val.hashCode(); }
+    public TypeV setValue( final TypeV val ) {
+      if( val == null ) throw new NullPointerException();
+      _val = val;
+      return put(_key, val);
+    }
+  }
+}
@@ -0,0 +1,464 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeAccess.fieldOffset;
+import static org.jctools.util.UnsafeRefArrayAccess.*;
+
+abstract class MpscCompactArrayQueueIndexFields<E> extends CompactCircularArrayQueue<E>
+{
+    private final static long P_INDEX_OFFSET = fieldOffset(MpscCompactArrayQueueIndexFields.class, "producerIndex");
+    private final static long P_LIMIT_OFFSET = fieldOffset(MpscCompactArrayQueueIndexFields.class, "producerLimit");
+    private final static long C_INDEX_OFFSET = fieldOffset(MpscCompactArrayQueueIndexFields.class, "consumerIndex");
+
+    private volatile long producerIndex;
+    // First unavailable index the producer may claim up to before rereading the consumer index
+    private volatile long producerLimit;
+    private volatile long consumerIndex;
+
+    MpscCompactArrayQueueIndexFields(int capacity)
+    {
+        super(capacity);
+        this.producerLimit = capacity;
+    }
+
+    @Override
+    public final long lvProducerIndex()
+    {
+        return producerIndex;
+    }
+
+    final boolean casProducerIndex(long expect, long newValue)
+    {
+        return UNSAFE.compareAndSwapLong(this, P_INDEX_OFFSET, expect, newValue);
+    }
+
+    final long lvProducerLimit()
+    {
+        return producerLimit;
+    }
+
+    final void soProducerLimit(long newValue)
+    {
+        UNSAFE.putOrderedLong(this, P_LIMIT_OFFSET, newValue);
+    }
+
+    @Override
+    public final long lvConsumerIndex()
+    {
+        return consumerIndex;
+    }
+
+    final long lpConsumerIndex()
+    {
+        return UNSAFE.getLong(this, C_INDEX_OFFSET);
+    }
+
+    final void soConsumerIndex(long newValue)
+    {
+        UNSAFE.putOrderedLong(this, C_INDEX_OFFSET, newValue);
+    }
+}
+
+/**
+ * A compact variant of {@link MpscArrayQueue}, intended for applications which allocate very large numbers of mostly
+ * idle queues. The algorithm and memory ordering are the same as {@link MpscArrayQueue}, but the class carries no
+ * padding around the producer index, producer limit, consumer index or the cold fields. This cuts the footprint of an
+ * instance by several hundred bytes, at the cost of exposing the hot fields to False Sharing with each other and with
+ * neighbouring objects. Prefer {@link MpscArrayQueue} for queues which see sustained contention.
+ *
+ * @param <E>
+ */
+public class MpscCompactArrayQueue<E> extends MpscCompactArrayQueueIndexFields<E>
+{
+
+    public MpscCompactArrayQueue(final int capacity)
+    {
+        super(capacity);
+    }
+
+    /**
+     * {@link #offer}} if {@link #size()} is less than threshold.
+     *
+     * @param e         the object to offer onto the queue, not null
+     * @param threshold the maximum allowable size
+     * @return true if the offer is successful, false if queue size exceeds threshold
+     * @since 1.0.1
+     */
+    public boolean offerIfBelowThreshold(final E e, int threshold)
+    {
+        if (null == e)
+        {
+            throw new NullPointerException();
+        }
+        final long mask = this.mask;
+        final long capacity = mask + 1;
+
+        long producerLimit = lvProducerLimit(); // LoadLoad
+        long pIndex;
+        do
+        {
+            pIndex = lvProducerIndex(); // LoadLoad
+            long available = producerLimit - pIndex;
+            long size = capacity - available;
+            if (size >= threshold)
+            {
+                final long cIndex = lvConsumerIndex(); // LoadLoad
+                size = pIndex - cIndex;
+                if (size >= threshold)
+                {
+                    return false; // the size exceeds threshold
+                }
+                else
+                {
+                    // update producer limit to the next index that we must recheck the consumer index
+                    producerLimit = cIndex + capacity;
+
+                    // this is racy, but the race is benign
+                    soProducerLimit(producerLimit);
+                }
+            }
+        }
+        while (!casProducerIndex(pIndex, pIndex + 1));
+        /*
+         * NOTE: the new producer index value is made visible BEFORE the element in the array. If we relied on
+         * the index visibility to poll() we would need to handle the case where the element is not visible.
+         */
+
+        // Won CAS, move on to storing
+        final long offset = calcElementOffset(pIndex, mask);
+        soElement(buffer, offset, e); // StoreStore
+        return true; // AWESOME :)
+    }
+
+    /**
+     * {@inheritDoc} <br>
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free offer using a single CAS. As class name suggests access is permitted to many threads
+     * concurrently.
+     *
+     * @see java.util.Queue#offer
+     * @see org.jctools.queues.MessagePassingQueue#offer
+     */
+    @Override
+    public boolean offer(final E e)
+    {
+        if (null == e)
+        {
+            throw new NullPointerException();
+        }
+
+        // use a cached view on consumer index (potentially updated in loop)
+        final long mask = this.mask;
+        long producerLimit = lvProducerLimit(); // LoadLoad
+        long pIndex;
+        do
+        {
+            pIndex = lvProducerIndex(); // LoadLoad
+            if (pIndex >= producerLimit)
+            {
+                final long cIndex = lvConsumerIndex(); // LoadLoad
+                producerLimit = cIndex + mask + 1;
+
+                if (pIndex >= producerLimit)
+                {
+                    return false; // FULL :(
+                }
+                else
+                {
+                    // update producer limit to the next index that we must recheck the consumer index
+                    // this is racy, but the race is benign
+                    soProducerLimit(producerLimit);
+                }
+            }
+        }
+        while (!casProducerIndex(pIndex, pIndex + 1));
+        /*
+         * NOTE: the new producer index value is made visible BEFORE the element in the array. If we relied on
+         * the index visibility to poll() we would need to handle the case where the element is not visible.
+         */
+
+        // Won CAS, move on to storing
+        final long offset = calcElementOffset(pIndex, mask);
+        soElement(buffer, offset, e); // StoreStore
+        return true; // AWESOME :)
+    }
+
+    /**
+     * A wait free alternative to offer which fails on CAS failure.
+     *
+     * @param e new element, not null
+     * @return 1 if next element cannot be filled, -1 if CAS failed, 0 if successful
+     */
+    public final int failFastOffer(final E e)
+    {
+        if (null == e)
+        {
+            throw new NullPointerException();
+        }
+        final long mask = this.mask;
+        final long capacity = mask + 1;
+        final long pIndex = lvProducerIndex(); // LoadLoad
+        long producerLimit = lvProducerLimit(); // LoadLoad
+        if (pIndex >= producerLimit)
+        {
+            final long cIndex = lvConsumerIndex(); // LoadLoad
+            producerLimit = cIndex + capacity;
+            if (pIndex >= producerLimit)
+            {
+                return 1; // FULL :(
+            }
+            else
+            {
+                // update producer limit to the next index that we must recheck the consumer index
+                soProducerLimit(producerLimit); // StoreLoad
+            }
+        }
+
+        // look Ma, no loop!
+        if (!casProducerIndex(pIndex, pIndex + 1))
+        {
+            return -1; // CAS FAIL :(
+        }
+
+        // Won CAS, move on to storing
+        final long offset = calcElementOffset(pIndex, mask);
+        soElement(buffer, offset, e);
+        return 0; // AWESOME :)
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free poll using ordered loads/stores. As class name suggests access is limited to a single thread.
+     *
+     * @see java.util.Queue#poll
+     * @see org.jctools.queues.MessagePassingQueue#poll
+     */
+    @Override
+    public E poll()
+    {
+        final long cIndex = lpConsumerIndex();
+        final long offset = calcElementOffset(cIndex);
+        // Copy field to avoid re-reading after volatile load
+        final E[] buffer = this.buffer;
+
+        // If we can't see the next available element we can't poll
+        E e = lvElement(buffer, offset); // LoadLoad
+        if (null == e)
+        {
+            /*
+             * NOTE: Queue may not actually be empty in the case of a producer (P1) being interrupted after
+             * winning the CAS on offer but before storing the element in the queue. Other producers may go on
+             * to fill up the queue after this element.
+             */
+            if (cIndex != lvProducerIndex())
+            {
+                do
+                {
+                    e = lvElement(buffer, offset);
+                }
+                while (e == null);
+            }
+            else
+            {
+                return null;
+            }
+        }
+
+        soElement(buffer, offset, null);
+        soConsumerIndex(cIndex + 1); // StoreStore
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * IMPLEMENTATION NOTES:<br>
+     * Lock free peek using ordered loads. As class name suggests access is limited to a single thread.
+     *
+     * @see java.util.Queue#poll
+     * @see org.jctools.queues.MessagePassingQueue#poll
+     */
+    @Override
+    public E peek()
+    {
+        // Copy field to avoid re-reading after volatile load
+        final E[] buffer = this.buffer;
+
+        final long cIndex = lpConsumerIndex(); // LoadLoad
+        final long offset = calcElementOffset(cIndex);
+        E e = lvElement(buffer, offset);
+        if (null == e)
+        {
+            /*
+             * NOTE: Queue may not actually be empty in the case of a producer (P1) being interrupted after
+             * winning the CAS on offer but before storing the element in the queue. Other producers may go on
+             * to fill up the queue after this element.
+             */
+            if (cIndex != lvProducerIndex())
+            {
+                do
+                {
+                    e = lvElement(buffer, offset);
+                }
+                while (e == null);
+            }
+            else
+            {
+                return null;
+            }
+        }
+        return e;
+    }
+
+    @Override
+    public boolean relaxedOffer(E e)
+    {
+        return offer(e);
+    }
+
+    @Override
+    public E relaxedPoll()
+    {
+        final E[] buffer = this.buffer;
+        final long cIndex = lpConsumerIndex();
+        final long offset = calcElementOffset(cIndex);
+
+        // If we can't see the next available element we can't poll
+        E e = lvElement(buffer, offset); // LoadLoad
+        if (null == e)
+        {
+            return null;
+        }
+
+        soElement(buffer, offset, null);
+        soConsumerIndex(cIndex + 1); // StoreStore
+        return e;
+    }
+
+    @Override
+    public E relaxedPeek()
+    {
+        final E[] buffer = this.buffer;
+        final long mask = this.mask;
+        final long cIndex = lpConsumerIndex();
+        return lvElement(buffer, calcElementOffset(cIndex, mask));
+    }
+
+    @Override
+    public int drain(final Consumer<E> c, final int limit)
+    {
+        if (null == c)
+            throw new IllegalArgumentException("c is null");
+        if (limit < 0)
+            throw new IllegalArgumentException("limit is negative: " + limit);
+        if (limit == 0)
+            return 0;
+
+        final E[] buffer = this.buffer;
+        final long mask = this.mask;
+        final long cIndex = lpConsumerIndex();
+
+        for (int i = 0; i < limit; i++)
+        {
+            final long index = cIndex + i;
+            final long offset = calcElementOffset(index, mask);
+            final E e = lvElement(buffer, offset);// LoadLoad
+            if (null == e)
+            {
+                return i;
+            }
+            soElement(buffer, offset, null);
+            soConsumerIndex(index + 1); // ordered store -> atomic and ordered for size()
+            c.accept(e);
+        }
+        return limit;
+    }
+
+    @Override
+    public int fill(Supplier<E> s, int limit)
+    {
+        if (null == s)
+            throw new IllegalArgumentException("supplier is null");
+        if (limit < 0)
+            throw new IllegalArgumentException("limit is negative:" + limit);
+        if (limit == 0)
+            return 0;
+
+        final long mask = this.mask;
+        final long capacity = mask + 1;
+        long producerLimit = lvProducerLimit(); // LoadLoad
+        long pIndex;
+        int actualLimit = 0;
+        do
+        {
+            pIndex = lvProducerIndex(); // LoadLoad
+            long available = producerLimit - pIndex;
+            if (available <= 0)
+            {
+                final long cIndex = lvConsumerIndex(); // LoadLoad
+                producerLimit = cIndex + capacity;
+                available = producerLimit - pIndex;
+                if (available <= 0)
+                {
+                    return 0; // FULL :(
+                }
+                else
+                {
+                    // update producer limit to the next index that we must recheck the consumer index
+                    soProducerLimit(producerLimit); // StoreLoad
+                }
+            }
+            actualLimit = Math.min((int) available, limit);
+        }
+        while (!casProducerIndex(pIndex, pIndex + actualLimit));
+        // right, now we claimed a few slots and can fill them with goodness
+        final E[] buffer = this.buffer;
+        for (int i = 0; i < actualLimit; i++)
+        {
+            // Won CAS, move on to storing
+            final long offset = calcElementOffset(pIndex + i, mask);
+            soElement(buffer, offset, s.get());
+        }
+        return actualLimit;
+    }
+
+    @Override
+    public int drain(Consumer<E> c)
+    {
+        return drain(c, capacity());
+    }
+
+    @Override
+    public int fill(Supplier<E> s)
+    {
+        return MessagePassingQueueUtil.fillBounded(this, s);
+    }
+
+    @Override
+    public void drain(Consumer<E> c, WaitStrategy w, ExitCondition exit)
+    {
+        MessagePassingQueueUtil.drain(this, c, w, exit);
+    }
+
+    @Override
+    public void fill(Supplier<E> s, WaitStrategy wait, ExitCondition exit)
+    {
+        MessagePassingQueueUtil.fill(this, s, wait, exit);
+    }
+}
@@ -15,6 +15,7 @@ package org.jctools.queues;
 
 import org.jctools.queues.spec.ConcurrentQueueSpec;
 import org.jctools.queues.spec.Ordering;
+import org.jctools.queues.spec.Preference;
 
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -22,7 +23,9 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 /**
  * The queue factory produces {@link java.util.Queue} instances based on a best fit to the {@link ConcurrentQueueSpec}.
  * This allows minimal dependencies between user code and the queue implementations and gives users a way to express
- * their requirements on a higher level.
+ * their requirements on a higher level.<br>
+ * A {@link Preference#FOOTPRINT} preference selects the compact (unpadded) bounded SPSC/MPSC implementations, which
+ * suit applications holding very large numbers of mostly idle queues.
  *
  * @author nitsanw
  */
@@ -36,12 +39,20 @@ public class QueueFactory
             // SPSC
             if (qs.isSpsc())
             {
+                if (qs.preference == Preference.FOOTPRINT)
+                {
+                    return new SpscCompactArrayQueue<E>(qs.capacity);
+                }
                 return new SpscArrayQueue<E>(qs.capacity);
             }
             // MPSC
             else if (qs.isMpsc())
             {
-                if (qs.ordering != Ordering.NONE)
+                if (qs.preference == Preference.FOOTPRINT)
+                {
+                    return new MpscCompactArrayQueue<E>(qs.capacity);
+                }
+                else if (qs.ordering != Ordering.NONE)
                 {
                     return new MpscArrayQueue<E>(qs.capacity);
                 }
@@ -0,0 +1,360 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeAccess.fieldOffset;
+import static org.jctools.util.UnsafeRefArrayAccess.lvElement;
+import static org.jctools.util.UnsafeRefArrayAccess.soElement;
+
+abstract class SpscCompactArrayQueueColdField<E> extends CompactCircularArrayQueue<E>
+{
+    final int lookAheadStep;
+
+    SpscCompactArrayQueueColdField(int capacity)
+    {
+        super(capacity);
+        lookAheadStep = Math.min(capacity() / 4, SpscArrayQueue.MAX_LOOK_AHEAD_STEP);
+    }
+}
+
+abstract class SpscCompactArrayQueueIndexFields<E> extends SpscCompactArrayQueueColdField<E>
+{
+    private final static long P_INDEX_OFFSET = fieldOffset(SpscCompactArrayQueueIndexFields.class, "producerIndex");
+    private final static long C_INDEX_OFFSET = fieldOffset(SpscCompactArrayQueueIndexFields.class, "consumerIndex");
+
+    private volatile long producerIndex;
+    protected long producerLimit;
+    private volatile long consumerIndex;
+
+    SpscCompactArrayQueueIndexFields(int capacity)
+    {
+        super(capacity);
+    }
+
+    @Override
+    public final long lvProducerIndex()
+    {
+        return producerIndex;
+    }
+
+    final long lpProducerIndex()
+    {
+        return UNSAFE.getLong(this, P_INDEX_OFFSET);
+    }
+
+    final void soProducerIndex(final long newValue)
+    {
+        UNSAFE.putOrderedLong(this, P_INDEX_OFFSET, newValue);
+    }
+
+    @Override
+    public final long lvConsumerIndex()
+    {
+        return consumerIndex;
+    }
+
+    final long lpConsumerIndex()
+    {
+        return UNSAFE.getLong(this, C_INDEX_OFFSET);
+    }
+
+    final void soConsumerIndex(final long newValue)
+    {
+        UNSAFE.putOrderedLong(this, C_INDEX_OFFSET, newValue);
+    }
+}
+
+
+/**
+ * A compact variant of {@link SpscArrayQueue}, intended for applications which allocate very large numbers of mostly
+ * idle queues. The algorithm and memory ordering are the same as {@link SpscArrayQueue}, but the class carries no
+ * padding around the hot indices or the cold fields. This cuts the footprint of an instance by several hundred bytes,
+ * at the cost of exposing the producer and consumer indices to False Sharing with each other and with neighbouring
+ * objects. Prefer {@link SpscArrayQueue} for the few queues on the hot path of an application.
+ *
+ * @param <E>
+ */
+public class SpscCompactArrayQueue<E> extends SpscCompactArrayQueueIndexFields<E>
+{
+
+    public SpscCompactArrayQueue(final int capacity)
+    {
+        super(Math.max(capacity, 4));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single producer thread use only.
+     */
+    @Override
+    public boolean offer(final E e)
+    {
+        if (null == e)
+        {
+            throw new NullPointerException();
+        }
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] buffer = this.buffer;
+        final long mask = this.mask;
+        final long producerIndex = this.lpProducerIndex();
+
+        if (producerIndex >= producerLimit &&
+            !offerSlowPath(buffer, mask, producerIndex))
+        {
+            return false;
+        }
+        final long offset = calcElementOffset(producerIndex, mask);
+
+        soElement(buffer, offset, e); // StoreStore
+        soProducerIndex(producerIndex + 1); // ordered store -> atomic and ordered for size()
+        return true;
+    }
+
+    private boolean offerSlowPath(final E[] buffer, final long mask, final long producerIndex)
+    {
+        final int lookAheadStep = this.lookAheadStep;
+        if (null == lvElement(buffer, calcElementOffset(producerIndex + lookAheadStep, mask)))
+        {// LoadLoad
+            producerLimit = producerIndex + lookAheadStep;
+        }
+        else
+        {
+            final long offset = calcElementOffset(producerIndex, mask);
+            if (null != lvElement(buffer, offset))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public E poll()
+    {
+        final long consumerIndex = this.lpConsumerIndex();
+        final long offset = calcElementOffset(consumerIndex);
+        // local load of field to avoid repeated loads after volatile reads
+        final E[] buffer = this.buffer;
+        final E e = lvElement(buffer, offset);// LoadLoad
+        if (null == e)
+        {
+            return null;
+        }
+        soElement(buffer, offset, null);// StoreStore
+        soConsumerIndex(consumerIndex + 1); // ordered store -> atomic and ordered for size()
+        return e;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation is correct for single consumer thread use only.
+     */
+    @Override
+    public E peek()
+    {
+        return lvElement(buffer, calcElementOffset(lpConsumerIndex()));
+    }
+
+    @Override
+    public boolean relaxedOffer(final E message)
+    {
+        return offer(message);
+    }
+
+    @Override
+    public E relaxedPoll()
+    {
+        return poll();
+    }
+
+    @Override
+    public E relaxedPeek()
+    {
+        return peek();
+    }
+
+    @Override
+    public int drain(final Consumer<E> c)
+    {
+        return drain(c, capacity());
+    }
+
+    @Override
+    public int fill(final Supplier<E> s)
+    {
+        return fill(s, capacity());
+    }
+
+    @Override
+    public int drain(final Consumer<E> c, final int limit)
+    {
+        if (null == c)
+            throw new IllegalArgumentException("c is null");
+        if (limit < 0)
+            throw new IllegalArgumentException("limit is negative: " + limit);
+        if (limit == 0)
+            return 0;
+
+        final E[] buffer = this.buffer;
+        final long mask = this.mask;
+        final long consumerIndex = this.lpConsumerIndex();
+
+        for (int i = 0; i < limit; i++)
+        {
+            final long index = consumerIndex + i;
+            final long offset = calcElementOffset(index, mask);
+            final E e = lvElement(buffer, offset);// LoadLoad
+            if (null == e)
+            {
+                return i;
+            }
+            soElement(buffer, offset, null);// StoreStore
+            soConsumerIndex(index + 1); // ordered store -> atomic and ordered for size()
+            c.accept(e);
+        }
+        return limit;
+    }
+
+    @Override
+    public int fill(final Supplier<E> s, final int limit)
+    {
+        if (null == s)
+            throw new IllegalArgumentException("supplier is null");
+        if (limit < 0)
+            throw new IllegalArgumentException("limit is negative:" + limit);
+        if (limit == 0)
+            return 0;
+
+        final E[] buffer = this.buffer;
+        final long mask = this.mask;
+        final int lookAheadStep = this.lookAheadStep;
+        final long producerIndex = this.lpProducerIndex();
+
+        for (int i = 0; i < limit; i++)
+        {
+            final long index = producerIndex + i;
+            final long lookAheadElementOffset = calcElementOffset(index + lookAheadStep, mask);
+            if (null == lvElement(buffer, lookAheadElementOffset))
+            {// LoadLoad
+                int lookAheadLimit = Math.min(lookAheadStep, limit - i);
+                for (int j = 0; j < lookAheadLimit; j++)
+                {
+                    final long offset = calcElementOffset(index + j, mask);
+                    soElement(buffer, offset, s.get()); // StoreStore
+                    soProducerIndex(index + j + 1); // ordered store -> atomic and ordered for size()
+                }
+                i += lookAheadLimit - 1;
+            }
+            else
+            {
+                final long offset = calcElementOffset(index, mask);
+                if (null != lvElement(buffer, offset))
+                {
+                    return i;
+                }
+                soElement(buffer, offset, s.get()); // StoreStore
+                soProducerIndex(index + 1); // ordered store -> atomic and ordered for size()
+            }
+
+        }
+        return limit;
+    }
+
+    @Override
+    public void drain(final Consumer<E> c, final WaitStrategy w, final ExitCondition exit)
+    {
+        if (null == c)
+            throw new IllegalArgumentException("c is null");
+        if (null == w)
+            throw new IllegalArgumentException("wait is null");
+        if (null == exit)
+            throw new IllegalArgumentException("exit condition is null");
+
+        final E[] buffer = this.buffer;
+        final long mask = this.mask;
+        long consumerIndex = this.lpConsumerIndex();
+
+        int counter = 0;
+        while (exit.keepRunning())
+        {
+            for (int i = 0; i < 4096; i++)
+            {
+                final long offset = calcElementOffset(consumerIndex, mask);
+                final E e = lvElement(buffer, offset);// LoadLoad
+                if (null == e)
+                {
+                    counter = w.idle(counter);
+                    continue;
+                }
+                consumerIndex++;
+                counter = 0;
+                soElement(buffer, offset, null);// StoreStore
+                soConsumerIndex(consumerIndex); // ordered store -> atomic and ordered for size()
+                c.accept(e);
+            }
+        }
+    }
+
+    @Override
+    public void fill(final Supplier<E> s, final WaitStrategy w, final ExitCondition e)
+    {
+        if (null == w)
+            throw new IllegalArgumentException("waiter is null");
+        if (null == e)
+            throw new IllegalArgumentException("exit condition is null");
+        if (null == s)
+            throw new IllegalArgumentException("supplier is null");
+
+        final E[] buffer = this.buffer;
+        final long mask = this.mask;
+        final int lookAheadStep = this.lookAheadStep;
+        long producerIndex = this.lpProducerIndex();
+        int counter = 0;
+        while (e.keepRunning())
+        {
+            final long lookAheadElementOffset = calcElementOffset(producerIndex + lookAheadStep, mask);
+            if (null == lvElement(buffer, lookAheadElementOffset))
+            {// LoadLoad
+                for (int j = 0; j < lookAheadStep; j++)
+                {
+                    final long offset = calcElementOffset(producerIndex, mask);
+                    producerIndex++;
+                    soElement(buffer, offset, s.get()); // StoreStore
+                    soProducerIndex(producerIndex); // ordered store -> atomic and ordered for size()
+                }
+            }
+            else
+            {
+                final long offset = calcElementOffset(producerIndex, mask);
+                if (null != lvElement(buffer, offset))
+                {// LoadLoad
+                    counter = w.idle(counter);
+                    continue;
+                }
+                producerIndex++;
+                counter = 0;
+                soElement(buffer, offset, s.get()); // StoreStore
+                soProducerIndex(producerIndex); // ordered store -> atomic and ordered for size()
+            }
+        }
+    }
+}
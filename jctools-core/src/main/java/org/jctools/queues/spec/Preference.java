@@ -15,5 +15,5 @@ package org.jctools.queues.spec;
 
 public enum Preference
 {
-    LATENCY, THROUGHPUT, NONE
+    LATENCY, THROUGHPUT, NONE, FOOTPRINT
 }
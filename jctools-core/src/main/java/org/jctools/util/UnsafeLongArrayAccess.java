@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.util;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+
+/**
+ * The {@code long[]} counterpart of {@link UnsafeRefArrayAccess}: an offset computation method along with differently
+ * memory fenced load/store methods and a CAS into the underlying array.
+ * <p>
+ * Offset calculation is separate from access to enable the reuse of a give compute offset.
+ */
+@InternalAPI
+public final class UnsafeLongArrayAccess
+{
+    public static final long LONG_ARRAY_BASE;
+    public static final int LONG_ELEMENT_SHIFT;
+
+    static
+    {
+        final int scale = UnsafeAccess.UNSAFE.arrayIndexScale(long[].class);
+        if (8 == scale)
+        {
+            LONG_ELEMENT_SHIFT = 3;
+        }
+        else
+        {
+            throw new IllegalStateException("Unexpected long[] element size: " + scale);
+        }
+        LONG_ARRAY_BASE = UnsafeAccess.UNSAFE.arrayBaseOffset(long[].class);
+    }
+
+    /**
+     * A plain store (no ordering/fences) of an element to a given offset
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link UnsafeLongArrayAccess#calcElementOffset(long)}
+     * @param e      the value to store
+     */
+    public static void spElement(long[] buffer, long offset, long e)
+    {
+        UNSAFE.putLong(buffer, offset, e);
+    }
+
+    /**
+     * An ordered store(store + StoreStore barrier) of an element to a given offset
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link UnsafeLongArrayAccess#calcElementOffset(long)}
+     * @param e      the value to store
+     */
+    public static void soElement(long[] buffer, long offset, long e)
+    {
+        UNSAFE.putOrderedLong(buffer, offset, e);
+    }
+
+    /**
+     * A plain load (no ordering/fences) of an element from a given offset.
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link UnsafeLongArrayAccess#calcElementOffset(long)}
+     * @return the element at the offset
+     */
+    public static long lpElement(long[] buffer, long offset)
+    {
+        return UNSAFE.getLong(buffer, offset);
+    }
+
+    /**
+     * A volatile load (load + LoadLoad barrier) of an element from a given offset.
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link UnsafeLongArrayAccess#calcElementOffset(long)}
+     * @return the element at the offset
+     */
+    public static long lvElement(long[] buffer, long offset)
+    {
+        return UNSAFE.getLongVolatile(buffer, offset);
+    }
+
+    /**
+     * A compare and set of an element at a given offset.
+     *
+     * @param buffer this.buffer
+     * @param offset computed via {@link UnsafeLongArrayAccess#calcElementOffset(long)}
+     * @param expect the value the element must hold
+     * @param update the value to store
+     * @return true if the element held {@code expect} and now holds {@code update}
+     */
+    public static boolean casElement(long[] buffer, long offset, long expect, long update)
+    {
+        return UNSAFE.compareAndSwapLong(buffer, offset, expect, update);
+    }
+
+    /**
+     * @param index desirable element index
+     * @return the offset in bytes within the array for a given index.
+     */
+    public static long calcElementOffset(long index)
+    {
+        return LONG_ARRAY_BASE + (index << LONG_ELEMENT_SHIFT);
+    }
+}
@@ -0,0 +1,58 @@
+package org.jctools.counters;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CounterRegistryTest {
+
+    @Test
+    public void testSnapshot() {
+        CounterRegistry registry = new CounterRegistry(2);
+        Counter[] counters = new Counter[1000];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = registry.newCounter("c" + i);
+            counters[i].inc(i);
+        }
+        FixedSizeStripedLongAccumulator max = registry.newMaxAccumulator("max");
+        FixedSizeStripedLongAccumulator min = registry.newMinAccumulator("min");
+        max.accumulate(42);
+        min.accumulate(-42);
+        assertEquals(1002, registry.size());
+        assertEquals(1000, registry.indexOf("max"));
+        assertEquals(-1, registry.indexOf("none"));
+        assertEquals("c7", registry.name(7));
+        assertSame(min, registry.metric(1001));
+
+        long[] values = new long[registry.size()];
+        assertEquals(1002, registry.snapshot(values));
+        for (int i = 0; i < counters.length; i++) {
+            assertEquals(i, values[i]);
+        }
+        assertEquals(42, values[1000]);
+        assertEquals(-42, values[1001]);
+
+        assertEquals(1002, registry.snapshotAndReset(values));
+        assertEquals(999, values[999]);
+        assertEquals(0, counters[999].get());
+        assertEquals(Long.MIN_VALUE, max.get());
+
+        // A short array takes what fits
+        long[] some = new long[3];
+        counters[2].inc();
+        assertEquals(1002, registry.snapshot(some));
+        assertArrayEquals(new long[]{0, 0, 1}, some);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateName() {
+        CounterRegistry registry = new CounterRegistry();
+        registry.newCounter("a");
+        registry.newMaxAccumulator("a");
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testBadIndex() {
+        new CounterRegistry().name(0);
+    }
+}
@@ -0,0 +1,66 @@
+package org.jctools.counters;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.jctools.util.PortableJvmInfo;
+import org.junit.Test;
+
+public class FixedSizeStripedLongAccumulatorTest {
+
+    @Test
+    public void testMaxSanity() {
+        FixedSizeStripedLongAccumulator max = CountersFactory.createMaxAccumulator(4);
+        assertEquals(Long.MIN_VALUE, max.get());
+        max.accumulate(3);
+        max.accumulate(-7);
+        max.accumulate(12);
+        max.accumulate(5);
+        assertEquals(12, max.get());
+        assertEquals(12, max.getAndReset());
+        assertEquals(Long.MIN_VALUE, max.get());
+    }
+
+    @Test
+    public void testMinSanity() {
+        FixedSizeStripedLongAccumulator min = CountersFactory.createMinAccumulator(4);
+        assertEquals(Long.MAX_VALUE, min.get());
+        min.accumulate(3);
+        min.accumulate(-7);
+        min.accumulate(12);
+        assertEquals(-7, min.get());
+        assertEquals(-7, min.getAndReset());
+        assertEquals(Long.MAX_VALUE, min.get());
+    }
+
+    @Test
+    public void testMultipleThreads() throws Exception {
+        final int threadsCount = Math.max(4, PortableJvmInfo.CPUs);
+        final FixedSizeStripedLongAccumulator max = CountersFactory.createMaxAccumulator(2);
+        final FixedSizeStripedLongAccumulator min = CountersFactory.createMinAccumulator(2);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadsCount];
+        for (int t = 0; t < threadsCount; t++) {
+            final int offset = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 100000; i++) {
+                    max.accumulate(i * threadsCount + offset);
+                    min.accumulate(-(i * threadsCount + offset));
+                }
+            });
+            threads[t].start();
+        }
+        startLatch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(100000L * threadsCount - 1, max.get());
+        assertEquals(-(100000L * threadsCount - 1), min.get());
+    }
+}
@@ -0,0 +1,111 @@
+package org.jctools.counters;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jctools.util.PortableJvmInfo;
+import org.junit.Test;
+
+public class FixedSizeStripedLongHistogramTest {
+
+    @Test
+    public void testBucketBounds() {
+        for (int p = 0; p <= 8; p++) {
+            long expectedLow = 0;
+            for (int b = 0; b < 64 << p && expectedLow >= 0; b++) {
+                long low = FixedSizeStripedLongHistogram.lowestEquivalentValue(b, p);
+                long high = FixedSizeStripedLongHistogram.highestEquivalentValue(b, p);
+                // Buckets tile the values without gaps
+                assertEquals(expectedLow, low);
+                assertTrue(high >= low);
+                assertEquals(b, FixedSizeStripedLongHistogram.bucketIndex(low, p));
+                assertEquals(b, FixedSizeStripedLongHistogram.bucketIndex(high, p));
+                // Widths are within 2^-p of the values
+                assertTrue(p == 0 || low < 1 << p || (high - low + 1) << p <= low);
+                expectedLow = high + 1;
+            }
+        }
+        assertEquals(Long.MAX_VALUE,
+            FixedSizeStripedLongHistogram.highestEquivalentValue(FixedSizeStripedLongHistogram.bucketIndex(Long.MAX_VALUE, 5), 5));
+    }
+
+    @Test
+    public void testSanity() {
+        FixedSizeStripedLongHistogram histogram = new FixedSizeStripedLongHistogram(1000000, 5, 4);
+        for (long v = 1; v <= 1000; v++) {
+            histogram.recordValue(v);
+        }
+        histogram.recordValues(5000000, 3);
+        FixedSizeStripedLongHistogram.Snapshot snapshot = histogram.getIntervalSnapshot();
+        assertEquals(1003, snapshot.totalCount());
+        assertEquals(1, snapshot.min());
+        // Values past the highest trackable value land in the last bucket
+        assertEquals(histogram.bucketCount() - 1, FixedSizeStripedLongHistogram.bucketIndex(snapshot.max(), 5));
+        assertEquals(3, snapshot.count(histogram.bucketCount() - 1));
+        long median = snapshot.valueAtPercentile(50);
+        assertTrue(median >= 500 && median <= 500 + 500 / 32);
+        long p99 = snapshot.valueAtPercentile(99);
+        assertTrue(p99 >= 990 && p99 <= 990 + 990 / 32);
+        assertEquals(0, histogram.getIntervalSnapshot().totalCount());
+    }
+
+    @Test
+    public void testIntervalSnapshotReuse() {
+        FixedSizeStripedLongHistogram histogram = new FixedSizeStripedLongHistogram(1 << 20, 3, 2);
+        histogram.recordValue(7);
+        FixedSizeStripedLongHistogram.Snapshot snapshot = histogram.getIntervalSnapshot();
+        assertEquals(7, snapshot.max());
+        histogram.recordValue(100);
+        histogram.recordValue(100);
+        assertSame(snapshot, histogram.getIntervalSnapshot(snapshot));
+        assertEquals(2, snapshot.totalCount());
+        assertEquals(0, snapshot.count(7));
+        assertEquals(96, snapshot.min());
+        assertEquals(103, snapshot.max());
+        FixedSizeStripedLongHistogram.Snapshot other = new FixedSizeStripedLongHistogram(1 << 10, 3, 2).getIntervalSnapshot();
+        assertNotSame(other, histogram.getIntervalSnapshot(other));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeValue() {
+        new FixedSizeStripedLongHistogram(100, 2, 1).recordValue(-1);
+    }
+
+    @Test
+    public void testIntervalsLoseNoCounts() throws Exception {
+        final int threadsCount = Math.max(4, PortableJvmInfo.CPUs);
+        final int recordsPerThread = 200000;
+        final FixedSizeStripedLongHistogram histogram = new FixedSizeStripedLongHistogram(1 << 20, 5, 2);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch doneLatch = new CountDownLatch(threadsCount);
+        for (int t = 0; t < threadsCount; t++) {
+            final int offset = t;
+            new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < recordsPerThread; i++) {
+                    histogram.recordValue((i + offset) & 0xFFFF);
+                }
+                doneLatch.countDown();
+            }).start();
+        }
+        final AtomicBoolean done = new AtomicBoolean();
+        FixedSizeStripedLongHistogram.Snapshot interval = null;
+        FixedSizeStripedLongHistogram.Snapshot total = histogram.getIntervalSnapshot();
+        startLatch.countDown();
+        while (!done.get()) {
+            done.set(doneLatch.getCount() == 0);
+            interval = histogram.getIntervalSnapshot(interval);
+            total.add(interval);
+        }
+        // Counts left behind by writers racing the swap turn up within two more intervals
+        total.add(histogram.getIntervalSnapshot(interval));
+        total.add(histogram.getIntervalSnapshot(interval));
+        assertEquals((long) threadsCount * recordsPerThread, total.totalCount());
+    }
+}
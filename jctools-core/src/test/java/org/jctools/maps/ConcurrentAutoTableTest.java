@@ -0,0 +1,90 @@
+package org.jctools.maps;
+
+import java.util.concurrent.CyclicBarrier;
+
+import org.jctools.util.Pow2;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.jctools.util.PortableJvmInfo.CPUs;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeThat;
+
+public class ConcurrentAutoTableTest
+{
+    // As ConcurrentAutoTable caps the growth of its padded tables
+    private static final int MAX_CELLS = Math.max(Pow2.roundToPowerOfTwo(CPUs) * 4, 32);
+
+    @Test
+    public void basic()
+    {
+        ConcurrentAutoTable cat = new ConcurrentAutoTable();
+        assertEquals(0, cat.get());
+        assertEquals(16, cat.internal_size());
+        cat.add(5);
+        cat.increment();
+        cat.decrement();
+        assertEquals(5, cat.get());
+        assertEquals(5, cat.estimate_get());
+        cat.set(-3);
+        assertEquals(-3, cat.get());
+        assertEquals("-3", cat.toString());
+    }
+
+    @Test
+    public void noCountsLostUnderContention() throws Exception
+    {
+        final ConcurrentAutoTable cat = new ConcurrentAutoTable();
+        final int threads = Math.max(4, CPUs);
+        contend(cat, threads, 1000000);
+        assertEquals((long) threads * 1000000, cat.get());
+        // The packed first table may have grown, but no further than the cap
+        int cells = cat.internal_size();
+        assertTrue(cells >= 16 && cells <= MAX_CELLS);
+    }
+
+    @Test
+    public void contentionGrowsThePackedTable() throws Exception
+    {
+        // Threads only collide on a cell when they run at the same time
+        assumeThat(CPUs > 1, is(true));
+        final ConcurrentAutoTable cat = new ConcurrentAutoTable();
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (cat.internal_size() <= 16 && System.currentTimeMillis() < deadline)
+        {
+            contend(cat, Math.max(4, CPUs), 100000);
+        }
+        int cells = cat.internal_size();
+        assertTrue("table did not grow: " + cells, cells > 16);
+        assertTrue("table grew past the cap: " + cells, cells <= MAX_CELLS);
+    }
+
+    private static void contend(final ConcurrentAutoTable cat, int threads, final int perThread) throws Exception
+    {
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++)
+        {
+            workers[t] = new Thread(() -> {
+                try
+                {
+                    barrier.await();
+                }
+                catch (Exception e)
+                {
+                    throw new AssertionError(e);
+                }
+                for (int i = 0; i < perThread; i++)
+                {
+                    cat.increment();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+    }
+}
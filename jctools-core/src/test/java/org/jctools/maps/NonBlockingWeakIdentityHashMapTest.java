@@ -0,0 +1,169 @@
+package org.jctools.maps;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class NonBlockingWeakIdentityHashMapTest {
+
+    @Test
+    public void testIdentitySemantics() {
+        NonBlockingWeakIdentityHashMap<String, Integer> map = new NonBlockingWeakIdentityHashMap<>();
+        String a = new String("key");
+        String b = new String("key");
+        assertNull(map.put(a, 1));
+        assertNull(map.put(b, 2));
+        assertEquals(2, map.size());
+        assertEquals(Integer.valueOf(1), map.get(a));
+        assertEquals(Integer.valueOf(2), map.get(b));
+        assertNull(map.get("key"));
+        assertEquals(Integer.valueOf(1), map.put(a, 3));
+        assertEquals(Integer.valueOf(3), map.putIfAbsent(a, 4));
+        assertFalse(map.replace(b, 1, 5));
+        assertTrue(map.replace(b, 2, 5));
+        assertEquals(Integer.valueOf(5), map.replace(b, 6));
+        assertNull(map.replace(new String("key"), 7));
+        assertFalse(map.remove(a, 6));
+        assertTrue(map.remove(a, 3));
+        assertFalse(map.containsKey(a));
+        assertEquals(Integer.valueOf(6), map.remove(b));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullKey() {
+        new NonBlockingWeakIdentityHashMap<Object, Object>().put(null, "v");
+    }
+
+    @Test
+    public void testIteration() {
+        NonBlockingWeakIdentityHashMap<Object, Integer> map = new NonBlockingWeakIdentityHashMap<>();
+        List<Object> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Object key = new Object();
+            keys.add(key);
+            map.put(key, i);
+        }
+        int seen = 0;
+        for (Iterator<Map.Entry<Object, Integer>> it = map.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Object, Integer> e = it.next();
+            assertSame(keys.get(e.getValue()), e.getKey());
+            if (e.getValue() % 2 == 0) {
+                it.remove();
+            } else {
+                e.setValue(-e.getValue());
+            }
+            seen++;
+        }
+        assertEquals(100, seen);
+        assertEquals(50, map.size());
+        assertEquals(Integer.valueOf(-1), map.get(keys.get(1)));
+        assertNull(map.get(keys.get(2)));
+    }
+
+    @Test
+    public void testCollectedKeysAreExpunged() throws Exception {
+        NonBlockingWeakIdentityHashMap<Object, byte[]> map = new NonBlockingWeakIdentityHashMap<>();
+        Object live = new Object();
+        map.put(live, new byte[0]);
+        for (int i = 0; i < 1000; i++) {
+            map.put(new Object(), new byte[1024]);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (map.size() > 1 && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, map.size());
+        assertNotNull(map.get(live));
+        int entries = 0;
+        for (Map.Entry<Object, byte[]> e : map.entrySet()) {
+            assertSame(live, e.getKey());
+            entries++;
+        }
+        assertEquals(1, entries);
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final int threadsCount = 4;
+        final NonBlockingWeakIdentityHashMap<Object, Integer> map = new NonBlockingWeakIdentityHashMap<>();
+        final Object[] shared = new Object[64];
+        for (int i = 0; i < shared.length; i++) {
+            shared[i] = new Object();
+            map.put(shared[i], i);
+        }
+        final AtomicLong failures = new AtomicLong();
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadsCount];
+        for (int t = 0; t < threadsCount; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 200000; i++) {
+                    // Short-lived keys which are collected while the shared ones are read
+                    map.put(new Object(), i);
+                    Integer v = map.get(shared[i & 63]);
+                    if (v == null || v != (i & 63)) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        startLatch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failures.get());
+        for (int i = 0; i < shared.length; i++) {
+            assertEquals(Integer.valueOf(i), map.get(shared[i]));
+        }
+    }
+
+    @Test
+    public void testClearRacingPutsOfCollectedKeys() throws Exception {
+        final NonBlockingWeakIdentityHashMap<Object, byte[]> map = new NonBlockingWeakIdentityHashMap<>();
+        final AtomicBoolean stop = new AtomicBoolean();
+        Thread[] threads = new Thread[2];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                while (!stop.get()) {
+                    // Keys which are collected at once, some of them around a clear
+                    map.put(new Object(), new byte[256]);
+                }
+            });
+            threads[t].start();
+        }
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; System.nanoTime() < end; i++) {
+            map.clear();
+            if ((i & 1023) == 0) {
+                System.gc();
+            }
+        }
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // Every key is gone, so every entry must be expunged in the end
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (map.size() > 0 && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(0, map.size());
+    }
+}
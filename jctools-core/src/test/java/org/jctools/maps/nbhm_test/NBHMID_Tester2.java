@@ -417,6 +417,81 @@ public class NBHMID_Tester2
         assertEquals("values().iterator() count", ITEM_COUNT, itemCount);
     }
 
+    // --- compute family ------------------------------------------------------
+    @Test
+    public void testComputeFamily()
+    {
+        NonBlockingIdentityHashMap<String, String> map = new NonBlockingIdentityHashMap<>();
+        final int[] calls = new int[1];
+        assertThat(map.computeIfAbsent("k1", k -> { calls[0]++; return k + "v"; }), is("k1v"));
+        assertThat(map.computeIfAbsent("k1", k -> { calls[0]++; return "other"; }), is("k1v"));
+        assertThat("function not applied to a present key", calls[0], is(1));
+        assertThat(map.computeIfAbsent("k2", k -> null), nullValue());
+        assertFalse(map.containsKey("k2"));
+        assertThat(map.size(), is(1));
+
+        assertThat(map.computeIfPresent("k2", (k, v) -> "x"), nullValue());
+        assertFalse(map.containsKey("k2"));
+        assertThat(map.computeIfPresent("k1", (k, v) -> v + "!"), is("k1v!"));
+        assertThat(map.get("k1"), is("k1v!"));
+        assertThat(map.computeIfPresent("k1", (k, v) -> null), nullValue());
+        assertFalse(map.containsKey("k1"));
+        assertThat(map.size(), is(0));
+
+        assertThat(map.compute("k3", (k, v) -> v == null ? "new" : v + "+"), is("new"));
+        assertThat(map.compute("k3", (k, v) -> v == null ? "new" : v + "+"), is("new+"));
+        assertThat(map.size(), is(1));
+        assertThat(map.compute("k3", (k, v) -> null), nullValue());
+        assertThat(map.compute("k3", (k, v) -> null), nullValue());
+        assertTrue(map.isEmpty());
+
+        assertThat(map.merge("k4", "a", String::concat), is("a"));
+        assertThat(map.merge("k4", "b", String::concat), is("ab"));
+        assertThat(map.merge("k4", "c", (a, b) -> null), nullValue());
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentMerge() throws InterruptedException
+    {
+        final NonBlockingIdentityHashMap<String, Integer> map = new NonBlockingIdentityHashMap<>();
+        final int num_thrds = 4;
+        final int num_keys = 2000; // Enough keys to resize while merging
+        final int rounds = 10;
+        final String keys[] = new String[num_keys];
+        for (int k = 0; k < num_keys; k++)
+        {
+            keys[k] = "k" + k;
+        }
+        Thread ts[] = new Thread[num_thrds];
+        for (int i = 0; i < num_thrds; i++)
+        {
+            ts[i] = new Thread()
+            {
+                public void run()
+                {
+                    for (int r = 0; r < rounds; r++)
+                    {
+                        for (int k = 0; k < num_keys; k++)
+                        {
+                            map.merge(keys[k], 1, Integer::sum);
+                        }
+                    }
+                }
+            };
+            ts[i].start();
+        }
+        for (int i = 0; i < num_thrds; i++)
+        {
+            ts[i].join();
+        }
+        assertThat(map.size(), is(num_keys));
+        for (int k = 0; k < num_keys; k++)
+        {
+            assertThat(map.get(keys[k]), is(num_thrds * rounds));
+        }
+    }
+
     // --- Customer Test Case 3 ------------------------------------------------
     private TestKeyFeeder getTestKeyFeeder()
     {
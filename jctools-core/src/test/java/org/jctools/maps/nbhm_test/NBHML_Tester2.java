@@ -16,6 +16,7 @@ package org.jctools.maps.nbhm_test;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.stream.StreamSupport;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -337,6 +338,128 @@ public class NBHML_Tester2
     }
 
 
+    // --- compute family ------------------------------------------------------
+    @Test
+    public void testComputeFamily()
+    {
+        // Key 0 is stored outside of the table, so run everything for it too
+        for (long key : new long[]{ 0L, 1L })
+        {
+            NonBlockingHashMapLong<String> map = new NonBlockingHashMapLong<>();
+            final int[] calls = new int[1];
+            assertThat(map.computeIfAbsent(key, k -> { calls[0]++; return "v" + k; }), is("v" + key));
+            assertThat(map.computeIfAbsent(key, k -> { calls[0]++; return "other"; }), is("v" + key));
+            assertThat("function not applied to a present key", calls[0], is(1));
+            assertThat(map.computeIfAbsent(key + 2, k -> null), nullValue());
+            assertFalse(map.containsKey(key + 2));
+            assertThat(map.size(), is(1));
+
+            assertThat(map.computeIfPresent(key + 2, (k, v) -> "x"), nullValue());
+            assertThat(map.computeIfPresent(key, (k, v) -> v + "!"), is("v" + key + "!"));
+            assertThat(map.computeIfPresent(key, (k, v) -> null), nullValue());
+            assertFalse(map.containsKey(key));
+            assertThat(map.size(), is(0));
+
+            assertThat(map.compute(key, (k, v) -> v == null ? "new" : v + "+"), is("new"));
+            assertThat(map.compute(key, (k, v) -> v == null ? "new" : v + "+"), is("new+"));
+            assertThat(map.size(), is(1));
+            assertThat(map.compute(key, (k, v) -> null), nullValue());
+            assertThat(map.compute(key, (k, v) -> null), nullValue());
+            assertTrue(map.isEmpty());
+
+            assertThat(map.merge(key, "a", String::concat), is("a"));
+            assertThat(map.merge(key, "b", String::concat), is("ab"));
+            assertThat(map.merge(key, "c", (a, b) -> null), nullValue());
+            assertTrue(map.isEmpty());
+
+            // Auto-boxing versions
+            assertThat(map.computeIfAbsent(Long.valueOf(key), k -> "b" + k), is("b" + key));
+            assertThat(map.compute(Long.valueOf(key), (k, v) -> v + "!"), is("b" + key + "!"));
+            assertThat(map.merge(Long.valueOf(key), "?", String::concat), is("b" + key + "!?"));
+            assertThat(map.computeIfPresent(Long.valueOf(key), (k, v) -> null), nullValue());
+            assertTrue(map.isEmpty());
+        }
+    }
+
+    @Test
+    public void testConcurrentMerge() throws InterruptedException
+    {
+        final NonBlockingHashMapLong<Integer> map = new NonBlockingHashMapLong<>();
+        final int num_thrds = 4;
+        final int num_keys = 2000; // Enough keys to resize while merging
+        final int rounds = 10;
+        final Integer one = 1; // Boxed, lest merge(long,..) and merge(Long,..) are ambiguous
+        Thread ts[] = new Thread[num_thrds];
+        for (int i = 0; i < num_thrds; i++)
+        {
+            ts[i] = new Thread()
+            {
+                public void run()
+                {
+                    for (int r = 0; r < rounds; r++)
+                    {
+                        for (long k = 0; k < num_keys; k++)
+                        {
+                            map.merge(k, one, Integer::sum);
+                        }
+                    }
+                }
+            };
+            ts[i].start();
+        }
+        for (int i = 0; i < num_thrds; i++)
+        {
+            ts[i].join();
+        }
+        assertThat(map.size(), is(num_keys));
+        for (long k = 0; k < num_keys; k++)
+        {
+            assertThat(map.get(k), is(num_thrds * rounds));
+        }
+    }
+
+    @Test
+    public void testSpliterators()
+    {
+        final NonBlockingHashMapLong<Long> map = new NonBlockingHashMapLong<>();
+        final int num_keys = 100000;
+        long expected = 0;
+        for (long k = 0; k < num_keys; k++)
+        {
+            map.put(k, (Long) k);
+            if (k % 10 != 1)
+            {
+                expected += k;
+            }
+        }
+        for (long k = 1; k < num_keys; k += 10)
+        {
+            map.remove(k);
+        }
+        assertTrue(map.containsKey(0));
+        Spliterator.OfLong split = (Spliterator.OfLong) map.keySet().spliterator();
+        assertTrue(split.hasCharacteristics(Spliterator.CONCURRENT | Spliterator.DISTINCT | Spliterator.NONNULL));
+        assertFalse(split.hasCharacteristics(Spliterator.SIZED));
+        assertThat(split.estimateSize(), is((long) map.size()));
+        assertNotNull(split.trySplit());
+
+        assertThat(map.keyStream().sum(), is(expected));
+        assertThat(map.keyStream().parallel().sum(), is(expected));
+        assertThat(map.keyStream().parallel().filter(k -> k == 0).count(), is(1L));
+        for (boolean parallel : new boolean[]{false, true})
+        {
+            assertThat(StreamSupport.stream(map.keySet().spliterator(), parallel).mapToLong(k -> k).sum(), is(expected));
+            assertThat(StreamSupport.stream(map.values().spliterator(), parallel).mapToLong(v -> v).sum(), is(expected));
+            assertThat(StreamSupport.stream(map.entrySet().spliterator(), parallel)
+                .filter(e -> e.getKey().equals(e.getValue())).count(), is((long) map.size()));
+        }
+
+        map.entrySet().parallelStream().filter(e -> e.getKey() < 100).forEach(e -> e.setValue(-1L));
+        assertThat(map.get(0), is(-1L));
+        assertThat(map.get(99), is(-1L));
+        assertThat(map.get(100), is(100L));
+    }
+
     // --- Customer Test Case 1 ------------------------------------------------
     @Test
     public final void testNonBlockingHashMapSize()
@@ -16,11 +16,13 @@ package org.jctools.maps.nbhm_test;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.stream.StreamSupport;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import org.jctools.maps.HashingStrategies;
 import org.jctools.maps.NonBlockingHashMap;
 
 import static org.hamcrest.CoreMatchers.*;
@@ -406,6 +408,351 @@ public class NBHM_Tester2
         assertEquals("values().iterator() count", ITEM_COUNT, itemCount);
     }
 
+    // --- compute family ------------------------------------------------------
+    @Test
+    public void testComputeFamily()
+    {
+        NonBlockingHashMap<String, String> map = new NonBlockingHashMap<>();
+        final int[] calls = new int[1];
+        assertThat(map.computeIfAbsent("k1", k -> { calls[0]++; return k + "v"; }), is("k1v"));
+        assertThat(map.computeIfAbsent("k1", k -> { calls[0]++; return "other"; }), is("k1v"));
+        assertThat("function not applied to a present key", calls[0], is(1));
+        assertThat(map.computeIfAbsent("k2", k -> null), nullValue());
+        assertFalse(map.containsKey("k2"));
+        assertThat(map.size(), is(1));
+
+        assertThat(map.computeIfPresent("k2", (k, v) -> "x"), nullValue());
+        assertFalse(map.containsKey("k2"));
+        assertThat(map.computeIfPresent("k1", (k, v) -> v + "!"), is("k1v!"));
+        assertThat(map.get("k1"), is("k1v!"));
+        assertThat(map.computeIfPresent("k1", (k, v) -> null), nullValue());
+        assertFalse(map.containsKey("k1"));
+        assertThat(map.size(), is(0));
+
+        assertThat(map.compute("k3", (k, v) -> v == null ? "new" : v + "+"), is("new"));
+        assertThat(map.compute("k3", (k, v) -> v == null ? "new" : v + "+"), is("new+"));
+        assertThat(map.size(), is(1));
+        assertThat(map.compute("k3", (k, v) -> null), nullValue());
+        assertThat(map.compute("k3", (k, v) -> null), nullValue());
+        assertTrue(map.isEmpty());
+
+        assertThat(map.merge("k4", "a", String::concat), is("a"));
+        assertThat(map.merge("k4", "b", String::concat), is("ab"));
+        assertThat(map.merge("k4", "c", (a, b) -> null), nullValue());
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentMerge() throws InterruptedException
+    {
+        final NonBlockingHashMap<String, Integer> map = new NonBlockingHashMap<>();
+        final int num_thrds = 4;
+        final int num_keys = 2000; // Enough keys to resize while merging
+        final int rounds = 10;
+        Thread ts[] = new Thread[num_thrds];
+        for (int i = 0; i < num_thrds; i++)
+        {
+            ts[i] = new Thread()
+            {
+                public void run()
+                {
+                    for (int r = 0; r < rounds; r++)
+                    {
+                        for (int k = 0; k < num_keys; k++)
+                        {
+                            map.merge("k" + k, 1, Integer::sum);
+                        }
+                    }
+                }
+            };
+            ts[i].start();
+        }
+        for (int i = 0; i < num_thrds; i++)
+        {
+            ts[i].join();
+        }
+        assertThat(map.size(), is(num_keys));
+        for (int k = 0; k < num_keys; k++)
+        {
+            assertThat(map.get("k" + k), is(num_thrds * rounds));
+        }
+    }
+
+    @Test
+    public void testParallelBulk()
+    {
+        final NonBlockingHashMap<Integer, Integer> map = new NonBlockingHashMap<>();
+        final int num_keys = 100000;
+        for (int k = 0; k < num_keys; k++)
+        {
+            map.put(k, k);
+        }
+        for (int k = 0; k < num_keys; k += 10)
+        {
+            map.remove(k);
+        }
+        long expected = 0;
+        for (Integer v : map.values())
+        {
+            expected += v;
+        }
+        for (long threshold : new long[]{1, Long.MAX_VALUE})
+        {
+            final java.util.concurrent.atomic.LongAdder seen = new java.util.concurrent.atomic.LongAdder();
+            map.forEach(threshold, (k, v) -> {
+                assertEquals(k, v);
+                seen.add(v);
+            });
+            assertThat(seen.sum(), is(expected));
+            assertThat(map.reduceToLong(threshold, (k, v) -> v, 0L, Long::sum), is(expected));
+            assertThat(map.reduce(threshold, (k, v) -> 1, Integer::sum), is(map.size()));
+            assertThat(map.reduce(threshold, (k, v) -> null, Integer::sum), nullValue());
+            assertThat(map.search(threshold, (k, v) -> v == 77777 ? k : null), is(77777));
+            assertThat(map.search(threshold, (k, v) -> v == 77770 ? k : null), nullValue());
+        }
+    }
+
+    // Keys present before the bulk operation must be visited while other
+    // threads resize the table.
+    @Test
+    public void testParallelBulkDuringResize() throws InterruptedException
+    {
+        final NonBlockingHashMap<Integer, Integer> map = new NonBlockingHashMap<>();
+        final int num_keys = 50000;
+        for (int k = 0; k < num_keys; k++)
+        {
+            map.put(k, k);
+        }
+        Thread grower = new Thread()
+        {
+            public void run()
+            {
+                for (int k = num_keys; k < 8 * num_keys; k++)
+                {
+                    map.put(k, -1);
+                }
+            }
+        };
+        grower.start();
+        for (int i = 0; i < 5; i++)
+        {
+            assertThat(map.reduceToLong(1, (k, v) -> k < num_keys ? 1 : 0, 0L, Long::sum), is((long) num_keys));
+        }
+        grower.join();
+        assertThat(map.reduceToLong(1, (k, v) -> 1, 0L, Long::sum), is((long) 8 * num_keys));
+    }
+
+    @Test
+    public void testSpliterators()
+    {
+        final NonBlockingHashMap<Integer, Integer> map = new NonBlockingHashMap<>();
+        final int num_keys = 100000;
+        long expected = 0;
+        for (int k = 0; k < num_keys; k++)
+        {
+            map.put(k, k);
+            if (k % 10 != 0)
+            {
+                expected += k;
+            }
+        }
+        for (int k = 0; k < num_keys; k += 10)
+        {
+            map.remove(k);
+        }
+        Spliterator<Integer> split = map.keySet().spliterator();
+        assertTrue(split.hasCharacteristics(Spliterator.CONCURRENT | Spliterator.DISTINCT | Spliterator.NONNULL));
+        assertFalse(split.hasCharacteristics(Spliterator.SIZED));
+        assertThat(split.estimateSize(), is((long) map.size()));
+        assertNotNull(split.trySplit());
+
+        for (boolean parallel : new boolean[]{false, true})
+        {
+            assertThat(StreamSupport.stream(map.keySet().spliterator(), parallel).mapToLong(k -> k).sum(), is(expected));
+            assertThat(StreamSupport.stream(map.values().spliterator(), parallel).mapToLong(v -> v).sum(), is(expected));
+            assertThat(StreamSupport.stream(map.entrySet().spliterator(), parallel)
+                .filter(e -> e.getKey().equals(e.getValue())).count(), is((long) map.size()));
+            assertThat(StreamSupport.stream(map.keySet().spliterator(), parallel).distinct().count(), is((long) map.size()));
+        }
+        assertThat(map.keySet().parallelStream().filter(k -> k == 77777).findAny().get(), is(77777));
+
+        // Entries write through to the map
+        map.entrySet().parallelStream().filter(e -> e.getKey() < 100).forEach(e -> e.setValue(-1));
+        assertThat(map.get(99), is(-1));
+        assertThat(map.get(101), is(101));
+    }
+
+    @Test
+    public void testCompact() throws InterruptedException
+    {
+        final NonBlockingHashMap<Integer, Integer> map = new NonBlockingHashMap<>();
+        final int num_keys = 100000;
+        for (int k = 0; k < num_keys; k++)
+        {
+            map.put(k, k);
+        }
+        for (int k = 0; k < num_keys; k++)
+        {
+            if (k % 100 != 0)
+            {
+                map.remove(k);
+            }
+        }
+        final int grown = map.raw_array().length;
+        map.compact();
+        assertTrue(map.raw_array().length <= grown / 16);
+        assertThat(map.size(), is(num_keys / 100));
+        for (int k = 0; k < num_keys; k++)
+        {
+            assertThat(map.get(k), k % 100 == 0 ? is(k) : nullValue());
+        }
+
+        // Compacting while other threads read and write
+        final java.util.concurrent.atomic.AtomicBoolean failed = new java.util.concurrent.atomic.AtomicBoolean();
+        Thread writer = new Thread()
+        {
+            public void run()
+            {
+                for (int k = num_keys; k < 2 * num_keys; k++)
+                {
+                    map.put(k, k);
+                    if (!map.get(k).equals(k) || !map.get(0).equals(0))
+                    {
+                        failed.set(true);
+                    }
+                    map.remove(k);
+                }
+            }
+        };
+        writer.start();
+        while (writer.isAlive())
+        {
+            map.compact();
+        }
+        writer.join();
+        assertFalse(failed.get());
+        assertThat(map.size(), is(num_keys / 100));
+    }
+
+    @Test
+    public void testStats()
+    {
+        final NonBlockingHashMap<Integer, Integer> map = new NonBlockingHashMap<>();
+        assertNull(map.stats());
+        map.collectStats(true);
+        for (int k = 0; k < 10000; k++)
+        {
+            map.put(k, k);
+        }
+        for (int k = 0; k < 10000; k++)
+        {
+            map.get(k);
+        }
+        NonBlockingHashMap.Stats stats = map.stats();
+        assertTrue(stats.resizes() > 0);
+        assertTrue(stats.resizeNanos() > 0);
+        assertTrue(stats.copyHelpNanos() > 0);
+        long lookups = 0;
+        for (long count : stats.probeHistogram())
+        {
+            lookups += count;
+        }
+        assertTrue(lookups >= 20000);
+        assertThat(stats.tableLengths().length, is(1));
+        assertThat(stats.tableLengths()[0], is((map.raw_array().length - 2) >> 1));
+        assertThat(stats.tombstoneRatio(), is(0.0));
+
+        for (int k = 0; k < 5000; k++)
+        {
+            map.remove(k);
+        }
+        assertThat(map.stats().tombstoneRatio(), is(0.5));
+        map.collectStats(true);
+        assertThat(map.stats().resizes(), is(0L));
+        map.compact();
+        assertThat(map.stats().resizes(), is(1L));
+        assertThat(map.stats().tombstoneRatio(), is(0.0));
+
+        // A pathological hash function shows up as long probes
+        final NonBlockingHashMap<BadHash, Integer> bad = new NonBlockingHashMap<>(1000);
+        bad.collectStats(true);
+        for (int k = 0; k < 8; k++)
+        {
+            bad.put(new BadHash(k), k);
+        }
+        long[] probes = bad.stats().probeHistogram();
+        assertTrue(probes[3] > 0); // 4 to 7 reprobes
+        map.collectStats(false);
+        assertNull(map.stats());
+    }
+
+    private static final class BadHash
+    {
+        final int value;
+
+        BadHash(int value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 42;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof BadHash && ((BadHash) o).value == value;
+        }
+    }
+
+    @Test
+    public void testHashingStrategy() throws IOException, ClassNotFoundException
+    {
+        // byte[] keys by content, across several resizes
+        final NonBlockingHashMap<byte[], Integer> bytes = new NonBlockingHashMap<>(HashingStrategies.BYTE_ARRAY);
+        for (int k = 0; k < 10000; k++)
+        {
+            assertThat(bytes.put(Integer.toString(k).getBytes(), k), nullValue());
+        }
+        assertThat(bytes.size(), is(10000));
+        for (int k = 0; k < 10000; k++)
+        {
+            assertThat(bytes.get(Integer.toString(k).getBytes()), is(k));
+        }
+        assertThat(bytes.put("42".getBytes(), -42), is(42));
+        assertThat(bytes.putIfAbsent("42".getBytes(), 0), is(-42));
+        assertTrue(bytes.replace("42".getBytes(), -42, 42));
+        assertThat(bytes.computeIfPresent("7".getBytes(), (k, v) -> v + 1), is(8));
+        assertThat(bytes.remove("7".getBytes()), is(8));
+        assertFalse(bytes.containsKey("7".getBytes()));
+        assertThat(bytes.size(), is(9999));
+
+        // CharSequence keys by content or ignoring case, whatever their class
+        final NonBlockingHashMap<CharSequence, String> chars = new NonBlockingHashMap<>(HashingStrategies.CHAR_SEQUENCE);
+        chars.put("key", "v");
+        assertThat(chars.get(new StringBuilder("key")), is("v"));
+        assertThat(chars.get("Key"), nullValue());
+        final NonBlockingHashMap<CharSequence, String> caseless = new NonBlockingHashMap<>(HashingStrategies.CASE_INSENSITIVE);
+        caseless.put("Key", "v");
+        assertThat(caseless.put(new StringBuilder("kEY"), "w"), is("v"));
+        assertThat(caseless.size(), is(1));
+        assertThat(caseless.get("KEY"), is("w"));
+        assertThat(caseless.getk("key").toString(), is("Key"));
+
+        // The strategy survives serialization
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bos);
+        out.writeObject(caseless);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        @SuppressWarnings("unchecked")
+        NonBlockingHashMap<CharSequence, String> copy = (NonBlockingHashMap<CharSequence, String>) in.readObject();
+        assertThat(copy.get("key"), is("w"));
+    }
+
     // --- Customer Test Case 3 ------------------------------------------------
     private TestKeyFeeder getTestKeyFeeder()
     {
@@ -0,0 +1,305 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps.nbhm_test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import org.jctools.maps.LongLongConsumer;
+import org.jctools.maps.NonBlockingLongLongHashMap;
+
+import static org.jctools.maps.NonBlockingLongLongHashMap.NO_VALUE;
+import static org.junit.Assert.*;
+
+// Test NonBlockingLongLongHashMap via JUnit
+public class NBLLHM_Tester2
+{
+
+    // Test some basic stuff; add a few keys, remove a few keys
+    @Test
+    public void testBasic()
+    {
+        NonBlockingLongLongHashMap map = new NonBlockingLongLongHashMap();
+        assertTrue(map.isEmpty());
+        assertEquals(NO_VALUE, map.put(1, 10));
+        assertEquals(1, map.size());
+        assertEquals(NO_VALUE, map.putIfAbsent(2, 20));
+        assertEquals(2, map.size());
+        assertTrue(map.containsKey(2));
+        assertEquals(10, map.put(1, 11));
+        assertEquals(20, map.put(2, 21));
+        assertEquals(2, map.size());
+        assertEquals(21, map.putIfAbsent(2, 22));
+        assertEquals(11, map.remove(1));
+        assertFalse(map.containsKey(1));
+        assertEquals(1, map.size());
+        assertEquals(NO_VALUE, map.remove(1));
+        assertEquals(21, map.remove(2));
+        assertEquals(NO_VALUE, map.remove(2));
+        assertTrue(map.isEmpty());
+
+        // zero is a value like any other
+        assertEquals(NO_VALUE, map.put(3, 0));
+        assertTrue(map.containsKey(3));
+        assertEquals(0, map.get(3));
+        assertEquals(0, map.remove(3));
+        assertEquals(7, map.getOrDefault(3, 7));
+
+        assertEquals(NO_VALUE, map.replace(4, 40));
+        assertFalse(map.containsKey(4));
+        assertEquals(NO_VALUE, map.put(4, 40));
+        assertEquals(40, map.replace(4, 41));
+        assertFalse(map.replace(4, 40, 42));
+        assertTrue(map.replace(4, 41, 42));
+        assertFalse(map.remove(4, 41));
+        assertTrue(map.remove(4, 42));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testKeyZero()
+    {
+        NonBlockingLongLongHashMap map = new NonBlockingLongLongHashMap();
+        assertEquals(NO_VALUE, map.get(0));
+        assertEquals(NO_VALUE, map.put(0, 5));
+        assertTrue(map.containsKey(0));
+        assertEquals(1, map.size());
+        assertEquals(5, map.putIfAbsent(0, 6));
+        assertEquals(8, map.addAndGet(0, 3));
+        assertEquals(8, map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertEquals(0, map.getAndAdd(0, 2));
+        assertEquals(2, map.get(0));
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testAddAndGet()
+    {
+        NonBlockingLongLongHashMap map = new NonBlockingLongLongHashMap();
+        assertEquals(5, map.addAndGet(7, 5));
+        assertEquals(3, map.addAndGet(7, -2));
+        assertEquals(3, map.getAndAdd(7, 1));
+        assertEquals(4, map.get(7));
+        assertEquals(1, map.size());
+        assertEquals(-1, map.addAndGet(8, -1));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void testReservedValues()
+    {
+        NonBlockingLongLongHashMap map = new NonBlockingLongLongHashMap();
+        for (long v = Long.MIN_VALUE; v < NonBlockingLongLongHashMap.LOWEST_VALUE; v++)
+        {
+            try
+            {
+                map.put(1, v);
+                fail("value " + v + " should be reserved");
+            }
+            catch (IllegalArgumentException expected)
+            {
+            }
+        }
+        assertFalse(map.containsKey(1));
+        assertEquals(NO_VALUE, map.put(1, NonBlockingLongLongHashMap.LOWEST_VALUE));
+        try
+        {
+            map.addAndGet(1, -1);
+            fail("overflow into the reserved values should fail");
+        }
+        catch (IllegalArgumentException expected)
+        {
+        }
+        assertEquals(NonBlockingLongLongHashMap.LOWEST_VALUE, map.get(1));
+    }
+
+    @Test
+    public void testForEach()
+    {
+        NonBlockingLongLongHashMap map = new NonBlockingLongLongHashMap();
+        final Map<Long, Long> expected = new HashMap<>();
+        for (long i = 0; i < 1000; i++)
+        {
+            map.put(i, i * 3);
+            expected.put(i, i * 3);
+        }
+        for (long i = 0; i < 1000; i += 7)
+        {
+            map.remove(i);
+            expected.remove(i);
+        }
+        final Map<Long, Long> seen = new HashMap<>();
+        map.forEach(new LongLongConsumer()
+        {
+            @Override
+            public void accept(long key, long value)
+            {
+                assertNull(seen.put(key, value));
+            }
+        });
+        assertEquals(expected, seen);
+        assertEquals(expected.size(), map.size());
+    }
+
+    // Keys equal to the filler keys a resize writes into free slots (16 to
+    // 31 for the first table), and the zero key, are each visited once even
+    // when the table is copied part way through the visit.
+    @Test
+    public void testForEachDuringResize()
+    {
+        final NonBlockingLongLongHashMap map = new NonBlockingLongLongHashMap();
+        final Map<Long, Long> expected = new HashMap<>();
+        for (long k : new long[]{0, 16, 19, 22, 25, 31})
+        {
+            map.put(k, k);
+            expected.put(k, k);
+        }
+        final Map<Long, Long> seen = new HashMap<>();
+        map.forEach(new LongLongConsumer()
+        {
+            @Override
+            public void accept(long key, long value)
+            {
+                if (seen.isEmpty())
+                {
+                    // Grow the table, twice over, from within the visit
+                    for (long k = 16; k < 96; k++)
+                    {
+                        map.putIfAbsent(k, -k);
+                    }
+                }
+                assertNull("visited twice: " + key, seen.put(key, value));
+            }
+        });
+        for (Map.Entry<Long, Long> e : expected.entrySet())
+        {
+            assertEquals(e.getValue(), seen.get(e.getKey()));
+        }
+        for (Map.Entry<Long, Long> e : seen.entrySet())
+        {
+            assertEquals(map.get(e.getKey()), (long) e.getValue());
+        }
+    }
+
+    // Concurrent counters, growing the table from its minimum size while
+    // being updated, must not lose any increments.
+    @Test
+    public void testConcurrentAddAndGet() throws Exception
+    {
+        final int threads = 4;
+        final int keys = 5000;
+        final int rounds = 10;
+        final NonBlockingLongLongHashMap map = new NonBlockingLongLongHashMap();
+        ExecutorService ex = Executors.newFixedThreadPool(threads);
+        try
+        {
+            final CyclicBarrier barrier = new CyclicBarrier(threads);
+            Future<?>[] futures = new Future<?>[threads];
+            for (int t = 0; t < threads; t++)
+            {
+                final int offset = t;
+                futures[t] = ex.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws Exception
+                    {
+                        barrier.await();
+                        for (int r = 0; r < rounds; r++)
+                        {
+                            for (int k = 0; k < keys; k++)
+                            {
+                                map.addAndGet((k + offset * 31) % keys, 1);
+                            }
+                        }
+                        return null;
+                    }
+                });
+            }
+            for (Future<?> f : futures)
+            {
+                f.get();
+            }
+        }
+        finally
+        {
+            ex.shutdown();
+        }
+        assertEquals(keys, map.size());
+        final AtomicLong sum = new AtomicLong();
+        map.forEach(new LongLongConsumer()
+        {
+            @Override
+            public void accept(long key, long value)
+            {
+                assertEquals(threads * rounds, value);
+                sum.addAndGet(value);
+            }
+        });
+        assertEquals((long) keys * threads * rounds, sum.get());
+    }
+
+    // Racing putIfAbsent calls, each thread must win exactly the keys no
+    // other thread won.
+    @Test
+    public void testConcurrentPutIfAbsent() throws Exception
+    {
+        final int threads = 4;
+        final int keys = 20000;
+        final NonBlockingLongLongHashMap map = new NonBlockingLongLongHashMap();
+        ExecutorService ex = Executors.newFixedThreadPool(threads);
+        long wins = 0;
+        try
+        {
+            final CyclicBarrier barrier = new CyclicBarrier(threads);
+            java.util.List<Future<Long>> futures = new java.util.ArrayList<>();
+            for (int t = 0; t < threads; t++)
+            {
+                final long id = t;
+                futures.add(ex.submit(new Callable<Long>()
+                {
+                    @Override
+                    public Long call() throws Exception
+                    {
+                        barrier.await();
+                        long won = 0;
+                        for (long k = 1; k <= keys; k++)
+                        {
+                            if (map.putIfAbsent(k * 0x9E3779B97F4A7C15L, id) == NO_VALUE)
+                            {
+                                won++;
+                            }
+                        }
+                        return won;
+                    }
+                }));
+            }
+            for (Future<Long> f : futures)
+            {
+                wins += f.get();
+            }
+        }
+        finally
+        {
+            ex.shutdown();
+        }
+        assertEquals(keys, wins);
+        assertEquals(keys, map.size());
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps.nbhs_test;
+
+import java.io.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.StreamSupport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.jctools.maps.NonBlockingHashSetLong;
+
+import static org.hamcrest.CoreMatchers.anyOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+// Test NonBlockingHashSetLong via JUnit
+public class nbhsl_tester
+{
+
+    private NonBlockingHashSetLong _nbhsl;
+
+    @Before
+    public void setUp()
+    {
+        _nbhsl = new NonBlockingHashSetLong();
+    }
+
+    // Test some basic stuff; add a few keys, remove a few keys
+    @Test
+    public void testBasic()
+    {
+        assertTrue(_nbhsl.isEmpty());
+        assertTrue(_nbhsl.add(1L));
+        checkSizes(1);
+        assertTrue(_nbhsl.add(Long.valueOf(2)));
+        checkSizes(2);
+        assertFalse(_nbhsl.add(1L));
+        assertFalse(_nbhsl.add(Long.valueOf(2)));
+        checkSizes(2);
+        assertTrue(_nbhsl.contains(1L));
+        assertTrue(_nbhsl.contains(Long.valueOf(2)));
+        assertFalse(_nbhsl.contains("2"));
+        assertThat(_nbhsl.remove(1L), is(true));
+        checkSizes(1);
+        assertThat(_nbhsl.remove(1L), is(false));
+        assertTrue(_nbhsl.remove(Long.valueOf(2)));
+        checkSizes(0);
+        assertFalse(_nbhsl.remove(2L));
+        assertFalse(_nbhsl.remove(3L));
+        assertTrue(_nbhsl.isEmpty());
+
+        // Including the keys the map keeps aside
+        assertTrue(_nbhsl.add(0L));
+        assertTrue(_nbhsl.add(Long.MIN_VALUE));
+        assertTrue(_nbhsl.add(-1L));
+        assertTrue(_nbhsl.contains(0L));
+        checkSizes(3);
+        assertTrue(_nbhsl.remove(0L));
+        checkSizes(2);
+    }
+
+    // Check the iterator for correct size counts
+    private void checkSizes(int expectedSize)
+    {
+        assertEquals("size()", expectedSize, _nbhsl.size());
+        NonBlockingHashSetLong.IteratorLong it = _nbhsl.iterator();
+        int result = 0;
+        while (it.hasNext())
+        {
+            result++;
+            it.nextLong();
+        }
+        assertEquals("iterator missed", expectedSize, result);
+    }
+
+    @Test
+    public void testIteration()
+    {
+        assertTrue(_nbhsl.add(1L));
+        assertTrue(_nbhsl.add(2L));
+        assertThat("toString works", _nbhsl.toString(), anyOf(is("[1, 2]"), is("[2, 1]")));
+
+        for (long l = 3; l <= 1000; l++)
+        {
+            _nbhsl.add(l);
+        }
+        long sum = 0;
+        for (NonBlockingHashSetLong.IteratorLong it = _nbhsl.iterator(); it.hasNext(); )
+        {
+            long l = it.nextLong();
+            sum += l;
+            if (l % 2 == 0)
+            {
+                it.remove();
+            }
+        }
+        assertThat(sum, is(1000L * 1001 / 2));
+        assertThat(_nbhsl.size(), is(500));
+        assertThat(StreamSupport.longStream(_nbhsl.spliterator(), true).sum(), is(500L * 500));
+        long[] elements = _nbhsl.toLongArray();
+        assertThat(elements.length, is(500));
+        for (long l : elements)
+        {
+            assertThat(l % 2, is(1L));
+        }
+        assertTrue(_nbhsl.containsAll(java.util.Arrays.asList(1L, 3L, 999L)));
+        _nbhsl.clear();
+        assertTrue(_nbhsl.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentAdd() throws InterruptedException
+    {
+        final int threads = 4;
+        final int perThread = 100000;
+        final AtomicInteger added = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++)
+        {
+            workers[t] = new Thread(() -> {
+                // Every thread adds every key; exactly one of them wins each
+                for (long l = 0; l < perThread; l++)
+                {
+                    if (_nbhsl.add(l * 31))
+                    {
+                        added.incrementAndGet();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+        assertThat(added.get(), is(perThread));
+        assertThat(_nbhsl.size(), is(perThread));
+    }
+
+    @Test
+    public void testSerial() throws IOException, ClassNotFoundException
+    {
+        assertTrue(_nbhsl.add(1L));
+        assertTrue(_nbhsl.add(2L));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bos);
+        out.writeObject(_nbhsl);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        NonBlockingHashSetLong nbhsl = (NonBlockingHashSetLong) in.readObject();
+        in.close();
+        assertEquals(_nbhsl, nbhsl);
+        assertTrue(nbhsl.contains(2L));
+    }
+}
@@ -188,6 +188,83 @@ public class nbsi_tester
         _nbsi.clear();
     }
 
+    @Test
+    public void testSetAlgebra()
+    {
+        final NonBlockingSetInt a = new NonBlockingSetInt();
+        final NonBlockingSetInt b = new NonBlockingSetInt();
+        final java.util.Set<Integer> union = new java.util.TreeSet<>();
+        final java.util.Set<Integer> inter = new java.util.TreeSet<>();
+        // Multiples of 2 and 3, including every 64th bit which is kept aside
+        for (int i = 0; i < 10000; i++)
+        {
+            if (i % 2 == 0) a.add(i);
+            if (i % 3 == 0 && i < 7000) b.add(i);
+            if (i % 2 == 0 || (i % 3 == 0 && i < 7000)) union.add(i);
+            if (i % 6 == 0 && i < 7000) inter.add(i);
+        }
+        assertThat(a.andCardinality(b), is(inter.size()));
+        assertThat(b.andCardinality(a), is(inter.size()));
+        NonBlockingSetInt i1 = a.intersect(b);
+        assertThat(i1.size(), is(inter.size()));
+        assertEquals(inter, new java.util.TreeSet<>(i1));
+        NonBlockingSetInt u1 = a.union(b);
+        assertThat(u1.size(), is(union.size()));
+        assertEquals(union, new java.util.TreeSet<>(u1));
+        assertTrue(u1.contains(63) && u1.contains(9996) && !u1.contains(9997));
+        // The results are sets like any other
+        assertTrue(u1.add(20001));
+        assertThat(u1.nextSetBit(10000), is(20001));
+
+        assertThat(a.nextSetBit(-5), is(0));
+        assertThat(a.nextSetBit(1), is(2));
+        assertThat(a.nextSetBit(63), is(64));
+        assertThat(a.nextSetBit(9999), is(-1));
+        assertThat(new NonBlockingSetInt().nextSetBit(0), is(-1));
+        assertThat(a.andCardinality(new NonBlockingSetInt()), is(0));
+        assertThat(a.union(new NonBlockingSetInt()).size(), is(5000));
+
+        // Iteration in order, whole words at a time
+        Iterator<Integer> it = a.iterator();
+        for (int i = 0; i < 10000; i += 2)
+        {
+            assertThat(it.next(), is(i));
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testScanDuringResize() throws InterruptedException
+    {
+        // Elements below 1000 are never touched, so are always seen
+        final NonBlockingSetInt nbsi = new NonBlockingSetInt();
+        for (int i = 0; i < 1000; i += 7)
+        {
+            nbsi.add(i);
+        }
+        final int expected = nbsi.size();
+        Thread grower = new Thread(() -> {
+            for (int i = 1000; i < 1 << 20; i++)
+            {
+                nbsi.add(i);
+            }
+        });
+        grower.start();
+        while (grower.isAlive())
+        {
+            int found = 0;
+            for (int i = nbsi.nextSetBit(0); i >= 0 && i < 1000; i = nbsi.nextSetBit(i + 1))
+            {
+                assertThat(i % 7, is(0));
+                found++;
+            }
+            assertThat(found, is(expected));
+            assertTrue(nbsi.andCardinality(nbsi) >= expected);
+        }
+        grower.join();
+        assertThat(nbsi.andCardinality(nbsi), is(nbsi.size()));
+    }
+
     // Do some simple concurrent testing
     @Test
     public void testConcurrentSimple() throws InterruptedException
@@ -0,0 +1,183 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps.nbhs_test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.jctools.maps.NonBlockingSparseSetInt;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+// Test NonBlockingSparseSetInt via JUnit
+public class nbssi_tester
+{
+
+    private NonBlockingSparseSetInt _nbssi;
+
+    @Before
+    public void setUp()
+    {
+        _nbssi = new NonBlockingSparseSetInt();
+    }
+
+    // Test some basic stuff; add a few keys, remove a few keys
+    @Test
+    public void testBasic()
+    {
+        assertTrue(_nbssi.isEmpty());
+        assertTrue(_nbssi.add(1));
+        checkSizes(1);
+        assertTrue(_nbssi.add(Integer.valueOf(2)));
+        checkSizes(2);
+        assertFalse(_nbssi.add(1));
+        assertFalse(_nbssi.add(2));
+        checkSizes(2);
+        assertThat(_nbssi.remove(1), is(true));
+        checkSizes(1);
+        assertThat(_nbssi.remove(1), is(false));
+        assertTrue(_nbssi.remove(Integer.valueOf(2)));
+        checkSizes(0);
+        assertFalse(_nbssi.remove(2));
+        assertFalse(_nbssi.remove(3));
+        assertFalse(_nbssi.contains(Integer.MAX_VALUE));
+        assertTrue(_nbssi.isEmpty());
+    }
+
+    // Check the iterator for correct size counts
+    private void checkSizes(int expectedSize)
+    {
+        assertEquals("size()", expectedSize, _nbssi.size());
+        NonBlockingSparseSetInt.IteratorInt it = _nbssi.iterator();
+        int result = 0;
+        while (it.hasNext())
+        {
+            result++;
+            it.nextInt();
+        }
+        assertEquals("iterator missed", expectedSize, result);
+    }
+
+    @Test
+    public void testSparse()
+    {
+        // Far apart elements only allocate their own blocks
+        int[] elements = {0, 63, 64, 4095, 4096, 1 << 20, Integer.MAX_VALUE, Integer.MIN_VALUE, -1};
+        for (int i : elements)
+        {
+            assertTrue(_nbssi.add(i));
+        }
+        for (int i : elements)
+        {
+            assertTrue(_nbssi.contains(i));
+        }
+        assertFalse(_nbssi.contains(65));
+        assertFalse(_nbssi.contains(-2));
+        assertThat(_nbssi.blocks(), is(6));
+        checkSizes(elements.length);
+
+        // In unsigned order
+        List<Integer> found = new ArrayList<>();
+        for (int i : _nbssi)
+        {
+            found.add(i);
+        }
+        assertThat(found.toString(), is("[0, 63, 64, 4095, 4096, 1048576, 2147483647, -2147483648, -1]"));
+        assertThat(_nbssi.toString(), is(found.toString()));
+
+        _nbssi.clear();
+        assertThat(_nbssi.blocks(), is(0));
+        checkSizes(0);
+    }
+
+    @Test
+    public void testIterationRemove()
+    {
+        for (int i = 0; i < 100000; i += 3)
+        {
+            _nbssi.add(i);
+        }
+        long sum = 0;
+        for (NonBlockingSparseSetInt.IteratorInt it = _nbssi.iterator(); it.hasNext(); )
+        {
+            int i = it.nextInt();
+            sum += i;
+            if (i % 2 == 0)
+            {
+                it.remove();
+            }
+        }
+        assertThat(sum, is(3L * 33333 * 33334 / 2));
+        checkSizes(16667);
+        for (int i = 0; i < 100000; i++)
+        {
+            assertThat(_nbssi.contains(i), is(i % 3 == 0 && i % 2 != 0));
+        }
+    }
+
+    @Test
+    public void testSerial() throws IOException, ClassNotFoundException
+    {
+        assertTrue(_nbssi.add(1));
+        assertTrue(_nbssi.add(-5));
+        assertTrue(_nbssi.add(1 << 30));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bos);
+        out.writeObject(_nbssi);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        NonBlockingSparseSetInt nbssi = (NonBlockingSparseSetInt) in.readObject();
+        in.close();
+        assertEquals(_nbssi.toString(), nbssi.toString());
+        assertThat(nbssi.size(), is(3));
+    }
+
+    @Test
+    public void testConcurrentSimple() throws InterruptedException
+    {
+        // In 2 threads, add and remove elements in words shared with the other thread
+        final int num = 1 << 20;
+        Thread[] workers = new Thread[2];
+        for (int t = 0; t < 2; t++)
+        {
+            final int parity = t;
+            workers[t] = new Thread(() -> {
+                for (int i = parity; i < num; i += 2)
+                {
+                    assertTrue(_nbssi.add(i));
+                }
+                for (int i = parity; i < num; i += 4)
+                {
+                    assertTrue(_nbssi.remove(i));
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+        checkSizes(num / 2);
+        for (int i = 0; i < num; i++)
+        {
+            assertThat(_nbssi.contains(i), is(i % 4 >= 2));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.jctools.queues;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import org.jctools.queues.spec.ConcurrentQueueSpec;
+import org.jctools.queues.spec.Ordering;
+
+@RunWith(Parameterized.class)
+public class MpqSanityTestSpscCompact extends MpqSanityTest
+{
+    public MpqSanityTestSpscCompact(ConcurrentQueueSpec spec, MessagePassingQueue<Integer> queue)
+    {
+        super(spec, queue);
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> parameters()
+    {
+        ArrayList<Object[]> list = new ArrayList<Object[]>();
+        list.add(makeMpq(1, 1, 4, Ordering.FIFO, new SpscCompactArrayQueue<Integer>(4)));// SPSC size 4
+        list.add(makeMpq(1, 1, SIZE, Ordering.FIFO, new SpscCompactArrayQueue<Integer>(SIZE)));// SPSC size SIZE
+        return list;
+    }
+}
@@ -0,0 +1,29 @@
+package org.jctools.queues;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Queue;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import org.jctools.queues.spec.ConcurrentQueueSpec;
+import org.jctools.queues.spec.Ordering;
+
+@RunWith(Parameterized.class)
+public class QueueSanityTestSpscCompact extends QueueSanityTest
+{
+    public QueueSanityTestSpscCompact(ConcurrentQueueSpec spec, Queue<Integer> queue)
+    {
+        super(spec, queue);
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> parameters()
+    {
+        ArrayList<Object[]> list = new ArrayList<Object[]>();
+        list.add(makeQueue(1, 1, 4, Ordering.FIFO, new SpscCompactArrayQueue<Integer>(4)));// SPSC size 4
+        list.add(makeQueue(1, 1, SIZE, Ordering.FIFO, new SpscCompactArrayQueue<Integer>(SIZE)));// SPSC size SIZE
+        return list;
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+
+import org.jctools.queues.MessagePassingQueue;
+import org.jctools.queues.MpscArrayQueue;
+import org.jctools.queues.MpscUnboundedArrayQueue;
+import org.jctools.util.PortableJvmInfo;
+import org.jctools.util.Pow2;
+import org.jctools.util.RangeUtil;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A cache holding at most about {@code maximumSize} entries, built on a {@link NonBlockingHashMap} and evicting with
+ * the W-TinyLFU policy.
+ * <p>
+ * The map is only touched by the cache operations; the eviction policy is kept aside and updated in batches by
+ * whichever thread gets hold of the eviction lock:
+ * <ul>
+ * <li>Reads are recorded in striped, lossy, {@link MpscArrayQueue} buffers. A full buffer drops the read, so
+ * {@link #get} never blocks and allocates nothing: it is a {@link NonBlockingHashMap#get}, an offer and, when the
+ * buffer is full, a {@link ReentrantLock#tryLock}.
+ * <li>Insertions and removals are recorded in a {@link MpscUnboundedArrayQueue} and are never lost. The writer then
+ * tries to apply the buffered events and evict straight away, so the cache exceeds its bound by no more than the
+ * writes in flight (rather than growing unchecked between periodic sweeps).
+ * </ul>
+ * The policy keeps a small LRU admission window (1% of the entries) in front of a segmented LRU main space (80%
+ * protected, 20% probation). Entries leaving the window are candidates for the main space; when the cache is full a
+ * candidate is only kept in place of the probation LRU victim if a {@link FrequencySketch} of the recent reads and
+ * writes has seen its key more often. Scans and one-hit wonders therefore do not flush the frequently used entries.
+ * <p>
+ * Keys and values may not be {@code null}. An update replaces the mapping with a new node, so a put allocates;
+ * hits do not.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class BoundedNonBlockingCache<K, V> {
+    private static final int READ_BUFFER_SIZE = 16;
+    private static final int WRITE_BUFFER_CHUNK = 128;
+
+    // Node queues, only read and written under the eviction lock
+    private static final int NONE = 0;
+    private static final int WINDOW = 1;
+    private static final int PROBATION = 2;
+    private static final int PROTECTED = 3;
+    private static final int DEAD = 4;
+
+    static final class Node<K, V> {
+        final K key;
+        final V value;
+        // Set once the node is no longer in the map
+        volatile boolean retired;
+        // Guarded by the eviction lock
+        int queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * An intrusive doubly linked list of nodes, least recently used first.
+     */
+    static final class AccessOrderDeque<K, V> {
+        private Node<K, V> first;
+        private Node<K, V> last;
+
+        Node<K, V> peekFirst() {
+            return first;
+        }
+
+        Node<K, V> peekLast() {
+            return last;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void remove(Node<K, V> node) {
+            final Node<K, V> prev = node.prev;
+            final Node<K, V> next = node.next;
+            if (prev == null) {
+                first = next;
+            } else {
+                prev.next = next;
+            }
+            if (next == null) {
+                last = prev;
+            } else {
+                next.prev = prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    private final NonBlockingHashMap<K, Node<K, V>> data = new NonBlockingHashMap<K, Node<K, V>>();
+    private final MpscArrayQueue<Node<K, V>>[] readBuffers;
+    private final int readBufferMask;
+    private final MpscUnboundedArrayQueue<Node<K, V>> writeBuffer =
+        new MpscUnboundedArrayQueue<Node<K, V>>(WRITE_BUFFER_CHUNK);
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final long maximumSize;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    // Guarded by the eviction lock
+    private final AccessOrderDeque<K, V> window = new AccessOrderDeque<K, V>();
+    private final AccessOrderDeque<K, V> probation = new AccessOrderDeque<K, V>();
+    private final AccessOrderDeque<K, V> protect = new AccessOrderDeque<K, V>();
+    private final FrequencySketch sketch;
+    private long size;
+    private long windowSize;
+    private long protectedSize;
+    private final MessagePassingQueue.Consumer<Node<K, V>> onRead = new MessagePassingQueue.Consumer<Node<K, V>>() {
+        @Override
+        public void accept(Node<K, V> node) {
+            onAccess(node);
+        }
+    };
+    private final MessagePassingQueue.Consumer<Node<K, V>> onWrite = new MessagePassingQueue.Consumer<Node<K, V>>() {
+        @Override
+        public void accept(Node<K, V> node) {
+            onWrite(node);
+        }
+    };
+
+    /**
+     * @param maximumSize the number of entries the cache holds once its pending writes are applied
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedNonBlockingCache(long maximumSize) {
+        this.maximumSize = RangeUtil.checkPositive(maximumSize, "maximumSize");
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (long) ((maximumSize - windowMaximum) * 0.8);
+        this.sketch = new FrequencySketch((int) Math.min(maximumSize, Pow2.MAX_POW2));
+        final int stripes = Pow2.roundToPowerOfTwo(PortableJvmInfo.CPUs);
+        this.readBuffers = new MpscArrayQueue[stripes];
+        for (int i = 0; i < stripes; i++) {
+            readBuffers[i] = new MpscArrayQueue<Node<K, V>>(READ_BUFFER_SIZE);
+        }
+        this.readBufferMask = stripes - 1;
+    }
+
+    /**
+     * @return the value mapped to the key, or {@code null} if the cache holds none
+     */
+    public V get(Object key) {
+        final Node<K, V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (!readBuffers[readStripe()].offer(node)) {
+            tryMaintenance();
+        }
+        return node.value;
+    }
+
+    /**
+     * @return true if the cache holds a value for the key, without counting as a read
+     */
+    public boolean containsKey(Object key) {
+        return data.containsKey(key);
+    }
+
+    /**
+     * Maps the key to the value, possibly evicting other entries.
+     *
+     * @return the previous value mapped to the key, or {@code null}
+     */
+    public V put(K key, V value) {
+        checkValue(value);
+        final Node<K, V> node = new Node<K, V>(key, value);
+        final Node<K, V> prior = data.put(key, node);
+        if (prior != null) {
+            prior.retired = true;
+            writeBuffer.offer(prior);
+        }
+        writeBuffer.offer(node);
+        maintenance();
+        return prior == null ? null : prior.value;
+    }
+
+    /**
+     * Maps the key to the value unless it is already mapped, possibly evicting other entries.
+     *
+     * @return the value mapped to the key, or {@code null} if the value was added
+     */
+    public V putIfAbsent(K key, V value) {
+        checkValue(value);
+        final Node<K, V> node = new Node<K, V>(key, value);
+        final Node<K, V> prior = data.putIfAbsent(key, node);
+        if (prior != null) {
+            return prior.value;
+        }
+        writeBuffer.offer(node);
+        maintenance();
+        return null;
+    }
+
+    /**
+     * @return the value mapped to the key, or {@code null} if there was none
+     */
+    public V remove(Object key) {
+        final Node<K, V> node = data.remove(key);
+        if (node == null) {
+            return null;
+        }
+        node.retired = true;
+        writeBuffer.offer(node);
+        maintenance();
+        return node.value;
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        for (K key : data.keySet()) {
+            remove(key);
+        }
+    }
+
+    /**
+     * @return the number of entries in the cache, which may exceed the maximum by the writes not yet applied
+     */
+    public int size() {
+        return data.size();
+    }
+
+    public long maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Applies the buffered reads and writes and evicts down to the maximum size, waiting for the eviction lock if
+     * another thread holds it.
+     */
+    public void cleanUp() {
+        evictionLock.lock();
+        try {
+            drainBuffers();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static void checkValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    private int readStripe() {
+        long id = Thread.currentThread().getId();
+        id *= 0x9e3779b97f4a7c15L;
+        return (int) (id >>> 32) & readBufferMask;
+    }
+
+    private void tryMaintenance() {
+        if (evictionLock.tryLock()) {
+            try {
+                drainBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void maintenance() {
+        // A writer which fails to get the lock leaves its events to the holder, which checks for them once it has
+        // released the lock: both sides write then read, so one of them sees the other.
+        do {
+            if (!evictionLock.tryLock()) {
+                return;
+            }
+            try {
+                drainBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        } while (!writeBuffer.isEmpty());
+    }
+
+    private void drainBuffers() {
+        for (MpscArrayQueue<Node<K, V>> readBuffer : readBuffers) {
+            readBuffer.drain(onRead);
+        }
+        writeBuffer.drain(onWrite);
+        evictEntries();
+    }
+
+    private void onAccess(Node<K, V> node) {
+        sketch.increment(node.key.hashCode());
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToBack(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protect.addLast(node);
+                protectedSize++;
+                // Demote the protected LRU entries beyond its share back to probation
+                while (protectedSize > protectedMaximum) {
+                    final Node<K, V> demoted = protect.peekFirst();
+                    protect.remove(demoted);
+                    protectedSize--;
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+                break;
+            case PROTECTED:
+                protect.moveToBack(node);
+                break;
+            default:
+                // Not added yet or already gone: the read is dropped
+        }
+    }
+
+    private void onWrite(Node<K, V> node) {
+        if (node.queue == DEAD) {
+            return;
+        }
+        if (node.retired) {
+            // Removed from the map, before or after it was added to the policy
+            if (node.queue != NONE) {
+                unlink(node);
+            }
+            node.queue = DEAD;
+        } else if (node.queue == NONE) {
+            sketch.increment(node.key.hashCode());
+            node.queue = WINDOW;
+            window.addLast(node);
+            windowSize++;
+            size++;
+        }
+    }
+
+    private void evictEntries() {
+        // Entries pushed out of the window are candidates, at the back of probation
+        long candidates = 0;
+        while (windowSize > windowMaximum) {
+            final Node<K, V> node = window.peekFirst();
+            window.remove(node);
+            windowSize--;
+            node.queue = PROBATION;
+            probation.addLast(node);
+            candidates++;
+        }
+        // As in W-TinyLFU each candidate is compared once, from the last one pushed out of the window backwards,
+        // against the probation LRU victim: the loser is evicted, and the next candidate faces the next victim
+        Node<K, V> candidate = probation.peekLast();
+        while (size > maximumSize) {
+            final Node<K, V> victim = probation.peekFirst();
+            if (victim == null) {
+                evict(protect.peekFirst() != null ? protect.peekFirst() : window.peekFirst());
+            } else if (candidates == 0 || candidate == victim) {
+                // Only candidates, if any, are left in probation: evict in LRU order
+                candidates = 0;
+                evict(victim);
+            } else {
+                candidates--;
+                if (admit(candidate, victim)) {
+                    evict(victim);
+                    candidate = candidate.prev;
+                } else {
+                    final Node<K, V> rejected = candidate;
+                    candidate = candidate.prev;
+                    evict(rejected);
+                }
+                if (candidate == null) {
+                    candidates = 0;
+                }
+            }
+        }
+    }
+
+    private boolean admit(Node<K, V> candidate, Node<K, V> victim) {
+        return sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode());
+    }
+
+    private void evict(Node<K, V> node) {
+        // If the remove fails the node was removed or replaced concurrently, and its retirement is in the write
+        // buffer: it is dropped from the policy now, and the retirement is then ignored
+        data.remove(node.key, node);
+        node.retired = true;
+        unlink(node);
+        node.queue = DEAD;
+    }
+
+    private void unlink(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.remove(node);
+                windowSize--;
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            case PROTECTED:
+                protect.remove(node);
+                protectedSize--;
+                break;
+            default:
+                throw new IllegalStateException("Node is not linked: " + node.queue);
+        }
+        size--;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+
+import org.jctools.util.Pow2;
+import org.jctools.util.RangeUtil;
+
+import static org.jctools.util.UnsafeLongArrayAccess.calcElementOffset;
+import static org.jctools.util.UnsafeLongArrayAccess.casElement;
+import static org.jctools.util.UnsafeLongArrayAccess.lvElement;
+
+/**
+ * A lock-free Bloom filter of {@code long} keys, for a cheap "seen before?" check ahead of a map lookup: a key which
+ * was added is always reported, and one which was not is reported with the false positive rate the filter was sized
+ * for.
+ * <p>
+ * The bits are held in a {@code long[]} of a power of two length. A key is spread with a 64-bit mix and sets
+ * {@link #hashCount()} bits picked by double hashing. Setting a bit reads its word first and only CASes it in when the
+ * bit is clear, so adding a key already present writes nothing and leaves the cache lines shared. Both operations are
+ * lock-free and do not allocate. Bits are never cleared concurrently, so a key added before a {@link #mightContain}
+ * call began is always found; {@link #clear()} is not atomic.
+ * <p>
+ * Keys with poor entropy (e.g. {@code Object.hashCode()} widened to a long) cap the accuracy at what their bits can
+ * tell apart.
+ */
+public final class ConcurrentBloomFilter {
+    private static final long MAX_BITS = 1L << 36;
+    private static final double LN2 = Math.log(2);
+
+    private final long[] words;
+    private final long bitMask;
+    private final int hashCount;
+
+    /**
+     * @param bits the number of bits, rounded up to a power of two of at least 64
+     * @param hashCount the number of bits set per key
+     */
+    public ConcurrentBloomFilter(long bits, int hashCount) {
+        RangeUtil.checkPositive(bits, "bits");
+        if (bits > MAX_BITS) {
+            throw new IllegalArgumentException("bits: " + bits + " (expected: <= " + MAX_BITS + ")");
+        }
+        RangeUtil.checkPositive(hashCount, "hashCount");
+        final int length = Pow2.roundToPowerOfTwo((int) Math.max(1, (bits + 63) >>> 6));
+        this.words = new long[length];
+        this.bitMask = ((long) length << 6) - 1;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Sizes a filter to stay within the false positive rate up to the expected number of keys, with the bit and hash
+     * counts of the usual optimum: {@code -n ln p / (ln 2)^2} bits (rounded up to a power of two, which only lowers the
+     * rate) and {@code ln 2} times the bits per key hashes.
+     *
+     * @param expectedInsertions the number of distinct keys expected
+     * @param fpp the false positive probability wanted, between 0 and 1 exclusive
+     */
+    public static ConcurrentBloomFilter create(long expectedInsertions, double fpp) {
+        RangeUtil.checkPositive(expectedInsertions, "expectedInsertions");
+        if (!(fpp > 0 && fpp < 1)) {
+            throw new IllegalArgumentException("fpp: " + fpp + " (expected: 0 < fpp < 1)");
+        }
+        final double bits = Math.ceil(-expectedInsertions * Math.log(fpp) / (LN2 * LN2));
+        if (bits > MAX_BITS) {
+            throw new IllegalArgumentException(
+                "expectedInsertions: " + expectedInsertions + " at fpp: " + fpp + " needs more than " + MAX_BITS + " bits");
+        }
+        final int hashCount = (int) Math.max(1, Math.round(bits / expectedInsertions * LN2));
+        return new ConcurrentBloomFilter((long) bits, hashCount);
+    }
+
+    /**
+     * @return the number of bits in the filter
+     */
+    public long bitSize() {
+        return bitMask + 1;
+    }
+
+    /**
+     * @return the number of bits set per key
+     */
+    public int hashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Adds the key.
+     *
+     * @return true if this call set a bit, so the key was certainly not added before; false if it might have been. Two
+     *         threads adding the same new key at once may both return true.
+     */
+    public boolean add(long key) {
+        final long h1 = mix(key);
+        final long h2 = mix(h1) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            changed |= setBit((h1 + i * h2) & bitMask);
+        }
+        return changed;
+    }
+
+    /**
+     * @return true if the key might have been added, false if it certainly was not
+     */
+    public boolean mightContain(long key) {
+        final long h1 = mix(key);
+        final long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            final long bit = (h1 + i * h2) & bitMask;
+            if ((lvElement(words, calcElementOffset(bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Clears all the bits, one word at a time: keys added concurrently may be partly cleared.
+     */
+    public void clear() {
+        for (int i = 0; i < words.length; i++) {
+            final long offset = calcElementOffset(i);
+            long word;
+            do {
+                word = lvElement(words, offset);
+            } while (word != 0 && !casElement(words, offset, word, 0));
+        }
+    }
+
+    /**
+     * @return the number of bits set, as of some point during the call for each word
+     */
+    public long bitCount() {
+        long count = 0;
+        for (int i = 0; i < words.length; i++) {
+            count += Long.bitCount(lvElement(words, calcElementOffset(i)));
+        }
+        return count;
+    }
+
+    private boolean setBit(long bit) {
+        final long offset = calcElementOffset(bit >>> 6);
+        final long mask = 1L << bit;
+        long word = lvElement(words, offset);
+        while ((word & mask) == 0) {
+            if (casElement(words, offset, word, word | mask)) {
+                return true;
+            }
+            word = lvElement(words, offset);
+        }
+        return false;
+    }
+
+    // The finalizer of MurmurHash3, spreading every key bit over the whole hash
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+
+import org.jctools.util.Pow2;
+import org.jctools.util.RangeUtil;
+import org.jctools.util.UnsafeAccess;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeLongArrayAccess.calcElementOffset;
+import static org.jctools.util.UnsafeLongArrayAccess.casElement;
+import static org.jctools.util.UnsafeLongArrayAccess.lvElement;
+
+/**
+ * A lock-free count-min sketch of {@code long} keys: estimates how many times a key was added, never below the true
+ * count and, with the confidence it was sized for, above it by at most epsilon times the total added.
+ * <p>
+ * Unlike the 4-bit {@link FrequencySketch} of the bounded cache, counters are full {@code long}s and do not age. The
+ * {@link #depth()} rows of {@link #width()} counters each are laid out one after the other in a single
+ * {@code long[]}, and a key adds to one counter per row, picked by double hashing of its 64-bit mix; the estimate is
+ * the least of them. Additions are atomic adds (a CAS loop where the JDK has no getAndAdd), lock-free and
+ * allocation-free.
+ */
+public final class ConcurrentCountMinSketch {
+    private static final boolean GET_AND_ADD = UnsafeAccess.SUPPORTS_GET_AND_SET;
+    private static final int MAX_COUNTERS = 1 << 30;
+
+    private final long[] counters;
+    private final int depth;
+    private final int widthShift;
+    private final int widthMask;
+
+    /**
+     * @param width the number of counters per row, rounded up to a power of two
+     * @param depth the number of rows, which is the number of counters per key
+     */
+    public ConcurrentCountMinSketch(int width, int depth) {
+        RangeUtil.checkPositive(width, "width");
+        RangeUtil.checkPositive(depth, "depth");
+        final int actualWidth = Pow2.roundToPowerOfTwo(width);
+        if ((long) actualWidth * depth > MAX_COUNTERS) {
+            throw new IllegalArgumentException(
+                "width: " + actualWidth + " * depth: " + depth + " (expected: <= " + MAX_COUNTERS + " counters)");
+        }
+        this.counters = new long[actualWidth * depth];
+        this.depth = depth;
+        this.widthShift = Integer.numberOfTrailingZeros(actualWidth);
+        this.widthMask = actualWidth - 1;
+    }
+
+    /**
+     * Sizes a sketch with the usual bounds: {@code e / epsilon} counters per row (rounded up to a power of two, which
+     * only tightens the error) and {@code ln(1 / (1 - confidence))} rows.
+     *
+     * @param epsilon the error wanted, as a fraction of the total count, between 0 and 1 exclusive
+     * @param confidence the probability of an estimate being within the error, between 0 and 1 exclusive
+     */
+    public static ConcurrentCountMinSketch create(double epsilon, double confidence) {
+        if (!(epsilon > 0 && epsilon < 1)) {
+            throw new IllegalArgumentException("epsilon: " + epsilon + " (expected: 0 < epsilon < 1)");
+        }
+        if (!(confidence > 0 && confidence < 1)) {
+            throw new IllegalArgumentException("confidence: " + confidence + " (expected: 0 < confidence < 1)");
+        }
+        final double width = Math.ceil(Math.E / epsilon);
+        if (width > MAX_COUNTERS) {
+            throw new IllegalArgumentException("epsilon: " + epsilon + " needs more than " + MAX_COUNTERS + " counters");
+        }
+        final int depth = (int) Math.max(1, Math.ceil(-Math.log(1 - confidence)));
+        return new ConcurrentCountMinSketch((int) width, depth);
+    }
+
+    /**
+     * @return the number of counters per row
+     */
+    public int width() {
+        return widthMask + 1;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int depth() {
+        return depth;
+    }
+
+    public void add(long key) {
+        add(key, 1);
+    }
+
+    /**
+     * Adds {@code count} occurrences of the key.
+     *
+     * @param count a non-negative count
+     */
+    public void add(long key, long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count: " + count + " (expected: >= 0)");
+        }
+        final long h1 = ConcurrentBloomFilter.mix(key);
+        final long h2 = ConcurrentBloomFilter.mix(h1) | 1;
+        for (int row = 0; row < depth; row++) {
+            final long offset = counterOffset(row, h1 + row * h2);
+            if (GET_AND_ADD) {
+                UNSAFE.getAndAddLong(counters, offset, count);
+            } else {
+                long v;
+                do {
+                    v = lvElement(counters, offset);
+                } while (!casElement(counters, offset, v, v + count));
+            }
+        }
+    }
+
+    /**
+     * @return the estimated number of times the key was added
+     */
+    public long estimate(long key) {
+        final long h1 = ConcurrentBloomFilter.mix(key);
+        final long h2 = ConcurrentBloomFilter.mix(h1) | 1;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, lvElement(counters, counterOffset(row, h1 + row * h2)));
+        }
+        return estimate;
+    }
+
+    /**
+     * @return the total count added, as of some point during the call for each counter of the first row
+     */
+    public long totalCount() {
+        long total = 0;
+        for (int i = 0; i <= widthMask; i++) {
+            total += lvElement(counters, calcElementOffset(i));
+        }
+        return total;
+    }
+
+    /**
+     * Resets all the counters, one at a time: counts added concurrently may be partly reset.
+     */
+    public void clear() {
+        for (int i = 0; i < counters.length; i++) {
+            final long offset = calcElementOffset(i);
+            long v;
+            do {
+                v = lvElement(counters, offset);
+            } while (v != 0 && !casElement(counters, offset, v, 0));
+        }
+    }
+
+    private long counterOffset(int row, long hash) {
+        // the high bits of the hash are the best mixed
+        final int column = (int) (hash >>> 32) & widthMask;
+        return calcElementOffset(((long) row << widthShift) + column);
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+
+import org.jctools.queues.MessagePassingQueue;
+import org.jctools.queues.MpscUnboundedArrayQueue;
+import org.jctools.util.RangeUtil;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link NonBlockingHashMap} of entries which expire a time-to-live after they were put.
+ * <p>
+ * Each mapping is held in a single node carrying the value, its expiry time and its links in a hashed timing wheel,
+ * so a put allocates that node and nothing else. Reads are lock-free and allocation-free, and treat expired entries as
+ * absent (removing them on the way).
+ * <p>
+ * Writers hand their new and replaced nodes to the wheel through a {@link MpscUnboundedArrayQueue}; whichever writer
+ * gets hold of the wheel lock links them in and advances the wheel to the current time. Each tick visits one bucket
+ * and removes the entries of that bucket which have expired, leaving the ones due in a later rotation, so reclaiming
+ * costs amortized O(1) per entry rather than a scan of the whole map. When the map sees few writes
+ * {@link #expireEntries()} may be called periodically to reap in the background.
+ * <p>
+ * The wheel has {@value #WHEEL_SIZE} buckets, each tick lasting about 1/256th of the default time-to-live (at least a
+ * millisecond). An entry is reclaimed at most a tick after it expired, and up to a rotation later if its time-to-live
+ * is longer than the wheel's span. Keys and values may not be {@code null}.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class ExpiringNonBlockingHashMap<K, V> {
+    static final int WHEEL_SIZE = 1024;
+    private static final int WRITE_BUFFER_CHUNK = 128;
+    private static final long MIN_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Node states, only read and written under the wheel lock
+    private static final int NONE = 0;
+    private static final int LINKED = 1;
+    private static final int DEAD = 2;
+
+    static final class Node<K, V> {
+        final K key;
+        final V value;
+        final long expiresAt;
+        // Set once the node is no longer in the map
+        volatile boolean retired;
+        // Guarded by the wheel lock
+        int state;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final NonBlockingHashMap<K, Node<K, V>> data = new NonBlockingHashMap<K, Node<K, V>>();
+    private final MpscUnboundedArrayQueue<Node<K, V>> writeBuffer =
+        new MpscUnboundedArrayQueue<Node<K, V>>(WRITE_BUFFER_CHUNK);
+    private final ReentrantLock wheelLock = new ReentrantLock();
+    private final LongSupplier nanoClock;
+    private final long defaultTtlNanos;
+    private final int tickShift;
+
+    // Guarded by the wheel lock: bucket sentinels of circular lists, and the last tick visited
+    private final Node<K, V>[] wheel;
+    private long lastTick;
+    private final MessagePassingQueue.Consumer<Node<K, V>> onWrite = new MessagePassingQueue.Consumer<Node<K, V>>() {
+        @Override
+        public void accept(Node<K, V> node) {
+            onWrite(node);
+        }
+    };
+
+    /**
+     * @param defaultTtl the time-to-live of entries put without one
+     * @param unit the unit of {@code defaultTtl}
+     */
+    public ExpiringNonBlockingHashMap(long defaultTtl, TimeUnit unit) {
+        this(defaultTtl, unit, new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return System.nanoTime();
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    ExpiringNonBlockingHashMap(long defaultTtl, TimeUnit unit, LongSupplier nanoClock) {
+        this.defaultTtlNanos = unit.toNanos(RangeUtil.checkPositive(defaultTtl, "defaultTtl"));
+        this.nanoClock = nanoClock;
+        final long tickNanos = Math.max(MIN_TICK_NANOS, defaultTtlNanos >> 8);
+        this.tickShift = 63 - Long.numberOfLeadingZeros(tickNanos);
+        this.wheel = new Node[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            final Node<K, V> sentinel = new Node<K, V>(null, null, 0);
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            wheel[i] = sentinel;
+        }
+        this.lastTick = nanoClock.getAsLong() >> tickShift;
+    }
+
+    /**
+     * @return the value mapped to the key, or {@code null} if there is none or it has expired
+     */
+    public V get(Object key) {
+        final Node<K, V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        if (node.expiresAt - nanoClock.getAsLong() <= 0) {
+            expire(node);
+            return null;
+        }
+        return node.value;
+    }
+
+    /**
+     * @return true if the key is mapped to a value which has not expired
+     */
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps the key to the value for the default time-to-live.
+     *
+     * @return the previous value if it had not expired, or {@code null}
+     */
+    public V put(K key, V value) {
+        return put(key, value, defaultTtlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Maps the key to the value for the given time-to-live.
+     *
+     * @return the previous value if it had not expired, or {@code null}
+     */
+    public V put(K key, V value, long ttl, TimeUnit unit) {
+        final long now = nanoClock.getAsLong();
+        final Node<K, V> node = newNode(key, value, now, ttl, unit);
+        final Node<K, V> prior = data.put(key, node);
+        writeBuffer.offer(node);
+        if (prior != null) {
+            prior.retired = true;
+            writeBuffer.offer(prior);
+        }
+        maintenance();
+        return prior == null || prior.expiresAt - now <= 0 ? null : prior.value;
+    }
+
+    /**
+     * Maps the key to the value for the default time-to-live, unless it is mapped to a value which has not expired.
+     *
+     * @return the value mapped to the key, or {@code null} if the value was added
+     */
+    public V putIfAbsent(K key, V value) {
+        return putIfAbsent(key, value, defaultTtlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Maps the key to the value for the given time-to-live, unless it is mapped to a value which has not expired.
+     *
+     * @return the value mapped to the key, or {@code null} if the value was added
+     */
+    public V putIfAbsent(K key, V value, long ttl, TimeUnit unit) {
+        final long now = nanoClock.getAsLong();
+        final Node<K, V> node = newNode(key, value, now, ttl, unit);
+        while (true) {
+            final Node<K, V> prior = data.putIfAbsent(key, node);
+            if (prior == null) {
+                break;
+            }
+            if (prior.expiresAt - now > 0) {
+                return prior.value;
+            }
+            // Take the place of the expired entry
+            if (data.replace(key, prior, node)) {
+                prior.retired = true;
+                writeBuffer.offer(prior);
+                break;
+            }
+        }
+        writeBuffer.offer(node);
+        maintenance();
+        return null;
+    }
+
+    /**
+     * @return the value mapped to the key if it had not expired, or {@code null}
+     */
+    public V remove(Object key) {
+        final Node<K, V> node = data.remove(key);
+        if (node == null) {
+            return null;
+        }
+        node.retired = true;
+        writeBuffer.offer(node);
+        maintenance();
+        return node.expiresAt - nanoClock.getAsLong() <= 0 ? null : node.value;
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        for (K key : data.keySet()) {
+            remove(key);
+        }
+    }
+
+    /**
+     * @return the number of entries in the map, including those which expired but were not reclaimed yet
+     */
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * Links the pending writes into the timing wheel and reclaims the entries which have expired, waiting for the
+     * wheel lock if another thread holds it.
+     */
+    public void expireEntries() {
+        wheelLock.lock();
+        try {
+            drainAndAdvance();
+        } finally {
+            wheelLock.unlock();
+        }
+    }
+
+    private Node<K, V> newNode(K key, V value, long now, long ttl, TimeUnit unit) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        RangeUtil.checkPositive(ttl, "ttl");
+        return new Node<K, V>(key, value, now + unit.toNanos(ttl));
+    }
+
+    private void expire(Node<K, V> node) {
+        if (data.remove(node.key, node)) {
+            node.retired = true;
+            writeBuffer.offer(node);
+        }
+    }
+
+    private void maintenance() {
+        // A writer which fails to get the lock leaves its nodes to the holder, which checks for them once it has
+        // released the lock: both sides write then read, so one of them sees the other.
+        do {
+            if (!wheelLock.tryLock()) {
+                return;
+            }
+            try {
+                drainAndAdvance();
+            } finally {
+                wheelLock.unlock();
+            }
+        } while (!writeBuffer.isEmpty());
+    }
+
+    private void drainAndAdvance() {
+        writeBuffer.drain(onWrite);
+        final long now = nanoClock.getAsLong();
+        final long nowTick = now >> tickShift;
+        final long ticks = nowTick - lastTick;
+        if (ticks <= 0) {
+            return;
+        }
+        final long visits = Math.min(ticks, WHEEL_SIZE);
+        for (long tick = lastTick + 1, end = lastTick + visits; tick <= end; tick++) {
+            expireBucket(wheel[(int) tick & (WHEEL_SIZE - 1)], now);
+        }
+        lastTick = nowTick;
+    }
+
+    private void expireBucket(Node<K, V> sentinel, long now) {
+        Node<K, V> node = sentinel.next;
+        while (node != sentinel) {
+            final Node<K, V> next = node.next;
+            if (node.retired) {
+                unlink(node);
+            } else if (node.expiresAt - now <= 0) {
+                data.remove(node.key, node);
+                // If the remove failed the node was replaced or removed, and its retirement is in the write buffer
+                node.retired = true;
+                unlink(node);
+            }
+            // Else the node is due in a later rotation
+            node = next;
+        }
+    }
+
+    private void onWrite(Node<K, V> node) {
+        if (node.state == DEAD) {
+            return;
+        }
+        if (node.retired) {
+            // Removed from the map, before or after it was linked
+            if (node.state == LINKED) {
+                unlink(node);
+            }
+            node.state = DEAD;
+        } else if (node.state == NONE) {
+            // Nodes already due go in the next bucket visited rather than a full rotation later
+            final long tick = Math.max(node.expiresAt >> tickShift, lastTick + 1);
+            final Node<K, V> sentinel = wheel[(int) tick & (WHEEL_SIZE - 1)];
+            node.prev = sentinel.prev;
+            node.next = sentinel;
+            sentinel.prev.next = node;
+            sentinel.prev = node;
+            node.state = LINKED;
+        }
+    }
+
+    private static <K, V> void unlink(Node<K, V> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+        node.state = DEAD;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+
+import org.jctools.util.Pow2;
+
+/**
+ * A 4-bit count-min sketch estimating how often a hash was seen recently, the TinyLFU admission filter of
+ * {@link BoundedNonBlockingCache}. Each {@code long} of the table holds 16 counters and every hash maps to one counter
+ * in each of 4 rows; the estimate is the least of them. Once the number of increments reaches 10 times the capacity
+ * all counters are halved, so the history ages and a once popular key does not stay admitted forever.
+ * <p>
+ * Not thread safe: the cache only touches it while holding its eviction lock.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int capacity) {
+        final int length = Pow2.roundToPowerOfTwo(Math.max(capacity, 16));
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = (int) Math.min(10L * length, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the estimated number of times the hash was seen, at most 15
+     */
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            final long h = indexHash(hash, row);
+            final int shift = counterShift(h);
+            frequency = Math.min(frequency, (int) ((table[index(h)] >>> shift) & 0xfL));
+        }
+        return frequency;
+    }
+
+    /**
+     * Counts one more sighting of the hash, ageing the sketch when the sample is complete.
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            final long h = indexHash(hash, row);
+            final int index = index(h);
+            final int shift = counterShift(h);
+            if (((table[index] >>> shift) & 0xfL) < MAX_COUNT) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    private static long indexHash(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        return h ^ (h >>> 32);
+    }
+
+    private int index(long h) {
+        return (int) h & tableMask;
+    }
+
+    private static int counterShift(long h) {
+        // The top bits choose one of the 16 counters in the long
+        return (int) (h >>> 60) << 2;
+    }
+}
@@ -0,0 +1,1214 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+
+import org.jctools.util.PortableJvmInfo;
+import org.jctools.util.Pow2;
+import org.jctools.util.RangeUtil;
+import org.jctools.util.UnsafeAccess;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeAccess.fieldOffset;
+
+
+/**
+ * An off-heap version of {@link NonBlockingLongLongHashMap}: the same
+ * algorithm and cooperative resize, with the tables held in native memory
+ * rather than in {@code long[]}s, so a map of hundreds of millions of entries
+ * adds nothing for the garbage collector to mark.  As in {@link
+ * NonBlockingLongLongHashMap}, operations are lock-free except while a resize
+ * copies a slot, when other threads visiting that slot wait for the copying
+ * thread.
+ *
+ * <p>The tables are either allocated from native memory ({@link
+ * #OffHeapNonBlockingLongLongHashMap(int)}) or mapped from a file ({@link
+ * #open(File, int)}).  A file backed map which was {@link #close}d is
+ * reopened as it was, without rebuilding it.
+ *
+ * <p>Keys and values are as in {@link NonBlockingLongLongHashMap}: values
+ * below {@link #LOWEST_VALUE} are reserved and missing keys map to {@link
+ * #NO_VALUE}.  Each K/V pair takes 16 bytes, next to each other so that a
+ * lookup touches a single cache line.
+ *
+ * <p>A thread may still be reading a table long after a resize replaced it,
+ * so operations count themselves in as readers of the current epoch, and a
+ * replaced table is only released once the epoch moved on twice, each time
+ * after the readers of the older epoch were done: no reader which could have
+ * seen the table is then left.  Native memory is freed; the file space of a
+ * file backed map is reused by a later table of the same size, as a resize
+ * triggered by many removed keys allocates, and the space of smaller tables
+ * is truncated by {@link #close}, which also moves the current table to the
+ * start of the file.  A long running operation, such as {@link #forEach},
+ * holds back the release of the tables replaced meanwhile until it returns.
+ * {@link #clear} zeroes the current table in place and releases all others.
+ * The map must not be used during {@link #clear}, nor during or after {@link
+ * #close}, which would read released memory.  The tables of a map which is
+ * collected without being closed are released when a later map is created,
+ * and a file backed one is then left as not closed.
+ */
+public class OffHeapNonBlockingLongLongHashMap implements Closeable {
+
+  private static final int REPROBE_LIMIT=10; // Too many reprobes then force a table-resize
+
+  // --- Slot layout: K,V pairs of 16 bytes
+  private static final int SLOT_SHIFT = 4;
+  private static final int VAL_OFFSET = 8;
+  // Mapped tables are mapped in chunks, as a single mapping is limited to 2GB
+  private static final int MAPPED_CHUNK_SHIFT = 30 - SLOT_SHIFT; // 1GB of slots
+
+  // --- Bits to allow Unsafe CAS'ing of the CHM field
+  private static final long _chm_offset = fieldOffset(OffHeapNonBlockingLongLongHashMap.class, "_chm");
+  private static final long _val_1_offset = fieldOffset(OffHeapNonBlockingLongLongHashMap.class, "_val_1");
+
+  private final boolean CAS( final long offset, final Object old, final Object nnn ) {
+    return UNSAFE.compareAndSwapObject(this, offset, old, nnn );
+  }
+  private final boolean CAS_val_1( final long old, final long nnn ) {
+    return UNSAFE.compareAndSwapLong(this, _val_1_offset, old, nnn );
+  }
+
+  // --- The Hash Table --------------------
+  private CHM _chm;
+  // This next field holds the value for Key 0 - the special key value which
+  // is the initial memory value, and also means: no-key-inserted-yet.
+  private volatile long _val_1; // Raw value for Key: NO_KEY
+
+  // Time since last resize
+  private long _last_resize_milli;
+
+  // Where the tables are allocated
+  private final Storage _storage;
+  // Releases the tables if the map is collected without being closed
+  private final StorageRef _storageRef;
+
+  // --- Minimum table size ----------------
+  private static final int MIN_SIZE_LOG=4;             //
+  private static final int MIN_SIZE=(1<<MIN_SIZE_LOG); // Must be power of 2
+
+  // --- Sentinels -------------------------
+  // Values are stored with their sign bit flipped, so the value NO_VALUE is
+  // stored as zero and freshly allocated (or mapped) memory is all EMPTY.  The
+  // sentinels are the same reserved values as in NonBlockingLongLongHashMap.
+
+  /** The value returned for keys which are not in the map. */
+  public static final long NO_VALUE = NonBlockingLongLongHashMap.NO_VALUE;
+  /** The lowest value which can be stored in the map, lower values are reserved. */
+  public static final long LOWEST_VALUE = NonBlockingLongLongHashMap.LOWEST_VALUE;
+
+  private static final long EMPTY = 0; // NO_VALUE, the Value slot was never written
+  private static final long TOMBSTONE = 1;
+  private static final long FROZEN = 2; // Being copied, by the thread which froze it
+  private static final long COPIED = 3; // The TOMBPRIME of NonBlockingHashMapLong
+  private static final long NO_MATCH_OLD = 4;
+  private static final long MATCH_ANY = 5;
+
+  private static long raw( final long val ) { return val ^ Long.MIN_VALUE; }
+  private static long val( final long raw ) { return raw ^ Long.MIN_VALUE; }
+
+  // The old-table slot is frozen or copied, the 'Prime' test.
+  private static boolean isPrime( final long V ) { return V == FROZEN || V == COPIED; }
+
+  // The NO_KEY value must be zero, the initial value of fresh memory.
+  private static final long NO_KEY = 0L;
+
+  private static long checkValue( final long val ) {
+    if( val < LOWEST_VALUE )
+      throw new IllegalArgumentException("value is reserved: "+val+" (must be >= LOWEST_VALUE)");
+    return raw(val);
+  }
+
+  // --- reprobe_limit -----------------------------------------------------
+  // Heuristic to decide if we have reprobed toooo many times.  Running over
+  // the reprobe limit on a 'get' call acts as a 'miss'; on a 'put' call it
+  // can trigger a table resize.  Several places must have exact agreement on
+  // what the reprobe_limit is, so we share it here.
+  private static int reprobe_limit( int len ) {
+    return REPROBE_LIMIT + (len>>4);
+  }
+
+  // --- OffHeapNonBlockingLongLongHashMap -----------------------------------
+  // Constructors
+
+  /** Create a new map in native memory with default minimum size. */
+  public OffHeapNonBlockingLongLongHashMap( ) { this(MIN_SIZE); }
+
+  /** Create a new map in native memory with initial room for the given
+   *  number of elements, thus avoiding internal resizing operations to reach
+   *  an appropriate size.  The initial size will be rounded up internally to
+   *  the next larger power of 2. */
+  public OffHeapNonBlockingLongLongHashMap( final int initial_sz ) {
+    this(new DirectStorage(), log2(initial_sz));
+  }
+
+  private OffHeapNonBlockingLongLongHashMap( final Storage storage, final int log2 ) {
+    _storage = storage;
+    _chm = new CHM(this,new ConcurrentAutoTable(),storage.allocate(log2));
+    _val_1 = TOMBSTONE;         // Always as-if deleted
+    _last_resize_milli = System.currentTimeMillis();
+    _storageRef = StorageRef.register(this,storage);
+  }
+
+  private OffHeapNonBlockingLongLongHashMap( final MappedStorage storage ) throws IOException {
+    _storage = storage;
+    _chm = new CHM(this,new ConcurrentAutoTable(),storage.reopen());
+    _chm.recount();
+    _val_1 = storage.val_1();
+    _last_resize_milli = System.currentTimeMillis();
+    _storageRef = StorageRef.register(this,storage);
+  }
+
+  /** Open a map backed by the given file, creating the file if needed.  The
+   *  map must be {@link #close}d to be reopened: opening a file which was not
+   *  closed, and so may be inconsistent, fails with an {@link IOException}.
+   *  @param file the backing file
+   *  @param initial_sz initial room, only used when creating the file
+   *  @throws IOException if the file cannot be mapped or is not a map file */
+  public static OffHeapNonBlockingLongLongHashMap open( final File file, final int initial_sz ) throws IOException {
+    final int log2 = log2(initial_sz);
+    final MappedStorage storage = new MappedStorage(file);
+    try {
+      return storage.isNew()
+        ? new OffHeapNonBlockingLongLongHashMap(storage,log2)
+        : new OffHeapNonBlockingLongLongHashMap(storage);
+    } catch( IOException e ) {
+      storage.release();
+      throw e;
+    } catch( RuntimeException e ) {
+      storage.release();
+      throw e;
+    }
+  }
+
+  private static int log2( final int initial_sz ) {
+    RangeUtil.checkPositiveOrZero(initial_sz, "initial_sz");
+    int i;                      // Convert to next largest power-of-2
+    for( i=MIN_SIZE_LOG; (1<<i) < initial_sz; i++ ) {/*empty*/}
+    return i;
+  }
+
+  /** Release all the tables of this map.  A file backed map is written back
+   *  to its file, from which it can be reopened.  Must only be called once no
+   *  thread uses the map. */
+  @Override
+  public void close() throws IOException {
+    _storageRef.unregister();
+    CHM topchm;
+    while( (topchm = _chm)._newchm != null ) // Only the top table is kept
+      topchm.help_copy_impl(true);
+    _storage.close(topchm._table, _val_1);
+  }
+
+  // --- wrappers ------------------------------------------------------------
+
+  /** Returns the number of key-value mappings in this map.
+   *  @return the number of key-value mappings in this map */
+  public int     size       ( )                     { return (_val_1==TOMBSTONE?0:1) + _chm.size(); }
+  /** Returns <tt>true</tt> if this map contains no key-value mappings. */
+  public boolean isEmpty    ( )                     { return size() == 0; }
+  /** Tests if the key in the table.
+   * @return <tt>true</tt> if the key is in the table */
+  public boolean containsKey( long key )            { return get(key) != NO_VALUE; }
+
+  /** Maps the specified key to the specified value in the table.
+   *  @return the previous value associated with <tt>key</tt>, or
+   *          {@link #NO_VALUE} if there was no mapping for <tt>key</tt>
+   *  @throws IllegalArgumentException if the value is reserved */
+  public long    put        ( long key, long val )  { return putIfMatch( key,checkValue(val),NO_MATCH_OLD);}
+
+  /** Atomically, do a {@link #put} if-and-only-if the key is not mapped.
+   *  @return the previous value associated with the specified key,
+   *         or {@link #NO_VALUE} if there was no mapping for the key
+   *  @throws IllegalArgumentException if the value is reserved */
+  public long    putIfAbsent( long key, long val )  { return putIfMatch( key,checkValue(val),TOMBSTONE   );}
+
+  /** Removes the key (and its corresponding value) from this map.
+    * @return the previous value associated with <tt>key</tt>, or
+    *         {@link #NO_VALUE} if there was no mapping for <tt>key</tt>*/
+  public long    remove     ( long key )            { return putIfMatch( key,TOMBSTONE,NO_MATCH_OLD);}
+
+  /** Atomically do a {@link #remove(long)} if-and-only-if the key is mapped
+   *  to the given value.
+   *  @throws IllegalArgumentException if the value is reserved */
+  public boolean remove     ( long key, long val )  { return putIfMatch( key,TOMBSTONE,checkValue(val) ) == val;}
+
+  /** Atomically do a <code>put(key,val)</code> if-and-only-if the key is
+   *  mapped to some value already.
+   *  @throws IllegalArgumentException if the value is reserved */
+  public long    replace    ( long key, long val )  { return putIfMatch( key,checkValue(val),MATCH_ANY   );}
+
+  /** Atomically do a <code>put(key,newValue)</code> if-and-only-if the key is
+   *  mapped to <code>oldValue</code>.
+   *  @throws IllegalArgumentException if either value is reserved */
+  public boolean replace    ( long key, long oldValue, long newValue ) {
+    return putIfMatch( key, checkValue(newValue), checkValue(oldValue) ) == oldValue;
+  }
+
+  /** Atomically add the given delta to the value mapped to the key, where
+   *  a missing key counts as mapped to 0.
+   *  @return the updated value
+   *  @throws IllegalArgumentException if the updated value is reserved */
+  public long    addAndGet  ( long key, long delta ) { return getAndAdd(key,delta) + delta; }
+
+  /** Atomically add the given delta to the value mapped to the key, where
+   *  a missing key counts as mapped to 0.
+   *  @return the previous value, or 0 if there was no mapping for the key
+   *  @throws IllegalArgumentException if the updated value is reserved */
+  public long    getAndAdd  ( long key, long delta ) {
+    if( key == NO_KEY ) {
+      while( true ) {
+        final long curVal = _val_1;
+        final long oldVal = curVal == TOMBSTONE ? 0 : val(curVal);
+        if( CAS_val_1(curVal,checkValue(oldVal+delta)) )
+          return oldVal;
+      }
+    }
+    final int reader = enter();
+    try {
+      return _chm.getAndAdd(key,delta);
+    } finally {
+      exit(reader);
+    }
+  }
+
+  // Takes and returns raw values
+  private long putIfMatch( long key, long newVal, long oldVal ) {
+    if( key == NO_KEY ) {
+      long curVal = _val_1;
+      if( oldVal == NO_MATCH_OLD || // Do we care about expected-Value at all?
+          curVal == oldVal ||       // No instant match already?
+          (oldVal == MATCH_ANY && curVal != TOMBSTONE) ) {
+        if( !CAS_val_1(curVal,newVal) ) // One shot CAS update attempt
+          curVal = _val_1;              // Failed; get failing witness
+      }
+      return curVal == TOMBSTONE ? NO_VALUE : val(curVal); // Return the last value present
+    }
+    final long res;
+    final int reader = enter();
+    try {
+      res = _chm.putIfMatch( key, newVal, oldVal );
+    } finally {
+      exit(reader);
+    }
+    assert !isPrime(res);
+    assert res != EMPTY;
+    return res == TOMBSTONE ? NO_VALUE : val(res);
+  }
+
+  /** Removes all of the mappings from this map, zeroing the current table in
+   *  place and releasing all the tables replaced by earlier resizes.  Unlike
+   *  the other operations, must only be called while no other thread uses
+   *  the map. */
+  public void clear() {
+    Retired retired;
+    while( (retired = _retired.poll()) != null )
+      _storage.discard(retired._table);
+    CHM chm = _chm;
+    while( chm._newchm != null ) // Keep the newest table, dropping any copy in progress
+      chm = chm._newchm;
+    _chm = new CHM(this,new ConcurrentAutoTable(),_storage.clear(chm._table));
+    _val_1 = TOMBSTONE;
+  }
+
+  // --- get -----------------------------------------------------------------
+  /** Returns the value to which the specified key is mapped, or {@link
+   *  #NO_VALUE} if this map contains no mapping for the key. */
+  public final long get( long key ) {
+    if( key == NO_KEY ) {
+      final long V = _val_1;
+      return V == TOMBSTONE ? NO_VALUE : val(V);
+    }
+    final long V;
+    final int reader = enter();
+    try {
+      V = _chm.get_impl(key);
+    } finally {
+      exit(reader);
+    }
+    assert !isPrime(V); // Never return a Prime
+    assert V != TOMBSTONE;
+    return val(V);              // EMPTY is NO_VALUE
+  }
+
+  /** Returns the value to which the specified key is mapped, or the given
+   *  default value if this map contains no mapping for the key. */
+  public long getOrDefault( long key, long defaultValue ) {
+    final long V = get(key);
+    return V == NO_VALUE ? defaultValue : V;
+  }
+
+  // --- help_copy ---------------------------------------------------------
+  // Help along an existing resize operation.  We always help the top-most
+  // table copy, even if there are nested table copies in progress.
+  private void help_copy( ) {
+    CHM topchm = _chm;
+    if( topchm._newchm == null ) return; // No copy in-progress
+    topchm.help_copy_impl(false);
+  }
+
+  // --- Reclamation ---------------------------------------------------------
+  // Operations which read the tables count themselves in on the counter of
+  // the parity of the epoch they start in.  A table replaced by a resize is
+  // retired with the epoch read after it was replaced, and released once the
+  // epoch is 2 more: the epoch only moves on once the counters of the other
+  // parity were seen at zero, so the counters of both parities were seen at
+  // zero after the table was retired, and every reader which could have seen
+  // it was done.  The counters are striped by thread, each thread counting in
+  // and out on the same stripe, so a stripe is never below the number of its
+  // readers still in.
+  private static final int READER_STRIPES = Pow2.roundToPowerOfTwo(PortableJvmInfo.CPUs);
+  private static final int READER_PAD = 16; // Longs, so that stripes do not share a cache line
+  private static final long _epoch_offset = fieldOffset(OffHeapNonBlockingLongLongHashMap.class, "_epoch");
+  private volatile long _epoch;
+  private final AtomicLongArray _readers = new AtomicLongArray(2*READER_STRIPES*READER_PAD);
+  private final Queue<Retired> _retired = new ConcurrentLinkedQueue<Retired>();
+
+  private static final class Retired {
+    final Table _table;
+    final long _epoch;
+    Retired( Table table, long epoch ) { _table = table; _epoch = epoch; }
+  }
+
+  private static int reader_index( long epoch, int stripe ) {
+    return ((int)(epoch&1)*READER_STRIPES + stripe)*READER_PAD;
+  }
+  private static int stripe( ) {
+    final long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    return (int)(h >>> 32) & (READER_STRIPES-1);
+  }
+
+  // Count in before reading _chm, returns the counter to count out on
+  private int enter( ) {
+    final int reader = reader_index(_epoch,stripe());
+    _readers.getAndIncrement(reader);
+    return reader;
+  }
+  // Count out once done with the tables, which also keeps the map, and so
+  // its tables, from being collected before then
+  private void exit( final int reader ) {
+    _readers.getAndDecrement(reader);
+    if( !_retired.isEmpty() ) reclaim();
+  }
+
+  private boolean quiescent( final long epoch ) {
+    for( int i=0; i<READER_STRIPES; i++ )
+      if( _readers.get(reader_index(epoch,i)) != 0 )
+        return false;
+    return true;
+  }
+
+  // Called once the table is no longer the top-level table
+  private void retire( final Table table ) {
+    _retired.add(new Retired(table,_epoch));
+    reclaim();
+  }
+
+  private void reclaim( ) {
+    for( int i=0; i<2; i++ ) {  // Enough to release the tables retired now
+      final long epoch = _epoch;
+      if( !quiescent(epoch+1) || !UNSAFE.compareAndSwapLong(this,_epoch_offset,epoch,epoch+1) )
+        break;
+    }
+    final long epoch = _epoch;
+    for( Retired retired : _retired )
+      if( retired._epoch <= epoch-2 && _retired.remove(retired) ) // Only one thread removes it
+        _storage.discard(retired._table);
+  }
+
+  // The number of tables holding memory, for tests
+  int tables( ) { return _storage.tables(); }
+
+
+  // --- Table ---------------------------------------------------------------
+  // A table of K,V slots in native memory, in one or more chunks.
+  static final class Table {
+    final int _log2;
+    final long[] _chunks;      // Chunk base addresses
+    final int _chunkShift;     // log2 of slots per chunk
+    final Object _memory;      // What holds the memory, for the Storage
+    final long _position;      // Offset in the file, for mapped tables
+
+    Table( int log2, long[] chunks, int chunkShift, Object memory, long position ) {
+      _log2 = log2;
+      _chunks = chunks;
+      _chunkShift = chunkShift;
+      _memory = memory;
+      _position = position;
+    }
+
+    long bytes() { return bytes(_log2); }
+    static long bytes( int log2 ) { return (1L << log2) << SLOT_SHIFT; }
+
+    // Address of the K,V pair for a given idx, see CHM.slot
+    long slot( long idx ) {
+      return _chunks[(int)(idx >>> _chunkShift)] + ((idx & ((1L << _chunkShift) - 1)) << SLOT_SHIFT);
+    }
+  }
+
+  // --- Storage -------------------------------------------------------------
+  // Allocates the tables.  Tables are released while the map is unused, or
+  // when no thread reads them: a table which lost the race to become the new
+  // table of a resize and so was never visible to other threads, or a
+  // replaced table once reclaimed.
+  static abstract class Storage {
+    abstract Table allocate( int log2 );
+    // Release a table which no thread reads
+    abstract void discard( Table table );
+    // Release all tables but the given one, which is zeroed and returned
+    abstract Table clear( Table keep );
+    abstract void close( Table top, long val_1 ) throws IOException;
+    // Release all tables of a map which was not closed
+    abstract void release( ) throws IOException;
+    abstract int tables( );
+  }
+
+  // The backstop for maps which are not closed: the storage of a collected
+  // map is released when a later map is created.
+  static final class StorageRef extends PhantomReference<OffHeapNonBlockingLongLongHashMap> {
+    private static final ReferenceQueue<OffHeapNonBlockingLongLongHashMap> COLLECTED =
+      new ReferenceQueue<OffHeapNonBlockingLongLongHashMap>();
+    // Keeps the references themselves reachable until they are enqueued
+    private static final Set<StorageRef> REGISTERED =
+      Collections.newSetFromMap(new ConcurrentHashMap<StorageRef,Boolean>());
+    private final Storage _storage;
+
+    private StorageRef( OffHeapNonBlockingLongLongHashMap map, Storage storage ) {
+      super(map,COLLECTED);
+      _storage = storage;
+    }
+
+    static StorageRef register( OffHeapNonBlockingLongLongHashMap map, Storage storage ) {
+      releaseCollected();
+      final StorageRef ref = new StorageRef(map,storage);
+      REGISTERED.add(ref);
+      return ref;
+    }
+
+    void unregister( ) {
+      REGISTERED.remove(this);
+      clear();
+    }
+
+    private static void releaseCollected( ) {
+      StorageRef ref;
+      while( (ref = (StorageRef)COLLECTED.poll()) != null ) {
+        REGISTERED.remove(ref);
+        try {
+          ref._storage.release();
+        } catch( IOException e ) {
+          // Nothing more can be done for a map which was not closed
+        }
+      }
+    }
+  }
+
+  static final class DirectStorage extends Storage {
+    private final Queue<Table> _tables = new ConcurrentLinkedQueue<Table>();
+
+    @Override
+    Table allocate( int log2 ) {
+      final long bytes = Table.bytes(log2);
+      final long address = UNSAFE.allocateMemory(bytes);
+      UNSAFE.setMemory(address, bytes, (byte)0); // All NO_KEY and EMPTY
+      final Table table = new Table(log2, new long[]{address}, log2, null, 0);
+      _tables.add(table);
+      return table;
+    }
+
+    @Override
+    void discard( Table table ) {
+      if( _tables.remove(table) )
+        UNSAFE.freeMemory(table._chunks[0]);
+    }
+
+    @Override
+    Table clear( Table keep ) {
+      Table table;
+      while( (table = _tables.poll()) != null )
+        if( table != keep )
+          UNSAFE.freeMemory(table._chunks[0]);
+      UNSAFE.setMemory(keep._chunks[0], keep.bytes(), (byte)0);
+      _tables.add(keep);
+      return keep;
+    }
+
+    @Override
+    void close( Table top, long val_1 ) {
+      release();
+    }
+
+    @Override
+    void release( ) {
+      Table table;
+      while( (table = _tables.poll()) != null )
+        UNSAFE.freeMemory(table._chunks[0]);
+    }
+
+    @Override
+    int tables( ) { return _tables.size(); }
+  }
+
+  // A file of a header followed by the tables, each appended as allocated.
+  // Only the table in the header is used on reopening, and it is moved to the
+  // start of the file on closing, so the file only keeps the replaced tables
+  // while open.
+  static final class MappedStorage extends Storage {
+    private static final long MAGIC = 0x4a43546f4c4c4d31L; // "JCToLLM1"
+    private static final int HEADER_SIZE = 4096;
+    private static final int MAGIC_OFFSET    = 0;
+    private static final int CLEAN_OFFSET    = 8;  // 1 if closed, 0 while open
+    private static final int POSITION_OFFSET = 16; // Position of the top table
+    private static final int LOG2_OFFSET     = 24; // Size of the top table
+    private static final int VAL_1_OFFSET    = 32; // Raw value of key 0
+    private static final int END_OFFSET      = 40; // End of the last table
+    private static final long ADDRESS_OFFSET = UnsafeAccess.fieldOffset(Buffer.class, "address");
+
+    private final RandomAccessFile _file;
+    private final FileChannel _channel;
+    private final MappedByteBuffer _header;
+    private final AtomicLong _end;
+    private final boolean _isNew;
+    // The tables in use, which keeps their mappings
+    private final Queue<Table> _tables = new ConcurrentLinkedQueue<Table>();
+    // Released tables, kept mapped for a table of the same size to reuse
+    private final Queue<Table> _free = new ConcurrentLinkedQueue<Table>();
+
+    MappedStorage( File file ) throws IOException {
+      _isNew = !file.exists() || file.length() == 0;
+      _file = new RandomAccessFile(file, "rw");
+      try {
+        _channel = _file.getChannel();
+        _header = _channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if( _isNew ) {
+          _header.putLong(MAGIC_OFFSET, MAGIC);
+          _end = new AtomicLong(HEADER_SIZE);
+        } else {
+          if( _header.getLong(MAGIC_OFFSET) != MAGIC )
+            throw new IOException(file+" is not a map file");
+          if( _header.getLong(CLEAN_OFFSET) != 1 )
+            throw new IOException(file+" was not closed, and may be inconsistent");
+          _end = new AtomicLong(_header.getLong(END_OFFSET));
+        }
+        _header.putLong(CLEAN_OFFSET, 0);
+        _header.force();
+      } catch( IOException e ) {
+        _file.close();
+        throw e;
+      }
+    }
+
+    boolean isNew() { return _isNew; }
+    long val_1() { return _header.getLong(VAL_1_OFFSET); }
+
+    Table reopen() throws IOException {
+      final Table table = map(_header.getLong(POSITION_OFFSET), (int)_header.getLong(LOG2_OFFSET));
+      _tables.add(table);
+      return table;
+    }
+
+    @Override
+    Table allocate( int log2 ) {
+      for( Table table : _free ) {
+        if( table._log2 > log2 || !_free.remove(table) )
+          continue;
+        if( table._log2 < log2 ) // Tables never shrink, so it will not fit any later table either
+          continue;              // Its mapping is released by the GC, its file space on closing
+        zero(table);
+        _tables.add(table);
+        return table;
+      }
+      final long bytes = Table.bytes(log2);
+      final long position = _end.getAndAdd(bytes); // 256 byte aligned at least
+      final Table table;
+      try {
+        table = map(position, log2);
+      } catch( IOException e ) {
+        throw new RuntimeException("Failed to map a table of "+bytes+" bytes", e);
+      }
+      _tables.add(table);
+      return table;
+    }
+
+    private Table map( long position, int log2 ) throws IOException {
+      final long bytes = Table.bytes(log2);
+      final int chunkShift = Math.min(log2, MAPPED_CHUNK_SHIFT);
+      final long chunkBytes = Table.bytes(chunkShift);
+      final long[] chunks = new long[(int)(bytes / chunkBytes)];
+      final MappedByteBuffer[] buffers = new MappedByteBuffer[chunks.length];
+      for( int i=0; i<chunks.length; i++ ) {
+        buffers[i] = _channel.map(FileChannel.MapMode.READ_WRITE, position + i*chunkBytes, chunkBytes);
+        chunks[i] = UNSAFE.getLong(buffers[i], ADDRESS_OFFSET);
+      }
+      return new Table(log2, chunks, chunkShift, buffers, position);
+    }
+
+    @Override
+    void discard( Table table ) {
+      if( _tables.remove(table) )
+        _free.add(table);
+    }
+
+    @Override
+    Table clear( Table keep ) {
+      Table table;
+      while( (table = _tables.poll()) != null )
+        if( table != keep )
+          _free.add(table);
+      zero(keep);
+      _tables.add(keep);
+      return keep;
+    }
+
+    private static void zero( Table table ) {
+      final MappedByteBuffer[] buffers = (MappedByteBuffer[])table._memory;
+      for( int i=0; i<buffers.length; i++ )
+        UNSAFE.setMemory(table._chunks[i], buffers[i].capacity(), (byte)0);
+    }
+
+    // Copy the table to the start of the file.  Slots are copied in
+    // ascending order, so where the two overlap a slot is only overwritten
+    // once it was copied.
+    private Table moveToStart( Table table ) throws IOException {
+      final Table moved = map(HEADER_SIZE, table._log2);
+      final long len = 1L << table._log2;
+      for( long i=0; i<len; i++ ) {
+        final long from = table.slot(i);
+        final long to = moved.slot(i);
+        UNSAFE.putLong(to, UNSAFE.getLong(from));
+        UNSAFE.putLong(to + VAL_OFFSET, UNSAFE.getLong(from + VAL_OFFSET));
+      }
+      return moved;
+    }
+
+    @Override
+    void close( Table top, long val_1 ) throws IOException {
+      try {
+        final Table table = top._position == HEADER_SIZE ? top : moveToStart(top);
+        for( MappedByteBuffer buffer : (MappedByteBuffer[])table._memory )
+          buffer.force();
+        _tables.clear();
+        _free.clear();
+        // Drop the replaced tables, or the file would grow on every resize
+        // across reopenings
+        final long end = HEADER_SIZE + table.bytes();
+        _channel.truncate(end);
+        _header.putLong(POSITION_OFFSET, table._position);
+        _header.putLong(LOG2_OFFSET, table._log2);
+        _header.putLong(VAL_1_OFFSET, val_1);
+        _header.putLong(END_OFFSET, end);
+        _header.force();
+        _header.putLong(CLEAN_OFFSET, 1); // Only once all else is on disk
+        _header.force();
+      } finally {
+        release();
+      }
+    }
+
+    @Override
+    void release() throws IOException {
+      _tables.clear();
+      _free.clear();
+      _file.close();
+    }
+
+    @Override
+    int tables( ) { return _tables.size(); }
+  }
+
+
+  // --- CHM -----------------------------------------------------------------
+  // The control structure for the OffHeapNonBlockingLongLongHashMap
+  private static final class CHM {
+    // Back-pointer to top-level structure
+    final OffHeapNonBlockingLongLongHashMap _nbhml;
+
+    // Size in active K,V pairs
+    private final ConcurrentAutoTable _size;
+    public int size () { return (int)_size.get(); }
+
+    // Count of used slots, to tell when table is full of dead unusable slots
+    private final ConcurrentAutoTable _slots;
+    public int slots() { return (int)_slots.get(); }
+
+    // The 'next' CHM - created during a resize operation, see
+    // NonBlockingHashMapLong.  It monotonically transits from null to set
+    // (once).
+    volatile CHM _newchm;
+    private static final AtomicReferenceFieldUpdater<CHM,CHM> _newchmUpdater =
+      AtomicReferenceFieldUpdater.newUpdater(CHM.class,CHM.class, "_newchm");
+    // Set the _newchm field if we can.  AtomicUpdaters do not fail spuriously.
+    boolean CAS_newchm( CHM newchm ) {
+      return _newchmUpdater.compareAndSet(this,null,newchm);
+    }
+    // Count of threads attempting an initial resize, see NonBlockingHashMapLong
+    volatile long _resizers;
+    private static final AtomicLongFieldUpdater<CHM> _resizerUpdater =
+      AtomicLongFieldUpdater.newUpdater(CHM.class, "_resizers");
+
+    // --- key,val -------------------------------------------------------------
+    final Table _table;
+    final int _len;
+    private final long[] _chunks;
+    private final int _chunkShift;
+    private final int _chunkMask;
+
+    // Address of the K,V pair for a given idx
+    private long slot( int idx ) {
+      assert idx >= 0 && idx < _len;
+      return _chunks[idx >>> _chunkShift] + ((long)(idx & _chunkMask) << SLOT_SHIFT);
+    }
+    private long key( int idx ) { return UNSAFE.getLong(slot(idx)); }
+    private long val( int idx ) { return UNSAFE.getLong(slot(idx) + VAL_OFFSET); }
+    private long lv_val( int idx ) { return UNSAFE.getLongVolatile(null, slot(idx) + VAL_OFFSET); }
+    private boolean CAS_key( int idx, long old, long key ) {
+      return UNSAFE.compareAndSwapLong( null, slot(idx), old, key );
+    }
+    private boolean CAS_val( int idx, long old, long val ) {
+      return UNSAFE.compareAndSwapLong( null, slot(idx) + VAL_OFFSET, old, val );
+    }
+
+    CHM( final OffHeapNonBlockingLongLongHashMap nbhml, ConcurrentAutoTable size, final Table table ) {
+      _nbhml = nbhml;
+      _size = size;
+      _slots= new ConcurrentAutoTable();
+      _table = table;
+      _len = 1 << table._log2;
+      _chunks = table._chunks;
+      _chunkShift = table._chunkShift;
+      _chunkMask = (int)((1L << _chunkShift) - 1);
+    }
+
+    // Recount the sizes of a reopened table
+    void recount() {
+      long slots = 0, size = 0;
+      for( int i=0; i<_len; i++ ) {
+        if( key(i) == NO_KEY ) continue;
+        slots++;
+        final long V = val(i);
+        if( V != EMPTY && V != TOMBSTONE ) size++;
+      }
+      _slots.add(slots);
+      _size.add(size);
+    }
+
+    // --- get_impl ----------------------------------------------------------
+    // Never returns a Prime nor a Tombstone.
+    private long get_impl ( final long key ) {
+      final int len     = _len;
+      int idx = (int)(key & (len-1)); // First key hash
+
+      // Main spin/reprobe loop, looking for a Key hit
+      int reprobe_cnt=0;
+      while( true ) {
+        final long K = key(idx); // Get key   before volatile read, could be NO_KEY
+        final long V = lv_val(idx); // Get value, could be empty or Tombstone or Prime
+        if( K == NO_KEY ) return EMPTY; // A clear miss
+
+        // Key-compare
+        if( key == K ) {
+          // Key hit!  Check for no table-copy-in-progress
+          if( !isPrime(V) ) { // No copy?
+            if( V == TOMBSTONE ) return EMPTY;
+            @SuppressWarnings("unused") final CHM newchm = _newchm; // VOLATILE READ before returning V
+            return V;
+          }
+          // Key hit - but slot is (possibly partially) copied to the new table.
+          // Finish the copy & retry in the new table.
+          return copy_slot_and_check(idx,true).get_impl(key); // Retry in the new table
+        }
+        // get and put must have the same key lookup logic!
+        if( ++reprobe_cnt >= reprobe_limit(len) ) // too many probes
+          return _newchm == null // Table copy in progress?
+            ? EMPTY              // Nope!  A clear miss
+            : copy_slot_and_check(idx,true).get_impl(key); // Retry in the new table
+
+        idx = (idx+1)&(len-1);    // Reprobe by 1!  (could now prefetch)
+      }
+    }
+
+    // --- putIfMatch ---------------------------------------------------------
+    // Put, Remove, PutIfAbsent, etc.  Return the old value, see
+    // NonBlockingLongLongHashMap.
+    private long putIfMatch( final long key, final long putval, final long expVal ) {
+      assert putval != EMPTY;
+      assert !isPrime(putval);
+      assert !isPrime(expVal);
+      final int len      = _len;
+      int idx = (int)(key & (len-1)); // The first key
+
+      // ---
+      // Key-Claim stanza: spin till we can claim a Key (or force a resizing).
+      int reprobe_cnt=0;
+      long K;
+      long V;
+      while( true ) {           // Spin till we get a Key slot
+        V = lv_val(idx);        // Get old value
+        K = key(idx);           // Get current key
+        if( K == NO_KEY ) {     // Slot is free?
+          // Found an empty Key slot - which means this Key has never been in
+          // this table.  No need to put a Tombstone - the Key is not here!
+          if( putval == TOMBSTONE ) return TOMBSTONE; // Not-now & never-been in this table
+          if( expVal == MATCH_ANY ) return TOMBSTONE; // Will not match, even after K inserts
+          // Claim the zero key-slot
+          if( CAS_key(idx, NO_KEY, key) ) { // Claim slot for Key
+            _slots.add(1);      // Raise key-slots-used count
+            break;              // Got it!
+          }
+          K = key(idx);         // CAS failed, get updated value
+          assert K != NO_KEY ;  // If keys[idx] is NO_KEY, CAS shoulda worked
+        }
+        // Key slot was not null, there exists a Key here
+        if( K == key )
+          break;                // Got it!
+
+        if( ++reprobe_cnt >= reprobe_limit(len) ) {
+          final CHM newchm = resize();
+          if( expVal != EMPTY ) _nbhml.help_copy(); // help along an existing copy
+          return newchm.putIfMatch(key,putval,expVal);
+        }
+
+        idx = (idx+1)&(len-1); // Reprobe!
+      } // End of spinning till we get a Key slot
+
+      // ---
+      // Found the proper Key slot, now update the matching Value slot.
+      if( putval == V ) return V; // Fast cutout for no-change
+
+      // See if we want to move to a new table
+      if( (V == EMPTY && tableFull(reprobe_cnt,len)) || isPrime(V) ) {
+        resize();               // Force the new table copy to start
+        return copy_slot_and_check(idx,expVal != EMPTY).putIfMatch(key,putval,expVal);
+      }
+
+      // Must match old, and we do not?  Then bail out now.
+      if( expVal != NO_MATCH_OLD && // Do we care about expected-Value at all?
+          V != expVal &&            // No match?
+          (expVal != MATCH_ANY || V == TOMBSTONE || V == EMPTY) &&
+          !(V == EMPTY && expVal == TOMBSTONE) ) // Match on EMPTY/TOMBSTONE combo
+        return (V == EMPTY) ? TOMBSTONE : V;     // Do not update!
+
+      // Actually change the Value in the Key,Value pair
+      if( CAS_val(idx, V, putval ) ) {
+        if( expVal != EMPTY ) {
+          // Adjust sizes - a striped counter
+          if(  (V == EMPTY || V == TOMBSTONE) && putval != TOMBSTONE ) _size.add( 1);
+          if( !(V == EMPTY || V == TOMBSTONE) && putval == TOMBSTONE ) _size.add(-1);
+        }
+      } else {                  // Else CAS failed
+        V = lv_val(idx);        // Get new value
+        if( isPrime(V) )
+          return copy_slot_and_check(idx,expVal != EMPTY).putIfMatch(key,putval,expVal);
+      }
+      return (V == EMPTY && expVal != EMPTY) ? TOMBSTONE : V;
+    }
+
+    // --- getAndAdd ----------------------------------------------------------
+    // See NonBlockingLongLongHashMap.  Returns the previous (not raw) value.
+    private long getAndAdd( final long key, final long delta ) {
+      final int len      = _len;
+      int idx = (int)(key & (len-1)); // The first key
+
+      int reprobe_cnt=0;
+      long K;
+      long V;
+      while( true ) {           // Spin till we get a Key slot
+        V = lv_val(idx);        // Get old value
+        K = key(idx);           // Get current key
+        if( K == NO_KEY ) {     // Slot is free?
+          if( CAS_key(idx, NO_KEY, key) ) { // Claim slot for Key
+            _slots.add(1);      // Raise key-slots-used count
+            break;              // Got it!
+          }
+          K = key(idx);         // CAS failed, get updated value
+          assert K != NO_KEY ;  // If keys[idx] is NO_KEY, CAS shoulda worked
+        }
+        if( K == key )
+          break;                // Got it!
+
+        if( ++reprobe_cnt >= reprobe_limit(len) ) {
+          final CHM newchm = resize();
+          _nbhml.help_copy();   // help along an existing copy
+          return newchm.getAndAdd(key,delta);
+        }
+
+        idx = (idx+1)&(len-1); // Reprobe!
+      } // End of spinning till we get a Key slot
+
+      while( true ) {           // Spin till the add is done
+        if( (V == EMPTY && tableFull(reprobe_cnt,len)) || isPrime(V) ) {
+          resize();             // Force the new table copy to start
+          return copy_slot_and_check(idx,true).getAndAdd(key,delta);
+        }
+
+        final boolean absent = V == EMPTY || V == TOMBSTONE;
+        final long oldVal = absent ? 0 : OffHeapNonBlockingLongLongHashMap.val(V);
+        if( CAS_val(idx, V, checkValue(oldVal+delta)) ) {
+          if( absent ) _size.add(1); // Adjust sizes - a striped counter
+          return oldVal;
+        }
+        V = lv_val(idx);        // CAS failed, get new value
+      }
+    }
+
+    // --- forEach_impl -------------------------------------------------------
+    // Visit the live K,V pairs of a table with no copy in progress (when we
+    // started).  Slots frozen or copied since are looked up in the new table.
+    private void forEach_impl( final LongLongConsumer action ) {
+      for( int i=0; i<_len; i++ ) {
+        final long K = key(i);
+        if( K == NO_KEY ) continue;
+        final long V = lv_val(i);
+        if( isPrime(V) ) {
+          final long val = _nbhml.get(K);
+          if( val != NO_VALUE ) action.accept(K,val);
+        } else if( V != EMPTY && V != TOMBSTONE ) {
+          action.accept(K,OffHeapNonBlockingLongLongHashMap.val(V));
+        }
+      }
+    }
+
+    // --- tableFull ---------------------------------------------------------
+    // Heuristic to decide if this table is too full, see NonBlockingHashMapLong.
+    private final boolean tableFull( int reprobe_cnt, int len ) {
+      return
+        reprobe_cnt >= REPROBE_LIMIT &&
+        (reprobe_cnt >= reprobe_limit(len) ||
+         _slots.estimate_get() >= (len>>1));
+    }
+
+    // --- resize ------------------------------------------------------------
+    // Resizing after too many probes, see NonBlockingLongLongHashMap.
+    // Callers will (not this routine) will 'help_copy' any in-progress copy.
+    private final CHM resize() {
+      CHM newchm = _newchm;     // VOLATILE READ
+      if( newchm != null )      // See if resize is already in progress
+        return newchm;          // Use the new table already
+
+      int oldlen = _len;        // Old count of K,V pairs allowed
+      int sz = size();          // Get current table count of active K,V pairs
+      int newsz = sz;           // First size estimate
+      if( sz >= (oldlen>>1) )   // If we are >50% full of keys then...
+        newsz = oldlen<<1;      // Double size
+
+      long tm = System.currentTimeMillis();
+      if( newsz <= oldlen && // New table would shrink or hold steady?
+          tm <= _nbhml._last_resize_milli+10000)  // Recent resize (less than 10 sec ago)
+        newsz = oldlen<<1;      // Double the existing size
+
+      // Do not shrink, ever.
+      if( newsz < oldlen ) newsz = oldlen;
+
+      // Convert to power-of-2
+      int log2;
+      for( log2=MIN_SIZE_LOG; (1<<log2) < newsz; log2++ ) ; // Compute log2 of size
+      if( log2 > 30 ) {
+        log2 = 30;
+        if( sz > (1 << 29) + (1 << 28) ) throw new RuntimeException("Table is full.");
+      }
+
+      // Limit the number of threads allocating a table, see NonBlockingHashMapLong
+      long r = _resizers;
+      while( !_resizerUpdater.compareAndSet(this,r,r+1) )
+        r = _resizers;
+      long megs = Table.bytes(log2)>>20/*megs*/;
+      if( r >= 2 && megs > 0 ) { // Already 2 guys trying; wait and see
+        newchm = _newchm;
+        if( newchm != null )
+          return newchm;
+        try { Thread.sleep(megs); } catch( Exception e ) { /*empty*/}
+      }
+      newchm = _newchm;
+      if( newchm != null )      // See if resize is already in progress
+        return newchm;          // Use the new table already
+
+      // New CHM - actually allocate the big table
+      newchm = new CHM(_nbhml,_size,_nbhml._storage.allocate(log2));
+
+      // The new table must be CAS'd in so only 1 winner amongst duplicate
+      // racing resizing threads.  Losing tables were never seen by another
+      // thread, and are released right away.
+      if( !CAS_newchm( newchm ) ) { // NOW a resize-is-in-progress!
+        _nbhml._storage.discard(newchm._table);
+        newchm = _newchm;       // CAS failed? Reread new table
+      }
+      return newchm;
+    }
+
+
+    // The next part of the table to copy, see NonBlockingHashMapLong.
+    volatile long _copyIdx = 0;
+    static private final AtomicLongFieldUpdater<CHM> _copyIdxUpdater =
+      AtomicLongFieldUpdater.newUpdater(CHM.class, "_copyIdx");
+
+    // Work-done reporting, see NonBlockingHashMapLong.
+    volatile long _copyDone= 0;
+    static private final AtomicLongFieldUpdater<CHM> _copyDoneUpdater =
+      AtomicLongFieldUpdater.newUpdater(CHM.class, "_copyDone");
+
+    // --- help_copy_impl ----------------------------------------------------
+    // Help along an existing resize operation, see NonBlockingHashMapLong.
+    private final void help_copy_impl( final boolean copy_all ) {
+      final CHM newchm = _newchm;
+      assert newchm != null;    // Already checked by caller
+      int oldlen = _len;        // Total amount to copy
+      final int MIN_COPY_WORK = Math.min(oldlen,1024); // Limit per-thread work
+
+      int panic_start = -1;
+      int copyidx=-9999;            // Fool javac to think it's initialized
+      while( _copyDone < oldlen ) { // Still needing to copy?
+        if( panic_start == -1 ) { // No panic?
+          copyidx = (int)_copyIdx;
+          while( !_copyIdxUpdater.compareAndSet(this,copyidx,copyidx+MIN_COPY_WORK) )
+            copyidx = (int)_copyIdx;     // Re-read
+          if( !(copyidx < (oldlen<<1)) ) // Panic!
+            panic_start = copyidx;       // Record where we started to panic-copy
+        }
+
+        int workdone = 0;
+        for( int i=0; i<MIN_COPY_WORK; i++ )
+          if( copy_slot((copyidx+i)&(oldlen-1)) ) // Made an oldtable slot go dead?
+            workdone++;         // Yes!
+        if( workdone > 0 )      // Report work-done occasionally
+          copy_check_and_promote( workdone );// See if we can promote
+
+        copyidx += MIN_COPY_WORK;
+        if( !copy_all && panic_start == -1 ) // No panic?
+          return;               // Then done copying after doing MIN_COPY_WORK
+      }
+      copy_check_and_promote( 0 ); // See if we can promote
+    }
+
+
+    // --- copy_slot_and_check -----------------------------------------------
+    // Copy slot 'idx' from the old table to the new table, see
+    // NonBlockingHashMapLong.
+    private CHM copy_slot_and_check( int idx, boolean should_help ) {
+      assert _newchm != null;
+      if( copy_slot(idx) )      // Copy the desired slot
+        copy_check_and_promote(1); // Record the slot copied
+      if( should_help ) _nbhml.help_copy();
+      return _newchm;
+    }
+
+    // --- copy_check_and_promote --------------------------------------------
+    private final void copy_check_and_promote( int workdone ) {
+      int oldlen = _len;
+      long copyDone = _copyDone;
+      assert (copyDone+workdone) <= oldlen;
+      if( workdone > 0 ) {
+        while( !_copyDoneUpdater.compareAndSet(this,copyDone,copyDone+workdone) ) {
+          copyDone = _copyDone; // Reload, retry
+          assert (copyDone+workdone) <= oldlen;
+        }
+      }
+
+      if( copyDone+workdone == oldlen && // Ready to promote this table?
+          _nbhml._chm == this &&         // Looking at the top-level table?
+          // Attempt to promote
+          _nbhml.CAS(_chm_offset,this,_newchm) ) {
+        _nbhml._last_resize_milli = System.currentTimeMillis();  // Record resize time for next check
+        _nbhml.retire(_table);  // Only stale readers can see this table now
+      }
+    }
+
+    // --- copy_slot ---------------------------------------------------------
+    // Copy one K/V pair from the old table to the new one, with the FROZEN
+    // protocol of NonBlockingLongLongHashMap.  Returns true if we can confirm
+    // that we set an old-table slot to COPIED.
+    private boolean copy_slot( int idx ) {
+      // Blindly set the key slot from NO_KEY to some key which hashes here
+      long key;
+      while( (key=key(idx)) == NO_KEY )
+        CAS_key(idx, NO_KEY, (idx+_len)/*a non-zero key which hashes here*/);
+
+      // Prevent new values from appearing in the old table.
+      long oldval = lv_val(idx); // Read OLD table
+      while( true ) {
+        if( oldval == COPIED ) return false; // Copy already complete here!
+        if( oldval == FROZEN ) { // Another thread is copying the value
+          Thread.yield();
+          oldval = lv_val(idx);
+          continue;
+        }
+        if( oldval == EMPTY || oldval == TOMBSTONE ) {
+          if( CAS_val(idx,oldval,COPIED) ) return true;
+        } else if( CAS_val(idx,oldval,FROZEN) ) {
+          break;                // oldval is now frozen by us
+        }
+        oldval = lv_val(idx);   // Else try, try again
+      }
+
+      // Copy the value into the new table, then release the slot.
+      _newchm.putIfMatch(key, oldval, EMPTY);
+      UNSAFE.putLongVolatile(null, slot(idx) + VAL_OFFSET, COPIED);
+      return true;
+    } // end copy_slot
+  } // End of CHM
+
+
+  // --- forEach -------------------------------------------------------------
+  /** Performs the given action for each entry in this map, without boxing.
+   *  Entries added or removed concurrently may or may not be visited. */
+  public void forEach( LongLongConsumer action ) {
+    if( action == null ) throw new NullPointerException();
+    final long V1 = _val_1;
+    if( V1 != TOMBSTONE ) action.accept(NO_KEY,val(V1));
+    final int reader = enter();
+    try {
+      CHM topchm;
+      while( true ) {           // Verify no table-copy-in-progress
+        topchm = _chm;
+        if( topchm._newchm == null ) // No table-copy-in-progress
+          break;
+        topchm.help_copy_impl(true);
+      }
+      topchm.forEach_impl(action);
+    } finally {
+      exit(reader);
+    }
+  }
+
+  /** Returns a string representation of this map, in the style of {@link
+   *  java.util.AbstractMap#toString}. */
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder().append('{');
+    forEach(new LongLongConsumer() {
+      @Override
+      public void accept(long key, long value) {
+        if( sb.length() > 1 ) sb.append(", ");
+        sb.append(key).append('=').append(value);
+      }
+    });
+    return sb.append('}').toString();
+  }
+}
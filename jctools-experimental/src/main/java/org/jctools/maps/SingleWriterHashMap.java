@@ -0,0 +1,347 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+
+import org.jctools.sets.SingleWriterHashSet;
+import org.jctools.util.Pow2;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeAccess.fieldOffset;
+import static org.jctools.util.UnsafeRefArrayAccess.calcElementOffset;
+import static org.jctools.util.UnsafeRefArrayAccess.lpElement;
+import static org.jctools.util.UnsafeRefArrayAccess.lvElement;
+import static org.jctools.util.UnsafeRefArrayAccess.soElement;
+
+/**
+ * A hash map for one writer thread and any number of reader threads, on the design of {@link SingleWriterHashSet}:
+ * linear probing in a power of two table of interleaved keys and values, written with ordered stores.
+ * <p>
+ * Only one thread at a time may call the mutating methods ({@link #put}, {@link #remove}, {@link #clear} and the
+ * removals and {@link Map.Entry#setValue} of the views). {@link #get} and {@link #containsKey} may be called from any
+ * thread; they take no lock and do not allocate. A new mapping stores its value before its key, so a reader finding
+ * the key finds the value. Removals shift the entries following the removed one back into place, guarded by a
+ * sequence count which is odd while they run: a reader which overlapped one retries, so it never sees an entry
+ * missing or a key with another key's value. A resize fills a new table and then publishes it, leaving readers of the
+ * old one undisturbed.
+ * <p>
+ * Iterating takes a snapshot of the table, consistent as of some point during the call. Keys and values may not be
+ * {@code null}.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class SingleWriterHashMap<K, V> extends AbstractMap<K, V> {
+    /* current entry count */
+    private int size;
+    /* odd while entries are being moved or removed */
+    private long modCount;
+
+    /* keys at even indices and their values after them, buffer.length / 2 is a power of 2 */
+    private Object[] buffer;
+    private int resizeThreshold;
+
+    private Set<Map.Entry<K, V>> entrySet;
+
+    public SingleWriterHashMap(int capacity) {
+        final int actualCapacity = Pow2.roundToPowerOfTwo(Math.max(capacity, 2));
+        buffer = new Object[actualCapacity << 1];
+        resizeThreshold = (int) (0.75 * actualCapacity);
+    }
+
+    @Override
+    public int size() {
+        // size read needs to by volatile so that changes are visible
+        return UNSAFE.getIntVolatile(this, SIZE_OFFSET);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        final int hash = rehash(key.hashCode());
+        while (true) {
+            final long mc = lvModCount();
+            final V value = getImpl(key, hash);
+            if ((mc & 1) == 0 && mc == lvModCount()) {
+                return value;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V getImpl(Object key, int hash) {
+        // get takes a snapshot of the buffer.
+        final Object[] buffer = lvBuffer();
+        final int mask = (buffer.length >> 1) - 1;
+        for (int probes = 0, i = hash & mask; probes <= mask; probes++, i = (i + 1) & mask) {
+            final Object k = lvElement(buffer, keyOffset(i));
+            if (k == null) {
+                return null;
+            }
+            else if (k == key || key.equals(k)) {
+                return (V) lvElement(buffer, valueOffset(i));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        final Object[] buffer = this.buffer;
+        final int mask = (buffer.length >> 1) - 1;
+        final int hash = rehash(key.hashCode());
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            final Object k = lpElement(buffer, keyOffset(i));
+            if (k == null) {
+                // value first, so a reader finding the key finds its value
+                soElement(buffer, valueOffset(i), value);
+                soElement(buffer, keyOffset(i), key);
+                soSize(size + 1);
+                if (size > resizeThreshold) {
+                    resize();
+                }
+                return null;
+            }
+            else if (k == key || key.equals(k)) {
+                final V prev = (V) lpElement(buffer, valueOffset(i));
+                soElement(buffer, valueOffset(i), value);
+                return prev;
+            }
+        }
+    }
+
+    private void resize() {
+        final Object[] oldBuffer = buffer;
+        final Object[] newBuffer = new Object[oldBuffer.length << 1];
+        final int mask = (newBuffer.length >> 1) - 1;
+        for (int j = 0; j < oldBuffer.length; j += 2) {
+            final Object k = oldBuffer[j];
+            if (k != null) {
+                int i = rehash(k.hashCode()) & mask;
+                while (newBuffer[i << 1] != null) {
+                    i = (i + 1) & mask;
+                }
+                newBuffer[i << 1] = k;
+                newBuffer[(i << 1) + 1] = oldBuffer[j + 1];
+            }
+        }
+        // store ordered
+        soBuffer(newBuffer);
+        resizeThreshold = (int) (0.75 * (mask + 1));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        final Object[] buffer = this.buffer;
+        final int mask = (buffer.length >> 1) - 1;
+        final int hash = rehash(key.hashCode());
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            final Object k = lpElement(buffer, keyOffset(i));
+            if (k == null) {
+                return null;
+            }
+            else if (k == key || key.equals(k)) {
+                final V prev = (V) lpElement(buffer, valueOffset(i));
+                // every removal is guarded by two mod count increments: one before and one after
+                UNSAFE.putOrderedLong(this, MC_OFFSET, modCount + 1);
+                compactAndRemove(buffer, mask, i);
+                UNSAFE.putOrderedLong(this, MC_OFFSET, modCount + 1);
+                soSize(size - 1);
+                return prev;
+            }
+        }
+    }
+
+    /*
+     * Backward shift deletion, as SingleWriterHashSet does: entries after the hole which may live there move back.
+     */
+    private void compactAndRemove(final Object[] buffer, final int mask, int hole) {
+        int j = hole;
+        while (true) {
+            j = (j + 1) & mask;
+            final Object k = lpElement(buffer, keyOffset(j));
+            if (k == null) {
+                soElement(buffer, keyOffset(hole), null);
+                soElement(buffer, valueOffset(hole), null);
+                return;
+            }
+            final int home = rehash(k.hashCode()) & mask;
+            // skip the entry if its home lies cyclically in (hole, j]
+            if ((hole <= j) ? ((hole < home) && (home <= j)) : ((hole < home) || (home <= j))) {
+                continue;
+            }
+            soElement(buffer, keyOffset(hole), k);
+            soElement(buffer, valueOffset(hole), lpElement(buffer, valueOffset(j)));
+            hole = j;
+        }
+    }
+
+    @Override
+    public void clear() {
+        // readers of the old buffer see the entries as of before the clear
+        soBuffer(new Object[buffer.length]);
+        soSize(0);
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        if (es == null) {
+            entrySet = es = new EntrySet();
+        }
+        return es;
+    }
+
+    private Object[] snapshot() {
+        while (true) {
+            final long mc = lvModCount();
+            final Object[] buffer = lvBuffer();
+            final Object[] copy = new Object[buffer.length];
+            for (int i = 0; i < buffer.length; i++) {
+                copy[i] = lvElement(buffer, calcElementOffset(i));
+            }
+            if ((mc & 1) == 0 && mc == lvModCount()) {
+                return copy;
+            }
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new Iter(snapshot());
+        }
+
+        @Override
+        public int size() {
+            return SingleWriterHashMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            SingleWriterHashMap.this.clear();
+        }
+    }
+
+    private final class Iter implements Iterator<Map.Entry<K, V>> {
+        private final Object[] snapshot;
+        private int nextIndex;
+        private Object lastKey;
+
+        Iter(Object[] snapshot) {
+            this.snapshot = snapshot;
+            findNext();
+        }
+
+        private void findNext() {
+            while (nextIndex < snapshot.length && snapshot[nextIndex] == null) {
+                nextIndex += 2;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex < snapshot.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (nextIndex >= snapshot.length) {
+                throw new NoSuchElementException();
+            }
+            final K key = (K) snapshot[nextIndex];
+            final V value = (V) snapshot[nextIndex + 1];
+            lastKey = key;
+            nextIndex += 2;
+            findNext();
+            return new Entry(key, value);
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == null) {
+                throw new IllegalStateException();
+            }
+            SingleWriterHashMap.this.remove(lastKey);
+            lastKey = null;
+        }
+    }
+
+    private final class Entry extends AbstractMap.SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        Entry(K key, V value) {
+            super(key, value);
+        }
+
+        @Override
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    private static int rehash(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static long keyOffset(int index) {
+        return calcElementOffset((long) index << 1);
+    }
+
+    private static long valueOffset(int index) {
+        return calcElementOffset(((long) index << 1) + 1);
+    }
+
+    private final static long BUFFER_OFFSET = fieldOffset(SingleWriterHashMap.class, "buffer");
+    private final static long SIZE_OFFSET = fieldOffset(SingleWriterHashMap.class, "size");
+    private final static long MC_OFFSET = fieldOffset(SingleWriterHashMap.class, "modCount");
+
+    private void soBuffer(final Object[] buffer) {
+        UNSAFE.putOrderedObject(this, BUFFER_OFFSET, buffer);
+    }
+
+    private Object[] lvBuffer() {
+        return (Object[]) UNSAFE.getObjectVolatile(this, BUFFER_OFFSET);
+    }
+
+    private void soSize(int size) {
+        UNSAFE.putOrderedInt(this, SIZE_OFFSET, size);
+    }
+
+    private long lvModCount() {
+        return UNSAFE.getLongVolatile(this, MC_OFFSET);
+    }
+}
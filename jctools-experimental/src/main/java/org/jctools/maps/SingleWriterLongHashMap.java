@@ -0,0 +1,285 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.maps;
+
+import org.jctools.util.Pow2;
+
+import java.util.Arrays;
+
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeAccess.fieldOffset;
+import static org.jctools.util.UnsafeRefArrayAccess.calcElementOffset;
+import static org.jctools.util.UnsafeRefArrayAccess.lpElement;
+import static org.jctools.util.UnsafeRefArrayAccess.lvElement;
+import static org.jctools.util.UnsafeRefArrayAccess.soElement;
+
+/**
+ * A {@link SingleWriterHashMap} keyed by primitive {@code long}s, which neither boxes keys nor allocates entries.
+ * <p>
+ * Keys and values are held in parallel arrays, a slot being free while its value is {@code null}, so every key
+ * including 0 may be mapped. A new mapping stores its key before its value, and readers look at the value first.
+ * Only one thread at a time may call {@link #put}, {@link #remove} and {@link #clear}; {@link #get} and
+ * {@link #containsKey} may be called from any thread, take no lock and do not allocate. Removals are guarded by a
+ * sequence count as in {@link SingleWriterHashMap}. Values may not be {@code null}.
+ *
+ * @param <V> the type of values
+ */
+public class SingleWriterLongHashMap<V> {
+    private static final long LONG_ARRAY_BASE = UNSAFE.arrayBaseOffset(long[].class);
+    private static final int LONG_ELEMENT_SHIFT = 3;
+
+    /* keys and values replaced together on resize, keys.length is a power of 2 */
+    private static final class Table<V> {
+        final long[] keys;
+        final V[] values;
+
+        @SuppressWarnings("unchecked")
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = (V[]) new Object[capacity];
+        }
+    }
+
+    /* current entry count */
+    private int size;
+    /* odd while entries are being moved or removed */
+    private long modCount;
+
+    private Table<V> table;
+    private int resizeThreshold;
+
+    public SingleWriterLongHashMap(int capacity) {
+        final int actualCapacity = Pow2.roundToPowerOfTwo(Math.max(capacity, 2));
+        table = new Table<V>(actualCapacity);
+        resizeThreshold = (int) (0.75 * actualCapacity);
+    }
+
+    public int size() {
+        // size read needs to by volatile so that changes are visible
+        return UNSAFE.getIntVolatile(this, SIZE_OFFSET);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the value mapped to the key, or {@code null} if there is none
+     */
+    public V get(long key) {
+        final int hash = rehash(key);
+        while (true) {
+            final long mc = lvModCount();
+            final V value = getImpl(key, hash);
+            if ((mc & 1) == 0 && mc == lvModCount()) {
+                return value;
+            }
+        }
+    }
+
+    private V getImpl(long key, int hash) {
+        // get takes a snapshot of the table.
+        final Table<V> table = lvTable();
+        final int mask = table.keys.length - 1;
+        for (int probes = 0, i = hash & mask; probes <= mask; probes++, i = (i + 1) & mask) {
+            final V value = lvElement(table.values, calcElementOffset(i));
+            if (value == null) {
+                return null;
+            }
+            else if (lvKey(table.keys, i) == key) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the previous value mapped to the key, or {@code null} if there was none
+     */
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        final Table<V> table = this.table;
+        final int mask = table.keys.length - 1;
+        for (int i = rehash(key) & mask; ; i = (i + 1) & mask) {
+            final long offset = calcElementOffset(i);
+            final V prev = lpElement(table.values, offset);
+            if (prev == null) {
+                // key first, so a reader finding the value finds its key
+                soKey(table.keys, i, key);
+                soElement(table.values, offset, value);
+                soSize(size + 1);
+                if (size > resizeThreshold) {
+                    resize();
+                }
+                return null;
+            }
+            else if (table.keys[i] == key) {
+                soElement(table.values, offset, value);
+                return prev;
+            }
+        }
+    }
+
+    /**
+     * Maps the key to the value unless it is already mapped.
+     *
+     * @return the value mapped to the key, or {@code null} if the value was added
+     */
+    public V putIfAbsent(long key, V value) {
+        final V prev = get(key);
+        return prev != null ? prev : put(key, value);
+    }
+
+    private void resize() {
+        final Table<V> oldTable = table;
+        final Table<V> newTable = new Table<V>(oldTable.keys.length << 1);
+        final int mask = newTable.keys.length - 1;
+        for (int j = 0; j < oldTable.keys.length; j++) {
+            final V value = oldTable.values[j];
+            if (value != null) {
+                final long key = oldTable.keys[j];
+                int i = rehash(key) & mask;
+                while (newTable.values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                newTable.keys[i] = key;
+                newTable.values[i] = value;
+            }
+        }
+        // store ordered
+        soTable(newTable);
+        resizeThreshold = (int) (0.75 * newTable.keys.length);
+    }
+
+    /**
+     * @return the value which was mapped to the key, or {@code null} if there was none
+     */
+    public V remove(long key) {
+        final Table<V> table = this.table;
+        final int mask = table.keys.length - 1;
+        for (int i = rehash(key) & mask; ; i = (i + 1) & mask) {
+            final V prev = lpElement(table.values, calcElementOffset(i));
+            if (prev == null) {
+                return null;
+            }
+            else if (table.keys[i] == key) {
+                // every removal is guarded by two mod count increments: one before and one after
+                UNSAFE.putOrderedLong(this, MC_OFFSET, modCount + 1);
+                compactAndRemove(table, mask, i);
+                UNSAFE.putOrderedLong(this, MC_OFFSET, modCount + 1);
+                soSize(size - 1);
+                return prev;
+            }
+        }
+    }
+
+    /*
+     * Backward shift deletion, as SingleWriterHashMap does.
+     */
+    private void compactAndRemove(final Table<V> table, final int mask, int hole) {
+        final long[] keys = table.keys;
+        final V[] values = table.values;
+        int j = hole;
+        while (true) {
+            j = (j + 1) & mask;
+            final V value = lpElement(values, calcElementOffset(j));
+            if (value == null) {
+                soElement(values, calcElementOffset(hole), null);
+                return;
+            }
+            final long key = keys[j];
+            final int home = rehash(key) & mask;
+            // skip the entry if its home lies cyclically in (hole, j]
+            if ((hole <= j) ? ((hole < home) && (home <= j)) : ((hole < home) || (home <= j))) {
+                continue;
+            }
+            soKey(keys, hole, key);
+            soElement(values, calcElementOffset(hole), value);
+            hole = j;
+        }
+    }
+
+    /**
+     * Removes all the mappings; readers which got hold of the table before see the mappings as of before the clear.
+     */
+    public void clear() {
+        soTable(new Table<V>(table.keys.length));
+        soSize(0);
+    }
+
+    /**
+     * @return the keys, as of some point during the call
+     */
+    public long[] keys() {
+        while (true) {
+            final long mc = lvModCount();
+            final Table<V> table = lvTable();
+            long[] keys = new long[table.keys.length];
+            int count = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (lvElement(table.values, calcElementOffset(i)) != null) {
+                    keys[count++] = lvKey(table.keys, i);
+                }
+            }
+            if ((mc & 1) == 0 && mc == lvModCount()) {
+                return Arrays.copyOf(keys, count);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SingleWriterLongHashMap [size=" + size() + ", keys=" + Arrays.toString(keys()) + "]";
+    }
+
+    private static int rehash(long key) {
+        final int h = (int) (key ^ (key >>> 32));
+        return h ^ (h >>> 16);
+    }
+
+    private final static long TABLE_OFFSET = fieldOffset(SingleWriterLongHashMap.class, "table");
+    private final static long SIZE_OFFSET = fieldOffset(SingleWriterLongHashMap.class, "size");
+    private final static long MC_OFFSET = fieldOffset(SingleWriterLongHashMap.class, "modCount");
+
+    private static long lvKey(long[] keys, int index) {
+        return UNSAFE.getLongVolatile(keys, LONG_ARRAY_BASE + ((long) index << LONG_ELEMENT_SHIFT));
+    }
+
+    private static void soKey(long[] keys, int index, long key) {
+        UNSAFE.putOrderedLong(keys, LONG_ARRAY_BASE + ((long) index << LONG_ELEMENT_SHIFT), key);
+    }
+
+    private void soTable(final Table<V> table) {
+        UNSAFE.putOrderedObject(this, TABLE_OFFSET, table);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Table<V> lvTable() {
+        return (Table<V>) UNSAFE.getObjectVolatile(this, TABLE_OFFSET);
+    }
+
+    private void soSize(int size) {
+        UNSAFE.putOrderedInt(this, SIZE_OFFSET, size);
+    }
+
+    private long lvModCount() {
+        return UNSAFE.getLongVolatile(this, MC_OFFSET);
+    }
+}
@@ -0,0 +1,629 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import org.jctools.util.RangeUtil;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TransferQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.jctools.util.PortableJvmInfo.CACHE_LINE_SIZE;
+import static org.jctools.util.PortableJvmInfo.CPUs;
+import static org.jctools.util.Pow2.roundToPowerOfTwo;
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeAccess.fieldOffset;
+import static org.jctools.util.UnsafeRefArrayAccess.REF_ARRAY_BASE;
+import static org.jctools.util.UnsafeRefArrayAccess.REF_ELEMENT_SHIFT;
+import static org.jctools.util.UnsafeRefArrayAccess.lvElement;
+import static org.jctools.util.UnsafeRefArrayAccess.soElement;
+
+abstract class MpmcTransferQueueWaiterL0Pad
+{
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class MpmcTransferQueueWaiterFields extends MpmcTransferQueueWaiterL0Pad
+{
+    private final static long ITEM_OFFSET = fieldOffset(MpmcTransferQueueWaiterFields.class, "item");
+
+    final Thread thread;
+    private volatile Object item;
+
+    MpmcTransferQueueWaiterFields(Thread thread)
+    {
+        this.thread = thread;
+    }
+
+    final Object lvItem()
+    {
+        return item;
+    }
+
+    final void soItem(Object newValue)
+    {
+        UNSAFE.putOrderedObject(this, ITEM_OFFSET, newValue);
+    }
+
+    final boolean casItem(Object expect, Object newValue)
+    {
+        return UNSAFE.compareAndSwapObject(this, ITEM_OFFSET, expect, newValue);
+    }
+}
+
+/**
+ * A parked (or about to park) thread. Every thread has one consumer and one producer waiter per queue which it reuses
+ * for all its waits, so waiting does not allocate. The waiter is padded as the item is written by the matching thread
+ * while the owner spins on it.
+ */
+final class MpmcTransferQueueWaiter extends MpmcTransferQueueWaiterFields
+{
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+
+    MpmcTransferQueueWaiter(Thread thread)
+    {
+        super(thread);
+    }
+}
+
+abstract class MpmcTransferQueueWaitersL0Pad
+{
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class MpmcTransferQueueWaitersCountField extends MpmcTransferQueueWaitersL0Pad
+{
+    private final static long WAITING_OFFSET = fieldOffset(MpmcTransferQueueWaitersCountField.class, "waiting");
+
+    private volatile int waiting;
+
+    final int lvWaiting()
+    {
+        return waiting;
+    }
+
+    final void getAndAddWaiting(int delta)
+    {
+        UNSAFE.getAndAddInt(this, WAITING_OFFSET, delta);
+    }
+}
+
+abstract class MpmcTransferQueueWaitersL1Pad extends MpmcTransferQueueWaitersCountField
+{
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+/**
+ * The registry of waiting threads of one kind (consumers or producers). Waiters claim a slot in a fixed size array,
+ * where each slot sits on its own cache line, and the number of registered waiters is kept in a padded counter so that
+ * the fast paths only need a single load to learn there is no one to match.
+ * <p>
+ * A slot is always claimed before the counter is incremented and cleared before it is decremented, so a thread which
+ * reads a non zero count will find the slot when it scans. Threads which find no free slot are not registered and must
+ * poll for progress.
+ */
+final class MpmcTransferQueueWaiters extends MpmcTransferQueueWaitersL1Pad
+{
+    private static final int SLOT_SHIFT =
+        Integer.numberOfTrailingZeros(roundToPowerOfTwo(Math.max(1, CACHE_LINE_SIZE >> REF_ELEMENT_SHIFT)));
+
+    private final int mask;
+    // slot i is at index (i + 1) << SLOT_SHIFT, leaving a cache line of padding on either side of the slots
+    private final MpmcTransferQueueWaiter[] slots;
+
+    MpmcTransferQueueWaiters(int maxWaiters)
+    {
+        int size = roundToPowerOfTwo(maxWaiters);
+        mask = size - 1;
+        slots = new MpmcTransferQueueWaiter[(size + 2) << SLOT_SHIFT];
+    }
+
+    private static long calcSlotOffset(int index)
+    {
+        return REF_ARRAY_BASE + ((long) ((index + 1) << SLOT_SHIFT) << REF_ELEMENT_SHIFT);
+    }
+
+    private static int startIndex()
+    {
+        return (int) Thread.currentThread().getId();
+    }
+
+    /**
+     * @return the index of the claimed slot, or -1 if all slots are taken
+     */
+    int register(MpmcTransferQueueWaiter waiter)
+    {
+        final MpmcTransferQueueWaiter[] slots = this.slots;
+        final int mask = this.mask;
+        final int start = startIndex();
+        for (int i = 0; i <= mask; i++)
+        {
+            final int index = (start + i) & mask;
+            final long offset = calcSlotOffset(index);
+            if (lvElement(slots, offset) == null && UNSAFE.compareAndSwapObject(slots, offset, null, waiter))
+            {
+                getAndAddWaiting(1);
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    void deregister(int index)
+    {
+        // only the owner clears its slot
+        soElement(slots, calcSlotOffset(index), null);
+        getAndAddWaiting(-1);
+    }
+
+    /**
+     * Hand the element to a registered waiting consumer.
+     *
+     * @return true if a consumer was matched
+     */
+    boolean handOff(Object e)
+    {
+        final MpmcTransferQueueWaiter[] slots = this.slots;
+        final int mask = this.mask;
+        final int start = startIndex();
+        for (int i = 0; i <= mask; i++)
+        {
+            final MpmcTransferQueueWaiter waiter = lvElement(slots, calcSlotOffset((start + i) & mask));
+            if (waiter != null && waiter.lvItem() == null && waiter.casItem(null, e))
+            {
+                LockSupport.unpark(waiter.thread);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Take the element of a registered waiting producer.
+     *
+     * @return the element, or null if no producer was matched
+     */
+    Object claim()
+    {
+        final MpmcTransferQueueWaiter[] slots = this.slots;
+        final int mask = this.mask;
+        final int start = startIndex();
+        for (int i = 0; i <= mask; i++)
+        {
+            final MpmcTransferQueueWaiter waiter = lvElement(slots, calcSlotOffset((start + i) & mask));
+            if (waiter == null)
+            {
+                continue;
+            }
+            final Object e = waiter.lvItem();
+            if (e != null && e != MpmcTransferQueue.TAKEN && e != MpmcTransferQueue.CANCELLED &&
+                waiter.casItem(e, MpmcTransferQueue.TAKEN))
+            {
+                LockSupport.unpark(waiter.thread);
+                return e;
+            }
+        }
+        return null;
+    }
+
+    void wakeAll()
+    {
+        final MpmcTransferQueueWaiter[] slots = this.slots;
+        for (int i = 0; i <= mask; i++)
+        {
+            final MpmcTransferQueueWaiter waiter = lvElement(slots, calcSlotOffset(i));
+            if (waiter != null)
+            {
+                LockSupport.unpark(waiter.thread);
+            }
+        }
+    }
+}
+
+/**
+ * A {@link TransferQueue} on top of a {@link MpmcUnboundedXaddArrayQueue}. Elements which are not handed off directly
+ * are stored in the array queue, so unlike {@link java.util.concurrent.LinkedTransferQueue} no node is allocated per
+ * element.
+ * <p>
+ * Waiting consumers register in a padded slot array and a producer hands its element over by a single CAS on the
+ * waiter of a registered consumer. The waiters are reused per thread, so a handoff allocates nothing. Producers blocked
+ * in {@link #transfer(Object)} register in the same way and are matched by consumers once the array queue is empty.
+ * <p>
+ * The ordering is weaker than that of {@link java.util.concurrent.LinkedTransferQueue}:
+ * <ul>
+ * <li>An element handed to a waiting consumer may overtake elements which are still in the array queue.
+ * <li>Elements of producers blocked in {@link #transfer(Object)} are only taken once the array queue is empty, and are
+ * not seen by {@link #peek()}, {@link #size()} or {@link #contains(Object)}.
+ * </ul>
+ * The number of threads which can be registered as waiting consumers (and as waiting producers) is bounded. Threads in
+ * excess of this bound wait by parking for a short time and polling, so they are slower to wake up and can not be
+ * handed an element directly.
+ *
+ * @param <E>
+ */
+public class MpmcTransferQueue<E> extends AbstractQueue<E> implements TransferQueue<E>
+{
+    static final Object TAKEN = new Object();
+    static final Object CANCELLED = new Object();
+
+    private static final int SPINS = CPUs > 1 ? 128 : 0;
+    // how long an unregistered waiter parks before polling again
+    private static final long POLL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final MpmcUnboundedXaddArrayQueue<E> queue;
+    private final MpmcTransferQueueWaiters consumers;
+    private final MpmcTransferQueueWaiters producers;
+    // per queue instance, a waiter left behind in a registry of another queue must never be matched by this queue
+    private final ThreadLocal<MpmcTransferQueueWaiter> consumerWaiter = new WaiterThreadLocal();
+    private final ThreadLocal<MpmcTransferQueueWaiter> producerWaiter = new WaiterThreadLocal();
+
+    public MpmcTransferQueue(int chunkSize)
+    {
+        this(chunkSize, 2, Math.max(16, 2 * CPUs));
+    }
+
+    /**
+     * @param chunkSize       the chunk size of the underlying {@link MpmcUnboundedXaddArrayQueue}
+     * @param maxPooledChunks the number of chunks the underlying {@link MpmcUnboundedXaddArrayQueue} keeps for reuse
+     * @param maxWaiters      the number of consumers (and producers) which can be registered as waiting, rounded up to
+     *                        the next power of 2
+     */
+    public MpmcTransferQueue(int chunkSize, int maxPooledChunks, int maxWaiters)
+    {
+        RangeUtil.checkPositive(maxWaiters, "maxWaiters");
+        queue = new MpmcUnboundedXaddArrayQueue<E>(chunkSize, maxPooledChunks);
+        consumers = new MpmcTransferQueueWaiters(maxWaiters);
+        producers = new MpmcTransferQueueWaiters(maxWaiters);
+    }
+
+    @Override
+    public boolean offer(E e)
+    {
+        if (null == e)
+        {
+            throw new NullPointerException();
+        }
+        if (consumers.lvWaiting() != 0 && consumers.handOff(e))
+        {
+            return true;
+        }
+        queue.offer(e);
+        // a consumer may have registered after the handoff attempt, and before it could see the element
+        if (consumers.lvWaiting() != 0)
+        {
+            consumers.wakeAll();
+        }
+        return true;
+    }
+
+    @Override
+    public void put(E e)
+    {
+        offer(e);
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit)
+    {
+        return offer(e);
+    }
+
+    @Override
+    public boolean tryTransfer(E e)
+    {
+        if (null == e)
+        {
+            throw new NullPointerException();
+        }
+        return consumers.lvWaiting() != 0 && consumers.handOff(e);
+    }
+
+    @Override
+    public void transfer(E e) throws InterruptedException
+    {
+        if (!tryTransfer(e))
+        {
+            awaitTransfer(e, false, 0L);
+        }
+    }
+
+    @Override
+    public boolean tryTransfer(E e, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return tryTransfer(e) || awaitTransfer(e, true, unit.toNanos(timeout));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E poll()
+    {
+        E e = queue.poll();
+        if (e == null && producers.lvWaiting() != 0)
+        {
+            e = (E) producers.claim();
+        }
+        return e;
+    }
+
+    @Override
+    public E take() throws InterruptedException
+    {
+        E e = poll();
+        if (e != null)
+        {
+            return e;
+        }
+        return awaitElement(false, 0L);
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        E e = poll();
+        if (e != null)
+        {
+            return e;
+        }
+        return awaitElement(true, unit.toNanos(timeout));
+    }
+
+    @Override
+    public E peek()
+    {
+        return queue.peek();
+    }
+
+    @Override
+    public boolean hasWaitingConsumer()
+    {
+        return consumers.lvWaiting() != 0;
+    }
+
+    @Override
+    public int getWaitingConsumerCount()
+    {
+        return consumers.lvWaiting();
+    }
+
+    @Override
+    public int remainingCapacity()
+    {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c)
+    {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements)
+    {
+        if (null == c)
+        {
+            throw new NullPointerException();
+        }
+        if (c == this)
+        {
+            throw new IllegalArgumentException();
+        }
+        int count = 0;
+        E e;
+        while (count < maxElements && (e = poll()) != null)
+        {
+            c.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public Iterator<E> iterator()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int size()
+    {
+        return queue.size();
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.getClass().getName();
+    }
+
+    @SuppressWarnings("unchecked")
+    private E awaitElement(boolean timed, long nanos) throws InterruptedException
+    {
+        final long deadline = timed ? System.nanoTime() + nanos : 0L;
+        final MpmcTransferQueueWaiter waiter = consumerWaiter.get();
+        while (true)
+        {
+            // producers only hand off to a waiter with a null item, from here on we may be matched
+            waiter.soItem(null);
+            final int slot = consumers.register(waiter);
+            Object item;
+            try
+            {
+                item = awaitMatch(waiter, null, slot, producers, timed, deadline);
+            }
+            finally
+            {
+                if (slot >= 0)
+                {
+                    consumers.deregister(slot);
+                }
+            }
+            if (item != CANCELLED)
+            {
+                // don't hold on to the element
+                waiter.soItem(TAKEN);
+                return (E) item;
+            }
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+            E e = poll();
+            if (e != null)
+            {
+                return e;
+            }
+            if (timed && deadline - System.nanoTime() <= 0)
+            {
+                return null;
+            }
+        }
+    }
+
+    private boolean awaitTransfer(E e, boolean timed, long nanos) throws InterruptedException
+    {
+        final long deadline = timed ? System.nanoTime() + nanos : 0L;
+        final MpmcTransferQueueWaiter waiter = producerWaiter.get();
+        while (true)
+        {
+            // consumers only take from a waiter holding an element, from here on we may be matched
+            waiter.soItem(e);
+            final int slot = producers.register(waiter);
+            Object item;
+            try
+            {
+                item = awaitMatch(waiter, e, slot, consumers, timed, deadline);
+            }
+            finally
+            {
+                if (slot >= 0)
+                {
+                    producers.deregister(slot);
+                }
+            }
+            if (item != CANCELLED)
+            {
+                return true;
+            }
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+            if (tryTransfer(e))
+            {
+                return true;
+            }
+            if (timed && deadline - System.nanoTime() <= 0)
+            {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Wait until the waiter item changes from {@code unmatched}, or until the wait is cancelled. A waiting consumer
+     * cancels when there is an element to poll, or a producer waiting to transfer. A waiting producer does not cancel
+     * on seeing waiting consumers (both sides cancelling would livelock), but wakes them so they cancel and claim its
+     * element.
+     *
+     * @return the matched item, or {@link #CANCELLED}
+     */
+    private Object awaitMatch(
+        MpmcTransferQueueWaiter waiter,
+        Object unmatched,
+        int slot,
+        MpmcTransferQueueWaiters counterparts,
+        boolean timed,
+        long deadline)
+    {
+        final boolean consumer = unmatched == null;
+        boolean counterpartsWoken = false;
+        boolean polled = false;
+        int spins = slot < 0 ? 0 : SPINS;
+        while (true)
+        {
+            final Object item = waiter.lvItem();
+            if (item != unmatched)
+            {
+                return item;
+            }
+
+            final long remaining = timed ? deadline - System.nanoTime() : 0L;
+            final boolean cancel;
+            if (consumer)
+            {
+                cancel = !queue.isEmpty() || counterparts.lvWaiting() != 0;
+            }
+            else
+            {
+                cancel = false;
+                if (!counterpartsWoken && counterparts.lvWaiting() != 0)
+                {
+                    counterparts.wakeAll();
+                    counterpartsWoken = true;
+                }
+            }
+            if (cancel || polled || (timed && remaining <= 0) || waiter.thread.isInterrupted())
+            {
+                if (waiter.casItem(unmatched, CANCELLED))
+                {
+                    return CANCELLED;
+                }
+                // matched in the meantime
+                continue;
+            }
+
+            if (spins > 0)
+            {
+                spins--;
+            }
+            else if (slot < 0)
+            {
+                // not registered, no one is going to wake us up
+                LockSupport.parkNanos(this, timed ? Math.min(remaining, POLL_PARK_NANOS) : POLL_PARK_NANOS);
+                polled = true;
+            }
+            else if (timed)
+            {
+                LockSupport.parkNanos(this, remaining);
+            }
+            else
+            {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private static final class WaiterThreadLocal extends ThreadLocal<MpmcTransferQueueWaiter>
+    {
+        @Override
+        protected MpmcTransferQueueWaiter initialValue()
+        {
+            return new MpmcTransferQueueWaiter(Thread.currentThread());
+        }
+    }
+}
@@ -0,0 +1,607 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.queues;
+
+import org.jctools.util.Pow2;
+import org.jctools.util.RangeUtil;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+
+import static org.jctools.util.PortableJvmInfo.CPUs;
+import static org.jctools.util.Pow2.roundToPowerOfTwo;
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeAccess.fieldOffset;
+
+abstract class MpscAdaptiveCompoundQueueL0Pad<E> extends AbstractQueue<E> implements MessagePassingQueue<E>
+{
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class MpscAdaptiveCompoundQueueColdFields<E> extends MpscAdaptiveCompoundQueueL0Pad<E>
+{
+    // must be power of 2
+    protected final int maxStripes;
+    protected final MpscArrayQueue<E>[] queues;
+
+    @SuppressWarnings("unchecked")
+    MpscAdaptiveCompoundQueueColdFields(int capacity, int maxParallelism)
+    {
+        RangeUtil.checkPositive(maxParallelism, "maxParallelism");
+        maxStripes = roundToPowerOfTwo(maxParallelism);
+        queues = new MpscArrayQueue[maxStripes];
+        int fullCapacity = roundToPowerOfTwo(capacity);
+        RangeUtil.checkGreaterThanOrEqual(fullCapacity, maxStripes, "fullCapacity");
+        for (int i = 0; i < maxStripes; i++)
+        {
+            queues[i] = new MpscArrayQueue<E>(fullCapacity / maxStripes);
+        }
+    }
+}
+
+abstract class MpscAdaptiveCompoundQueueMidPad<E> extends MpscAdaptiveCompoundQueueColdFields<E>
+{
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+
+    MpscAdaptiveCompoundQueueMidPad(int capacity, int maxParallelism)
+    {
+        super(capacity, maxParallelism);
+    }
+}
+
+// Read by producers on every offer, written rarely
+abstract class MpscAdaptiveCompoundQueueActiveStripesFields<E> extends MpscAdaptiveCompoundQueueMidPad<E>
+{
+    private final static long ACTIVE_STRIPES_OFFSET =
+        fieldOffset(MpscAdaptiveCompoundQueueActiveStripesFields.class, "activeStripes");
+    private final static long STRAGGLERS_OFFSET =
+        fieldOffset(MpscAdaptiveCompoundQueueActiveStripesFields.class, "stragglers");
+
+    // must be power of 2, only written by the consumer
+    private volatile int activeStripes;
+    // set by producers which have placed an element in a stripe the consumer may no longer be scanning
+    private volatile int stragglers;
+
+    MpscAdaptiveCompoundQueueActiveStripesFields(int capacity, int maxParallelism)
+    {
+        super(capacity, maxParallelism);
+        activeStripes = 1;
+    }
+
+    final int lvActiveStripes()
+    {
+        return activeStripes;
+    }
+
+    final void soActiveStripes(int newValue)
+    {
+        UNSAFE.putOrderedInt(this, ACTIVE_STRIPES_OFFSET, newValue);
+    }
+
+    final void svActiveStripes(int newValue)
+    {
+        UNSAFE.putIntVolatile(this, ACTIVE_STRIPES_OFFSET, newValue);
+    }
+
+    final int lvStragglers()
+    {
+        return stragglers;
+    }
+
+    final void soStragglers(int newValue)
+    {
+        UNSAFE.putOrderedInt(this, STRAGGLERS_OFFSET, newValue);
+    }
+}
+
+abstract class MpscAdaptiveCompoundQueueL2Pad<E> extends MpscAdaptiveCompoundQueueActiveStripesFields<E>
+{
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+
+    MpscAdaptiveCompoundQueueL2Pad(int capacity, int maxParallelism)
+    {
+        super(capacity, maxParallelism);
+    }
+}
+
+// Written by producers on CAS failure only
+abstract class MpscAdaptiveCompoundQueueCasFailuresField<E> extends MpscAdaptiveCompoundQueueL2Pad<E>
+{
+    private final static long CAS_FAILURES_OFFSET =
+        fieldOffset(MpscAdaptiveCompoundQueueCasFailuresField.class, "casFailures");
+
+    private volatile long casFailures;
+
+    MpscAdaptiveCompoundQueueCasFailuresField(int capacity, int maxParallelism)
+    {
+        super(capacity, maxParallelism);
+    }
+
+    final long lvCasFailures()
+    {
+        return casFailures;
+    }
+
+    /**
+     * The counter is only a contention estimate, so the increment is racy: concurrent failures may be lost, which is
+     * preferable to adding yet another contended CAS to a path which already failed one.
+     */
+    final void incrementCasFailures()
+    {
+        UNSAFE.putOrderedLong(this, CAS_FAILURES_OFFSET, casFailures + 1);
+    }
+}
+
+abstract class MpscAdaptiveCompoundQueueL3Pad<E> extends MpscAdaptiveCompoundQueueCasFailuresField<E>
+{
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+
+    MpscAdaptiveCompoundQueueL3Pad(int capacity, int maxParallelism)
+    {
+        super(capacity, maxParallelism);
+    }
+}
+
+abstract class MpscAdaptiveCompoundQueueConsumerFields<E> extends MpscAdaptiveCompoundQueueL3Pad<E>
+{
+    int consumerQueueIndex;
+    // must be power of 2, always >= activeStripes
+    int scanStripes;
+    int consumerOps;
+    long lastCasFailures;
+
+    MpscAdaptiveCompoundQueueConsumerFields(int capacity, int maxParallelism)
+    {
+        super(capacity, maxParallelism);
+        scanStripes = 1;
+    }
+}
+
+/**
+ * A variant of {@link MpscCompoundQueue} which adapts the number of stripes in use to the observed contention.
+ * <p>
+ * All {@code maxParallelism} stripes are allocated up front, but producers only spread over the first
+ * {@code activeStripes} of them (initially 1). Producers count their failed CAS attempts, and every
+ * {@link #ADAPT_PERIOD} polls the consumer doubles the active stripes if the failure count is high, or
+ * halves them if it is negligible. The consumer only scans the stripes it may find elements in, so a lightly loaded
+ * queue is polled at the cost of a single {@link MpscArrayQueue}.
+ * <p>
+ * Retiring a stripe is made safe by a Dekker style handshake: the consumer publishes the narrowed stripe count with a
+ * volatile store before it checks the retired stripes are empty, while a producer re-reads the stripe count after
+ * claiming its slot. Either the consumer sees the element, or the producer sees the narrowed count and flags a
+ * straggler, upon which the consumer resumes scanning all stripes. When all active stripes are full producers spill
+ * into the inactive ones, so {@link #offer(Object)} only fails when all stripes are full.
+ * <p>
+ * Note that the adaptation is driven by the consumer, so contention is only acted upon while the queue is consumed.
+ */
+public class MpscAdaptiveCompoundQueue<E> extends MpscAdaptiveCompoundQueueConsumerFields<E>
+{
+    public static final int ADAPT_PERIOD =
+        Pow2.roundToPowerOfTwo(Integer.getInteger("jctools.mpsc.adaptive.period", 4096));
+    // more than 1/64 of the period in CAS failures is deemed contended
+    static final int WIDEN_THRESHOLD = ADAPT_PERIOD >> 6;
+    // less than 1/1024 of the period in CAS failures is deemed uncontended
+    static final int NARROW_THRESHOLD = ADAPT_PERIOD >> 10;
+
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+
+    public MpscAdaptiveCompoundQueue(int capacity)
+    {
+        this(capacity, CPUs);
+    }
+
+    public MpscAdaptiveCompoundQueue(int capacity, int maxParallelism)
+    {
+        super(capacity, maxParallelism);
+    }
+
+    /**
+     * @return the number of stripes producers currently spread over, a power of 2 no larger than the max parallelism
+     */
+    public int activeStripes()
+    {
+        return lvActiveStripes();
+    }
+
+    @Override
+    public boolean offer(final E e)
+    {
+        if (null == e)
+        {
+            throw new NullPointerException();
+        }
+        final int activeStripes = lvActiveStripes();
+        final int start = (int) (Thread.currentThread().getId() & (activeStripes - 1));
+        final MpscArrayQueue<E>[] queues = this.queues;
+        final int status = queues[start].failFastOffer(e);
+        if (status == 0)
+        {
+            checkStraggler(start);
+            return true;
+        }
+        if (status < 0)
+        {
+            incrementCasFailures();
+        }
+        return slowOffer(queues, start + 1, e);
+    }
+
+    private boolean slowOffer(MpscArrayQueue<E>[] queues, int start, E e)
+    {
+        final int maxStripes = this.maxStripes;
+        while (true)
+        {
+            final int activeStripes = lvActiveStripes();
+            final int activeMask = activeStripes - 1;
+            int full = 0;
+            for (int i = start; i < start + activeStripes; i++)
+            {
+                final int stripe = i & activeMask;
+                final int s = queues[stripe].failFastOffer(e);
+                if (s == 0)
+                {
+                    checkStraggler(stripe);
+                    return true;
+                }
+                if (s < 0)
+                {
+                    incrementCasFailures();
+                }
+                else
+                {
+                    full++;
+                }
+            }
+            if (full != activeStripes)
+            {
+                continue;
+            }
+            // active stripes are full, spill into the inactive ones rather than report a full queue
+            for (int stripe = activeStripes; stripe < maxStripes; stripe++)
+            {
+                final int s = queues[stripe].failFastOffer(e);
+                if (s == 0)
+                {
+                    checkStraggler(stripe);
+                    return true;
+                }
+                if (s > 0)
+                {
+                    full++;
+                }
+            }
+            if (full == maxStripes)
+            {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Must be called after an element was placed in the stripe, the CAS on the stripe producer index is the StoreLoad
+     * barrier ordering the slot claim before the load of the active stripes.
+     */
+    private void checkStraggler(int stripe)
+    {
+        if (stripe != 0 && stripe >= lvActiveStripes())
+        {
+            soStragglers(1);
+        }
+    }
+
+    @Override
+    public boolean relaxedOffer(E e)
+    {
+        if (null == e)
+        {
+            throw new NullPointerException();
+        }
+        final int activeStripes = lvActiveStripes();
+        final int activeMask = activeStripes - 1;
+        final int start = (int) (Thread.currentThread().getId() & activeMask);
+        final MpscArrayQueue<E>[] queues = this.queues;
+        for (int i = start; i < start + activeStripes; i++)
+        {
+            final int stripe = i & activeMask;
+            final int s = queues[stripe].failFastOffer(e);
+            if (s == 0)
+            {
+                checkStraggler(stripe);
+                return true;
+            }
+            if (s < 0)
+            {
+                incrementCasFailures();
+            }
+        }
+        for (int stripe = activeStripes; stripe < maxStripes; stripe++)
+        {
+            if (queues[stripe].failFastOffer(e) == 0)
+            {
+                checkStraggler(stripe);
+                return true;
+            }
+        }
+        // this is a relaxed offer, we can fail for any reason we like
+        return false;
+    }
+
+    @Override
+    public E poll()
+    {
+        E e = pollStripes(false);
+        if (e == null && claimStragglers())
+        {
+            e = pollStripes(false);
+        }
+        // adapt after the poll, so the stripes scanned are stable between a peek and the following poll
+        onConsumerOp();
+        return e;
+    }
+
+    @Override
+    public E relaxedPoll()
+    {
+        E e = pollStripes(true);
+        if (e == null && claimStragglers())
+        {
+            e = pollStripes(true);
+        }
+        // adapt after the poll, so the stripes scanned are stable between a peek and the following poll
+        onConsumerOp();
+        return e;
+    }
+
+    @Override
+    public E peek()
+    {
+        E e = peekStripes(false);
+        if (e == null && claimStragglers())
+        {
+            e = peekStripes(false);
+        }
+        return e;
+    }
+
+    @Override
+    public E relaxedPeek()
+    {
+        E e = peekStripes(true);
+        if (e == null && claimStragglers())
+        {
+            e = peekStripes(true);
+        }
+        return e;
+    }
+
+    private E pollStripes(boolean relaxed)
+    {
+        final MpscArrayQueue<E>[] queues = this.queues;
+        final int scanMask = scanStripes - 1;
+        int qIndex = consumerQueueIndex & scanMask;
+        final int limit = qIndex + scanMask + 1;
+        E e = null;
+        for (; qIndex < limit; qIndex++)
+        {
+            final MpscArrayQueue<E> q = queues[qIndex & scanMask];
+            e = relaxed ? q.relaxedPoll() : q.poll();
+            if (e != null)
+            {
+                break;
+            }
+        }
+        consumerQueueIndex = qIndex;
+        return e;
+    }
+
+    private E peekStripes(boolean relaxed)
+    {
+        final MpscArrayQueue<E>[] queues = this.queues;
+        final int scanMask = scanStripes - 1;
+        int qIndex = consumerQueueIndex & scanMask;
+        final int limit = qIndex + scanMask + 1;
+        E e = null;
+        for (; qIndex < limit; qIndex++)
+        {
+            final MpscArrayQueue<E> q = queues[qIndex & scanMask];
+            e = relaxed ? q.relaxedPeek() : q.peek();
+            if (e != null)
+            {
+                break;
+            }
+        }
+        consumerQueueIndex = qIndex;
+        return e;
+    }
+
+    /**
+     * @return true if a producer flagged an element in a stripe we were not scanning, in which case all stripes are
+     * scanned until the retired ones are observed empty again.
+     */
+    private boolean claimStragglers()
+    {
+        if (lvStragglers() == 0)
+        {
+            return false;
+        }
+        // clear before scanning, a flag set after this point is picked up on the next claim
+        soStragglers(0);
+        scanStripes = maxStripes;
+        return true;
+    }
+
+    private void onConsumerOp()
+    {
+        if ((++consumerOps & (ADAPT_PERIOD - 1)) == 0)
+        {
+            adapt();
+        }
+    }
+
+    private void adapt()
+    {
+        final long casFailures = lvCasFailures();
+        final long delta = casFailures - lastCasFailures;
+        lastCasFailures = casFailures;
+
+        final int activeStripes = lvActiveStripes();
+        if (delta > WIDEN_THRESHOLD && activeStripes < maxStripes)
+        {
+            final int newActiveStripes = activeStripes << 1;
+            if (scanStripes < newActiveStripes)
+            {
+                scanStripes = newActiveStripes;
+            }
+            soActiveStripes(newActiveStripes);
+        }
+        else if (delta <= NARROW_THRESHOLD && activeStripes > 1)
+        {
+            // StoreLoad: the narrowed count must be visible before we check the retired stripes below
+            svActiveStripes(activeStripes >> 1);
+        }
+        claimStragglers();
+        retireEmptyStripes();
+    }
+
+    /**
+     * Stop scanning the upper half of the scanned stripes for as long as it is inactive and observed empty.
+     */
+    private void retireEmptyStripes()
+    {
+        final MpscArrayQueue<E>[] queues = this.queues;
+        final int activeStripes = lvActiveStripes();
+        int scanStripes = this.scanStripes;
+        while (scanStripes > activeStripes)
+        {
+            final int half = scanStripes >> 1;
+            for (int i = half; i < scanStripes; i++)
+            {
+                if (!queues[i].isEmpty())
+                {
+                    this.scanStripes = scanStripes;
+                    return;
+                }
+            }
+            scanStripes = half;
+        }
+        this.scanStripes = scanStripes;
+    }
+
+    @Override
+    public int size()
+    {
+        int size = 0;
+        for (MpscArrayQueue<E> lane : queues)
+        {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        for (MpscArrayQueue<E> lane : queues)
+        {
+            if (!lane.isEmpty())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Iterator<E> iterator()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.getClass().getName();
+    }
+
+    @Override
+    public int capacity()
+    {
+        return queues.length * queues[0].capacity();
+    }
+
+    @Override
+    public int drain(Consumer<E> c)
+    {
+        final int limit = capacity();
+        return drain(c, limit);
+    }
+
+    @Override
+    public int fill(Supplier<E> s)
+    {
+        return MessagePassingQueueUtil.fillBounded(this, s);
+    }
+
+    @Override
+    public int drain(Consumer<E> c, int limit)
+    {
+        return MessagePassingQueueUtil.drain(this, c, limit);
+    }
+
+    @Override
+    public int fill(Supplier<E> s, int limit)
+    {
+        if (null == s)
+            throw new IllegalArgumentException("supplier is null");
+        if (limit < 0)
+            throw new IllegalArgumentException("limit is negative:" + limit);
+        if (limit == 0)
+            return 0;
+
+        final int activeStripes = lvActiveStripes();
+        final int activeMask = activeStripes - 1;
+        final int start = (int) (Thread.currentThread().getId() & activeMask);
+        final MpscArrayQueue<E>[] queues = this.queues;
+        int filled = 0;
+        // walk the active stripes from our home stripe first, then spill into the inactive ones
+        for (int i = 0; i < maxStripes && filled < limit; i++)
+        {
+            final int stripe = i < activeStripes ? (start + i) & activeMask : i;
+            final int stripeFilled = queues[stripe].fill(s, limit - filled);
+            if (stripeFilled != 0)
+            {
+                checkStraggler(stripe);
+                filled += stripeFilled;
+            }
+        }
+        return filled;
+    }
+
+    @Override
+    public void drain(Consumer<E> c, WaitStrategy wait, ExitCondition exit)
+    {
+        MessagePassingQueueUtil.drain(this, c, wait, exit);
+    }
+
+    @Override
+    public void fill(Supplier<E> s, WaitStrategy wait, ExitCondition exit)
+    {
+        MessagePassingQueueUtil.fill(this, s, wait, exit);
+    }
+}
@@ -0,0 +1,112 @@
+package org.jctools.queues.blocking;
+
+import org.jctools.queues.MpscLinkedQueue;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NOTE: This class was automatically generated by org.jctools.queues.blocking.JavaBlockingQueueGenerator
+ * which can found in the jctools-build module. The original template is TemplateBlocking.java.
+ */
+public class MpscLinkedQueueBlocking<E> extends MpscLinkedQueue<E> implements BlockingQueue<E>
+{
+    private static final long serialVersionUID = 1L;
+
+    private final TakeStrategy<E> takeStrategy;
+    private final PutStrategy<E> putStrategy;
+
+    public MpscLinkedQueueBlocking(TakeStrategy<E> takeStrategy, PutStrategy<E> putStrategy)
+    {
+        super();
+        this.takeStrategy = takeStrategy;
+        this.putStrategy = putStrategy;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException
+    {
+        putStrategy.waitOffer(this, e);
+    }
+
+    @Override
+    public E take() throws InterruptedException
+    {
+        return takeStrategy.waitPoll(this);
+    }
+
+    @Override
+    public boolean offer(E e)
+    {
+        boolean offered = super.offer(e);
+
+        if (offered)
+        {
+            takeStrategy.signal();
+        }
+
+        return offered;
+    }
+
+    @Override
+    public E poll()
+    {
+        E e = super.poll();
+
+        if (e != null)
+        {
+            putStrategy.signal();
+        }
+
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int remainingCapacity()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c)
+    {
+        int count = 0;
+
+        E e;
+        while ((e = poll()) != null)
+        {
+            c.add(e);
+            count++;
+        }
+
+        return count;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements)
+    {
+        int count = 0;
+
+        E e;
+        while (count < maxElements && (e = poll()) != null)
+        {
+            c.add(e);
+            count++;
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,229 @@
+package org.jctools.sets;
+
+import java.util.Arrays;
+
+import org.jctools.util.Pow2;
+
+/**
+ * A map from primitive {@code int}s to objects for a single thread, laid out as {@link OpenHashSetInt} is: keys in a
+ * linear probing table with 0 marking an empty slot, values in a parallel array, and the value of key 0 kept aside.
+ * Removals shift the following entries back rather than leaving tombstones. Values may not be {@code null}.
+ *
+ * @param <V> the type of values
+ */
+public class OpenHashMapInt<V> {
+    private static final int EMPTY = 0;
+
+    /* current entry count, key 0 included */
+    private int size;
+    private V zeroValue;
+    /* keys.length is a power of 2, values.length == keys.length */
+    private int[] keys;
+    private V[] values;
+    private int resizeThreshold;
+
+    @SuppressWarnings("unchecked")
+    public OpenHashMapInt(int capacity) {
+        int actualCapacity = Pow2.roundToPowerOfTwo(Math.max(capacity, 2));
+        keys = new int[actualCapacity];
+        values = (V[]) new Object[actualCapacity];
+        resizeThreshold = (int) (0.75 * actualCapacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the value mapped to the key, or {@code null} if there is none
+     */
+    public V get(int key) {
+        if (key == EMPTY) {
+            return zeroValue;
+        }
+        final int[] keys = this.keys;
+        final int mask = keys.length - 1;
+        for (int i = rehash(key) & mask; ; i = (i + 1) & mask) {
+            final int k = keys[i];
+            if (k == EMPTY) {
+                return null;
+            }
+            else if (k == key) {
+                return values[i];
+            }
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the value previously mapped to the key, or {@code null} if there was none
+     */
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        if (key == EMPTY) {
+            final V prev = zeroValue;
+            zeroValue = value;
+            if (prev == null) {
+                size++;
+            }
+            return prev;
+        }
+        final int[] keys = this.keys;
+        final int mask = keys.length - 1;
+        for (int i = rehash(key) & mask; ; i = (i + 1) & mask) {
+            final int k = keys[i];
+            if (k == EMPTY) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size > resizeThreshold) {
+                    resize(keys.length << 1);
+                }
+                return null;
+            }
+            else if (k == key) {
+                final V prev = values[i];
+                values[i] = value;
+                return prev;
+            }
+        }
+    }
+
+    /**
+     * @return the value mapped to the key, or {@code null} if the value was added
+     */
+    public V putIfAbsent(int key, V value) {
+        final V prev = get(key);
+        return prev != null ? prev : put(key, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize(int length) {
+        final int[] oldKeys = keys;
+        final V[] oldValues = values;
+        final int[] newKeys = new int[length];
+        final V[] newValues = (V[]) new Object[length];
+        final int mask = length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            final int key = oldKeys[j];
+            if (key != EMPTY) {
+                int i = rehash(key) & mask;
+                while (newKeys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                newKeys[i] = key;
+                newValues[i] = oldValues[j];
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+        resizeThreshold = (int) (0.75 * length);
+    }
+
+    /**
+     * @return the value which was mapped to the key, or {@code null} if there was none
+     */
+    public V remove(int key) {
+        if (key == EMPTY) {
+            final V prev = zeroValue;
+            if (prev != null) {
+                zeroValue = null;
+                size--;
+            }
+            return prev;
+        }
+        final int[] keys = this.keys;
+        final int mask = keys.length - 1;
+        for (int i = rehash(key) & mask; ; i = (i + 1) & mask) {
+            final int k = keys[i];
+            if (k == EMPTY) {
+                return null;
+            }
+            else if (k == key) {
+                final V prev = values[i];
+                size--;
+                compactAndRemove(keys, values, mask, i);
+                return prev;
+            }
+        }
+    }
+
+    /*
+     * As OpenHashSet does: move back the entries after the hole which may live there, then empty the last hole.
+     */
+    private static <V> void compactAndRemove(final int[] keys, final V[] values, final int mask, int removeHashIndex) {
+        int j = removeHashIndex;
+        while (true) {
+            j = (j + 1) & mask;
+            final int slotJ = keys[j];
+            if (slotJ == EMPTY) {
+                keys[removeHashIndex] = EMPTY;
+                values[removeHashIndex] = null;
+                return;
+            }
+            final int k = rehash(slotJ) & mask;
+            // skip the entry if k lies cyclically in (i,j]
+            if ((removeHashIndex <= j) ?
+                    ((removeHashIndex < k) && (k <= j)) :
+                    ((removeHashIndex < k) || (k <= j))) {
+                continue;
+            }
+            keys[removeHashIndex] = slotJ;
+            values[removeHashIndex] = values[j];
+            removeHashIndex = j;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        zeroValue = null;
+        size = 0;
+    }
+
+    /**
+     * @return the keys, in no particular order
+     */
+    public int[] keys() {
+        final int[] array = new int[size];
+        // key 0, if mapped, is left in place at the start
+        int n = zeroValue != null ? 1 : 0;
+        for (int key : keys) {
+            if (key != EMPTY) {
+                array[n++] = key;
+            }
+        }
+        return array;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("{");
+        if (zeroValue != null) {
+            sb.append(EMPTY).append('=').append(zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(keys[i]).append('=').append(values[i]);
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    private static int rehash(int key) {
+        // keys have no hashCode to lean on, so spread them before masking
+        final int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,321 @@
+package org.jctools.sets;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.jctools.util.Pow2;
+
+/**
+ * A set of primitive {@code long}s for a single thread, laid out as {@link OpenHashSet} is: linear probing in a power
+ * of two table, with removals shifting the following elements back rather than leaving tombstones. An empty slot holds
+ * 0, and 0 itself is kept in a flag, so nothing is boxed and a fresh table needs no filling.
+ * <p>
+ * {@link #addAll(long[])} grows the table once for the whole array up front. The iterator removes with the same
+ * backward shift as {@link #remove}.
+ */
+public class OpenHashSetLong {
+    private static final long EMPTY = 0;
+
+    /* current element count, the zero included */
+    private int size;
+    private boolean containsZero;
+    /* buffer.length is a power of 2 */
+    private long[] buffer;
+    private int resizeThreshold;
+
+    public OpenHashSetLong(int capacity) {
+        int actualCapacity = Pow2.roundToPowerOfTwo(Math.max(capacity, 2));
+        buffer = new long[actualCapacity];
+        resizeThreshold = (int) (0.75 * buffer.length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean add(long newVal) {
+        if (newVal == EMPTY) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        final long[] buffer = this.buffer;
+        final int mask = buffer.length - 1;
+        for (int i = rehash(newVal) & mask; ; i = (i + 1) & mask) {
+            final long currVal = buffer[i];
+            if (currVal == EMPTY) {
+                buffer[i] = newVal;
+                if (++size > resizeThreshold) {
+                    resize(buffer.length << 1);
+                }
+                return true;
+            }
+            else if (currVal == newVal) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Adds all the values, growing the table at most once.
+     *
+     * @return true if any value was added
+     */
+    public boolean addAll(long[] values) {
+        ensureCapacity(size + values.length);
+        boolean changed = false;
+        for (long value : values) {
+            changed |= add(value);
+        }
+        return changed;
+    }
+
+    private void ensureCapacity(int capacity) {
+        int length = buffer.length;
+        while ((int) (0.75 * length) < capacity && length < (1 << 30)) {
+            length <<= 1;
+        }
+        if (length != buffer.length) {
+            resize(length);
+        }
+    }
+
+    private void resize(int length) {
+        final long[] oldBuffer = buffer;
+        final long[] newBuffer = new long[length];
+        final int mask = length - 1;
+        for (long val : oldBuffer) {
+            if (val != EMPTY) {
+                int i = rehash(val) & mask;
+                while (newBuffer[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                newBuffer[i] = val;
+            }
+        }
+        buffer = newBuffer;
+        resizeThreshold = (int) (0.75 * length);
+    }
+
+    public boolean contains(long needle) {
+        if (needle == EMPTY) {
+            return containsZero;
+        }
+        final long[] buffer = this.buffer;
+        final int mask = buffer.length - 1;
+        for (int i = rehash(needle) & mask; ; i = (i + 1) & mask) {
+            final long e = buffer[i];
+            if (e == EMPTY) {
+                return false;
+            }
+            else if (e == needle) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true if all the values are in the set
+     */
+    public boolean containsAll(long[] values) {
+        for (long value : values) {
+            if (!contains(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean remove(long val) {
+        if (val == EMPTY) {
+            if (!containsZero) {
+                return false;
+            }
+            containsZero = false;
+            size--;
+            return true;
+        }
+        final long[] buffer = this.buffer;
+        final int mask = buffer.length - 1;
+        for (int i = rehash(val) & mask; ; i = (i + 1) & mask) {
+            final long e = buffer[i];
+            if (e == EMPTY) {
+                return false;
+            }
+            else if (e == val) {
+                size--;
+                compactAndRemove(buffer, mask, i);
+                return true;
+            }
+        }
+    }
+
+    /*
+     * As OpenHashSet does: move back the elements after the hole which may live there, then empty the last hole.
+     * Returns the element moved from the start of the table to the removed slot or past it, if the shift wrapped
+     * around the end, else EMPTY; at most one element can be moved so.
+     */
+    private long compactAndRemove(final long[] buffer, final int mask, int removeHashIndex) {
+        final int removedIndex = removeHashIndex;
+        long wrapped = EMPTY;
+        int j = removeHashIndex;
+        while (true) {
+            j = (j + 1) & mask;
+            final long slotJ = buffer[j];
+            if (slotJ == EMPTY) {
+                buffer[removeHashIndex] = EMPTY;
+                return wrapped;
+            }
+            final int k = rehash(slotJ) & mask;
+            // skip the element if k lies cyclically in (i,j]
+            if ((removeHashIndex <= j) ?
+                    ((removeHashIndex < k) && (k <= j)) :
+                    ((removeHashIndex < k) || (k <= j))) {
+                continue;
+            }
+            if (j < removedIndex && removeHashIndex >= removedIndex) {
+                wrapped = slotJ;
+            }
+            buffer[removeHashIndex] = slotJ;
+            removeHashIndex = j;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(buffer, EMPTY);
+        containsZero = false;
+        size = 0;
+    }
+
+    public long[] toArray() {
+        final long[] array = new long[size];
+        // the zero, if any, is left in place at the start
+        int n = containsZero ? 1 : 0;
+        for (long val : buffer) {
+            if (val != EMPTY) {
+                array[n++] = val;
+            }
+        }
+        return array;
+    }
+
+    /**
+     * @return an iterator over the elements, with a <strong>non-auto-boxing</strong> {@link IteratorLong#nextLong}
+     */
+    public IteratorLong iterator() {
+        return new IteratorLong();
+    }
+
+    public class IteratorLong implements Iterator<Long> {
+        private static final int NO_LAST = -2;
+        private static final int ZERO_LAST = -1;
+        private final long[] buffer = OpenHashSetLong.this.buffer;
+        private boolean zeroPending = containsZero;
+        private int nextValIndex = -1;
+        private int lastValIndex = NO_LAST;
+        // elements already returned which a removal shifted from the start of the table to a slot still ahead, to
+        // be skipped however often a later removal makes the scan go over them again
+        private long[] returnedAhead;
+        private int returnedAheadCount;
+
+        IteratorLong() {
+            findNextVal();
+        }
+
+        private void findNextVal() {
+            int i = nextValIndex + 1;
+            while (i < buffer.length && (buffer[i] == EMPTY || isReturned(buffer[i]))) {
+                i++;
+            }
+            nextValIndex = i;
+        }
+
+        private boolean isReturned(long val) {
+            for (int i = 0; i < returnedAheadCount; i++) {
+                if (returnedAhead[i] == val) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return zeroPending || nextValIndex < buffer.length;
+        }
+
+        public long nextLong() {
+            if (zeroPending) {
+                zeroPending = false;
+                lastValIndex = ZERO_LAST;
+                return EMPTY;
+            }
+            if (nextValIndex >= buffer.length) {
+                throw new NoSuchElementException();
+            }
+            final long val = buffer[nextValIndex];
+            lastValIndex = nextValIndex;
+            findNextVal();
+            return val;
+        }
+
+        /**
+         * <strong>Auto-boxing</strong> version of {@link #nextLong}.
+         */
+        @Override
+        public Long next() {
+            return nextLong();
+        }
+
+        @Override
+        public void remove() {
+            if (lastValIndex == NO_LAST) {
+                throw new IllegalStateException();
+            }
+            if (buffer != OpenHashSetLong.this.buffer) {
+                throw new ConcurrentModificationException();
+            }
+            if (lastValIndex == ZERO_LAST) {
+                containsZero = false;
+            }
+            else {
+                final long wrapped = compactAndRemove(buffer, buffer.length - 1, lastValIndex);
+                if (wrapped != EMPTY) {
+                    if (returnedAhead == null) {
+                        returnedAhead = new long[4];
+                    }
+                    else if (returnedAheadCount == returnedAhead.length) {
+                        returnedAhead = Arrays.copyOf(returnedAhead, returnedAheadCount * 2);
+                    }
+                    returnedAhead[returnedAheadCount++] = wrapped;
+                }
+                // the shift may have moved an element not yet returned into the removed slot, scan again from it
+                nextValIndex = lastValIndex - 1;
+                findNextVal();
+            }
+            size--;
+            lastValIndex = NO_LAST;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private static int rehash(long val) {
+        // keys have no hashCode to lean on, so spread them before masking
+        final long h = val * 0x9E3779B97F4A7C15L;
+        final int x = (int) (h ^ (h >>> 32));
+        return x ^ (x >>> 16);
+    }
+}
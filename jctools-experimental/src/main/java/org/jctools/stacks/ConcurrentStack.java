@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.stacks;
+
+/**
+ * A minimal concurrent LIFO interface, safe for any number of pushing and popping threads. Null elements are not
+ * allowed.
+ *
+ * @param <E> the element type
+ */
+public interface ConcurrentStack<E>
+{
+    int UNBOUNDED_CAPACITY = -1;
+
+    /**
+     * Push an element on the top of the stack.
+     *
+     * @param e not null, will throw NPE if it is
+     * @return true if the element was pushed, false if the stack is full
+     */
+    boolean push(E e);
+
+    /**
+     * Pop the element on the top of the stack.
+     *
+     * @return the popped element, or null if the stack is empty
+     */
+    E pop();
+
+    /**
+     * @return the element on the top of the stack, or null if the stack is empty. The answer is only a snapshot and
+     * may be stale by the time it is returned.
+     */
+    E peek();
+
+    /**
+     * @return the number of elements in the stack. The answer is only a snapshot and may be stale by the time it is
+     * returned.
+     */
+    int size();
+
+    /**
+     * @return true if the stack is empty. The answer is only a snapshot and may be stale by the time it is returned.
+     */
+    boolean isEmpty();
+
+    /**
+     * @return the capacity of this stack or {@link #UNBOUNDED_CAPACITY} if not bounded
+     */
+    int capacity();
+}
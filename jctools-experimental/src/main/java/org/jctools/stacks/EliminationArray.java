@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.stacks;
+
+import org.jctools.util.RangeUtil;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.jctools.util.PortableJvmInfo.CACHE_LINE_SIZE;
+import static org.jctools.util.Pow2.roundToPowerOfTwo;
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeRefArrayAccess.REF_ARRAY_BASE;
+import static org.jctools.util.UnsafeRefArrayAccess.REF_ELEMENT_SHIFT;
+import static org.jctools.util.UnsafeRefArrayAccess.lvElement;
+
+/**
+ * An elimination array in the style of Hendler, Shavit and Yerushalmi: a push and a pop which both lost a race on the
+ * top of the stack cancel each other out by exchanging the element through a random slot instead of retrying on the
+ * top. A pushing thread parks its element in an empty slot and waits a little for a popping thread to take it, popping
+ * threads take whatever element they find in their slot. Each slot sits on its own cache line. Nothing is allocated.
+ * <p>
+ * A push and a pop eliminated in this way are linearized at the moment the element is taken, where the stack holds
+ * the pushed element on top for an instant and then no longer.
+ */
+final class EliminationArray
+{
+    private static final int SLOT_SHIFT =
+        Integer.numberOfTrailingZeros(roundToPowerOfTwo(Math.max(1, CACHE_LINE_SIZE >> REF_ELEMENT_SHIFT)));
+
+    private final int mask;
+    private final int waitSpins;
+    // slot i is at index (i + 1) << SLOT_SHIFT, leaving a cache line of padding on either side of the slots
+    private final Object[] slots;
+
+    EliminationArray(int size, int waitSpins)
+    {
+        RangeUtil.checkPositive(size, "size");
+        RangeUtil.checkPositiveOrZero(waitSpins, "waitSpins");
+        int slotCount = roundToPowerOfTwo(size);
+        this.mask = slotCount - 1;
+        this.waitSpins = waitSpins;
+        this.slots = new Object[(slotCount + 2) << SLOT_SHIFT];
+    }
+
+    private long randomSlotOffset()
+    {
+        final int index = mask == 0 ? 0 : ThreadLocalRandom.current().nextInt() & mask;
+        return REF_ARRAY_BASE + ((long) ((index + 1) << SLOT_SHIFT) << REF_ELEMENT_SHIFT);
+    }
+
+    /**
+     * @return true if a popping thread took the element
+     */
+    boolean tryPush(Object e)
+    {
+        final Object[] slots = this.slots;
+        final long offset = randomSlotOffset();
+        if (lvElement(slots, offset) != null || !UNSAFE.compareAndSwapObject(slots, offset, null, e))
+        {
+            return false;
+        }
+        for (int i = 0; i < waitSpins; i++)
+        {
+            if (lvElement(slots, offset) != e)
+            {
+                return true;
+            }
+        }
+        // failing to take the element back means it has been taken in the meantime
+        return !UNSAFE.compareAndSwapObject(slots, offset, e, null);
+    }
+
+    /**
+     * @return an element given up by a pushing thread, or null if none was found
+     */
+    Object tryPop()
+    {
+        final Object[] slots = this.slots;
+        final long offset = randomSlotOffset();
+        final Object e = lvElement(slots, offset);
+        if (e != null && UNSAFE.compareAndSwapObject(slots, offset, e, null))
+        {
+            return e;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.stacks;
+
+import org.jctools.util.RangeUtil;
+
+import static org.jctools.util.PortableJvmInfo.CPUs;
+import static org.jctools.util.Pow2.roundToPowerOfTwo;
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeAccess.fieldOffset;
+import static org.jctools.util.UnsafeRefArrayAccess.calcElementOffset;
+import static org.jctools.util.UnsafeRefArrayAccess.lvElement;
+
+abstract class MpmcArrayStackL0Pad<E>
+{
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class MpmcArrayStackColdFields<E> extends MpmcArrayStackL0Pad<E>
+{
+    protected final int capacity;
+    protected final E[] buffer;
+    protected final EliminationArray elimination;
+
+    @SuppressWarnings("unchecked")
+    MpmcArrayStackColdFields(int capacity, int eliminationSlots)
+    {
+        RangeUtil.checkPositive(capacity, "capacity");
+        this.capacity = capacity;
+        this.buffer = (E[]) new Object[capacity];
+        this.elimination = new EliminationArray(eliminationSlots, MpmcLinkedStack.DEFAULT_WAIT_SPINS);
+    }
+}
+
+abstract class MpmcArrayStackMidPad<E> extends MpmcArrayStackColdFields<E>
+{
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+
+    MpmcArrayStackMidPad(int capacity, int eliminationSlots)
+    {
+        super(capacity, eliminationSlots);
+    }
+}
+
+abstract class MpmcArrayStackTopField<E> extends MpmcArrayStackMidPad<E>
+{
+    private final static long TOP_OFFSET = fieldOffset(MpmcArrayStackTopField.class, "top");
+
+    private volatile int top;
+
+    MpmcArrayStackTopField(int capacity, int eliminationSlots)
+    {
+        super(capacity, eliminationSlots);
+    }
+
+    final int lvTop()
+    {
+        return top;
+    }
+
+    final boolean casTop(int expect, int newValue)
+    {
+        return UNSAFE.compareAndSwapInt(this, TOP_OFFSET, expect, newValue);
+    }
+}
+
+abstract class MpmcArrayStackL2Pad<E> extends MpmcArrayStackTopField<E>
+{
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+
+    MpmcArrayStackL2Pad(int capacity, int eliminationSlots)
+    {
+        super(capacity, eliminationSlots);
+    }
+}
+
+/**
+ * A bounded stack on an array, which allocates nothing. Like {@link MpmcLinkedStack} contended pushes and pops back off
+ * into an {@link EliminationArray}.
+ * <p>
+ * The top index is moved with a CAS first, which claims a slot, and the slot is then filled or emptied. As a slot may
+ * be claimed again before the previous claim on it has completed, elements are moved in and out of slots by CAS: a push
+ * waits for its slot to be empty and a pop waits for its slot to be full. Each claim is matched by exactly one element
+ * move, so no element is lost or duplicated, but the stack is not strictly LIFO while claims on a slot overlap.
+ * <p>
+ * The same as for {@link org.jctools.queues.MpmcArrayQueue}, a thread descheduled between claiming a slot and moving
+ * the element will block threads which claim the same slot after it.
+ *
+ * @param <E> the element type
+ */
+public class MpmcArrayStack<E> extends MpmcArrayStackL2Pad<E> implements ConcurrentStack<E>
+{
+    public MpmcArrayStack(int capacity)
+    {
+        this(capacity, Math.max(1, roundToPowerOfTwo(CPUs) / 2));
+    }
+
+    /**
+     * @param capacity         the maximum number of elements in the stack
+     * @param eliminationSlots the number of slots in the elimination array, rounded up to the next power of 2
+     */
+    public MpmcArrayStack(int capacity, int eliminationSlots)
+    {
+        super(capacity, eliminationSlots);
+    }
+
+    @Override
+    public boolean push(E e)
+    {
+        if (null == e)
+        {
+            throw new NullPointerException();
+        }
+        int top;
+        do
+        {
+            top = lvTop();
+            if (top >= capacity)
+            {
+                return false;
+            }
+            if (casTop(top, top + 1))
+            {
+                break;
+            }
+            if (elimination.tryPush(e))
+            {
+                return true;
+            }
+        }
+        while (true);
+
+        final E[] buffer = this.buffer;
+        final long offset = calcElementOffset(top);
+        // wait for the pop which claimed this slot before us to take its element
+        while (lvElement(buffer, offset) != null || !UNSAFE.compareAndSwapObject(buffer, offset, null, e))
+        {
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E pop()
+    {
+        int top;
+        do
+        {
+            top = lvTop();
+            if (top == 0)
+            {
+                return null;
+            }
+            if (casTop(top, top - 1))
+            {
+                break;
+            }
+            final Object e = elimination.tryPop();
+            if (e != null)
+            {
+                return (E) e;
+            }
+        }
+        while (true);
+
+        final E[] buffer = this.buffer;
+        final long offset = calcElementOffset(top - 1);
+        // wait for the push which claimed this slot before us to place its element
+        while (true)
+        {
+            final E e = lvElement(buffer, offset);
+            if (e != null && UNSAFE.compareAndSwapObject(buffer, offset, e, null))
+            {
+                return e;
+            }
+        }
+    }
+
+    @Override
+    public E peek()
+    {
+        final int top = lvTop();
+        return top == 0 ? null : lvElement(buffer, calcElementOffset(top - 1));
+    }
+
+    @Override
+    public int size()
+    {
+        return lvTop();
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return lvTop() == 0;
+    }
+
+    @Override
+    public int capacity()
+    {
+        return capacity;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.getClass().getName();
+    }
+}
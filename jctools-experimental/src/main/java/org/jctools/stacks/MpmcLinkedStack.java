@@ -0,0 +1,171 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jctools.stacks;
+
+import static org.jctools.util.PortableJvmInfo.CPUs;
+import static org.jctools.util.Pow2.roundToPowerOfTwo;
+import static org.jctools.util.UnsafeAccess.UNSAFE;
+import static org.jctools.util.UnsafeAccess.fieldOffset;
+
+abstract class MpmcLinkedStackL0Pad<E>
+{
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class MpmcLinkedStackHeadField<E> extends MpmcLinkedStackL0Pad<E>
+{
+    private final static long HEAD_OFFSET = fieldOffset(MpmcLinkedStackHeadField.class, "head");
+
+    private volatile MpmcLinkedStack.Node<E> head;
+
+    final MpmcLinkedStack.Node<E> lvHead()
+    {
+        return head;
+    }
+
+    final boolean casHead(MpmcLinkedStack.Node<E> expect, MpmcLinkedStack.Node<E> newValue)
+    {
+        return UNSAFE.compareAndSwapObject(this, HEAD_OFFSET, expect, newValue);
+    }
+}
+
+abstract class MpmcLinkedStackL1Pad<E> extends MpmcLinkedStackHeadField<E>
+{
+    long p01, p02, p03, p04, p05, p06, p07;
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+/**
+ * An unbounded lock-free stack after Treiber, with an {@link EliminationArray} as back off: a push or pop which fails
+ * the CAS on the top of the stack tries to meet a concurrent pop or push in the elimination array before retrying,
+ * which takes the pressure off the top under contention. A node is allocated per push, a node is never reused so the
+ * garbage collector takes care of ABA.
+ *
+ * @param <E> the element type
+ */
+public class MpmcLinkedStack<E> extends MpmcLinkedStackL1Pad<E> implements ConcurrentStack<E>
+{
+    static final int DEFAULT_WAIT_SPINS = 64;
+
+    private final EliminationArray elimination;
+
+    public MpmcLinkedStack()
+    {
+        this(Math.max(1, roundToPowerOfTwo(CPUs) / 2));
+    }
+
+    /**
+     * @param eliminationSlots the number of slots in the elimination array, rounded up to the next power of 2
+     */
+    public MpmcLinkedStack(int eliminationSlots)
+    {
+        elimination = new EliminationArray(eliminationSlots, DEFAULT_WAIT_SPINS);
+    }
+
+    @Override
+    public boolean push(E e)
+    {
+        if (null == e)
+        {
+            throw new NullPointerException();
+        }
+        final Node<E> node = new Node<E>(e);
+        while (true)
+        {
+            final Node<E> head = lvHead();
+            // published by the CAS
+            node.next = head;
+            if (casHead(head, node) || elimination.tryPush(e))
+            {
+                return true;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E pop()
+    {
+        while (true)
+        {
+            final Node<E> head = lvHead();
+            if (head == null)
+            {
+                return null;
+            }
+            if (casHead(head, head.next))
+            {
+                return head.value;
+            }
+            final Object e = elimination.tryPop();
+            if (e != null)
+            {
+                return (E) e;
+            }
+        }
+    }
+
+    @Override
+    public E peek()
+    {
+        final Node<E> head = lvHead();
+        return head == null ? null : head.value;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is an O(n) traversal of the stack.
+     */
+    @Override
+    public int size()
+    {
+        int size = 0;
+        for (Node<E> node = lvHead(); node != null && size < Integer.MAX_VALUE; node = node.next)
+        {
+            size++;
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return lvHead() == null;
+    }
+
+    @Override
+    public int capacity()
+    {
+        return UNBOUNDED_CAPACITY;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.getClass().getName();
+    }
+
+    static final class Node<E>
+    {
+        final E value;
+        Node<E> next;
+
+        Node(E value)
+        {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.jctools.maps;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class BoundedNonBlockingCacheTest {
+
+    @Test
+    public void testBasic() {
+        BoundedNonBlockingCache<Integer, String> cache = new BoundedNonBlockingCache<>(100);
+        assertNull(cache.put(1, "a"));
+        assertEquals("a", cache.get(1));
+        assertEquals("a", cache.put(1, "b"));
+        assertEquals("b", cache.get(1));
+        assertEquals("b", cache.putIfAbsent(1, "c"));
+        assertNull(cache.putIfAbsent(2, "c"));
+        assertTrue(cache.containsKey(2));
+        assertEquals(2, cache.size());
+        assertEquals("c", cache.remove(2));
+        assertNull(cache.remove(2));
+        assertNull(cache.get(2));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(1));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullValue() {
+        new BoundedNonBlockingCache<Integer, String>(10).put(1, null);
+    }
+
+    @Test
+    public void testBounded() {
+        BoundedNonBlockingCache<Integer, Integer> cache = new BoundedNonBlockingCache<>(1000);
+        for (int i = 0; i < 100000; i++) {
+            cache.put(i, i);
+            assertTrue(cache.size() <= 1000);
+        }
+        cache.cleanUp();
+        assertEquals(1000, cache.size());
+        for (int i = 0; i < 100000; i++) {
+            Integer value = cache.get(i);
+            assertTrue(value == null || value == i);
+        }
+    }
+
+    @Test
+    public void testFrequentKeysSurviveScan() {
+        BoundedNonBlockingCache<Integer, Integer> cache = new BoundedNonBlockingCache<>(1000);
+        for (int round = 0; round < 10; round++) {
+            for (int hot = 0; hot < 500; hot++) {
+                cache.put(hot, hot);
+                cache.get(hot);
+            }
+        }
+        cache.cleanUp();
+        // A scan of one-hit wonders twice the size of the cache
+        for (int cold = 1000; cold < 3000; cold++) {
+            cache.put(cold, cold);
+        }
+        cache.cleanUp();
+        int hits = 0;
+        for (int hot = 0; hot < 500; hot++) {
+            if (cache.get(hot) != null) {
+                hits++;
+            }
+        }
+        assertTrue("hot keys left: " + hits, hits > 450);
+        assertTrue(cache.size() <= 1000);
+    }
+
+    @Test
+    public void testConcurrentBounded() throws Exception {
+        final BoundedNonBlockingCache<Integer, Integer> cache = new BoundedNonBlockingCache<>(1000);
+        final int threads = 4;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final AtomicLong failures = new AtomicLong();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    barrier.await();
+                    for (int i = 0; i < 200000; i++) {
+                        int key = random.nextInt(5000);
+                        switch (random.nextInt(4)) {
+                            case 0:
+                                cache.put(key, key);
+                                break;
+                            case 1:
+                                cache.remove(key);
+                                break;
+                            default:
+                                Integer value = cache.get(key);
+                                if (value != null && value != key) {
+                                    failures.incrementAndGet();
+                                }
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.incrementAndGet();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(0, failures.get());
+        cache.cleanUp();
+        assertTrue(cache.size() <= 1000);
+    }
+}
@@ -0,0 +1,85 @@
+package org.jctools.maps;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentBloomFilterTest {
+
+    @Test
+    public void testSizing() {
+        ConcurrentBloomFilter filter = ConcurrentBloomFilter.create(1000000, 0.01);
+        // 9.59 bits per key, rounded up to a power of two
+        assertEquals(1L << 24, filter.bitSize());
+        assertEquals(7, filter.hashCount());
+        assertEquals(64, new ConcurrentBloomFilter(1, 1).bitSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadFpp() {
+        ConcurrentBloomFilter.create(1000, 1.0);
+    }
+
+    @Test
+    public void testNoFalseNegativesAndFalsePositiveRate() {
+        final int n = 100000;
+        ConcurrentBloomFilter filter = ConcurrentBloomFilter.create(n, 0.01);
+        for (long k = 0; k < n; k++) {
+            filter.add(k);
+        }
+        for (long k = 0; k < n; k++) {
+            assertTrue(filter.mightContain(k));
+            assertFalse(filter.add(k));
+        }
+        int falsePositives = 0;
+        for (long k = n; k < 11L * n; k++) {
+            if (filter.mightContain(k)) {
+                falsePositives++;
+            }
+        }
+        // the bits were rounded up, so the rate should be well under the target
+        assertTrue("false positives: " + falsePositives, falsePositives < 0.01 * 10 * n);
+        filter.clear();
+        assertEquals(0, filter.bitCount());
+        assertFalse(filter.mightContain(1));
+    }
+
+    @Test
+    public void testConcurrentAdds() throws Exception {
+        final int threadsCount = 4;
+        final int keys = 200000;
+        final ConcurrentBloomFilter filter = ConcurrentBloomFilter.create(keys, 0.001);
+        final AtomicLong firstSightings = new AtomicLong();
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadsCount];
+        for (int t = 0; t < threadsCount; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long seen = 0;
+                for (long k = 0; k < keys; k++) {
+                    if (filter.add(k)) {
+                        seen++;
+                    }
+                }
+                firstSightings.addAndGet(seen);
+            });
+            threads[t].start();
+        }
+        startLatch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (long k = 0; k < keys; k++) {
+            assertTrue(filter.mightContain(k));
+        }
+        // every key is new to one thread at least, unless its bits were all set by other keys
+        assertTrue(firstSightings.get() >= keys * 0.99);
+    }
+}
@@ -0,0 +1,80 @@
+package org.jctools.maps;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentCountMinSketchTest {
+
+    @Test
+    public void testSizing() {
+        ConcurrentCountMinSketch sketch = ConcurrentCountMinSketch.create(0.001, 0.99);
+        // e / 0.001 = 2719, rounded up
+        assertEquals(4096, sketch.width());
+        assertEquals(5, sketch.depth());
+    }
+
+    @Test
+    public void testEstimatesWithinBounds() {
+        final double epsilon = 0.001;
+        ConcurrentCountMinSketch sketch = ConcurrentCountMinSketch.create(epsilon, 0.99);
+        final int keys = 10000;
+        long[] counts = new long[keys];
+        Random random = new Random(666);
+        long total = 0;
+        for (int i = 0; i < 200000; i++) {
+            // skewed towards the low keys
+            int k = (int) (keys * Math.pow(random.nextDouble(), 3));
+            long c = 1 + random.nextInt(3);
+            sketch.add(k, c);
+            counts[k] += c;
+            total += c;
+        }
+        assertEquals(total, sketch.totalCount());
+        int overBound = 0;
+        for (int k = 0; k < keys; k++) {
+            long estimate = sketch.estimate(k);
+            assertTrue(estimate >= counts[k]);
+            if (estimate > counts[k] + epsilon * total) {
+                overBound++;
+            }
+        }
+        assertTrue("over bound: " + overBound, overBound <= keys * 0.01);
+        sketch.clear();
+        assertEquals(0, sketch.estimate(0));
+        assertEquals(0, sketch.totalCount());
+    }
+
+    @Test
+    public void testConcurrentAddsAreNotLost() throws Exception {
+        final int threadsCount = 4;
+        final int adds = 100000;
+        final ConcurrentCountMinSketch sketch = new ConcurrentCountMinSketch(64, 3);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadsCount];
+        for (int t = 0; t < threadsCount; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < adds; i++) {
+                    sketch.add(i & 7);
+                }
+            });
+            threads[t].start();
+        }
+        startLatch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals((long) threadsCount * adds, sketch.totalCount());
+        for (int k = 0; k < 8; k++) {
+            assertTrue(sketch.estimate(k) >= (long) threadsCount * adds / 8);
+        }
+    }
+}
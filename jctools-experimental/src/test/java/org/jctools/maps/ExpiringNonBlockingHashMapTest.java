@@ -0,0 +1,125 @@
+package org.jctools.maps;
+
+import org.junit.Test;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ExpiringNonBlockingHashMapTest {
+
+    private final AtomicLong nanos = new AtomicLong(TimeUnit.DAYS.toNanos(1));
+    private final ExpiringNonBlockingHashMap<Integer, String> map =
+        new ExpiringNonBlockingHashMap<>(1, TimeUnit.SECONDS, nanos::get);
+
+    private void advance(long time, TimeUnit unit) {
+        nanos.addAndGet(unit.toNanos(time));
+    }
+
+    @Test
+    public void testBasic() {
+        assertNull(map.put(1, "a"));
+        assertEquals("a", map.get(1));
+        assertEquals("a", map.put(1, "b"));
+        assertEquals("b", map.putIfAbsent(1, "c"));
+        assertNull(map.putIfAbsent(2, "c"));
+        assertTrue(map.containsKey(2));
+        assertEquals(2, map.size());
+        assertEquals("c", map.remove(2));
+        assertNull(map.get(2));
+        map.clear();
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testExpiredEntriesAreAbsent() {
+        map.put(1, "a");
+        map.put(2, "b", 10, TimeUnit.SECONDS);
+        advance(999, TimeUnit.MILLISECONDS);
+        assertEquals("a", map.get(1));
+        advance(1, TimeUnit.MILLISECONDS);
+        assertNull(map.get(1));
+        assertFalse(map.containsKey(1));
+        assertEquals("b", map.get(2));
+        // An expired entry does not block a putIfAbsent and is not returned as the previous value
+        map.put(3, "c");
+        advance(2, TimeUnit.SECONDS);
+        assertNull(map.putIfAbsent(3, "d"));
+        assertEquals("d", map.get(3));
+        assertEquals("d", map.put(3, "e", 1, TimeUnit.MILLISECONDS));
+        advance(1, TimeUnit.MILLISECONDS);
+        assertNull(map.put(3, "f"));
+    }
+
+    @Test
+    public void testWheelReclaims() {
+        for (int i = 0; i < 10000; i++) {
+            map.put(i, "v", 1 + i % 3, TimeUnit.SECONDS);
+        }
+        assertEquals(10000, map.size());
+        advance(1100, TimeUnit.MILLISECONDS);
+        map.expireEntries();
+        assertEquals(6666, map.size());
+        advance(1, TimeUnit.SECONDS);
+        map.expireEntries();
+        assertEquals(3333, map.size());
+        // Longer than the wheel's span, so due in a later rotation
+        map.put(-1, "long", 1, TimeUnit.HOURS);
+        advance(1, TimeUnit.SECONDS);
+        map.expireEntries();
+        assertEquals(1, map.size());
+        assertEquals("long", map.get(-1));
+        for (int i = 0; i < 10; i++) {
+            advance(6, TimeUnit.MINUTES);
+            map.expireEntries();
+        }
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testReplacedNodesLeaveTheWheel() {
+        for (int i = 0; i < 1000; i++) {
+            map.put(1, "v" + i);
+        }
+        advance(2, TimeUnit.SECONDS);
+        map.expireEntries();
+        assertEquals(0, map.size());
+        assertNull(map.get(1));
+    }
+
+    @Test
+    public void testConcurrentPutAndExpire() throws Exception {
+        final int threads = 4;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final AtomicLong failures = new AtomicLong();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    barrier.await();
+                    for (int i = 0; i < 100000; i++) {
+                        int key = (i * 31 + offset) % 1000;
+                        map.put(key, "v");
+                        map.get(key + 1);
+                        if (i % 1000 == 0) {
+                            advance(100, TimeUnit.MILLISECONDS);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.incrementAndGet();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(0, failures.get());
+        advance(2, TimeUnit.SECONDS);
+        map.expireEntries();
+        assertEquals(0, map.size());
+    }
+}
@@ -0,0 +1,278 @@
+package org.jctools.maps;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.jctools.maps.OffHeapNonBlockingLongLongHashMap.NO_VALUE;
+import static org.junit.Assert.*;
+
+public class OffHeapNonBlockingLongLongHashMapTest {
+
+    private OffHeapNonBlockingLongLongHashMap map;
+    private File file;
+
+    @After
+    public void cleanUp() throws IOException {
+        if (map != null) {
+            map.close();
+        }
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testBasic() {
+        map = new OffHeapNonBlockingLongLongHashMap();
+        assertTrue(map.isEmpty());
+        assertEquals(NO_VALUE, map.put(1, 10));
+        assertEquals(NO_VALUE, map.putIfAbsent(2, 0));
+        assertEquals(2, map.size());
+        assertEquals(0, map.putIfAbsent(2, 22));
+        assertEquals(10, map.put(1, -11));
+        assertEquals(-11, map.get(1));
+        assertTrue(map.replace(1, -11, 12));
+        assertFalse(map.remove(1, 11));
+        assertTrue(map.remove(1, 12));
+        assertEquals(NO_VALUE, map.get(1));
+        assertEquals(NO_VALUE, map.replace(1, 1));
+        assertEquals(0, map.remove(2));
+        assertTrue(map.isEmpty());
+
+        assertEquals(NO_VALUE, map.put(0, 5));
+        assertEquals(8, map.addAndGet(0, 3));
+        assertEquals(1, map.size());
+        assertEquals(8, map.remove(0));
+
+        assertEquals(4, map.addAndGet(3, 4));
+        assertEquals(4, map.getAndAdd(3, -5));
+        assertEquals(-1, map.get(3));
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(NO_VALUE, map.get(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReservedValue() {
+        map = new OffHeapNonBlockingLongLongHashMap();
+        map.put(1, OffHeapNonBlockingLongLongHashMap.LOWEST_VALUE - 1);
+    }
+
+    @Test
+    public void testGrowAndForEach() {
+        map = new OffHeapNonBlockingLongLongHashMap();
+        final Map<Long, Long> expected = new HashMap<>();
+        for (long i = 0; i < 100000; i++) {
+            map.put(i * 7919, i);
+            expected.put(i * 7919, i);
+        }
+        for (long i = 0; i < 100000; i += 3) {
+            map.remove(i * 7919);
+            expected.remove(i * 7919);
+        }
+        assertEquals(expected.size(), map.size());
+        final Map<Long, Long> seen = new HashMap<>();
+        map.forEach(new LongLongConsumer() {
+            @Override
+            public void accept(long key, long value) {
+                assertNull(seen.put(key, value));
+            }
+        });
+        assertEquals(expected, seen);
+    }
+
+    @Test
+    public void testConcurrentAddAndGet() throws Exception {
+        map = new OffHeapNonBlockingLongLongHashMap();
+        final int threads = 4;
+        final int keys = 20000;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final AtomicLong failures = new AtomicLong();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    barrier.await();
+                    for (int k = 0; k < keys; k++) {
+                        map.addAndGet(((k + offset * 101) % keys) + 1, 1);
+                    }
+                } catch (Throwable e) {
+                    failures.incrementAndGet();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(0, failures.get());
+        assertEquals(keys, map.size());
+        for (long k = 1; k <= keys; k++) {
+            assertEquals(threads, map.get(k));
+        }
+    }
+
+    @Test
+    public void testReplacedTablesAreReleased() throws IOException {
+        map = new OffHeapNonBlockingLongLongHashMap();
+        for (long i = 1; i <= 100000; i++) {
+            map.put(i, i);
+        }
+        assertEquals(1, map.tables());
+        // tables replaced while a forEach runs are kept until it returns
+        final AtomicLong tablesDuring = new AtomicLong();
+        map.forEach(new LongLongConsumer() {
+            @Override
+            public void accept(long key, long value) {
+                if (key == 1) {
+                    for (long i = 100001; i <= 400000; i++) {
+                        map.put(i, i);
+                    }
+                    tablesDuring.set(map.tables());
+                }
+            }
+        });
+        assertTrue(tablesDuring.get() > 1);
+        assertEquals(1, map.tables());
+        assertEquals(400000, map.size());
+        map.close();
+        map = null;
+
+        file = File.createTempFile("nbllhm", ".map");
+        file.delete();
+        map = OffHeapNonBlockingLongLongHashMap.open(file, 16);
+        for (long i = 1; i <= 100000; i++) {
+            map.put(i, i);
+        }
+        assertEquals(1, map.tables());
+    }
+
+    @Test
+    public void testConcurrentGrowReleasesTables() throws Exception {
+        map = new OffHeapNonBlockingLongLongHashMap();
+        final int threads = 4;
+        final int keys = 50000;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final AtomicLong failures = new AtomicLong();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    barrier.await();
+                    for (long k = 1; k <= keys; k++) {
+                        map.put(offset * 1000000L + k, k);
+                        if (map.get(offset * 1000000L + k / 2 + 1) != k / 2 + 1) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.incrementAndGet();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(0, failures.get());
+        assertEquals(threads * keys, map.size());
+        assertEquals(1, map.tables());
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        file = File.createTempFile("nbllhm", ".map");
+        file.delete();
+        map = OffHeapNonBlockingLongLongHashMap.open(file, 16);
+        for (long i = 0; i < 10000; i++) {
+            map.put(i, i * 2);
+        }
+        map.remove(5);
+        map.close();
+
+        map = OffHeapNonBlockingLongLongHashMap.open(file, 16);
+        assertEquals(9999, map.size());
+        assertEquals(0, map.get(0));
+        assertEquals(NO_VALUE, map.get(5));
+        for (long i = 6; i < 10000; i++) {
+            assertEquals(i * 2, map.get(i));
+        }
+        // Still grows after reopening
+        for (long i = 10000; i < 20000; i++) {
+            map.put(i, i * 2);
+        }
+        assertEquals(19999, map.size());
+        map.close();
+
+        map = OffHeapNonBlockingLongLongHashMap.open(file, 16);
+        assertEquals(19999, map.size());
+        assertEquals(39998, map.get(19999));
+    }
+
+    @Test
+    public void testClearAndReopenDoNotGrowFile() throws IOException {
+        file = File.createTempFile("nbllhm", ".map");
+        file.delete();
+        map = OffHeapNonBlockingLongLongHashMap.open(file, 16);
+        for (long i = 1; i <= 10000; i++) {
+            map.put(i, i);
+        }
+        map.close();
+        final long length = file.length();
+        for (int round = 1; round <= 5; round++) {
+            map = OffHeapNonBlockingLongLongHashMap.open(file, 16);
+            assertEquals(10000, map.size());
+            map.clear();
+            assertTrue(map.isEmpty());
+            assertEquals(NO_VALUE, map.get(round * 100000L - 99999));
+            for (long i = 1; i <= 10000; i++) {
+                map.put(round * 100000L + i, i);
+            }
+            map.close();
+            assertTrue(file.length() <= length);
+        }
+        map = OffHeapNonBlockingLongLongHashMap.open(file, 16);
+        assertEquals(10000, map.size());
+        assertEquals(1, map.get(500001));
+    }
+
+    @Test
+    public void testClearAfterGrowing() {
+        map = new OffHeapNonBlockingLongLongHashMap();
+        for (int round = 0; round < 3; round++) {
+            for (long i = 1; i <= 10000; i++) {
+                map.put(round * 100000L + i, i);
+            }
+            assertEquals(10000, map.size());
+            map.clear();
+            assertTrue(map.isEmpty());
+            assertEquals(NO_VALUE, map.get(round * 100000L + 1));
+        }
+    }
+
+    @Test
+    public void testOpenNotClosed() throws IOException {
+        file = File.createTempFile("nbllhm", ".map");
+        file.delete();
+        OffHeapNonBlockingLongLongHashMap open = OffHeapNonBlockingLongLongHashMap.open(file, 16);
+        open.put(1, 1);
+        try {
+            OffHeapNonBlockingLongLongHashMap.open(file, 16);
+            fail("a map file which was not closed should not be reopened");
+        } catch (IOException expected) {
+        } finally {
+            open.close();
+        }
+        map = OffHeapNonBlockingLongLongHashMap.open(file, 16);
+        assertEquals(1, map.get(1));
+    }
+}
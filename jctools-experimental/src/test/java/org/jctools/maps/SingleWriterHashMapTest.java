@@ -0,0 +1,138 @@
+package org.jctools.maps;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SingleWriterHashMapTest {
+
+    @Test
+    public void testBasic() {
+        SingleWriterHashMap<Integer, String> map = new SingleWriterHashMap<>(4);
+        assertTrue(map.isEmpty());
+        assertNull(map.put(1, "a"));
+        assertEquals("a", map.put(1, "b"));
+        assertEquals("b", map.get(1));
+        assertTrue(map.containsKey(1));
+        assertFalse(map.containsKey(2));
+        assertEquals("b", map.putIfAbsent(1, "c"));
+        assertNull(map.putIfAbsent(2, "c"));
+        assertEquals(2, map.size());
+        assertEquals("c", map.remove(2));
+        assertNull(map.remove(2));
+        assertEquals(1, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullValue() {
+        new SingleWriterHashMap<Integer, String>(4).put(1, null);
+    }
+
+    @Test
+    public void testRemoveShiftsCollidingKeys() {
+        SingleWriterHashMap<Integer, Integer> map = new SingleWriterHashMap<>(16);
+        // 1, 17 and 33 share a home slot, 2 is pushed out of its own by them
+        map.put(1, 1);
+        map.put(17, 17);
+        map.put(33, 33);
+        map.put(2, 2);
+        assertEquals(Integer.valueOf(1), map.remove(1));
+        assertEquals(Integer.valueOf(17), map.get(17));
+        assertEquals(Integer.valueOf(33), map.get(33));
+        assertEquals(Integer.valueOf(2), map.get(2));
+        assertEquals(Integer.valueOf(33), map.remove(33));
+        assertEquals(Integer.valueOf(2), map.get(2));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void testAgainstHashMap() {
+        SingleWriterHashMap<Integer, Integer> map = new SingleWriterHashMap<>(2);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(666);
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(2000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, map);
+        assertEquals(expected, new HashMap<>(map));
+    }
+
+    @Test
+    public void testIteratorRemoveAndSetValue() {
+        SingleWriterHashMap<Integer, Integer> map = new SingleWriterHashMap<>(16);
+        for (int i = 0; i < 100; i++) {
+            map.put(i, i);
+        }
+        for (Iterator<Map.Entry<Integer, Integer>> it = map.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, Integer> e = it.next();
+            if (e.getKey() % 2 == 0) {
+                it.remove();
+            } else {
+                e.setValue(-e.getValue());
+            }
+        }
+        assertEquals(50, map.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 0 ? null : Integer.valueOf(-i), map.get(i));
+        }
+    }
+
+    @Test
+    public void testReadersUnderWriter() throws Exception {
+        final SingleWriterHashMap<Integer, Integer> map = new SingleWriterHashMap<>(2);
+        // Keys below 1000 stay mapped to themselves while the writer churns the rest of the table around them
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i);
+        }
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicLong failures = new AtomicLong();
+        Thread[] readers = new Thread[3];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                int i = 0;
+                while (!stop.get()) {
+                    int key = i++ % 1000;
+                    Integer value = map.get(key);
+                    if (value == null || value != key) {
+                        failures.incrementAndGet();
+                    }
+                    Integer churned = map.get(key + 1000);
+                    if (churned != null && churned != key + 1000) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            readers[t].start();
+        }
+        Random random = new Random(666);
+        for (int i = 0; i < 1000000; i++) {
+            int key = 1000 + random.nextInt(5000);
+            if (random.nextBoolean()) {
+                map.put(key, key);
+            } else {
+                map.remove(key);
+            }
+        }
+        stop.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(0, failures.get());
+    }
+}
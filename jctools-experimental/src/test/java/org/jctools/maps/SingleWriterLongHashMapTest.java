@@ -0,0 +1,116 @@
+package org.jctools.maps;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SingleWriterLongHashMapTest {
+
+    @Test
+    public void testBasic() {
+        SingleWriterLongHashMap<String> map = new SingleWriterLongHashMap<>(4);
+        assertTrue(map.isEmpty());
+        assertNull(map.put(0, "zero"));
+        assertNull(map.put(-1, "a"));
+        assertEquals("a", map.put(-1, "b"));
+        assertEquals("zero", map.get(0));
+        assertEquals("b", map.get(-1));
+        assertFalse(map.containsKey(1));
+        assertEquals("b", map.putIfAbsent(-1, "c"));
+        assertNull(map.putIfAbsent(Long.MIN_VALUE, "c"));
+        assertEquals(3, map.size());
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new long[]{Long.MIN_VALUE, -1, 0}, keys);
+        assertEquals("zero", map.remove(0));
+        assertNull(map.remove(0));
+        assertEquals(2, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(-1));
+    }
+
+    @Test
+    public void testRemoveShiftsCollidingKeys() {
+        SingleWriterLongHashMap<Long> map = new SingleWriterLongHashMap<>(16);
+        map.put(1, 1L);
+        map.put(17, 17L);
+        map.put(33, 33L);
+        map.put(2, 2L);
+        assertEquals(Long.valueOf(1), map.remove(1));
+        assertEquals(Long.valueOf(17), map.get(17));
+        assertEquals(Long.valueOf(33), map.get(33));
+        assertEquals(Long.valueOf(2), map.get(2));
+        assertEquals(Long.valueOf(33), map.remove(33));
+        assertEquals(Long.valueOf(2), map.get(2));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void testAgainstHashMap() {
+        SingleWriterLongHashMap<Integer> map = new SingleWriterLongHashMap<>(2);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(666);
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(2000) * 0x100000001L;
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+    }
+
+    @Test
+    public void testReadersUnderWriter() throws Exception {
+        final SingleWriterLongHashMap<Long> map = new SingleWriterLongHashMap<>(2);
+        for (long i = 0; i < 1000; i++) {
+            map.put(i, i);
+        }
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicLong failures = new AtomicLong();
+        Thread[] readers = new Thread[3];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                long i = 0;
+                while (!stop.get()) {
+                    long key = i++ % 1000;
+                    Long value = map.get(key);
+                    if (value == null || value != key) {
+                        failures.incrementAndGet();
+                    }
+                    Long churned = map.get(key + 1000);
+                    if (churned != null && churned != key + 1000) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            readers[t].start();
+        }
+        Random random = new Random(666);
+        for (int i = 0; i < 1000000; i++) {
+            long key = 1000 + random.nextInt(5000);
+            if (random.nextBoolean()) {
+                map.put(key, key);
+            } else {
+                map.remove(key);
+            }
+        }
+        stop.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(0, failures.get());
+    }
+}
@@ -0,0 +1,31 @@
+package org.jctools.queues;
+
+import org.jctools.queues.spec.ConcurrentQueueSpec;
+import org.jctools.queues.spec.Ordering;
+import org.jctools.util.Pow2;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import static org.jctools.util.PortableJvmInfo.CPUs;
+
+@RunWith(Parameterized.class)
+public class MpqSanityTestMpscAdaptiveCompound extends MpqSanityTest
+{
+    public MpqSanityTestMpscAdaptiveCompound(ConcurrentQueueSpec spec, MessagePassingQueue<Integer> queue)
+    {
+        super(spec, queue);
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> parameters()
+    {
+        ArrayList<Object[]> list = new ArrayList<Object[]>();
+        int capacity = Pow2.roundToPowerOfTwo(CPUs);
+        list.add(makeMpq(0, 1, capacity, Ordering.NONE, new MpscAdaptiveCompoundQueue<Integer>(capacity)));
+        list.add(makeMpq(0, 1, SIZE, Ordering.NONE, new MpscAdaptiveCompoundQueue<Integer>(SIZE)));
+        return list;
+    }
+}
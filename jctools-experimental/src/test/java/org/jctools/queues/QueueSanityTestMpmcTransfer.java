@@ -0,0 +1,221 @@
+package org.jctools.queues;
+
+import org.jctools.queues.spec.ConcurrentQueueSpec;
+import org.jctools.queues.spec.Ordering;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class QueueSanityTestMpmcTransfer extends QueueSanityTest
+{
+    public QueueSanityTestMpmcTransfer(ConcurrentQueueSpec spec, Queue<Integer> queue)
+    {
+        super(spec, queue);
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> parameters()
+    {
+        ArrayList<Object[]> list = new ArrayList<Object[]>();
+        list.add(makeQueue(0, 0, 0, Ordering.FIFO, new MpmcTransferQueue<Integer>(1)));
+        list.add(makeQueue(0, 0, 0, Ordering.FIFO, new MpmcTransferQueue<Integer>(64)));
+        return list;
+    }
+
+    @Test
+    public void testTryTransferWithoutWaitingConsumer() throws Exception
+    {
+        MpmcTransferQueue<Integer> q = new MpmcTransferQueue<Integer>(64);
+        assertFalse(q.hasWaitingConsumer());
+        assertFalse(q.tryTransfer(1));
+        assertFalse(q.tryTransfer(2, 10, TimeUnit.MILLISECONDS));
+        // a failed transfer must not leave the element behind
+        assertTrue(q.isEmpty());
+        assertNull(q.poll());
+    }
+
+    @Test(timeout = TEST_TIMEOUT)
+    public void testTransferToWaitingConsumer() throws Exception
+    {
+        final MpmcTransferQueue<Integer> q = new MpmcTransferQueue<Integer>(64);
+        final AtomicReference<Integer> taken = new AtomicReference<Integer>();
+        Thread consumer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    taken.set(q.take());
+                }
+                catch (InterruptedException e)
+                {
+                    // test fails on the null element
+                }
+            }
+        });
+        consumer.start();
+        while (!q.hasWaitingConsumer())
+        {
+            Thread.yield();
+        }
+        assertEquals(1, q.getWaitingConsumerCount());
+        assertTrue(q.tryTransfer(7));
+        consumer.join();
+        assertEquals(Integer.valueOf(7), taken.get());
+        assertFalse(q.hasWaitingConsumer());
+        assertTrue(q.isEmpty());
+    }
+
+    @Test(timeout = TEST_TIMEOUT)
+    public void testTransferWaitsForConsumer() throws Exception
+    {
+        final MpmcTransferQueue<Integer> q = new MpmcTransferQueue<Integer>(64);
+        final CountDownLatch transferred = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    q.transfer(7);
+                    transferred.countDown();
+                }
+                catch (InterruptedException e)
+                {
+                    // test fails on the latch
+                }
+            }
+        });
+        producer.start();
+        assertFalse(transferred.await(50, TimeUnit.MILLISECONDS));
+        // the element is held by the blocked producer, not in the queue
+        assertTrue(q.isEmpty());
+        Integer e;
+        while ((e = q.poll()) == null)
+        {
+            Thread.yield();
+        }
+        assertEquals(Integer.valueOf(7), e);
+        assertTrue(transferred.await(TEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        producer.join();
+    }
+
+    @Test(timeout = TEST_TIMEOUT)
+    public void testTakeIsInterruptible() throws Exception
+    {
+        final MpmcTransferQueue<Integer> q = new MpmcTransferQueue<Integer>(64);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Thread consumer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    q.take();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted.set(true);
+                }
+            }
+        });
+        consumer.start();
+        while (!q.hasWaitingConsumer())
+        {
+            Thread.yield();
+        }
+        consumer.interrupt();
+        consumer.join();
+        assertTrue(interrupted.get());
+        assertFalse(q.hasWaitingConsumer());
+        assertNull(q.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = TEST_TIMEOUT)
+    public void testBlockingHandoffNoElementsLost() throws Exception
+    {
+        final MpmcTransferQueue<Integer> q = new MpmcTransferQueue<Integer>(16, 2, 2);
+        final int threads = 3;
+        final int perThread = 5000;
+        final AtomicLong sum = new AtomicLong();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] all = new Thread[threads * 2];
+        for (int t = 0; t < threads; t++)
+        {
+            final boolean transfer = (t & 1) == 0;
+            all[t] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 1; i <= perThread; i++)
+                        {
+                            if (transfer)
+                            {
+                                q.transfer(i);
+                            }
+                            else
+                            {
+                                q.put(i);
+                            }
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        failure.set(e);
+                    }
+                }
+            });
+            all[threads + t] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 0; i < perThread; i++)
+                        {
+                            sum.addAndGet(q.take());
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        failure.set(e);
+                    }
+                }
+            });
+        }
+        for (Thread t : all)
+        {
+            t.start();
+        }
+        for (Thread t : all)
+        {
+            t.join();
+        }
+        assertNull(failure.get());
+        assertEquals((long) threads * perThread * (perThread + 1) / 2, sum.get());
+        assertTrue(q.isEmpty());
+        assertFalse(q.hasWaitingConsumer());
+    }
+}
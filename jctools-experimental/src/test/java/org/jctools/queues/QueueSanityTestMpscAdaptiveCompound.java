@@ -0,0 +1,175 @@
+package org.jctools.queues;
+
+import org.jctools.queues.spec.ConcurrentQueueSpec;
+import org.jctools.queues.spec.Ordering;
+import org.jctools.util.Pow2;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.jctools.util.PortableJvmInfo.CPUs;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class QueueSanityTestMpscAdaptiveCompound extends QueueSanityTest
+{
+    public QueueSanityTestMpscAdaptiveCompound(ConcurrentQueueSpec spec, Queue<Integer> queue)
+    {
+        super(spec, queue);
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> parameters()
+    {
+        ArrayList<Object[]> list = new ArrayList<Object[]>();
+        int capacity = Pow2.roundToPowerOfTwo(CPUs);
+        list.add(makeQueue(0, 1, capacity, Ordering.NONE, new MpscAdaptiveCompoundQueue<Integer>(capacity)));
+        list.add(makeQueue(0, 1, SIZE, Ordering.NONE, new MpscAdaptiveCompoundQueue<Integer>(SIZE)));
+        return list;
+    }
+
+    @Test
+    public void testFullOnlyWhenAllStripesAreFull()
+    {
+        MpscAdaptiveCompoundQueue<Integer> q = new MpscAdaptiveCompoundQueue<Integer>(64, 8);
+        assertEquals(1, q.activeStripes());
+        int offered = 0;
+        while (q.offer(offered))
+        {
+            offered++;
+        }
+        assertEquals(q.capacity(), offered);
+        assertEquals(q.capacity(), q.size());
+        int polled = 0;
+        while (q.poll() != null)
+        {
+            polled++;
+        }
+        assertEquals(offered, polled);
+        assertTrue(q.isEmpty());
+    }
+
+    @Test(timeout = TEST_TIMEOUT)
+    public void testNoElementsLostWhileStripesAdapt() throws Exception
+    {
+        final MpscAdaptiveCompoundQueue<Integer> q = new MpscAdaptiveCompoundQueue<Integer>(1024, 16);
+        final int producers = 4;
+        final int perProducer = 200000;
+        final AtomicBoolean fail = new AtomicBoolean();
+        Thread[] threads = new Thread[producers];
+        for (int t = 0; t < producers; t++)
+        {
+            threads[t] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < perProducer; i++)
+                    {
+                        while (!q.offer(i))
+                        {
+                            Thread.yield();
+                        }
+                        // interleave idle spells so the consumer narrows the stripes as well as widens them
+                        if ((i & 0xFFFF) == 0)
+                        {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        long received = 0;
+        long idle = 0;
+        while (received < (long) producers * perProducer && !fail.get())
+        {
+            if (q.poll() != null)
+            {
+                received++;
+                idle = 0;
+            }
+            else if (++idle > 100000000L)
+            {
+                fail.set(true);
+            }
+        }
+        for (Thread t : threads)
+        {
+            t.join();
+        }
+        assertEquals((long) producers * perProducer, received);
+        assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void testStripesWidenUnderContentionAndNarrowWhenIdle()
+    {
+        MpscAdaptiveCompoundQueue<Integer> q = new MpscAdaptiveCompoundQueue<Integer>(1024, 4);
+        assertEquals(1, q.activeStripes());
+        // simulate contended producers over two adaptation periods
+        for (int period = 0; period < 2; period++)
+        {
+            for (int i = 0; i <= MpscAdaptiveCompoundQueue.WIDEN_THRESHOLD; i++)
+            {
+                q.incrementCasFailures();
+            }
+            pollPeriod(q);
+        }
+        assertEquals(4, q.activeStripes());
+        // further contention can't widen beyond the max parallelism
+        for (int i = 0; i <= MpscAdaptiveCompoundQueue.WIDEN_THRESHOLD; i++)
+        {
+            q.incrementCasFailures();
+        }
+        pollPeriod(q);
+        assertEquals(4, q.activeStripes());
+
+        // uncontended periods narrow the stripes back down
+        pollPeriod(q);
+        assertEquals(2, q.activeStripes());
+        pollPeriod(q);
+        assertEquals(1, q.activeStripes());
+        pollPeriod(q);
+        assertEquals(1, q.activeStripes());
+    }
+
+    @Test
+    public void testStragglerInRetiredStripeIsPolled()
+    {
+        MpscAdaptiveCompoundQueue<Integer> q = new MpscAdaptiveCompoundQueue<Integer>(1024, 4);
+        for (int period = 0; period < 2; period++)
+        {
+            for (int i = 0; i <= MpscAdaptiveCompoundQueue.WIDEN_THRESHOLD; i++)
+            {
+                q.incrementCasFailures();
+            }
+            pollPeriod(q);
+        }
+        pollPeriod(q);
+        pollPeriod(q);
+        assertEquals(1, q.activeStripes());
+        assertEquals(1, q.scanStripes);
+
+        // a producer which read a stale stripe count lands in a retired stripe, and flags it
+        q.queues[3].offer(42);
+        q.soStragglers(1);
+        assertEquals(1, q.size());
+        assertEquals(Integer.valueOf(42), q.poll());
+        assertTrue(q.isEmpty());
+    }
+
+    private static void pollPeriod(MpscAdaptiveCompoundQueue<Integer> q)
+    {
+        for (int i = 0; i < MpscAdaptiveCompoundQueue.ADAPT_PERIOD; i++)
+        {
+            q.poll();
+        }
+    }
+}
@@ -27,7 +27,8 @@ public class BlockingQueueTest
     public static Collection queues() {
         return Arrays.asList(
                 test(1, 1, CAPACITY, Ordering.FIFO), test(10, 1, CAPACITY, Ordering.FIFO),
-                test(1, 10, CAPACITY, Ordering.FIFO), test(10, 10, CAPACITY, Ordering.FIFO));
+                test(1, 10, CAPACITY, Ordering.FIFO), test(10, 10, CAPACITY, Ordering.FIFO),
+                test(1, 1, 0, Ordering.FIFO), test(10, 1, 0, Ordering.FIFO), test(10, 10, 0, Ordering.FIFO));
     }
 
     private static Object[] test(int producers, int consumers, int capacity, Ordering ordering) {
@@ -0,0 +1,81 @@
+package org.jctools.sets;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PrimitiveOpenHashMapTest {
+
+    @Test
+    public void testLongSanity() {
+        OpenHashMapLong<String> map = new OpenHashMapLong<>(4);
+        assertTrue(map.isEmpty());
+        assertNull(map.put(0, "zero"));
+        assertEquals("zero", map.put(0, "nil"));
+        assertNull(map.put(-1, "a"));
+        assertEquals("a", map.putIfAbsent(-1, "b"));
+        assertNull(map.putIfAbsent(Long.MAX_VALUE, "max"));
+        assertEquals(3, map.size());
+        assertEquals("nil", map.get(0));
+        assertTrue(map.containsKey(Long.MAX_VALUE));
+        assertFalse(map.containsKey(1));
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new long[]{-1, 0, Long.MAX_VALUE}, keys);
+        assertEquals("nil", map.remove(0));
+        assertNull(map.remove(0));
+        assertEquals(2, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(-1));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullValue() {
+        new OpenHashMapInt<String>(4).put(1, null);
+    }
+
+    @Test
+    public void testLongAgainstHashMap() {
+        OpenHashMapLong<Integer> map = new OpenHashMapLong<>(2);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(666);
+        for (int i = 0; i < 200000; i++) {
+            long key = (long) random.nextInt(3000) << 32;
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+    }
+
+    @Test
+    public void testIntAgainstHashMap() {
+        OpenHashMapInt<Integer> map = new OpenHashMapInt<>(2);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(666);
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(3000) - 1500;
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected.size(), map.keys().length);
+        for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+    }
+}
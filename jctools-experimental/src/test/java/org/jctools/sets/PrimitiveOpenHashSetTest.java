@@ -0,0 +1,184 @@
+package org.jctools.sets;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PrimitiveOpenHashSetTest {
+
+    @Test
+    public void testLongSanity() {
+        OpenHashSetLong set = new OpenHashSetLong(4);
+        assertTrue(set.isEmpty());
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.add(-1));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertFalse(set.add(-1));
+        assertEquals(3, set.size());
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(Long.MIN_VALUE));
+        assertFalse(set.contains(1));
+        long[] array = set.toArray();
+        Arrays.sort(array);
+        assertArrayEquals(new long[]{Long.MIN_VALUE, -1, 0}, array);
+        assertTrue(set.remove(0));
+        assertFalse(set.remove(0));
+        assertFalse(set.contains(0));
+        assertEquals(2, set.size());
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(-1));
+    }
+
+    @Test
+    public void testIntSanity() {
+        OpenHashSetInt set = new OpenHashSetInt(4);
+        assertTrue(set.add(0));
+        assertTrue(set.add(Integer.MIN_VALUE));
+        assertFalse(set.add(0));
+        assertEquals(2, set.size());
+        assertTrue(set.contains(Integer.MIN_VALUE));
+        assertTrue(set.remove(Integer.MIN_VALUE));
+        assertFalse(set.contains(Integer.MIN_VALUE));
+        assertArrayEquals(new int[]{0}, set.toArray());
+    }
+
+    @Test
+    public void testLongAgainstHashSet() {
+        OpenHashSetLong set = new OpenHashSetLong(2);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(666);
+        for (int i = 0; i < 200000; i++) {
+            // multiples of a power of two collide in the low bits unless spread
+            long val = (long) random.nextInt(3000) << 20;
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(val), set.add(val));
+            } else {
+                assertEquals(expected.remove(val), set.remove(val));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        Set<Long> iterated = new HashSet<>();
+        for (OpenHashSetLong.IteratorLong it = set.iterator(); it.hasNext(); ) {
+            assertTrue(iterated.add(it.nextLong()));
+        }
+        assertEquals(expected, iterated);
+    }
+
+    @Test
+    public void testIntAgainstHashSet() {
+        OpenHashSetInt set = new OpenHashSetInt(2);
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(666);
+        for (int i = 0; i < 200000; i++) {
+            int val = random.nextInt(3000) - 1500;
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(val), set.add(val));
+            } else {
+                assertEquals(expected.remove(val), set.remove(val));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        Set<Integer> iterated = new HashSet<>();
+        for (OpenHashSetInt.IteratorInt it = set.iterator(); it.hasNext(); ) {
+            assertTrue(iterated.add(it.nextInt()));
+        }
+        assertEquals(expected, iterated);
+    }
+
+    @Test
+    public void testIntIteratorRemove() {
+        Random random = new Random(666);
+        for (int round = 0; round < 2000; round++) {
+            OpenHashSetInt set = new OpenHashSetInt(2);
+            Set<Integer> expected = new HashSet<>();
+            for (int i = random.nextInt(40); i >= 0; i--) {
+                int val = random.nextInt(64) - 8;
+                set.add(val);
+                expected.add(val);
+            }
+            // every element is returned once though removals shift the ones after them, wrapping around the end
+            Set<Integer> all = new HashSet<>(expected);
+            Set<Integer> iterated = new HashSet<>();
+            for (OpenHashSetInt.IteratorInt it = set.iterator(); it.hasNext(); ) {
+                int val = it.nextInt();
+                assertTrue(iterated.add(val));
+                if (random.nextBoolean()) {
+                    it.remove();
+                    expected.remove(val);
+                }
+            }
+            assertEquals(all, iterated);
+            assertEquals(expected.size(), set.size());
+            for (int val : iterated) {
+                assertEquals(expected.contains(val), set.contains(val));
+            }
+        }
+    }
+
+    @Test
+    public void testLongIteratorRemove() {
+        Random random = new Random(666);
+        for (int round = 0; round < 2000; round++) {
+            OpenHashSetLong set = new OpenHashSetLong(2);
+            Set<Long> expected = new HashSet<>();
+            for (int i = random.nextInt(40); i >= 0; i--) {
+                long val = (long) (random.nextInt(64) - 8) << 20;
+                set.add(val);
+                expected.add(val);
+            }
+            Set<Long> all = new HashSet<>(expected);
+            Set<Long> iterated = new HashSet<>();
+            for (OpenHashSetLong.IteratorLong it = set.iterator(); it.hasNext(); ) {
+                long val = it.nextLong();
+                assertTrue(iterated.add(val));
+                if (random.nextBoolean()) {
+                    it.remove();
+                    expected.remove(val);
+                }
+            }
+            assertEquals(all, iterated);
+            assertEquals(expected.size(), set.size());
+            for (long val : iterated) {
+                assertEquals(expected.contains(val), set.contains(val));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testIteratorRemoveTwice() {
+        OpenHashSetInt set = new OpenHashSetInt(2);
+        set.add(7);
+        OpenHashSetInt.IteratorInt it = set.iterator();
+        it.nextInt();
+        it.remove();
+        it.remove();
+    }
+
+    @Test
+    public void testBulkOperations() {
+        OpenHashSetLong longs = new OpenHashSetLong(2);
+        long[] values = new long[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 600;
+        }
+        assertTrue(longs.addAll(values));
+        assertEquals(600, longs.size());
+        assertFalse(longs.addAll(values));
+        assertTrue(longs.containsAll(values));
+        assertTrue(longs.containsAll(new long[0]));
+        assertFalse(longs.containsAll(new long[]{1, 2, 600}));
+
+        OpenHashSetInt ints = new OpenHashSetInt(2);
+        assertTrue(ints.addAll(new int[]{3, 1, 4, 1, 5, 9, 2, 6, 0}));
+        assertEquals(8, ints.size());
+        assertTrue(ints.containsAll(new int[]{0, 9, 1}));
+        assertFalse(ints.containsAll(new int[]{7}));
+    }
+}
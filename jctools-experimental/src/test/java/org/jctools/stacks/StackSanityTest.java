@@ -0,0 +1,159 @@
+package org.jctools.stacks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class StackSanityTest
+{
+    private static final int SIZE = 8192;
+    private static final long TEST_TIMEOUT = 30000;
+
+    private final ConcurrentStack<Integer> stack;
+
+    public StackSanityTest(ConcurrentStack<Integer> stack)
+    {
+        this.stack = stack;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> parameters()
+    {
+        ArrayList<Object[]> list = new ArrayList<Object[]>();
+        list.add(new Object[] {new MpmcLinkedStack<Integer>()});
+        list.add(new Object[] {new MpmcLinkedStack<Integer>(8)});
+        list.add(new Object[] {new MpmcArrayStack<Integer>(SIZE)});
+        list.add(new Object[] {new MpmcArrayStack<Integer>(SIZE, 8)});
+        return list;
+    }
+
+    @Before
+    public void clear()
+    {
+        while (stack.pop() != null)
+        {
+        }
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        assertTrue(stack.isEmpty());
+        assertEquals(0, stack.size());
+        assertNull(stack.peek());
+        assertNull(stack.pop());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullPush()
+    {
+        stack.push(null);
+    }
+
+    @Test
+    public void testLifo()
+    {
+        for (int i = 0; i < SIZE; i++)
+        {
+            assertTrue(stack.push(i));
+            assertEquals(i + 1, stack.size());
+            assertEquals(Integer.valueOf(i), stack.peek());
+        }
+        for (int i = SIZE - 1; i >= 0; i--)
+        {
+            assertEquals(Integer.valueOf(i), stack.pop());
+        }
+        assertTrue(stack.isEmpty());
+        assertNull(stack.pop());
+    }
+
+    @Test
+    public void testPushFailsWhenFull()
+    {
+        if (stack.capacity() == ConcurrentStack.UNBOUNDED_CAPACITY)
+        {
+            return;
+        }
+        for (int i = 0; i < stack.capacity(); i++)
+        {
+            assertTrue(stack.push(i));
+        }
+        assertFalse(stack.push(-1));
+        assertEquals(stack.capacity(), stack.size());
+        assertEquals(Integer.valueOf(stack.capacity() - 1), stack.pop());
+        assertTrue(stack.push(-1));
+        assertEquals(Integer.valueOf(-1), stack.pop());
+    }
+
+    @Test(timeout = TEST_TIMEOUT)
+    public void testConcurrentPushPopNoElementsLost() throws Exception
+    {
+        final int threads = 4;
+        final int perThread = 50000;
+        final AtomicLong pushedSum = new AtomicLong();
+        final AtomicLong poppedSum = new AtomicLong();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] all = new Thread[threads];
+        for (int t = 0; t < threads; t++)
+        {
+            final int id = t;
+            all[t] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for (int i = 1; i <= perThread; i++)
+                        {
+                            Integer e = id * perThread + i;
+                            // the free-list pattern: put back an element, then take one
+                            if (stack.push(e))
+                            {
+                                pushedSum.addAndGet(e);
+                            }
+                            Integer popped = stack.pop();
+                            if (popped != null)
+                            {
+                                poppedSum.addAndGet(popped);
+                            }
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        failure.set(e);
+                    }
+                }
+            });
+            all[t].start();
+        }
+        start.countDown();
+        for (Thread t : all)
+        {
+            t.join();
+        }
+        assertNull(failure.get());
+        Integer e;
+        while ((e = stack.pop()) != null)
+        {
+            poppedSum.addAndGet(e);
+        }
+        assertEquals(pushedSum.get(), poppedSum.get());
+        assertTrue(stack.isEmpty());
+    }
+}